@@ -21,6 +21,7 @@ package org.restheart.cache;
 
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import org.restheart.cache.impl.CaffeineCache;
@@ -47,6 +48,22 @@ public class CacheFactory {
         return new CaffeineLoadingCache<>(size, expirePolicy, ttl, loader);
     }
 
+    /**
+     *
+     * @param <K>          the type of the cache keys
+     * @param <V>          the type of the cached values
+     * @param size         the size of the cache
+     * @param expirePolicy specifies how and when each entry should be automatically
+     *                     removed from the cache
+     * @param ttl          Time To Live in milliseconds
+     * @param loader       the cache loader used to obtain new values
+     * @param bulkLoader   the cache loader used by getAllLoading() to obtain the values of many keys at once
+     * @return the cache
+     */
+    public static <K, V> LoadingCache<K, V> createLocalLoadingCache(long size, Cache.EXPIRE_POLICY expirePolicy, long ttl, Function<K, V> loader, Function<Set<? extends K>, Map<K, V>> bulkLoader) {
+        return new CaffeineLoadingCache<>(size, expirePolicy, ttl, loader, bulkLoader);
+    }
+
     /**
      * @param <K>    the type of the cache keys
      * @param <V>    the type of the cached values
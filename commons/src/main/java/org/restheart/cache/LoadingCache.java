@@ -19,6 +19,8 @@
  */
 package org.restheart.cache;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -29,4 +31,17 @@ import java.util.Optional;
  */
 public interface LoadingCache<K,V> extends Cache<K,V> {
     public Optional<V> getLoading(K key);
+
+    /**
+     * Gets the values of the keys, loading the missing ones; implementations
+     * can load them in bulk
+     *
+     * @param keys the keys
+     * @return the values of the keys
+     */
+    public default Map<K, Optional<V>> getAllLoading(Iterable<? extends K> keys) {
+        var ret = new LinkedHashMap<K, Optional<V>>();
+        keys.forEach(key -> ret.put(key, getLoading(key)));
+        return ret;
+    }
 }
@@ -40,6 +40,18 @@ public class CaffeineLoadingCache<K, V> implements org.restheart.cache.LoadingCa
     private final LoadingCache<K, Optional<V>> wrapped;
 
     public CaffeineLoadingCache(long size, EXPIRE_POLICY expirePolicy, long ttl, Function<K, V> loader) {
+        this(size, expirePolicy, ttl, loader, null);
+    }
+
+    /**
+     * @param size
+     * @param expirePolicy
+     * @param ttl
+     * @param loader the loader of a single value
+     * @param bulkLoader the loader of the values of many keys, used by getAllLoading(); the keys
+     * missing in the returned map have no value. If null, the values are loaded one by one with loader
+     */
+    public CaffeineLoadingCache(long size, EXPIRE_POLICY expirePolicy, long ttl, Function<K, V> loader, Function<Set<? extends K>, Map<K, V>> bulkLoader) {
         var builder = Caffeine.newBuilder();
 
         builder.maximumSize(size);
@@ -59,7 +71,14 @@ public class CaffeineLoadingCache<K, V> implements org.restheart.cache.LoadingCa
             @Override
             public Map<? extends K, ? extends Optional<V>> loadAll(Set<? extends K> keys) throws Exception {
                 var ret = new HashMap<K, Optional<V>>();
-                keys.stream().forEachOrdered(key -> ret.put(key, Optional.ofNullable(loader.apply(key))));
+
+                if (bulkLoader == null) {
+                    keys.stream().forEachOrdered(key -> ret.put(key, Optional.ofNullable(loader.apply(key))));
+                } else {
+                    var loaded = bulkLoader.apply(keys);
+                    keys.stream().forEachOrdered(key -> ret.put(key, Optional.ofNullable(loaded.get(key))));
+                }
+
                 return ret;
             }
         });
@@ -82,6 +101,11 @@ public class CaffeineLoadingCache<K, V> implements org.restheart.cache.LoadingCa
         return wrapped.get(key);
     }
 
+    @Override
+    public Map<K, Optional<V>> getAllLoading(Iterable<? extends K> keys) {
+        return wrapped.getAll(keys);
+    }
+
     @Override
     public void put(K key, V value) {
         wrapped.put(key, Optional.ofNullable(value));
@@ -19,13 +19,18 @@
  */
 package org.restheart.exchange;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Deque;
 import java.util.List;
 import java.util.Scanner;
+import java.util.function.Consumer;
 
 import org.bson.BsonArray;
+import org.bson.BsonDocument;
 import org.bson.BsonString;
 import org.bson.BsonValue;
 import org.bson.json.JsonParseException;
@@ -44,6 +49,9 @@ import org.slf4j.Logger;
  * data. Two query parameters controls the conversion: 'id', the the index of
  * the _id property and 'sep', the separator char
  *
+ * With the query parameter 'stream', the content is not injected: the rows
+ * are parsed incrementally from the request channel with forEachDocument()
+ *
  * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
  */
 public class BsonFromCsvRequest extends ServiceRequest<BsonArray> {
@@ -54,6 +62,11 @@ public class BsonFromCsvRequest extends ServiceRequest<BsonArray> {
      */
     public static final String CVS_CONTENT_TYPE = "text/csv";
 
+    /**
+     * the query parameter that enables the streaming of the rows
+     */
+    public static final String STREAM_QPARAM_NAME = "stream";
+
     protected BsonFromCsvRequest(HttpServerExchange exchange) {
         super(exchange);
     }
@@ -84,12 +97,66 @@ public class BsonFromCsvRequest extends ServiceRequest<BsonArray> {
     }
 
     public void injectContent(HttpServerExchange exchange) throws IOException {
+        if (isStreaming()) {
+            // the rows are parsed by forEachDocument()
+            return;
+        }
+
         final var params = new CsvRequestParams(exchange);
         final var csv = ChannelReader.readString(exchange);
 
         setContent(parseCsv(params, csv));
     }
 
+    /**
+     * @return true if the rows are streamed, i.e. the request has the query parameter 'stream'
+     * different than false
+     */
+    public boolean isStreaming() {
+        var _stream = wrapped.getQueryParameters().get(STREAM_QPARAM_NAME);
+
+        return _stream != null && (_stream.isEmpty() || !"false".equalsIgnoreCase(_stream.getFirst()));
+    }
+
+    /**
+     * parses the rows incrementally from the request channel, without reading
+     * the whole csv in memory, and passes the documents to the consumer
+     * as they are parsed. The first row is the header.
+     *
+     * @param consumer the consumer of the documents
+     * @return the number of parsed documents
+     * @throws IOException
+     */
+    public long forEachDocument(Consumer<BsonDocument> consumer) throws IOException {
+        final var params = new CsvRequestParams(wrapped);
+
+        if (!wrapped.isBlocking()) {
+            wrapped.startBlocking();
+        }
+
+        long count = 0;
+
+        try (var reader = new BufferedReader(new InputStreamReader(wrapped.getInputStream(), StandardCharsets.UTF_8))) {
+            List<String> cols = null;
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+
+                if (cols == null) {
+                    cols = split(params, line);
+                } else {
+                    consumer.accept(toDocument(params, cols, line));
+                    count++;
+                }
+            }
+        }
+
+        return count;
+    }
+
     private static boolean checkContentType(HttpServerExchange exchange) {
         HeaderValues contentType = exchange.getRequestHeaders().get(Headers.CONTENT_TYPE);
 
@@ -108,53 +175,10 @@ public class BsonFromCsvRequest extends ServiceRequest<BsonArray> {
             while (scanner.hasNext()) {
                 String line = scanner.nextLine();
 
-                // split on the separator only if that comma has zero,
-                // or an even number of quotes ahead of it.
-                List<String> vals = Arrays.asList(line.split(params.sep + "(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)", -1));
-
                 if (isHeader) {
-                    cols = vals;
+                    cols = split(params, line);
                 } else {
-                    var doc = document().put("_etag", new ObjectId()).get();
-
-                    int unnamedProps = 0;
-
-                    for (int idx = 0; idx < vals.size(); idx++) {
-                        if (idx == params.idIdx) {
-                            var _v = vals.get(params.idIdx);
-
-                            if (_v != null) {
-                                // quote empty string
-                                if ("".equals(_v.strip())) {
-                                    _v = "\"".concat(_v).concat("\"");
-                                }
-
-                                doc.append("_id", getBsonValue(_v));
-                            }
-                        } else {
-                            String propname;
-
-                            if (cols == null || cols.size() <= idx) {
-                                propname = "unnamed_" + unnamedProps;
-                                unnamedProps++;
-                            } else {
-                                propname = cols.get(idx);
-                            }
-
-                            var _v = vals.get(idx);
-
-                            // quote empty string
-                            if ("".equals(_v.strip())) {
-                                _v = "\"".concat(_v).concat("\"");
-                            }
-
-                            if (_v != null) {
-                                doc.append(propname, getBsonValue(_v));
-                            }
-                        }
-                    }
-
-                    bson.add(doc);
+                    bson.add(toDocument(params, cols, line));
                 }
 
                 isHeader = false;
@@ -164,6 +188,57 @@ public class BsonFromCsvRequest extends ServiceRequest<BsonArray> {
         return bson;
     }
 
+    private static List<String> split(CsvRequestParams params, String line) {
+        // split on the separator only if that comma has zero,
+        // or an even number of quotes ahead of it.
+        return Arrays.asList(line.split(params.sep + "(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)", -1));
+    }
+
+    private BsonDocument toDocument(CsvRequestParams params, List<String> cols, String line) {
+        var vals = split(params, line);
+
+        var doc = document().put("_etag", new ObjectId()).get();
+
+        int unnamedProps = 0;
+
+        for (int idx = 0; idx < vals.size(); idx++) {
+            if (idx == params.idIdx) {
+                var _v = vals.get(params.idIdx);
+
+                if (_v != null) {
+                    // quote empty string
+                    if ("".equals(_v.strip())) {
+                        _v = "\"".concat(_v).concat("\"");
+                    }
+
+                    doc.append("_id", getBsonValue(_v));
+                }
+            } else {
+                String propname;
+
+                if (cols == null || cols.size() <= idx) {
+                    propname = "unnamed_" + unnamedProps;
+                    unnamedProps++;
+                } else {
+                    propname = cols.get(idx);
+                }
+
+                var _v = vals.get(idx);
+
+                // quote empty string
+                if ("".equals(_v.strip())) {
+                    _v = "\"".concat(_v).concat("\"");
+                }
+
+                if (_v != null) {
+                    doc.append(propname, getBsonValue(_v));
+                }
+            }
+        }
+
+        return doc;
+    }
+
     private BsonValue getBsonValue(String raw) {
         try {
             return BsonUtils.parse(raw);
@@ -20,6 +20,8 @@
 package org.restheart.exchange;
 
 import io.undertow.server.HttpServerExchange;
+import java.io.IOException;
+import java.io.Writer;
 import org.bson.BsonValue;
 import static org.restheart.utils.BsonUtils.ArrayBuilder;
 import static org.restheart.utils.BsonUtils.DocumentBuilder;
@@ -54,6 +56,33 @@ public class BsonResponse extends ServiceResponse<BsonValue> {
         }
     }
 
+    /**
+     * Writes the content as json to the writer, encoding the BsonValue
+     * without building the intermediate String of readContent().
+     *
+     * Used by ResponseSender when isContentWritable() returns true.
+     *
+     * @param writer the writer
+     * @throws IOException
+     */
+    public void writeContent(Writer writer) throws IOException {
+        if (content != null) {
+            toJson(content, null, writer);
+        }
+    }
+
+    /**
+     * Subclasses that override readContent() must also override
+     * writeContent(Writer) to write the same json, or override this method
+     * to return false, so that ResponseSender sends the String returned by
+     * readContent().
+     *
+     * @return true if ResponseSender can send the content with writeContent(Writer)
+     */
+    public boolean isContentWritable() {
+        return true;
+    }
+
     public void setContent(ArrayBuilder builder) {
         setContent(builder.get());
     }
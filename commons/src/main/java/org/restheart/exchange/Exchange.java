@@ -45,6 +45,16 @@ public abstract class Exchange<T> {
      */
     public static final String JSON_MEDIA_TYPE = "application/json";
 
+    /**
+     * Supported content type NDJSON, one json document per line
+     */
+    public static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+
+    /**
+     * Supported content type JSON Lines, one json document per line
+     */
+    public static final String JSON_LINES_MEDIA_TYPE = "application/jsonl";
+
     /**
      *
      */
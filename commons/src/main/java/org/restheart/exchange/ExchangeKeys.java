@@ -61,6 +61,26 @@ public interface ExchangeKeys {
      */
     public static final String HINT_QPARAM_KEY = "hint";
 
+    /**
+     * the continuation token of keyset pagination
+     */
+    public static final String AFTER_QPARAM_KEY = "after";
+
+    /**
+     * the strategy of the count, also a collection property
+     */
+    public static final String COUNT_STRATEGY_QPARAM_KEY = "countStrategy";
+
+    /**
+     * the resume token of the change stream notification to resume after
+     */
+    public static final String RESUME_AFTER_QPARAM_KEY = "resumeAfter";
+
+    /**
+     * the resume token of the change stream notification to start after
+     */
+    public static final String START_AFTER_QPARAM_KEY = "startAfter";
+
     /**
      *
      */
@@ -76,6 +96,11 @@ public interface ExchangeKeys {
      */
     public static final String CACHE_QPARAM_KEY = "cache";
 
+    /**
+     *
+     */
+    public static final String STREAM_QPARAM_KEY = "stream";
+
     /**
      *
      */
@@ -683,6 +708,27 @@ public interface ExchangeKeys {
         UPDATE
     }
 
+    /**
+     * the strategy used to count the documents of a collection
+     */
+    public enum COUNT_STRATEGY {
+
+        /**
+         * countDocuments(filter)
+         */
+        EXACT,
+
+        /**
+         * estimatedDocumentCount() from the collection metadata, exact if a filter is specified
+         */
+        ESTIMATED,
+
+        /**
+         * countDocuments(filter) cached until a write to the collection or the ttl
+         */
+        CACHED
+    }
+
     /**
      * @deprecated will be removed in RH v8.0
      */
@@ -41,6 +41,7 @@ import static org.restheart.exchange.ExchangeKeys.BINARY_CONTENT;
 import static org.restheart.exchange.ExchangeKeys.CACHE_QPARAM_KEY;
 import static org.restheart.exchange.ExchangeKeys.COLL_META_DOCID_PREFIX;
 import static org.restheart.exchange.ExchangeKeys.CONFIG;
+import org.restheart.exchange.ExchangeKeys.COUNT_STRATEGY;
 import static org.restheart.exchange.ExchangeKeys.DB_META_DOCID;
 import org.restheart.exchange.ExchangeKeys.DOC_ID_TYPE;
 import static org.restheart.exchange.ExchangeKeys.ETAG_CHECK_QPARAM_KEY;
@@ -54,6 +55,7 @@ import static org.restheart.exchange.ExchangeKeys.NO_CACHE_QPARAM_KEY;
 import static org.restheart.exchange.ExchangeKeys.NO_PROPS_KEY;
 import static org.restheart.exchange.ExchangeKeys.NUL;
 import static org.restheart.exchange.ExchangeKeys.READ_CONCERN_QPARAM_KEY;
+import static org.restheart.exchange.ExchangeKeys.STREAM_QPARAM_KEY;
 import static org.restheart.exchange.ExchangeKeys.READ_PREFERENCE_QPARAM_KEY;
 import org.restheart.exchange.ExchangeKeys.REPRESENTATION_FORMAT;
 import static org.restheart.exchange.ExchangeKeys.RESOURCES_WILDCARD_KEY;
@@ -109,14 +111,17 @@ public class MongoRequest extends BsonRequest {
     private int page = 1;
     private int pagesize = 100;
     private boolean count = false;
+    private COUNT_STRATEGY countStrategy = null;
     private boolean etagCheckRequired = false;
     private WRITE_MODE writeMode = null;
     private boolean cache;
+    private boolean stream;
     private Deque<String> filter = null;
     private BsonDocument aggregationVars = null; // aggregation vars
     private Deque<String> keys = null;
     private Deque<String> sortBy = null;
     private Deque<String> hint = null;
+    private String after = null;
     private DOC_ID_TYPE docIdType = DOC_ID_TYPE.STRING_OID;
     private final TYPE type;
 
@@ -199,6 +204,8 @@ public class MongoRequest extends BsonRequest {
 
         this.cache = exchange.getQueryParameters().get(CACHE_QPARAM_KEY) != null;
 
+        this.stream = exchange.getQueryParameters().get(STREAM_QPARAM_KEY) != null;
+
         this.noProps = exchange.getQueryParameters().get(NO_PROPS_KEY) != null;
 
         var _jsonMode = exchange.getQueryParameters().containsKey(JSON_MODE_QPARAM_KEY)
@@ -803,6 +810,20 @@ public class MongoRequest extends BsonRequest {
         this.count = count;
     }
 
+    /**
+     * @return the count strategy requested with the countStrategy query parameter, or null
+     */
+    public COUNT_STRATEGY getCountStrategy() {
+        return countStrategy;
+    }
+
+    /**
+     * @param countStrategy the count strategy
+     */
+    public void setCountStrategy(COUNT_STRATEGY countStrategy) {
+        this.countStrategy = countStrategy;
+    }
+
     /**
      * @return the filter
      */
@@ -831,6 +852,28 @@ public class MongoRequest extends BsonRequest {
         this.hint = hint;
     }
 
+    /**
+     * @return the continuation token of keyset pagination, an empty string
+     * for the first page, or null if keyset pagination is not requested
+     */
+    public String getAfter() {
+        return after;
+    }
+
+    /**
+     * @param after the continuation token of keyset pagination
+     */
+    public void setAfter(String after) {
+        this.after = after;
+    }
+
+    /**
+     * @return true if keyset pagination is requested with the after query parameter
+     */
+    public boolean isKeysetPagination() {
+        return after != null;
+    }
+
     /**
      *
      * @return the $and composed filter qparam values
@@ -1055,6 +1098,55 @@ public class MongoRequest extends BsonRequest {
         this.cache = cache;
     }
 
+    /**
+     *
+     * @return true if the response content should be streamed
+     */
+    public boolean isStream() {
+        return stream;
+    }
+
+    /**
+     * @param stream true to stream the response content
+     */
+    public void setStream(boolean stream) {
+        this.stream = stream;
+    }
+
+    /**
+     * NDJSON request content is not injected, it is parsed line by line
+     * by the handler that streams it
+     *
+     * @return true if the Content-Type of the request is application/x-ndjson
+     */
+    public boolean isNdjsonContent() {
+        var contentTypes = getHeaders().get(Headers.CONTENT_TYPE);
+
+        return contentTypes != null && contentTypes.stream().anyMatch(ct -> ct.startsWith(Exchange.NDJSON_MEDIA_TYPE));
+    }
+
+    /**
+     * With Accept: application/x-ndjson or application/jsonl the response
+     * content is streamed one document per line, without envelope
+     *
+     * @return the ndjson or json lines media type if accepted by the client, null otherwise
+     */
+    public String getNdjsonAcceptedMediaType() {
+        var accept = getHeaders().get(Headers.ACCEPT);
+
+        if (accept == null) {
+            return null;
+        }
+
+        return accept.stream()
+            .flatMap(values -> Arrays.stream(values.split(",")))
+            .map(String::trim)
+            .map(mt -> mt.startsWith(Exchange.NDJSON_MEDIA_TYPE) ? Exchange.NDJSON_MEDIA_TYPE : mt.startsWith(Exchange.JSON_LINES_MEDIA_TYPE) ? Exchange.JSON_LINES_MEDIA_TYPE : null)
+            .filter(mt -> mt != null)
+            .findFirst()
+            .orElse(null);
+    }
+
     /**
      * @return the docIdType
      */
@@ -208,6 +208,16 @@ public class MongoRequestContentInjector {
 
         if (contentType == null) {
             content = null;
+        } else if (request.isNdjsonContent()) {
+            if (request.isCollection() && request.isPost()) {
+                // the documents are parsed and written in batches by the handler,
+                // while reading the request content
+                request.setContent(new BsonDocument());
+            } else {
+                response.setInError(HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE, "Content-Type " + Exchange.NDJSON_MEDIA_TYPE + " is only supported by POST requests to collections");
+            }
+
+            return;
         } else if (isFormOrMultipart(contentType)) {
             content = injectMultipart(exchange, request, response);
         } else if (isHalOrJson(contentType)) {
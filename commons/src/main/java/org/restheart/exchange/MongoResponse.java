@@ -27,12 +27,15 @@ import com.mongodb.client.model.ReplaceOptions;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.util.Headers;
 import org.bson.conversions.Bson;
+import org.bson.json.JsonMode;
 import org.bson.json.JsonParseException;
 import org.restheart.utils.HttpStatus;
 import org.restheart.mongodb.db.OperationResult;
 import org.restheart.utils.BsonUtils;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -61,6 +64,7 @@ public class MongoResponse extends BsonResponse {
     private final List<String> warnings = new ArrayList<>();
 
     private long count = -1;
+    private ExchangeKeys.COUNT_STRATEGY countStrategy = null;
 
     protected MongoResponse(HttpServerExchange exchange) {
         super(exchange);
@@ -76,26 +80,36 @@ public class MongoResponse extends BsonResponse {
 
     @Override
     public String readContent() {
-        var request = Request.of(wrapped);
-        BsonValue tosend;
+        var tosend = contentToSend();
 
-        if (!request.isGet() && (content == null || content.isDocument())) {
-            tosend = addWarnings(content == null ? null : content.asDocument());
+        if (tosend != null) {
+            return BsonUtils.toJson(tosend, jsonMode());
         } else {
-            tosend = content;
+            return null;
         }
+    }
+
+    @Override
+    public void writeContent(Writer writer) throws IOException {
+        var tosend = contentToSend();
 
         if (tosend != null) {
-            if (request instanceof MongoRequest) {
-                return BsonUtils.toJson(tosend, ((MongoRequest) request).getJsonMode());
-            } else {
-                return BsonUtils.toJson(tosend);
-            }
+            BsonUtils.toJson(tosend, jsonMode(), writer);
+        }
+    }
+
+    private BsonValue contentToSend() {
+        if (!Request.of(wrapped).isGet() && (content == null || content.isDocument())) {
+            return addWarnings(content == null ? null : content.asDocument());
         } else {
-            return null;
+            return content;
         }
     }
 
+    private JsonMode jsonMode() {
+        return Request.of(wrapped) instanceof MongoRequest mreq ? mreq.getJsonMode() : null;
+    }
+
     private BsonDocument addWarnings(BsonDocument content) {
         if (content != null) {
             if (warnings != null && !warnings.isEmpty() && content.isDocument()) {
@@ -183,6 +197,20 @@ public class MongoResponse extends BsonResponse {
         this.count = count;
     }
 
+    /**
+     * @return the strategy that produced the count, or null
+     */
+    public ExchangeKeys.COUNT_STRATEGY getCountStrategy() {
+        return countStrategy;
+    }
+
+    /**
+     * @param countStrategy the strategy that produced the count
+     */
+    public void setCountStrategy(ExchangeKeys.COUNT_STRATEGY countStrategy) {
+        this.countStrategy = countStrategy;
+    }
+
     /**
      *
      * @param href
@@ -61,6 +61,21 @@ public class Metrics {
         };
     }
 
+    /**
+     *
+     * @param exchange
+     * @return the key of the client in the FailedAuthTracker, i.e. its remote ip or X-Forwarded-For value
+     */
+    public static String failedAuthKey(HttpServerExchange exchange) {
+        return switch(collectFailedAuthBy) {
+            case REMOTE_IP -> ExchangeAttributes.remoteIp().readAttribute(exchange);
+            case X_FORWARDED_FOR -> {
+                var xff = ExchangeAttributes.requestHeader(_X_FORWARDED_FOR).readAttribute(exchange);
+                yield xff == null ? "not-set" : xffValue(xff, xffReverseIndex);
+            }
+        };
+    }
+
     /**
      *
      * handles the case where the X_Forwarded_For header
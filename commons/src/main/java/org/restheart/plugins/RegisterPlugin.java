@@ -121,6 +121,19 @@ public @interface RegisterPlugin {
      */
     boolean requiresContent() default false;
 
+    /**
+     * Only used by Interceptors with interceptPoint REQUEST_BEFORE_AUTH or
+     * REQUEST_AFTER_AUTH
+     *
+     * Set it to true if the Interceptor doesn't process the request content.
+     * Services that read the content as a stream, like POST /coll with
+     * Content-Type application/x-ndjson, reject the request when an
+     * Interceptor that is not content independent resolves for it.
+     *
+     * @return true if the Interceptor doesn't process the request content
+     */
+    boolean contentIndependent() default false;
+
     /**
      * Set to true to avoid interceptors to be executed on requests handled by this
      * plugin. Interceptor with interceptPoint=BEFORE_AUTH
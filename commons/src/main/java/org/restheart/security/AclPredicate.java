@@ -0,0 +1,132 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-commons
+ * %%
+ * Copyright (C) 2018 - 2024 SoftInstigate
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.security;
+
+import org.bson.BsonDocument;
+import org.restheart.cache.Cache;
+import org.restheart.cache.CacheFactory;
+import org.restheart.cache.LoadingCache;
+import org.restheart.configuration.ConfigurationException;
+import org.restheart.exchange.Request;
+import org.restheart.utils.BsonUtils;
+
+import io.undertow.predicate.Predicate;
+import io.undertow.predicate.PredicateParser;
+
+/**
+ * The predicate of an ACL permission, parsed once when the permission is loaded.
+ *
+ * Predicates without '@user.' variables are parsed at construction time.
+ * Predicates with '@user.' variables are interpolated and parsed once for each
+ * distinct set of values of the variables they reference, the result being cached;
+ * other account properties, e.g. the iat and exp claims of a JWT, do not affect the key.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class AclPredicate implements java.util.function.Predicate<Request<?>> {
+    private static final String USER_VARS_PREFIX = "@user.";
+
+    private static final long INTERPOLATED_CACHE_SIZE = 1_000;
+    private static final long INTERPOLATED_CACHE_TTL = 10 * 60 * 1_000;
+
+    private final String predicate;
+    private final ClassLoader classLoader;
+
+    // the parsed predicate, used when it does not depend on the account or the request has no account
+    private final Predicate parsed;
+
+    // the interpolated predicates by values of the referenced '@user.' variables, null if the predicate does not have them
+    private final LoadingCache<BsonDocument, Predicate> interpolated;
+
+    /**
+     *
+     * @param predicate the predicate
+     * @param classLoader the classloader to resolve the predicates, see java.util.ServiceLoader
+     * @throws ConfigurationException if the predicate is invalid
+     */
+    public AclPredicate(String predicate, ClassLoader classLoader) throws ConfigurationException {
+        this.predicate = predicate;
+        this.classLoader = classLoader;
+        this.parsed = parse(predicate);
+
+        if (predicate.contains(USER_VARS_PREFIX)) {
+            this.interpolated = CacheFactory.createLocalLoadingCache(INTERPOLATED_CACHE_SIZE, Cache.EXPIRE_POLICY.AFTER_READ, INTERPOLATED_CACHE_TTL,
+                vars -> parse(vars.isEmpty()
+                    ? AclVarsInterpolator.removeUnboundVariables(USER_VARS_PREFIX, predicate)
+                    : AclVarsInterpolator.interpolatePredicate(predicate, USER_VARS_PREFIX, vars)));
+        } else {
+            this.interpolated = null;
+        }
+    }
+
+    @Override
+    public boolean test(Request<?> request) {
+        return resolve(request).resolve(request.getExchange());
+    }
+
+    /**
+     *
+     * @param request
+     * @return the parsed predicate with the '@user.' variables interpolated
+     * with the properties of the account of the request
+     */
+    public Predicate resolve(Request<?> request) {
+        if (interpolated == null) {
+            return parsed;
+        }
+
+        var account = AclVarsInterpolator.getAccountDocument(request);
+
+        if (account == null || account.isEmpty()) {
+            return parsed;
+        } else {
+            return interpolated.getLoading(referencedVariables(account)).get();
+        }
+    }
+
+    /**
+     * @param account the account properties
+     * @return the account properties, flattened, that are referenced by the predicate
+     */
+    private BsonDocument referencedVariables(BsonDocument account) {
+        var ret = new BsonDocument();
+
+        BsonUtils.flatten(account, true).forEach((key, value) -> {
+            if (value != null && predicate.contains(USER_VARS_PREFIX.concat(key))) {
+                ret.put(key, value);
+            }
+        });
+
+        return ret;
+    }
+
+    private Predicate parse(String _predicate) throws ConfigurationException {
+        try {
+            return PredicateParser.parse(_predicate, classLoader);
+        } catch(Throwable t) {
+            throw new ConfigurationException("Wrong permission: invalid predicate " + predicate, t);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return predicate;
+    }
+}
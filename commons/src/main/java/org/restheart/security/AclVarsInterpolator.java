@@ -238,7 +238,7 @@ public class AclVarsInterpolator {
         }
     }
 
-    private static BsonDocument getAccountDocument(Request<?> request) {
+    static BsonDocument getAccountDocument(Request<?> request) {
         if (request.getAuthenticatedAccount() instanceof MongoRealmAccount maccount) {
             return maccount.properties();
         } else if (request.getAuthenticatedAccount() instanceof FileRealmAccount faccount) {
@@ -0,0 +1,261 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-commons
+ * %%
+ * Copyright (C) 2019 - 2024 SoftInstigate
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.security;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Tracks the failed authentication attempts of the clients in a sliding
+ * window of WINDOW_SECONDS seconds.
+ *
+ * Each client, identified by its ip or X-Forwarded-For value, has a compact
+ * ring of per-second counters, so that both recording a failed attempt and
+ * counting the attempts in the window are O(1). The clients are spread over
+ * STRIPES independently locked maps. Each map keeps at most maxClients / STRIPES
+ * clients: the least recently failed one is evicted first and clients
+ * without failed attempts in the window expire.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class FailedAuthTracker {
+    /**
+     * the size in seconds of the sliding window
+     */
+    public static final int WINDOW_SECONDS = 10;
+
+    /**
+     * the default max number of tracked clients
+     */
+    public static final int DEFAULT_MAX_CLIENTS = 100_000;
+
+    private static final int STRIPES = 16;
+
+    // longer keys are truncated, an ipv6 address is at most 45 chars
+    private static final int MAX_KEY_LENGTH = 64;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final LongSupplier clock;
+
+    private volatile int maxClientsPerStripe;
+
+    public static FailedAuthTracker getInstance() {
+        return FailedAuthTrackerSingletonHolder.INSTANCE;
+    }
+
+    private FailedAuthTracker() {
+        this(DEFAULT_MAX_CLIENTS, System::currentTimeMillis);
+    }
+
+    /**
+     * @param maxClients the max number of tracked clients
+     * @param clock returns the current time in milliseconds
+     */
+    FailedAuthTracker(int maxClients, LongSupplier clock) {
+        this.clock = clock;
+        setMaxClients(maxClients);
+
+        for (int i = 0; i < STRIPES; i++) {
+            this.stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Sets the max number of tracked clients; the stripes exceeding it are
+     * shrunk on the next failed attempt
+     *
+     * @param maxClients the max number of tracked clients
+     */
+    public void setMaxClients(int maxClients) {
+        if (maxClients < STRIPES) {
+            throw new IllegalArgumentException("maxClients must be at least " + STRIPES);
+        }
+
+        this.maxClientsPerStripe = maxClients / STRIPES;
+    }
+
+    /**
+     * records a failed authentication attempt
+     *
+     * @param key the key of the client, i.e. its ip or X-Forwarded-For value
+     */
+    public void failed(String key) {
+        var _key = key(key);
+        var now = now();
+        var stripe = stripe(_key);
+
+        synchronized (stripe) {
+            // remove and put moves the client to the tail of the stripe
+            var window = stripe.remove(_key);
+
+            if (window == null) {
+                window = new Window(now);
+            }
+
+            stripe.put(_key, window);
+
+            window.inc(now);
+            stripe.shrink(now, this.maxClientsPerStripe);
+        }
+    }
+
+    /**
+     * @param key the key of the client, i.e. its ip or X-Forwarded-For value
+     * @return the number of failed authentication attempts in the last WINDOW_SECONDS seconds
+     */
+    public int failedAttempts(String key) {
+        var _key = key(key);
+        var now = now();
+        var stripe = stripe(_key);
+
+        synchronized (stripe) {
+            var window = stripe.get(_key);
+
+            if (window == null) {
+                return 0;
+            }
+
+            var ret = window.count(now);
+
+            if (ret == 0) {
+                // expired
+                stripe.remove(_key);
+            }
+
+            return ret;
+        }
+    }
+
+    /**
+     * @return the number of tracked clients
+     */
+    public int size() {
+        int ret = 0;
+
+        for (var stripe: this.stripes) {
+            synchronized (stripe) {
+                ret += stripe.size();
+            }
+        }
+
+        return ret;
+    }
+
+    private long now() {
+        return this.clock.getAsLong() / 1000;
+    }
+
+    private static String key(String key) {
+        if (key == null) {
+            return "not-set";
+        } else {
+            return key.length() > MAX_KEY_LENGTH ? key.substring(0, MAX_KEY_LENGTH) : key;
+        }
+    }
+
+    private Stripe stripe(String key) {
+        // spreads the hash bits, as HashMap does
+        var h = key.hashCode();
+        return this.stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+    }
+
+    /**
+     * the clients of a stripe, in insertion order: failed() reinserts the
+     * client, so that the first one is the least recently failed, while
+     * failedAttempts() doesn't change the order
+     */
+    private static class Stripe extends LinkedHashMap<String, Window> {
+
+        /**
+         * removes the expired clients at the head and the least recently failed
+         * ones exceeding max
+         */
+        void shrink(long now, int max) {
+            var it = entrySet().iterator();
+
+            while (it.hasNext()) {
+                Map.Entry<String, Window> eldest = it.next();
+
+                if (size() > max || eldest.getValue().expired(now)) {
+                    it.remove();
+                } else {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * the ring of the per-second counters of a client
+     */
+    private static class Window {
+        private final int[] counts = new int[WINDOW_SECONDS];
+        // the second of the last failed attempt
+        private long last;
+
+        Window(long now) {
+            this.last = now;
+        }
+
+        void inc(long now) {
+            if (now - this.last >= WINDOW_SECONDS) {
+                Arrays.fill(this.counts, 0);
+            } else {
+                // zeroes the counters of the seconds between the last attempt and now
+                for (long s = this.last + 1; s <= now; s++) {
+                    this.counts[Math.floorMod(s, WINDOW_SECONDS)] = 0;
+                }
+            }
+
+            if (now > this.last) {
+                this.last = now;
+            }
+
+            this.counts[Math.floorMod(this.last, WINDOW_SECONDS)]++;
+        }
+
+        int count(long now) {
+            int ret = 0;
+
+            // the counters of the seconds in (now - WINDOW_SECONDS, last]
+            for (int i = 0; i < WINDOW_SECONDS; i++) {
+                var s = this.last - i;
+
+                if (s <= now - WINDOW_SECONDS) {
+                    break;
+                }
+
+                ret += this.counts[Math.floorMod(s, WINDOW_SECONDS)];
+            }
+
+            return ret;
+        }
+
+        boolean expired(long now) {
+            return now - this.last >= WINDOW_SECONDS;
+        }
+    }
+
+    private static class FailedAuthTrackerSingletonHolder {
+        private static final FailedAuthTracker INSTANCE = new FailedAuthTracker();
+    }
+}
@@ -23,6 +23,8 @@ package org.restheart.utils;
 import com.google.common.collect.Sets;
 import com.mongodb.MongoClientSettings;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -56,14 +58,17 @@ import org.bson.BsonString;
 import org.bson.BsonValue;
 import org.bson.Document;
 import org.bson.codecs.BsonArrayCodec;
+import org.bson.codecs.BsonDocumentCodec;
 import org.bson.codecs.BsonValueCodecProvider;
 import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
 import org.bson.codecs.DocumentCodec;
 import org.bson.codecs.configuration.CodecRegistries;
 import org.bson.codecs.configuration.CodecRegistry;
 import org.bson.json.JsonMode;
 import org.bson.json.JsonParseException;
 import org.bson.json.JsonReader;
+import org.bson.json.JsonWriter;
 import org.bson.json.JsonWriterSettings;
 import org.bson.json.StrictJsonWriter;
 import org.bson.types.Decimal128;
@@ -680,16 +685,7 @@ public class BsonUtils {
             return null;
         }
 
-        var settings = mode != null
-            ? JsonWriterSettings.builder()
-                .outputMode(mode)
-                .indent(false)
-                .build()
-            : JsonWriterSettings.builder()
-                .indent(false)
-                .dateTimeConverter((Long t, StrictJsonWriter writer) -> {
-                    writer.writeRaw("{\"$date\": " + t + " }");
-        }).build();
+        var settings = jsonWriterSettings(mode);
 
         if (bson.isDocument()) {
             return bson.asDocument().toJson(settings);
@@ -711,6 +707,77 @@ public class BsonUtils {
         }
     }
 
+    /**
+     * Writes the minified json representation of the bson value to the writer
+     * without building the intermediate String. Documents, including the
+     * documents of an array, are encoded straight into the writer.
+     *
+     * The writer is neither flushed nor closed.
+     *
+     * @param bson the bson value
+     * @param mode the JsonMode
+     * @param writer the writer
+     * @throws IOException
+     */
+    public static void toJson(BsonValue bson, JsonMode mode, Writer writer) throws IOException {
+        if (bson == null) {
+            return;
+        }
+
+        var settings = jsonWriterSettings(mode);
+
+        if (bson.isDocument()) {
+            encode(bson.asDocument(), settings, writer);
+        } else if (bson.isArray()) {
+            writer.write('[');
+
+            var first = true;
+
+            for (var element: bson.asArray()) {
+                if (!first) {
+                    writer.write(", ");
+                }
+
+                first = false;
+
+                if (element.isDocument()) {
+                    encode(element.asDocument(), settings, writer);
+                } else if (element.isArray()) {
+                    toJson(element, mode, writer);
+                } else {
+                    // toJson() of a scalar has a leading space
+                    writer.write(toJson(element, mode).strip());
+                }
+            }
+
+            writer.write(']');
+        } else {
+            writer.write(toJson(bson, mode));
+        }
+    }
+
+    private static final BsonDocumentCodec BSON_DOCUMENT_CODEC = new BsonDocumentCodec();
+    private static final EncoderContext ENCODER_CONTEXT = EncoderContext.builder().build();
+
+    private static void encode(BsonDocument doc, JsonWriterSettings settings, Writer writer) {
+        BSON_DOCUMENT_CODEC.encode(new JsonWriter(writer, settings), doc, ENCODER_CONTEXT);
+    }
+
+    private static final JsonWriterSettings DEFAULT_JSON_WRITER_SETTINGS = JsonWriterSettings.builder()
+        .indent(false)
+        .dateTimeConverter((Long t, StrictJsonWriter writer) -> {
+            writer.writeRaw("{\"$date\": " + t + " }");
+        }).build();
+
+    private static JsonWriterSettings jsonWriterSettings(JsonMode mode) {
+        return mode != null
+            ? JsonWriterSettings.builder()
+                .outputMode(mode)
+                .indent(false)
+                .build()
+            : DEFAULT_JSON_WRITER_SETTINGS;
+    }
+
     /**
      *
      * @param id
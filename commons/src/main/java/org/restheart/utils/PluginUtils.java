@@ -20,6 +20,7 @@
 package org.restheart.utils;
 
 import io.undertow.server.HttpServerExchange;
+import io.undertow.util.AttachmentKey;
 
 import java.lang.reflect.Type;
 import java.util.Map;
@@ -111,6 +112,21 @@ public class PluginUtils {
         }
     }
 
+    /**
+     *
+     * @param interceptor
+     * @return true if the interceptor declares that it doesn't process the request content
+     */
+    public static boolean contentIndependent(Interceptor<? extends Request<?>, ? extends Response<?>> interceptor) {
+        var a = interceptor.getClass().getDeclaredAnnotation(RegisterPlugin.class);
+
+        if (a == null) {
+            return false;
+        } else {
+            return a.contentIndependent();
+        }
+    }
+
     /**
      *
      * @param plugin
@@ -286,7 +302,15 @@ public class PluginUtils {
      * @return the plugin record of the service handling the exchange or null if the request is not
      *         handled by a service
      */
+    @SuppressWarnings("unchecked")
     public static PluginRecord<Service<?, ?>> handlingServicePluginRecord(PluginsRegistry registry, HttpServerExchange exchange) {
+        // set by PipelineInfoInjector when the service pipeline is plugged
+        var attached = exchange.getAttachment(HANDLING_SERVICE_KEY);
+
+        if (attached != null) {
+            return (PluginRecord<Service<?, ?>>) attached;
+        }
+
         var pi = Request.getPipelineInfo(exchange);
 
         if (pi != null && pi.getType() == SERVICE) {
@@ -304,6 +328,17 @@ public class PluginUtils {
         return null;
     }
 
+    /**
+     * binds the service handling the exchange, so that handlingService() and
+     * handlingServicePluginRecord() don't need to look it up in the registry
+     *
+     * @param exchange the exchange
+     * @param service the plugin record of the service handling the exchange
+     */
+    public static void setHandlingServicePluginRecord(HttpServerExchange exchange, PluginRecord<Service<?, ?>> service) {
+        exchange.putAttachment(HANDLING_SERVICE_KEY, service);
+    }
+
     /**
      *
      * @param registry
@@ -317,6 +352,9 @@ public class PluginUtils {
         return hs == null ? new InterceptPoint[0] : dontIntercept(hs);
     }
 
+    @SuppressWarnings("rawtypes")
+    private static final AttachmentKey<PluginRecord> HANDLING_SERVICE_KEY = AttachmentKey.create(PluginRecord.class);
+
     @SuppressWarnings("rawtypes")
     private static LoadingCache<ExchangeTypeResolver, Type> RC = CacheFactory.createHashMapLoadingCache(plugin -> plugin.requestType());
 
@@ -0,0 +1,87 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-commons
+ * %%
+ * Copyright (C) 2019 - 2024 SoftInstigate
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.cache.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.restheart.cache.Cache;
+
+public class CaffeineLoadingCacheTest {
+
+    @Test
+    public void testGetAllLoadingWithoutBulkLoader() {
+        var loads = new AtomicInteger(0);
+        var instance = new CaffeineLoadingCache<String, Integer>(100, Cache.EXPIRE_POLICY.NEVER, 0, key -> {
+            loads.incrementAndGet();
+            return "C".equals(key) ? null : key.length();
+        });
+
+        var result = instance.getAllLoading(List.of("A", "BB", "C"));
+
+        assertEquals(3, loads.get());
+        assertEquals(Integer.valueOf(1), result.get("A").get());
+        assertEquals(Integer.valueOf(2), result.get("BB").get());
+        assertFalse(result.get("C").isPresent());
+    }
+
+    @Test
+    public void testGetAllLoadingWithBulkLoader() {
+        var loads = new AtomicInteger(0);
+        var bulkLoads = new AtomicInteger(0);
+
+        var instance = new CaffeineLoadingCache<String, Integer>(100, Cache.EXPIRE_POLICY.NEVER, 0,
+            key -> {
+                loads.incrementAndGet();
+                return key.length();
+            },
+            (Set<? extends String> keys) -> {
+                bulkLoads.incrementAndGet();
+                Map<String, Integer> ret = new HashMap<>();
+                keys.stream().filter(key -> !"C".equals(key)).forEach(key -> ret.put(key, key.length()));
+                return ret;
+            });
+
+        instance.put("DDD", 3);
+
+        var result = instance.getAllLoading(List.of("A", "BB", "C", "DDD"));
+
+        assertEquals(0, loads.get());
+        assertEquals(1, bulkLoads.get());
+        assertEquals(4, result.size());
+        assertEquals(Integer.valueOf(1), result.get("A").get());
+        assertEquals(Integer.valueOf(2), result.get("BB").get());
+        assertFalse(result.get("C").isPresent());
+        assertEquals(Integer.valueOf(3), result.get("DDD").get());
+
+        // loaded values are cached
+        instance.getAllLoading(List.of("A", "BB", "C"));
+        assertEquals(1, bulkLoads.get());
+        assertTrue(instance.get("A").isPresent());
+    }
+}
@@ -21,6 +21,7 @@
 package org.restheart.exchange;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -33,6 +34,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.undertow.server.HttpServerExchange;
+import io.undertow.util.HeaderMap;
+import io.undertow.util.Headers;
 import io.undertow.util.HttpString;
 
 /**
@@ -231,4 +234,28 @@ public class BsonRequestTest {
         request = MongoRequest.init(ex, whereUri, whatUri);
         assertEquals( request.getUnmappedRequestUri(), "/db/coll/x");
     }
+
+    /**
+     *
+     */
+    @Test
+    public void testGetNdjsonAcceptedMediaType() {
+        HttpServerExchange ex = mock(HttpServerExchange.class);
+        var headers = new HeaderMap();
+        when(ex.getRequestPath()).thenReturn("/");
+        when(ex.getRequestMethod()).thenReturn(HttpString.EMPTY);
+        when(ex.getRequestHeaders()).thenReturn(headers);
+
+        var request = MongoRequest.init(ex, "/", "/db/coll");
+        assertNull(request.getNdjsonAcceptedMediaType());
+
+        headers.put(Headers.ACCEPT, Exchange.JSON_MEDIA_TYPE);
+        assertNull(request.getNdjsonAcceptedMediaType());
+
+        headers.put(Headers.ACCEPT, "application/json, application/x-ndjson;q=0.9");
+        assertEquals(Exchange.NDJSON_MEDIA_TYPE, request.getNdjsonAcceptedMediaType());
+
+        headers.put(Headers.ACCEPT, Exchange.JSON_LINES_MEDIA_TYPE);
+        assertEquals(Exchange.JSON_LINES_MEDIA_TYPE, request.getNdjsonAcceptedMediaType());
+    }
 }
@@ -0,0 +1,84 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-commons
+ * %%
+ * Copyright (C) 2019 - 2024 SoftInstigate
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.security;
+
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Set;
+
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.Test;
+import org.restheart.configuration.ConfigurationException;
+import org.restheart.exchange.Request;
+
+/**
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class AclPredicateTest {
+    private static Request<?> request(BsonDocument properties) {
+        var request = mock(Request.class);
+        var account = properties == null ? null : new MongoRealmAccount("user", "secret".toCharArray(), Set.of("user"), properties);
+        when(request.getAuthenticatedAccount()).thenReturn(account);
+        return request;
+    }
+
+    @Test
+    public void testPredicateWithoutVariablesIsParsedOnce() {
+        var predicate = new AclPredicate("path-prefix('/coll') and method(GET)", AclPredicateTest.class.getClassLoader());
+
+        var alice = request(BsonDocument.parse("{ 'tenant': 'alice' }"));
+        var bob = request(BsonDocument.parse("{ 'tenant': 'bob' }"));
+
+        assertSame(predicate.resolve(alice), predicate.resolve(bob));
+        assertSame(predicate.resolve(alice), predicate.resolve(request(null)));
+    }
+
+    @Test
+    public void testPredicateWithVariablesIsParsedOncePerAccount() {
+        var predicate = new AclPredicate("path-prefix('/@user.tenant')", AclPredicateTest.class.getClassLoader());
+
+        var alice = request(BsonDocument.parse("{ 'tenant': 'alice' }"));
+        var aliceAgain = request(BsonDocument.parse("{ 'tenant': 'alice' }"));
+        var bob = request(BsonDocument.parse("{ 'tenant': 'bob' }"));
+
+        assertSame(predicate.resolve(alice), predicate.resolve(aliceAgain));
+        assertNotSame(predicate.resolve(alice), predicate.resolve(bob));
+    }
+
+    @Test
+    public void testPredicateWithVariablesIgnoresUnreferencedProperties() {
+        var predicate = new AclPredicate("path-prefix('/@user.tenant')", AclPredicateTest.class.getClassLoader());
+
+        var alice = request(BsonDocument.parse("{ 'tenant': 'alice', 'iat': 1, 'exp': 2 }"));
+        var aliceLater = request(BsonDocument.parse("{ 'tenant': 'alice', 'iat': 3, 'exp': 4 }"));
+
+        assertSame(predicate.resolve(alice), predicate.resolve(aliceLater));
+    }
+
+    @Test
+    public void testInvalidPredicate() {
+        assertThrows(ConfigurationException.class, () -> new AclPredicate("path-prefix(", AclPredicateTest.class.getClassLoader()));
+    }
+}
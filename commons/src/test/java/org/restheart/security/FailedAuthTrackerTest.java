@@ -0,0 +1,117 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-commons
+ * %%
+ * Copyright (C) 2019 - 2024 SoftInstigate
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class FailedAuthTrackerTest {
+    @Test
+    public void testSlidingWindow() {
+        var now = new long[] { 1_000_000 };
+        var tracker = new FailedAuthTracker(32, () -> now[0]);
+
+        for (int i = 0; i < 6; i++) {
+            tracker.failed("1.2.3.4");
+        }
+
+        assertEquals(6, tracker.failedAttempts("1.2.3.4"));
+        assertEquals(0, tracker.failedAttempts("5.6.7.8"));
+
+        now[0] += 5_000;
+        tracker.failed("1.2.3.4");
+        assertEquals(7, tracker.failedAttempts("1.2.3.4"));
+
+        // the first 6 attempts are out of the window
+        now[0] += 5_000;
+        assertEquals(1, tracker.failedAttempts("1.2.3.4"));
+
+        // expired
+        now[0] += 5_000;
+        assertEquals(0, tracker.failedAttempts("1.2.3.4"));
+        assertEquals(0, tracker.size());
+    }
+
+    @Test
+    public void testBounded() {
+        var now = new long[] { 1_000_000 };
+        var tracker = new FailedAuthTracker(32, () -> now[0]);
+
+        for (int i = 0; i < 10_000; i++) {
+            tracker.failed("10.0." + (i / 256) + "." + (i % 256));
+        }
+
+        assertTrue(tracker.size() <= 32);
+
+        tracker.failed("1.2.3.4");
+        tracker.failed("1.2.3.4");
+        assertEquals(2, tracker.failedAttempts("1.2.3.4"));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyFailed() {
+        var now = new long[] { 1_000_000 };
+        // 2 clients per stripe
+        var tracker = new FailedAuthTracker(32, () -> now[0]);
+
+        // three clients of the same stripe
+        var a = "10.0.0.1";
+        var b = sameStripe(a, 0);
+        var c = sameStripe(a, Integer.parseInt(b.substring(b.lastIndexOf('.') + 1)) + 1);
+
+        tracker.failed(a);
+        tracker.failed(b);
+
+        // checking a must not protect it from eviction
+        assertEquals(1, tracker.failedAttempts(a));
+
+        tracker.failed(c);
+        assertEquals(0, tracker.failedAttempts(a));
+        assertEquals(1, tracker.failedAttempts(b));
+        assertEquals(1, tracker.failedAttempts(c));
+
+        // a failed attempt makes b the most recently failed, c is evicted
+        tracker.failed(b);
+        tracker.failed(a);
+        assertEquals(2, tracker.failedAttempts(b));
+        assertEquals(0, tracker.failedAttempts(c));
+        assertEquals(1, tracker.failedAttempts(a));
+    }
+
+    /**
+     * @return a key of the same stripe of key, i.e. that evicts it from a
+     * tracker with 1 client per stripe
+     */
+    private static String sameStripe(String key, int from) {
+        for (int i = from; ; i++) {
+            var candidate = "10.1.0." + i;
+            var probe = new FailedAuthTracker(16, () -> 0);
+
+            probe.failed(key);
+            probe.failed(candidate);
+
+            if (probe.size() == 1) {
+                return candidate;
+            }
+        }
+    }
+}
@@ -21,6 +21,7 @@
 package org.restheart.utils;
 
 import java.io.IOException;
+import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -36,6 +37,7 @@ import org.bson.BsonInt32;
 import org.bson.BsonNull;
 import org.bson.BsonString;
 import org.bson.BsonValue;
+import org.bson.json.JsonMode;
 import org.bson.types.ObjectId;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
@@ -650,6 +652,28 @@ public class BsonUtilsTest {
         assertEquals(array, actual);
     }
 
+    /**
+     *
+     */
+    @Test
+    public void testToJsonWriter() throws IOException {
+        var values = List.of(
+            BsonUtils.parse("{'a': 1, 'b': {'$date': 1000}, 'c': ['x', {'d': true}]}"),
+            BsonUtils.parse("[{'a': 1}, 'b', 2, [3], {'$oid': '5d0b3e5f3b2f7e0001a6a2b1'}]"),
+            BsonUtils.parse("[]"),
+            new BsonString("s"),
+            new BsonInt32(1));
+
+        for (var value: values) {
+            for (var mode: Arrays.asList(null, JsonMode.RELAXED, JsonMode.EXTENDED)) {
+                var writer = new StringWriter();
+                BsonUtils.toJson(value, mode, writer);
+
+                assertEquals(BsonUtils.toJson(value, mode), writer.toString());
+            }
+        }
+    }
+
     /**
      *
      */
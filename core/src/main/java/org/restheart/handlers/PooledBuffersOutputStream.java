@@ -0,0 +1,113 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-core
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.handlers;
+
+import io.undertow.connector.ByteBufferPool;
+import io.undertow.connector.PooledByteBuffer;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * OutputStream that writes into PooledByteBuffers allocated from the
+ * connection's buffer pool as they fill up.
+ *
+ * Used by ResponseSender to serialize the response content without copying
+ * it into a String or a byte array.
+ * close() must be invoked, once the buffers have been sent, to return them
+ * to the pool.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+class PooledBuffersOutputStream extends OutputStream {
+    private final ByteBufferPool pool;
+    private final List<PooledByteBuffer> pooled = new ArrayList<>();
+    private ByteBuffer current = null;
+    private long size = 0;
+
+    PooledBuffersOutputStream(ByteBufferPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public void write(int b) {
+        if (current == null || !current.hasRemaining()) {
+            allocate();
+        }
+
+        current.put((byte) b);
+        size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        while (len > 0) {
+            if (current == null || !current.hasRemaining()) {
+                allocate();
+            }
+
+            var n = Math.min(len, current.remaining());
+            current.put(b, off, n);
+            off += n;
+            len -= n;
+            size += n;
+        }
+    }
+
+    private void allocate() {
+        var buffer = pool.allocate();
+        pooled.add(buffer);
+        current = buffer.getBuffer();
+        current.clear();
+    }
+
+    /**
+     * @return the written buffers, flipped for reading
+     */
+    ByteBuffer[] buffers() {
+        var ret = new ByteBuffer[pooled.size()];
+
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = pooled.get(i).getBuffer().duplicate().flip();
+        }
+
+        return ret;
+    }
+
+    /**
+     * @return the number of written bytes
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * returns the buffers to the pool
+     */
+    @Override
+    public void close() {
+        pooled.forEach(PooledByteBuffer::close);
+        pooled.clear();
+        current = null;
+        size = 0;
+    }
+}
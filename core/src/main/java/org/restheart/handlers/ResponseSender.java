@@ -20,13 +20,22 @@
  */
 package org.restheart.handlers;
 
+import io.undertow.io.IoCallback;
+import io.undertow.io.Sender;
 import io.undertow.server.HttpServerExchange;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.restheart.exchange.BsonResponse;
 import org.restheart.exchange.ByteArrayProxyResponse;
+import org.restheart.exchange.MongoResponse;
 import org.restheart.exchange.PipelineInfo;
+import org.restheart.exchange.Request;
 import org.restheart.exchange.ServiceResponse;
 import org.restheart.plugins.PluginsRegistry;
 import org.restheart.plugins.PluginsRegistryImpl;
+import org.restheart.utils.PluginUtils;
 
 /**
  *
@@ -35,6 +44,9 @@ import org.restheart.plugins.PluginsRegistryImpl;
  * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
  */
 public class ResponseSender extends PipelinedHandler {
+    // the size of the json above which it is sent while serializing, from worker threads
+    static final long STREAMING_THRESHOLD = 1024 * 1024;
+
     private final PluginsRegistry pluginsRegistry = PluginsRegistryImpl.getInstance();
 
     /**
@@ -59,17 +71,19 @@ public class ResponseSender extends PipelinedHandler {
     @Override
     @SuppressWarnings("rawtypes")
     public void handleRequest(HttpServerExchange exchange) throws Exception {
-        var path = exchange.getRequestPath();
+        // injected by PipelineInfoInjector
+        var pi = Request.getPipelineInfo(exchange);
 
-        var pi = pluginsRegistry.getPipelineInfo(path);
+        if (pi == null) {
+            pi = pluginsRegistry.getPipelineInfo(exchange.getRequestPath());
+            Request.setPipelineInfo(exchange, pi);
+        }
 
         if (pi.getType() == PipelineInfo.PIPELINE_TYPE.SERVICE) {
-            var srv = pluginsRegistry.getServices().stream()
-                .filter(s -> s.getName().equals(pi.getName()))
-                .findAny();
+            var srv = PluginUtils.handlingServicePluginRecord(pluginsRegistry, exchange);
 
-            if (srv.isPresent()) {
-                var response = (ServiceResponse) srv.get().getInstance().response().apply(exchange);
+            if (srv != null) {
+                var response = (ServiceResponse) srv.getInstance().response().apply(exchange);
 
                 if (response.getStatusCode() > 0) {
                     exchange.setStatusCode(response.getStatusCode());
@@ -79,6 +93,9 @@ public class ResponseSender extends PipelinedHandler {
                 if (response.getCustomerSender() != null) {
                     // use the custom sender if it has been set
                     response.getCustomerSender().run();
+                } else if (response instanceof BsonResponse bresp && bresp.isContentWritable()) {
+                    // encode the json straight into the response buffers
+                    sendJson(exchange, bresp);
                 } else {
                     var content = response.readContent();
                     if (content != null) {
@@ -103,4 +120,68 @@ public class ResponseSender extends PipelinedHandler {
 
         next(exchange);
     }
+
+    /**
+     * Sends the content of a BsonResponse without building its String
+     * representation.
+     *
+     * The json is written into pooled buffers that are sent, with the
+     * Content-Length header, when the serialization completes; so if it
+     * fails the error response can still be sent.
+     *
+     * From a worker thread, once the json exceeds STREAMING_THRESHOLD bytes,
+     * it is written to the exchange output stream whose buffers are sent,
+     * with chunked transfer encoding, as they fill up, so that large
+     * responses start flowing before the serialization ends.
+     *
+     * @param exchange
+     * @param response
+     * @throws IOException
+     */
+    private void sendJson(HttpServerExchange exchange, BsonResponse response) throws IOException {
+        if (response.getContent() == null && !(response instanceof MongoResponse)) {
+            return;
+        }
+
+        var out = new PooledBuffersOutputStream(exchange.getConnection().getByteBufferPool());
+        var spilling = exchange.isInIoThread() ? null : new SpillingOutputStream(exchange, out, STREAMING_THRESHOLD);
+
+        try {
+            var writer = new OutputStreamWriter(spilling != null ? spilling : out, StandardCharsets.UTF_8);
+            response.writeContent(writer);
+            writer.flush();
+        } catch (Throwable t) {
+            out.close();
+            throw t;
+        }
+
+        if (spilling != null && spilling.isSpilled()) {
+            // closing the output stream ends the exchange
+            spilling.close();
+            return;
+        }
+
+        var buffers = out.buffers();
+
+        if (buffers.length == 0) {
+            out.close();
+            return;
+        }
+
+        exchange.setResponseContentLength(out.size());
+
+        exchange.getResponseSender().send(buffers, new IoCallback() {
+            @Override
+            public void onComplete(HttpServerExchange exchange, Sender sender) {
+                out.close();
+                IoCallback.END_EXCHANGE.onComplete(exchange, sender);
+            }
+
+            @Override
+            public void onException(HttpServerExchange exchange, Sender sender, IOException exception) {
+                out.close();
+                IoCallback.END_EXCHANGE.onException(exchange, sender, exception);
+            }
+        });
+    }
 }
@@ -0,0 +1,117 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-core
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.handlers;
+
+import io.undertow.server.HttpServerExchange;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * OutputStream that writes into a PooledBuffersOutputStream until the
+ * written bytes exceed a threshold; then it writes the buffered bytes and
+ * all the following ones to the blocking output stream of the exchange.
+ *
+ * Used by ResponseSender on worker threads, so that only large responses
+ * are sent with chunked transfer encoding while the serialization is in
+ * progress. Must be used from a thread that can block.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+class SpillingOutputStream extends OutputStream {
+    private final HttpServerExchange exchange;
+    private final PooledBuffersOutputStream buffered;
+    private final long threshold;
+    private OutputStream spilled = null;
+
+    SpillingOutputStream(HttpServerExchange exchange, PooledBuffersOutputStream buffered, long threshold) {
+        this.exchange = exchange;
+        this.buffered = buffered;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (spilled != null) {
+            spilled.write(b);
+        } else {
+            buffered.write(b);
+            spillIfNeeded();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (spilled != null) {
+            spilled.write(b, off, len);
+        } else {
+            buffered.write(b, off, len);
+            spillIfNeeded();
+        }
+    }
+
+    private void spillIfNeeded() throws IOException {
+        if (buffered.size() <= threshold) {
+            return;
+        }
+
+        if (!exchange.isBlocking()) {
+            exchange.startBlocking();
+        }
+
+        spilled = exchange.getOutputStream();
+
+        var chunk = new byte[8 * 1024];
+
+        for (var buffer: buffered.buffers()) {
+            while (buffer.hasRemaining()) {
+                var n = Math.min(chunk.length, buffer.remaining());
+                buffer.get(chunk, 0, n);
+                spilled.write(chunk, 0, n);
+            }
+        }
+
+        buffered.close();
+    }
+
+    /**
+     * @return true if the content has been written to the exchange output stream
+     */
+    boolean isSpilled() {
+        return spilled != null;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (spilled != null) {
+            spilled.flush();
+        }
+    }
+
+    /**
+     * closes the exchange output stream, ending the exchange, if spilled
+     */
+    @Override
+    public void close() throws IOException {
+        if (spilled != null) {
+            spilled.close();
+        }
+    }
+}
@@ -21,10 +21,16 @@
 package org.restheart.handlers.injectors;
 
 import io.undertow.server.HttpServerExchange;
+import io.undertow.util.AttachmentKey;
+import org.restheart.exchange.PipelineInfo;
 import org.restheart.exchange.Request;
 import org.restheart.handlers.PipelinedHandler;
+import org.restheart.plugins.InterceptPoint;
+import org.restheart.plugins.PluginRecord;
 import org.restheart.plugins.PluginsRegistry;
 import org.restheart.plugins.PluginsRegistryImpl;
+import org.restheart.plugins.Service;
+import org.restheart.utils.PluginUtils;
 
 /**
  *
@@ -37,6 +43,17 @@ import org.restheart.plugins.PluginsRegistryImpl;
 public class PipelineInfoInjector extends PipelinedHandler {
     private final PluginsRegistry pluginsRegistry = PluginsRegistryImpl.getInstance();
 
+    private static final AttachmentKey<Boolean> CONTENT_REQUIRED_BEFORE_AUTH_KEY = AttachmentKey.create(Boolean.class);
+    private static final AttachmentKey<Boolean> CONTENT_REQUIRED_AFTER_AUTH_KEY = AttachmentKey.create(Boolean.class);
+
+    // the PipelineInfo and the service of the pipeline, when known at plug time
+    private final PipelineInfo pipelineInfo;
+    private final PluginRecord<Service<?, ?>> service;
+
+    // true if an interceptor of the service requires the content, at plug time
+    private final boolean contentRequiredBeforeAuth;
+    private final boolean contentRequiredAfterAuth;
+
     /**
      * Creates a new instance of PipelineInfoInjector
      *
@@ -44,6 +61,10 @@ public class PipelineInfoInjector extends PipelinedHandler {
      */
     public PipelineInfoInjector(PipelinedHandler next) {
         super(next);
+        this.pipelineInfo = null;
+        this.service = null;
+        this.contentRequiredBeforeAuth = true;
+        this.contentRequiredAfterAuth = true;
     }
 
     /**
@@ -51,7 +72,29 @@ public class PipelineInfoInjector extends PipelinedHandler {
      *
      */
     public PipelineInfoInjector() {
-        this(null);
+        this((PipelinedHandler) null);
+    }
+
+    /**
+     * Creates a new instance of PipelineInfoInjector for a service pipeline.
+     * Since the PipelineInfo and the service are known when the pipeline is
+     * plugged, they are not looked up in the registry on every request.
+     * Neither are the request interceptors that require the content, for
+     * RequestContentInjector.
+     *
+     * @param pipelineInfo the PipelineInfo of the pipeline
+     * @param service the service handling the requests
+     */
+    public PipelineInfoInjector(PipelineInfo pipelineInfo, PluginRecord<Service<?, ?>> service) {
+        super(null);
+        this.pipelineInfo = pipelineInfo;
+        this.service = service;
+        this.contentRequiredBeforeAuth = requiresContent(service, InterceptPoint.REQUEST_BEFORE_AUTH);
+        this.contentRequiredAfterAuth = requiresContent(service, InterceptPoint.REQUEST_AFTER_AUTH);
+    }
+
+    private boolean requiresContent(PluginRecord<Service<?, ?>> service, InterceptPoint interceptPoint) {
+        return pluginsRegistry.getServiceInterceptors(service.getInstance(), interceptPoint).stream().anyMatch(PluginUtils::requiresContent);
     }
 
     /**
@@ -61,8 +104,29 @@ public class PipelineInfoInjector extends PipelinedHandler {
      */
     @Override
     public void handleRequest(HttpServerExchange exchange) throws Exception {
-        Request.setPipelineInfo(exchange, pluginsRegistry.getPipelineInfo(exchange.getRequestPath()));
+        if (this.pipelineInfo != null) {
+            Request.setPipelineInfo(exchange, this.pipelineInfo);
+            PluginUtils.setHandlingServicePluginRecord(exchange, this.service);
+            exchange.putAttachment(CONTENT_REQUIRED_BEFORE_AUTH_KEY, this.contentRequiredBeforeAuth);
+            exchange.putAttachment(CONTENT_REQUIRED_AFTER_AUTH_KEY, this.contentRequiredAfterAuth);
+        } else {
+            Request.setPipelineInfo(exchange, pluginsRegistry.getPipelineInfo(exchange.getRequestPath()));
+        }
 
         next(exchange);
     }
+
+    /**
+     * @param exchange
+     * @param interceptPoint REQUEST_BEFORE_AUTH or REQUEST_AFTER_AUTH
+     * @return false if no interceptor of the service pipeline handling the
+     *         request requires the content at interceptPoint, true otherwise
+     */
+    public static boolean mayRequireContent(HttpServerExchange exchange, InterceptPoint interceptPoint) {
+        var required = exchange.getAttachment(interceptPoint == InterceptPoint.REQUEST_BEFORE_AUTH
+            ? CONTENT_REQUIRED_BEFORE_AUTH_KEY
+            : CONTENT_REQUIRED_AFTER_AUTH_KEY);
+
+        return required == null || required;
+    }
 }
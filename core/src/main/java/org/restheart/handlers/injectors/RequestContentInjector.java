@@ -43,8 +43,6 @@ import org.restheart.plugins.PluginsRegistryImpl;
 import org.restheart.utils.PluginUtils;
 import static org.restheart.utils.PluginUtils.requiresContent;
 
-import java.util.List;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -131,35 +129,48 @@ public class RequestContentInjector extends PipelinedHandler {
 
     @SuppressWarnings({"rawtypes","unchecked"})
     private boolean isContentRequired(HttpServerExchange exchange, InterceptPoint interceptPoint) {
-        Request<?> request;
-        Response<?> response;
+        // precomputed when the service pipeline was plugged
+        if (!PipelineInfoInjector.mayRequireContent(exchange, interceptPoint)) {
+            return false;
+        }
 
         var handlingService = PluginUtils.handlingService(pluginsRegistry, exchange);
 
-        List<Interceptor<?, ?>> interceptors;
+        var interceptors = handlingService != null
+            ? this.pluginsRegistry.getServiceInterceptors(handlingService, interceptPoint)
+            : this.pluginsRegistry.getProxyInterceptors(interceptPoint);
 
-        if (handlingService != null) {
-            request = ServiceRequest.of(exchange, ServiceRequest.class);
-            response = ServiceResponse.of(exchange, ServiceResponse.class);
-            interceptors = this.pluginsRegistry.getServiceInterceptors(handlingService, interceptPoint);
-        } else {
-            request = ByteArrayProxyRequest.of(exchange);
-            response = ByteArrayProxyResponse.of(exchange);
-            interceptors = this.pluginsRegistry.getProxyInterceptors(interceptPoint);
-        }
+        // request and response are only instantiated if an interceptor requires content
+        Request<?> request = null;
+        Response<?> response = null;
+
+        for (var i: interceptors) {
+            if (!requiresContent((Interceptor<?, ?>) i)) {
+                continue;
+            }
+
+            var ri = (Interceptor) i;
 
-        return interceptors.stream()
-            .filter(ri -> ri instanceof Interceptor)
-            .map(ri -> (Interceptor) ri)
-            .filter(ri -> {
-                try {
-                    return ri.resolve(request, response);
-                } catch (Exception e) {
-                    LOGGER.warn("Error resolving interceptor {} for {} on intercept point {} to check if the content is required; assuming requiresContent=false", ri.getClass().getSimpleName(), exchange.getRequestPath(), interceptPoint, e);
-                    return false;
+            if (request == null) {
+                if (handlingService != null) {
+                    request = ServiceRequest.of(exchange, ServiceRequest.class);
+                    response = ServiceResponse.of(exchange, ServiceResponse.class);
+                } else {
+                    request = ByteArrayProxyRequest.of(exchange);
+                    response = ByteArrayProxyResponse.of(exchange);
                 }
-            })
-            .anyMatch(ri -> requiresContent(ri));
+            }
+
+            try {
+                if (ri.resolve(request, response)) {
+                    return true;
+                }
+            } catch (Exception e) {
+                LOGGER.warn("Error resolving interceptor {} for {} on intercept point {} to check if the content is required; assuming requiresContent=false", ri.getClass().getSimpleName(), exchange.getRequestPath(), interceptPoint, e);
+            }
+        }
+
+        return false;
     }
 
     private void markInjected(HttpServerExchange exchange) {
@@ -100,6 +100,8 @@ public class PluginsRegistryImpl implements PluginsRegistry {
     private Set<PluginRecord<Provider<?>>> providers;
 
     private final Set<PluginRecord<Service<?, ?>>> services = new LinkedHashSet<>();
+    // unmodifiable view of services, avoids wrapping it on every getServices() call
+    private final Set<PluginRecord<Service<?, ?>>> servicesView = Collections.unmodifiableSet(services);
     // keep track of service initialization, to allow initializers to add services
     // before actual scannit. this is used for intance by PolyglotDeployer
     private boolean servicesInitialized = false;
@@ -107,6 +109,7 @@ public class PluginsRegistryImpl implements PluginsRegistry {
     private Set<PluginRecord<Initializer>> initializers;
 
     private Set<PluginRecord<Interceptor<?, ?>>> interceptors;
+    private Set<PluginRecord<Interceptor<?, ?>>> interceptorsView;
 
     private final Set<Predicate> globalSecurityPredicates = new LinkedHashSet<>();
 
@@ -234,12 +237,13 @@ public class PluginsRegistryImpl implements PluginsRegistry {
      */
     @Override
     public Set<PluginRecord<Interceptor<?, ?>>> getInterceptors() {
-        if (this.interceptors == null) {
+        if (this.interceptorsView == null) {
             this.interceptors = new LinkedHashSet<>();
             this.interceptors.addAll(PluginsFactory.getInstance().interceptors());
+            this.interceptorsView = Collections.unmodifiableSet(this.interceptors);
         }
 
-        return Collections.unmodifiableSet(this.interceptors);
+        return this.interceptorsView;
     }
 
      /**
@@ -351,7 +355,7 @@ public class PluginsRegistryImpl implements PluginsRegistry {
             this.servicesInitialized = true;
         }
 
-        return Collections.unmodifiableSet(this.services);
+        return this.servicesView;
     }
 
     /**
@@ -418,12 +422,14 @@ public class PluginsRegistryImpl implements PluginsRegistry {
 
         var blockingSrv = PluginUtils.blocking(srv.getInstance());
 
+        var pipelineInfo = new PipelineInfo(SERVICE, uri, mp, srv.getName());
+
         var _srv = pipe(
             // if service is blocking (i.e. @RegisterPlugin(blocking=true))
             // add WorkingThreadsPoolDispatcher to the pipe
             blockingSrv ? new WorkingThreadsPoolDispatcher() : null,
             new ErrorHandler(),
-            new PipelineInfoInjector(),
+            new PipelineInfoInjector(pipelineInfo, srv),
             new TracingInstrumentationHandler(),
             new RequestLogger(),
             new BeforeExchangeInitInterceptorsExecutor(),
@@ -440,7 +446,7 @@ public class PluginsRegistryImpl implements PluginsRegistry {
             new ResponseSender()
         );
 
-        plugPipeline(uri, _srv, new PipelineInfo(SERVICE, uri, mp, srv.getName()));
+        plugPipeline(uri, _srv, pipelineInfo);
 
         this.services.add(srv);
 
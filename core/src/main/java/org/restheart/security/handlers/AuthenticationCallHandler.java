@@ -25,22 +25,15 @@ import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.util.HttpString;
 
-import static org.restheart.metrics.Metrics.failedAuthHistogramName;
+import static org.restheart.metrics.Metrics.failedAuthKey;
 
 import java.io.IOException;
-import java.util.concurrent.TimeUnit;
-import com.codahale.metrics.Histogram;
-import com.codahale.metrics.MetricRegistry;
-import com.codahale.metrics.SharedMetricRegistries;
-import com.codahale.metrics.Slf4jReporter;
-import com.codahale.metrics.SlidingTimeWindowArrayReservoir;
-import com.codahale.metrics.Slf4jReporter.LoggingLevel;
 
 import org.restheart.exchange.Request;
 import org.restheart.exchange.Response;
 import org.restheart.handlers.CORSHandler;
 import org.restheart.handlers.PipelinedHandler;
-import org.restheart.plugins.security.Authenticator;
+import org.restheart.security.FailedAuthTracker;
 import org.restheart.utils.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,32 +45,15 @@ import org.slf4j.LoggerFactory;
  * barrier at the end of the chain to ensure authenticate is called after the
  * mechanisms have been associated with the context and the constraint checked.
  *
- * It also register metrics about failed authentications and blocks requests when
- * the exchange has the attachment BLOCK_AUTH set to true.
+ * It also records the failed authentications in the FailedAuthTracker and blocks
+ * requests when the exchange has the attachment BLOCK_AUTH set to true.
  *
  * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
  */
 public class AuthenticationCallHandler extends PipelinedHandler {
     private static final Logger LOGGER = LoggerFactory.getLogger(AuthenticationCallHandler.class);
-    private static MetricRegistry AUTH_METRIC_REGISTRY = SharedMetricRegistries.getOrCreate("AUTH");
 
     private static final String BLOCK_AUTH_ERR_MSG = "Request authentication was blocked";
-    private static final String FAILED_AUTH_METRIC_PREFIX = "failed-auth-";
-
-    static {
-        if (LOGGER.isTraceEnabled()) {
-            Slf4jReporter
-                .forRegistry(AUTH_METRIC_REGISTRY)
-                .outputTo(LOGGER)
-                .filter((name, metric) ->
-                    name.startsWith(MetricRegistry.name(Authenticator.class, FAILED_AUTH_METRIC_PREFIX))
-                    && metric instanceof Histogram hist
-                    && hist.getSnapshot().getMax() > 0)
-                .withLoggingLevel(LoggingLevel.TRACE)
-                .build()
-                .start(5, TimeUnit.SECONDS);
-        }
-    }
 
     public AuthenticationCallHandler(final PipelinedHandler next) {
         super(next);
@@ -117,8 +93,8 @@ public class AuthenticationCallHandler extends PipelinedHandler {
         } else {
             // add CORS headers
             CORSHandler.injectAccessControlAllowHeaders(exchange);
-            // update failed auth metrics
-            updateFailedAuthMetrics(exchange);
+            // track the failed auth attempt
+            trackFailedAuth(exchange);
             // set status code and end exchange
             Response.of(exchange).setStatusCode(HttpStatus.SC_UNAUTHORIZED);
             fastEndExchange(exchange);
@@ -157,43 +133,17 @@ public class AuthenticationCallHandler extends PipelinedHandler {
     }
 
     /**
-     * Registers stats of failed authentication in dropwizard's
-     * slide time window histograms of 10 seconds.
-     *
-     * For each request, register one histogram whose name contains the remote ip
-     * and one with the value of the header X-Forwarded-For, if present.
-     *
-     * This method updates the histograms with with max+1 for failed ones,
-     * so that the max of each histogram is the number of failed authentications
-     * in the last 10 seconds.
+     * Records the failed authentication in the FailedAuthTracker, keyed by
+     * the remote ip or by the value of the header X-Forwarded-For.
      *
      * @param exchange
-     * @param success
      */
-    private void updateFailedAuthMetrics(HttpServerExchange exchange) {
-        // update the histo
-        _update(AUTH_METRIC_REGISTRY.histogram(failedAuthHistogramName(exchange), () -> new Histogram(new SlidingTimeWindowArrayReservoir(10, TimeUnit.SECONDS))));
+    private void trackFailedAuth(HttpServerExchange exchange) {
+        var key = failedAuthKey(exchange);
+        FailedAuthTracker.getInstance().failed(key);
 
-        // every 100 failed requests, prune metrics
-        tryPruneMetrics();
-    }
-
-    private void _update(Histogram histo) {
-        histo.update(histo.getSnapshot().getMax()+1);
-    }
-
-    /**
-     * Cleaup metrics to avoid memory leaks when an attacker sends
-     * many requests with rotating ips or X-Forwarded-For headers
-     * generating many dropwizard's meters
-     */
-    private void tryPruneMetrics() {
-        var total = AUTH_METRIC_REGISTRY.counter(MetricRegistry.name(Authenticator.class, "_total"));
-        total.inc();
-        if (total.getCount() % 100 == 0) {
-            total.dec(total.getCount());
-            LOGGER.trace("Pruning auth metrics");
-            AUTH_METRIC_REGISTRY.removeMatching((name, metric) -> name.startsWith(MetricRegistry.name(Authenticator.class, FAILED_AUTH_METRIC_PREFIX)));
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("Failed auth attempts from {} in last {} seconds: {}", key, FailedAuthTracker.WINDOW_SECONDS, FailedAuthTracker.getInstance().failedAttempts(key));
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,113 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-core
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.handlers;
+
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.restheart.exchange.PipelineInfo;
+import org.restheart.exchange.Request;
+import org.restheart.plugins.PluginRecord;
+import org.restheart.plugins.Service;
+import org.restheart.utils.PluginUtils;
+
+/**
+ * Compares the resolution of the pipeline info and of the handling service
+ * previously done by ResponseSender on each request (path match plus a scan
+ * of the registered services) with reading the exchange attachments set by
+ * PipelineInfoInjector.
+ *
+ * run with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.restheart.handlers.PipelineResolutionBenchmark
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineResolutionBenchmark {
+    @Param({ "30" })
+    public int services;
+
+    private final PathMatcher<PipelineInfo> pipelineInfos = new PathMatcher<>();
+    private final List<PluginRecord<Service<?, ?>>> registered = new ArrayList<>();
+    private final HttpServerExchange exchange = new HttpServerExchange();
+    private String path;
+
+    @Setup
+    public void setup() {
+        for (int s = 0; s < services; s++) {
+            var name = "service" + s;
+            var uri = "/" + name;
+
+            pipelineInfos.addPrefixPath(uri, new PipelineInfo(PipelineInfo.PIPELINE_TYPE.SERVICE, uri, name));
+            registered.add(new PluginRecord<>(name, "", false, true, Service.class.getName(), null, null));
+        }
+
+        var last = services - 1;
+        path = "/service" + last + "/db/coll";
+
+        Request.setPipelineInfo(exchange, pipelineInfos.match(path).getValue());
+        PluginUtils.setHandlingServicePluginRecord(exchange, registered.get(last));
+    }
+
+    @Benchmark
+    public PluginRecord<Service<?, ?>> lookup() {
+        var pi = pipelineInfos.match(path).getValue();
+
+        return registered.stream()
+            .filter(s -> s.getName().equals(pi.getName()))
+            .findAny()
+            .orElse(null);
+    }
+
+    @Benchmark
+    public PluginRecord<Service<?, ?>> attachment() {
+        var pi = Request.getPipelineInfo(exchange);
+
+        return pi.getType() == PipelineInfo.PIPELINE_TYPE.SERVICE
+            ? PluginUtils.handlingServicePluginRecord(null, exchange)
+            : null;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PipelineResolutionBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -70,7 +70,6 @@ import graphql.ErrorType;
 import graphql.ExceptionWhileDataFetching;
 import graphql.ExecutionInput;
 import graphql.ExecutionResultImpl;
-import graphql.GraphQL;
 import graphql.GraphQLError;
 import graphql.execution.instrumentation.ChainedInstrumentation;
 import graphql.execution.instrumentation.Instrumentation;
@@ -93,16 +92,18 @@ public class GraphQLService implements Service<GraphQLRequest, GraphQLResponse>
     public static final int DEFAULT_DEFAULT_LIMIT = 100;
     public static final int DEFAULT_MAX_LIMIT = 1_000;
     public static final long DEFAULT_QUERY_TIME_LIMIT = 0l; // disabled
+    public static final int DEFAULT_QUERY_CACHE_SIZE = 1_000;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(GraphQLService.class);
 
-    private GraphQL gql;
+    private Instrumentation instrumentation;
     private String db = DEFAULT_APP_DEF_DB;
     private String collection = DEFAULT_APP_DEF_COLLECTION;
     private Boolean verbose = DEFAULT_VERBOSE;
     private int defaultLimit = DEFAULT_DEFAULT_LIMIT;
     private int maxLimit = DEFAULT_MAX_LIMIT;
     private long queryTimeLimit = DEFAULT_QUERY_TIME_LIMIT;
+    private int queryCacheSize = DEFAULT_QUERY_CACHE_SIZE;
 
     @Inject("mclient")
     private MongoClient mclient;
@@ -124,6 +125,21 @@ public class GraphQLService implements Service<GraphQLRequest, GraphQLResponse>
 
         this.queryTimeLimit = ((Number)argOrDefault(config, "query-time-limit", DEFAULT_QUERY_TIME_LIMIT)).longValue();
 
+        this.queryCacheSize = argOrDefault(config, "query-cache-size", DEFAULT_QUERY_CACHE_SIZE);
+
+        // the instrumentations keep their state per execution, they are shared by the GraphQL engines of all apps
+        var dispatcherInstrumentationOptions = DataLoaderDispatcherInstrumentationOptions.newOptions();
+
+        if (this.verbose) {
+            dispatcherInstrumentationOptions = dispatcherInstrumentationOptions.includeStatistics(true);
+        }
+
+        var chainedInstrumentations = new ArrayList<Instrumentation>();
+        chainedInstrumentations.add(new DataLoaderDispatcherInstrumentation(dispatcherInstrumentationOptions));
+        chainedInstrumentations.add(new MaxQueryTimeInstrumentation(this.queryTimeLimit));
+
+        this.instrumentation = new ChainedInstrumentation(chainedInstrumentations);
+
         AppDefinitionLoadingCache.setTTL(argOrDefault(config, "app-def-cache-ttl", 1_000));
 
         QueryBatchLoader.setMongoClient(mclient);
@@ -160,8 +176,12 @@ public class GraphQLService implements Service<GraphQLRequest, GraphQLResponse>
             return;
         } else {
             try {
-                // check query syntax
-                var doc = GQL_PARSER.parseDocument(req.getQuery());
+                // check query syntax, unless the query document is cached
+                var doc = graphQLApp.getParsedDocument(req.getQuery());
+
+                if (doc == null) {
+                    doc = GQL_PARSER.parseDocument(req.getQuery());
+                }
 
                 var queryNames = queryNames(doc);
                 // add metric label
@@ -196,22 +216,11 @@ public class GraphQLService implements Service<GraphQLRequest, GraphQLResponse>
             inputBuilder.variables((new Gson()).fromJson(req.getVariables(), Map.class));
         }
 
-        var dispatcherInstrumentationOptions = DataLoaderDispatcherInstrumentationOptions.newOptions();
-
-        if (this.verbose) {
-            dispatcherInstrumentationOptions = dispatcherInstrumentationOptions.includeStatistics(true);
-        }
-
-        var chainedInstrumentations = new ArrayList<Instrumentation>();
-        chainedInstrumentations.add(new DataLoaderDispatcherInstrumentation(dispatcherInstrumentationOptions));
-        chainedInstrumentations.add(new MaxQueryTimeInstrumentation(this.queryTimeLimit));
-
-        this.gql = GraphQL.newGraphQL(graphQLApp.getExecutableSchema())
-            .instrumentation(new ChainedInstrumentation(chainedInstrumentations))
-            .build();
+        // the GraphQL engine is built once per app definition
+        var gql = graphQLApp.getGraphQL(this.instrumentation, this.queryCacheSize);
 
         try {
-            var result = this.gql.execute(inputBuilder.build());
+            var result = gql.execute(inputBuilder.build());
 
             //  The graphql specification specifies:
             //  If an error was encountered during the execution that prevented a valid response, the data entry in the response should be null."
@@ -46,6 +46,20 @@ public class AppDefinitionLoader {
     }
 
     public static GraphQLApp loadAppDefinition(String appURI) throws GraphQLIllegalAppDefinitionException {
+        var appDefinition = findAppDefinition(appURI);
+
+        if (appDefinition != null) {
+            return AppBuilder.build(appDefinition);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * @param appURI the uri or the name of the app
+     * @return the definition of the enabled app, null if not found
+     */
+    public static BsonDocument findAppDefinition(String appURI) {
         var uriOrNameCond = array()
             .add(document().put(APP_URI_FIELD, appURI))
             .add(document().put(APP_NAME_FIELD, appURI));
@@ -56,12 +70,6 @@ public class AppDefinitionLoader {
 
         var findArg = document().put("$and", conditions);
 
-        var appDefinition = mongoClient.getDatabase(appDB).getCollection(appCollection, BsonDocument.class).find(findArg.get()).first();
-
-        if (appDefinition != null) {
-            return AppBuilder.build(appDefinition);
-        } else {
-            return null;
-        }
+        return mongoClient.getDatabase(appDB).getCollection(appCollection, BsonDocument.class).find(findArg.get()).first();
     }
 }
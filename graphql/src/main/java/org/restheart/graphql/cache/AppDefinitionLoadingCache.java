@@ -20,12 +20,17 @@
  */
 package org.restheart.graphql.cache;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bson.BsonDocument;
 import org.restheart.cache.Cache;
 import org.restheart.cache.CacheFactory;
 import org.restheart.cache.LoadingCache;
 import org.restheart.graphql.GraphQLAppDefNotFoundException;
 import org.restheart.graphql.GraphQLIllegalAppDefinitionException;
 import org.restheart.graphql.models.GraphQLApp;
+import org.restheart.graphql.models.builder.AppBuilder;
 import org.restheart.utils.LambdaUtils;
 
 public class AppDefinitionLoadingCache {
@@ -36,11 +41,34 @@ public class AppDefinitionLoadingCache {
 
     private final LoadingCache<String, GraphQLApp> appLoadingCache;
 
+    // the last loaded apps, reused when their definitions didn't change
+    // to keep their GraphQL engines and cached query documents
+    private final Map<String, LoadedApp> loadedApps = new ConcurrentHashMap<>();
+
+    private record LoadedApp(BsonDocument definition, GraphQLApp app) {
+    }
+
     private AppDefinitionLoadingCache(){
         this.appLoadingCache = CacheFactory.createLocalLoadingCache(MAX_CACHE_SIZE,
             Cache.EXPIRE_POLICY.AFTER_WRITE, TTL, key -> {
                 try {
-                    return AppDefinitionLoader.loadAppDefinition(key);
+                    var definition = AppDefinitionLoader.findAppDefinition(key);
+
+                    if (definition == null) {
+                        this.loadedApps.remove(key);
+                        return null;
+                    }
+
+                    var loaded = this.loadedApps.get(key);
+
+                    if (loaded != null && loaded.definition().equals(definition)) {
+                        return loaded.app();
+                    }
+
+                    var app = AppBuilder.build(definition);
+                    this.loadedApps.put(key, new LoadedApp(definition, app));
+
+                    return app;
                 } catch (GraphQLIllegalAppDefinitionException e) {
                     LambdaUtils.throwsSneakyException(e);
                     return null;
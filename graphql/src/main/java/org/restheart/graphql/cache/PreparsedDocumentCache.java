@@ -0,0 +1,85 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-graphql
+ * %%
+ * Copyright (C) 2020 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.graphql.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import org.restheart.cache.Cache;
+import org.restheart.cache.CacheFactory;
+
+import graphql.ExecutionInput;
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.execution.preparsed.PreparsedDocumentProvider;
+import graphql.language.Document;
+
+/**
+ * Caches the parsed and validated documents of the queries of a GraphQL app,
+ * keyed by query text.
+ *
+ * An instance is bound to the GraphQL engine of an app, so that the cached
+ * documents, validated against the app schema, are dropped together with
+ * the engine when the app definition changes.
+ */
+public class PreparsedDocumentCache implements PreparsedDocumentProvider {
+    private final Cache<String, PreparsedDocumentEntry> documents;
+
+    /**
+     * @param size the max number of cached documents
+     */
+    public PreparsedDocumentCache(long size) {
+        this.documents = CacheFactory.createLocalCache(size, Cache.EXPIRE_POLICY.NEVER, -1);
+    }
+
+    @Override
+    public CompletableFuture<PreparsedDocumentEntry> getDocumentAsync(ExecutionInput executionInput, Function<ExecutionInput, PreparsedDocumentEntry> parseAndValidateFunction) {
+        var query = executionInput.getQuery();
+        var cached = this.documents.get(query);
+
+        if (cached != null && cached.isPresent()) {
+            return CompletableFuture.completedFuture(cached.get());
+        }
+
+        var entry = parseAndValidateFunction.apply(executionInput);
+        this.documents.put(query, entry);
+
+        return CompletableFuture.completedFuture(entry);
+    }
+
+    /**
+     * @deprecated still abstract in graphql-java 21, use getDocumentAsync()
+     */
+    @Override
+    @Deprecated
+    public PreparsedDocumentEntry getDocument(ExecutionInput executionInput, Function<ExecutionInput, PreparsedDocumentEntry> parseAndValidateFunction) {
+        return getDocumentAsync(executionInput, parseAndValidateFunction).join();
+    }
+
+    /**
+     * @param query the query text
+     * @return the cached document of the query, null if not cached or not valid
+     */
+    public Document getParsedDocument(String query) {
+        var cached = this.documents.get(query);
+
+        return cached != null && cached.isPresent() ? cached.get().getDocument() : null;
+    }
+}
@@ -21,22 +21,36 @@
 package org.restheart.graphql.dataloaders;
 
 import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Accumulators;
 import com.mongodb.client.model.Aggregates;
 import com.mongodb.client.model.Facet;
+import com.mongodb.client.model.Field;
 
 import org.bson.BsonArray;
+import org.bson.BsonDecimal128;
 import org.bson.BsonDocument;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonString;
 import org.bson.BsonValue;
 import org.bson.conversions.Bson;
+import org.bson.types.Decimal128;
 import org.dataloader.BatchLoader;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.TimeUnit;
 
 import org.restheart.graphql.GraphQLQueryTimeoutException;
+import org.restheart.graphql.models.DataLoaderSettings.BatchingStrategy;
 
 import com.mongodb.MongoExecutionTimeoutException;
 
@@ -44,18 +58,33 @@ public class QueryBatchLoader implements BatchLoader<BsonValue, BsonValue> {
 
     private static MongoClient mongoClient;
 
+    // tags the results of the UNION_WITH strategy with the index of their query
+    static final String BATCH_INDEX_FIELD = "_rh_batch_idx";
+
+    // the value of the field that the IN strategy groups the results by
+    static final String BATCH_KEY_FIELD = "_rh_batch_key";
+
+    private static final BigDecimal LONG_MIN = BigDecimal.valueOf(Long.MIN_VALUE);
+    private static final BigDecimal LONG_MAX = BigDecimal.valueOf(Long.MAX_VALUE);
+
     private final String db;
     private final String collection;
     private final long queryTimeLimit;
+    private final BatchingStrategy batchingStrategy;
 
     public static void setMongoClient(MongoClient mClient){
         mongoClient = mClient;
     }
 
     public QueryBatchLoader(String db, String collection, long queryTimeLimit) {
+        this(db, collection, queryTimeLimit, BatchingStrategy.FACET);
+    }
+
+    public QueryBatchLoader(String db, String collection, long queryTimeLimit, BatchingStrategy batchingStrategy) {
         this.db = db;
         this.collection = collection;
         this.queryTimeLimit = queryTimeLimit;
+        this.batchingStrategy = batchingStrategy;
     }
 
     /**
@@ -78,69 +107,327 @@ public class QueryBatchLoader implements BatchLoader<BsonValue, BsonValue> {
      *                  ...
      *              ]}
      *
+     * PROBLEM: $facet returns a single document, limited to 16MB, and its sub-pipelines cannot use indexes.
+     *
+     * IDEA-3: the batching strategy of the query mapping can select alternatives, see BatchingStrategy:
+     *
+     * - UNION_WITH: the results of each query, executed by its own $unionWith sub-pipeline, are tagged with
+     *   the index of the query and returned via the cursor
+     * - IN: when all queries match the same field by value (the typical N+1 lookup by foreign key), a single
+     *   {$match: {field: {$in: [value1, value2, ...]}}} whose results are grouped by value
+     *
      * @param queries: list of queries to merge by $or operator
      * @return: list of results, one for each query
      */
 
     @Override
     public CompletionStage<List<BsonValue>> load(List<BsonValue> queries) {
-        var res = new ArrayList<BsonValue>();
-        var stages = new ArrayList<Bson>();
-
         try {
             // if there are at least 2 queries within the batch
             if (queries.size() > 1){
-                var mergedCond = new BsonArray();
-                var listOfFacets = new ArrayList<Facet>();
-
-                // foreach query within the batch...
-                queries.forEach(query -> {
-                    // add find condition to merged array
-                    var findClause = query.asDocument().containsKey("find") ? query.asDocument().getDocument("find") : new BsonDocument();
-                    mergedCond.add(findClause);
-
-                    // create a new sub-pipeline with query stages
-                    listOfFacets.add(new Facet(String.valueOf(query.hashCode()), getQueryStages(query.asDocument())));
-                });
-
-                // 1° stage --> $match with conditions merged by $or operator
-                stages.add(Aggregates.match(new BsonDocument("$or", mergedCond)));
-
-                // 2° stage --> $facet with one sub-pipeline for each query within the batch
-                stages.add(Aggregates.facet(listOfFacets));
+                var res = switch(this.batchingStrategy) {
+                    case FACET -> loadWithFacet(queries);
+                    case UNION_WITH -> loadWithUnionWith(queries);
+                    case IN -> {
+                        var field = inField(queries);
+                        // fall back to UNION_WITH when the queries are not lookups by value of the same field
+                        yield field != null ? loadWithIn(queries, field) : loadWithUnionWith(queries);
+                    }
+                };
 
+                return CompletableFuture.completedFuture(res);
+                // ... otherwise merging is not needed and sub-pipelines neither
+            } else {
+                var res = new ArrayList<BsonValue>();
+                var query = queries.get(0).asDocument();
+                var stages = getQueryStages(query);
                 var iterable = mongoClient.getDatabase(this.db).getCollection(this.collection, BsonValue.class)
                     .aggregate(stages)
-                    .allowDiskUse(true)
                     .maxTime(this.queryTimeLimit, TimeUnit.MILLISECONDS);
-
                 var aggResult = new BsonArray();
 
                 iterable.into(aggResult);
 
-                var resultDoc = aggResult.get(0).asDocument();
-                queries.forEach(query -> {
-                    BsonValue queryResult = resultDoc.get(String.valueOf(query.hashCode()));
-                    res.add(queryResult);
-                });
-                // ... otherwise merging is not needed and sub-pipelines neither
+                res.add(aggResult);
+
+                return CompletableFuture.completedFuture(res);
+            }
+        } catch(MongoExecutionTimeoutException toe) {
+            throw new GraphQLQueryTimeoutException("Maximum query time limit of " + this.queryTimeLimit + "ms exceeded");
+        }
+    }
+
+    private List<BsonValue> loadWithFacet(List<BsonValue> queries) {
+        var res = new ArrayList<BsonValue>();
+        var stages = new ArrayList<Bson>();
+        var mergedCond = new BsonArray();
+        var listOfFacets = new ArrayList<Facet>();
+
+        // foreach query within the batch...
+        for (var idx = 0; idx < queries.size(); idx++) {
+            var query = queries.get(idx);
+            // add find condition to merged array
+            var findClause = query.asDocument().containsKey("find") ? query.asDocument().getDocument("find") : new BsonDocument();
+            mergedCond.add(findClause);
+
+            // create a new sub-pipeline with query stages
+            // named by the index of the query, since hash codes can collide
+            listOfFacets.add(new Facet(String.valueOf(idx), getQueryStages(query.asDocument())));
+        }
+
+        // 1° stage --> $match with conditions merged by $or operator
+        stages.add(Aggregates.match(new BsonDocument("$or", mergedCond)));
+
+        // 2° stage --> $facet with one sub-pipeline for each query within the batch
+        stages.add(Aggregates.facet(listOfFacets));
+
+        var iterable = mongoClient.getDatabase(this.db).getCollection(this.collection, BsonValue.class)
+            .aggregate(stages)
+            .allowDiskUse(true)
+            .maxTime(this.queryTimeLimit, TimeUnit.MILLISECONDS);
+
+        var aggResult = new BsonArray();
+
+        iterable.into(aggResult);
+
+        var resultDoc = aggResult.get(0).asDocument();
+
+        for (var idx = 0; idx < queries.size(); idx++) {
+            res.add(resultDoc.get(String.valueOf(idx)));
+        }
+
+        return res;
+    }
+
+    /**
+     * - 1st query: [{$match: query1}, ..., {$addFields: {_rh_batch_idx: 0}}]
+     * - other queries: {$unionWith: {coll: collection, pipeline: [{$match: queryN}, ..., {$addFields: {_rh_batch_idx: N}}]}}
+     */
+    private List<BsonValue> loadWithUnionWith(List<BsonValue> queries) {
+        var stages = new ArrayList<Bson>();
+
+        for (var idx = 0; idx < queries.size(); idx++) {
+            var queryStages = getQueryStages(queries.get(idx).asDocument());
+            queryStages.add(Aggregates.addFields(new Field<>(BATCH_INDEX_FIELD, new BsonInt32(idx))));
+
+            if (idx == 0) {
+                stages.addAll(queryStages);
             } else {
-                var query = queries.get(0).asDocument();
-                stages = getQueryStages(query);
-                var iterable = mongoClient.getDatabase(this.db).getCollection(this.collection, BsonValue.class).aggregate(stages);
-                var aggResult = new BsonArray();
+                stages.add(Aggregates.unionWith(this.collection, queryStages));
+            }
+        }
 
-                iterable.into(aggResult);
+        var res = new ArrayList<BsonValue>();
+        queries.forEach(q -> res.add(new BsonArray()));
 
-                res.add(aggResult);
+        collection().aggregate(stages)
+            .allowDiskUse(true)
+            .maxTime(this.queryTimeLimit, TimeUnit.MILLISECONDS)
+            .forEach(doc -> {
+                var idx = doc.remove(BATCH_INDEX_FIELD).asInt32().getValue();
+                res.get(idx).asArray().add(doc);
+            });
+
+        return res;
+    }
+
+    /**
+     * - 1st stage: {$match: {field: {$in: [value1, value2, ...]}}}
+     * - 2nd stage: {$sort: sort}, the same for all queries
+     * - 3rd stage: {$addFields: {_rh_batch_key: {$cond: [{$isArray: "$field"}, {$setUnion: ["$field"]}, "$field"]}}},
+     *   the distinct elements of an array field, so that a repeated value doesn't duplicate the document
+     * - 4th stage: {$unwind: "$_rh_batch_key"}, an array field matches each of its elements
+     * - 5th stage: {$group: {_id: "$_rh_batch_key", docs: {$push: "$$ROOT"}}}
+     * - 6th stage: {$project: {docs: {$slice: ["$docs", skip, MAX]}}}, the same skip for all queries
+     *
+     * the results of each value must fit a single 16MB document
+     */
+    private List<BsonValue> loadWithIn(List<BsonValue> queries, String field) {
+        var partitions = new HashMap<BsonValue, List<BsonDocument>>();
+
+        collection().aggregate(inPipeline(queries, field))
+            .allowDiskUse(true)
+            .maxTime(this.queryTimeLimit, TimeUnit.MILLISECONDS)
+            .forEach(group -> {
+                var docs = partitions.computeIfAbsent(partitionKey(group.get("_id")), k -> new ArrayList<>());
+
+                group.getArray("docs").forEach(doc -> {
+                    doc.asDocument().remove(BATCH_KEY_FIELD);
+                    docs.add(doc.asDocument());
+                });
+            });
+
+        return partition(queries, field, partitions);
+    }
+
+    /**
+     * @return the aggregation pipeline of loadWithIn()
+     */
+    static List<Bson> inPipeline(List<BsonValue> queries, String field) {
+        var values = new BsonArray();
+        queries.forEach(q -> values.add(q.asDocument().getDocument("find").get(field)));
+
+        var stages = new ArrayList<Bson>();
+        stages.add(Aggregates.match(new BsonDocument(field, new BsonDocument("$in", values))));
+
+        var first = queries.get(0).asDocument();
+
+        if (first.containsKey("sort")) {
+            stages.add(Aggregates.sort(first.getDocument("sort")));
+        }
+
+        var ref = new BsonString("$" + field);
+        var distinct = new BsonDocument("$cond", new BsonArray(List.of(
+            new BsonDocument("$isArray", ref),
+            new BsonDocument("$setUnion", new BsonArray(List.of(ref))),
+            ref)));
+
+        stages.add(Aggregates.addFields(new Field<>(BATCH_KEY_FIELD, distinct)));
+        stages.add(Aggregates.unwind("$" + BATCH_KEY_FIELD));
+        stages.add(Aggregates.group("$" + BATCH_KEY_FIELD, Accumulators.push("docs", "$$ROOT")));
+
+        var skip = skip(first);
+
+        if (skip > 0) {
+            stages.add(Aggregates.project(new BsonDocument("docs", new BsonDocument("$slice", new BsonArray(List.of(new BsonString("$docs"), new BsonInt32(skip), new BsonInt32(Integer.MAX_VALUE)))))));
+        }
+
+        return stages;
+    }
+
+    static List<BsonValue> partition(List<BsonValue> queries, String field, Map<BsonValue, List<BsonDocument>> partitions) {
+        var res = new ArrayList<BsonValue>();
+
+        for (var query: queries) {
+            var docs = partitions.getOrDefault(partitionKey(query.asDocument().getDocument("find").get(field)), List.of());
+
+            var result = new BsonArray();
+
+            docs.stream()
+                // the same document can be in the results of many queries
+                .map(BsonDocument::clone)
+                .forEachOrdered(result::add);
+
+            res.add(result);
+        }
+
+        return res;
+    }
+
+    /**
+     * the $in query reads all the documents of each value, so the queries
+     * with a limit fall back to UNION_WITH, that applies it to each query
+     *
+     * @return the field if all queries match it by value, have the same sort
+     * and skip and no limit, null otherwise
+     */
+    static String inField(List<BsonValue> queries) {
+        String field = null;
+        BsonValue sort = null;
+        int skip = 0;
+
+        for (var query: queries) {
+            if (!query.isDocument() || !query.asDocument().isDocument("find")) {
+                return null;
             }
 
-            return CompletableFuture.completedFuture(res);
-        } catch(MongoExecutionTimeoutException toe) {
-            throw new GraphQLQueryTimeoutException("Maximum query time limit of " + this.queryTimeLimit + "ms exceeded");
+            var _query = query.asDocument();
+            var find = _query.getDocument("find");
+
+            if (find.size() != 1) {
+                return null;
+            }
+
+            var _field = find.getFirstKey();
+
+            // the partitioning only supports top level fields
+            if (_field.startsWith("$") || _field.contains(".") || !isPartitionable(find.get(_field))) {
+                return null;
+            }
+
+            if ((_query.containsKey("skip") && !_query.isInt32("skip")) || (_query.containsKey("limit") && !_query.isInt32("limit"))) {
+                return null;
+            }
+
+            if (_query.containsKey("limit") && _query.getInt32("limit").getValue() > 0) {
+                return null;
+            }
+
+            var _sort = _query.get("sort");
+            var _skip = skip(_query);
+
+            if (field == null) {
+                field = _field;
+                sort = _sort;
+                skip = _skip;
+            } else if (!field.equals(_field) || !Objects.equals(sort, _sort) || skip != _skip) {
+                return null;
+            }
+        }
+
+        return field;
+    }
+
+    private static int skip(BsonDocument query) {
+        return query.containsKey("skip") ? Math.max(query.getInt32("skip").getValue(), 0) : 0;
+    }
+
+    private static boolean isPartitionable(BsonValue value) {
+        return value.isString() || value.isObjectId() || value.isNumber() || value.isDecimal128() || value.isBoolean() || value.isDateTime();
+    }
+
+    /**
+     * numbers equal for MongoDB (e.g. 1, 1L, 1.0 and NumberDecimal("1.00"))
+     * must fall in the same partition: integral numbers are normalized to
+     * Int64, the others to Double when it represents them exactly, otherwise
+     * to Decimal128 without trailing zeros
+     */
+    static BsonValue partitionKey(BsonValue value) {
+        if (value.isInt32() || value.isInt64()) {
+            return new BsonInt64(value.asNumber().longValue());
+        } else if (value.isDouble()) {
+            var d = value.asDouble().getValue();
+            return Double.isFinite(d) ? partitionKey(new BigDecimal(d)) : new BsonDouble(d);
+        } else if (value.isDecimal128()) {
+            var d = value.asDecimal128().getValue();
+
+            if (d.isNaN()) {
+                return new BsonDouble(Double.NaN);
+            } else if (d.isInfinite()) {
+                return new BsonDouble(d.isNegative() ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY);
+            }
+
+            try {
+                return partitionKey(d.bigDecimalValue());
+            } catch(ArithmeticException ae) {
+                // negative zero
+                return new BsonInt64(0);
+            }
+        } else {
+            return value;
         }
     }
 
+    private static BsonValue partitionKey(BigDecimal value) {
+        var n = value.signum() == 0 ? BigDecimal.ZERO : value.stripTrailingZeros();
+
+        if (n.scale() <= 0 && n.compareTo(LONG_MIN) >= 0 && n.compareTo(LONG_MAX) <= 0) {
+            return new BsonInt64(n.longValueExact());
+        }
+
+        var d = n.doubleValue();
+
+        if (Double.isFinite(d) && new BigDecimal(d).compareTo(n) == 0) {
+            return new BsonDouble(d);
+        } else {
+            return new BsonDecimal128(new Decimal128(n));
+        }
+    }
+
+    private MongoCollection<BsonDocument> collection() {
+        return mongoClient.getDatabase(this.db).getCollection(this.collection, BsonDocument.class);
+    }
+
     private ArrayList<Bson> getQueryStages(BsonDocument queryDoc){
         var stages = new ArrayList<Bson>();
 
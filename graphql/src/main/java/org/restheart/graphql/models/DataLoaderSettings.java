@@ -22,16 +22,64 @@ package org.restheart.graphql.models;
 
 public class DataLoaderSettings {
 
+    /**
+     * how the queries of a batch are executed
+     */
+    public enum BatchingStrategy {
+        /**
+         * one aggregation with a $facet sub-pipeline per query; the results
+         * must fit a single 16MB document
+         */
+        FACET("facet"),
+        /**
+         * one aggregation with a $unionWith sub-pipeline per query, with
+         * results tagged with the index of their query
+         */
+        UNION_WITH("unionWith"),
+        /**
+         * when all queries match the same field by value, with the same sort
+         * and skip and no limit, one $in query whose results are grouped by
+         * value; falls back to UNION_WITH otherwise
+         */
+        IN("in");
+
+        private final String value;
+
+        BatchingStrategy(String value) {
+            this.value = value;
+        }
+
+        public String value() {
+            return this.value;
+        }
+
+        /**
+         * @param value
+         * @return the strategy or null if value does not identify any strategy
+         */
+        public static BatchingStrategy of(String value) {
+            for (var strategy: values()) {
+                if (strategy.value.equals(value)) {
+                    return strategy;
+                }
+            }
+
+            return null;
+        }
+    }
+
     private final boolean batching;
     private final int maxBatchSize;
     private final boolean caching;
     private final long queryTimeLimit;
+    private final BatchingStrategy batchingStrategy;
 
-    private DataLoaderSettings(Boolean batching, Boolean caching, Integer maxBatchSize, long queryTimeLimit){
+    private DataLoaderSettings(Boolean batching, Boolean caching, Integer maxBatchSize, long queryTimeLimit, BatchingStrategy batchingStrategy){
         this.batching = batching;
         this.caching = caching;
         this.maxBatchSize = maxBatchSize;
         this.queryTimeLimit = queryTimeLimit;
+        this.batchingStrategy = batchingStrategy;
     }
 
     public static Builder builder(){
@@ -52,12 +100,17 @@ public class DataLoaderSettings {
         return this.queryTimeLimit;
     }
 
+    public BatchingStrategy getBatchingStrategy() {
+        return this.batchingStrategy;
+    }
+
     public static class Builder{
 
         private Boolean batching;
         private Boolean caching;
         private Integer max_batch_size;
         private Long queryTimeLimit;
+        private BatchingStrategy batchingStrategy;
 
         private Builder(){}
 
@@ -81,6 +134,11 @@ public class DataLoaderSettings {
             return this;
         }
 
+        public Builder batchingStrategy(BatchingStrategy batchingStrategy){
+            this.batchingStrategy = batchingStrategy;
+            return this;
+        }
+
         public DataLoaderSettings build(){
 
             if (this.batching == null){
@@ -99,7 +157,11 @@ public class DataLoaderSettings {
                 this.queryTimeLimit = 0l;
             }
 
-            return new DataLoaderSettings(this.batching, this.caching, this.max_batch_size, this.queryTimeLimit);
+            if (this.batchingStrategy == null){
+                this.batchingStrategy = BatchingStrategy.FACET;
+            }
+
+            return new DataLoaderSettings(this.batching, this.caching, this.max_batch_size, this.queryTimeLimit, this.batchingStrategy);
         }
     }
 }
@@ -25,12 +25,16 @@ import java.util.Map.Entry;
 import java.util.Optional;
 
 import org.bson.BsonValue;
+import org.restheart.graphql.cache.PreparsedDocumentCache;
 import org.restheart.graphql.predicates.ExchangeWithBsonValue;
 import org.restheart.graphql.scalars.BsonScalars;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import graphql.GraphQL;
 import graphql.TypeResolutionEnvironment;
+import graphql.execution.instrumentation.Instrumentation;
+import graphql.language.Document;
 import graphql.language.InterfaceTypeDefinition;
 import graphql.language.UnionTypeDefinition;
 import graphql.schema.GraphQLObjectType;
@@ -51,6 +55,8 @@ public class GraphQLApp {
     private String schema;
     private Map<String, TypeMapping> objectsMappings;
     private GraphQLSchema executableSchema;
+    private volatile GraphQL graphQL;
+    private volatile PreparsedDocumentCache preparsedDocuments;
 
     public static Builder newBuilder() {
         return new Builder();
@@ -96,6 +102,49 @@ public class GraphQLApp {
 
     public void setExecutableSchema(GraphQLSchema executableSchema) {
         this.executableSchema = executableSchema;
+        this.graphQL = null;
+        this.preparsedDocuments = null;
+    }
+
+    /**
+     * The GraphQL engine is built on first use and then reused, since the app
+     * is cached until its definition changes
+     *
+     * @param instrumentation the instrumentation of the engine
+     * @param queryCacheSize the max number of cached parsed and validated queries, 0 to disable the cache
+     * @return the GraphQL engine of the app
+     */
+    public GraphQL getGraphQL(Instrumentation instrumentation, long queryCacheSize) {
+        var _graphQL = this.graphQL;
+
+        if (_graphQL == null) {
+            synchronized(this) {
+                _graphQL = this.graphQL;
+
+                if (_graphQL == null) {
+                    var builder = GraphQL.newGraphQL(this.executableSchema).instrumentation(instrumentation);
+
+                    if (queryCacheSize > 0) {
+                        this.preparsedDocuments = new PreparsedDocumentCache(queryCacheSize);
+                        builder.preparsedDocumentProvider(this.preparsedDocuments);
+                    }
+
+                    this.graphQL = _graphQL = builder.build();
+                }
+            }
+        }
+
+        return _graphQL;
+    }
+
+    /**
+     * @param query the query text
+     * @return the parsed document of the query if cached, null otherwise
+     */
+    public Document getParsedDocument(String query) {
+        var _preparsedDocuments = this.preparsedDocuments;
+
+        return _preparsedDocuments != null ? _preparsedDocuments.getParsedDocument(query) : null;
     }
 
     public static class Builder {
@@ -89,7 +89,7 @@ public class QueryMapping extends FieldMapping implements Batchable {
 
             options.setStatisticsCollector(() -> new SimpleStatisticsCollector());
 
-            return DataLoaderFactory.newDataLoader(new QueryBatchLoader(this.db, this.collection, this.dataLoaderSettings.getQueryTimeLimit()), options);
+            return DataLoaderFactory.newDataLoader(new QueryBatchLoader(this.db, this.collection, this.dataLoaderSettings.getQueryTimeLimit(), this.dataLoaderSettings.getBatchingStrategy()), options);
         } else {
             return null;
         }
@@ -235,6 +235,18 @@ class ObjectsMappings extends Mappings {
                                     dataLoaderBuilder.caching(settings.getBoolean("caching").getValue());
                                 }
 
+                                if (settings.containsKey("batchingStrategy")) {
+                                    var strategy = settings.get("batchingStrategy").isString()
+                                        ? DataLoaderSettings.BatchingStrategy.of(settings.getString("batchingStrategy").getValue())
+                                        : null;
+
+                                    if (strategy == null) {
+                                        LambdaUtils.throwsSneakyException(new GraphQLIllegalAppDefinitionException("The mapping for " + type + "." + field + " requires the property 'dataLoader.batchingStrategy' to be one of 'facet', 'unionWith' or 'in' but it is " + settings.get("batchingStrategy")));
+                                    }
+
+                                    dataLoaderBuilder.batchingStrategy(strategy);
+                                }
+
                                 queryMappingBuilder.DataLoaderSettings(dataLoaderBuilder.build());
                             } else {
                                 throwIllegalDefinitionException(field, type, "dataLoader", "Object", fieldMappingDoc.get("dataLoader"));
@@ -0,0 +1,60 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-graphql
+ * %%
+ * Copyright (C) 2020 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+
+package org.restheart.graphql.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import graphql.ExecutionInput;
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.parser.Parser;
+
+public class PreparsedDocumentCacheTest {
+    @Test
+    public void testDocumentIsParsedOnce() throws Exception {
+        var cache = new PreparsedDocumentCache(10);
+        var parsed = new AtomicInteger(0);
+        var query = "query { foo { _id } }";
+        var input = ExecutionInput.newExecutionInput().query(query).build();
+
+        assertNull(cache.getParsedDocument(query));
+
+        var first = cache.getDocumentAsync(input, i -> {
+            parsed.incrementAndGet();
+            return new PreparsedDocumentEntry(new Parser().parseDocument(i.getQuery()));
+        }).get();
+
+        var second = cache.getDocumentAsync(input, i -> {
+            parsed.incrementAndGet();
+            return new PreparsedDocumentEntry(new Parser().parseDocument(i.getQuery()));
+        }).get();
+
+        assertEquals(1, parsed.get());
+        assertSame(first, second);
+        assertSame(first.getDocument(), cache.getParsedDocument(query));
+    }
+}
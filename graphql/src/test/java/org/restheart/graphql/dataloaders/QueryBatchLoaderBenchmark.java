@@ -0,0 +1,142 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-graphql
+ * %%
+ * Copyright (C) 2020 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+
+package org.restheart.graphql.dataloaders;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.restheart.graphql.models.DataLoaderSettings.BatchingStrategy;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.model.Indexes;
+
+/**
+ * Compares the batching strategies of QueryBatchLoader on the second level of
+ * an N+1 style GraphQL query, e.g. { posts { comments { text } } }, where the
+ * comments of each post are fetched by the query { find: { postId: <id> } }.
+ *
+ * The unbatched benchmark executes the N queries one by one.
+ *
+ * requires MongoDB, run with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.restheart.graphql.dataloaders.QueryBatchLoaderBenchmark [-Dmongo-uri=mongodb://127.0.0.1]
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBatchLoaderBenchmark {
+    private static final String DB = "restheart-benchmark";
+    private static final String COLLECTION = "comments";
+    private static final int POSTS = 1_000;
+    private static final int COMMENTS_PER_POST = 10;
+
+    @Param({ "10", "100", "1000" })
+    public int posts;
+
+    @Param({ "facet", "unionWith", "in" })
+    public String strategy;
+
+    private MongoClient mclient;
+    private QueryBatchLoader loader;
+    private QueryBatchLoader unbatched;
+    private List<BsonValue> queries;
+
+    @Setup
+    public void setup() {
+        this.mclient = MongoClients.create(System.getProperty("mongo-uri", "mongodb://127.0.0.1"));
+        QueryBatchLoader.setMongoClient(this.mclient);
+
+        var coll = this.mclient.getDatabase(DB).getCollection(COLLECTION, BsonDocument.class);
+
+        if (coll.countDocuments() != POSTS * COMMENTS_PER_POST) {
+            coll.drop();
+            coll.createIndex(Indexes.ascending("postId"));
+
+            var comments = new ArrayList<BsonDocument>();
+            for (int p = 0; p < POSTS; p++) {
+                for (int c = 0; c < COMMENTS_PER_POST; c++) {
+                    comments.add(new BsonDocument("postId", new BsonInt32(p)).append("text", new BsonString("comment " + c + " of post " + p)));
+                }
+            }
+
+            coll.insertMany(comments);
+        }
+
+        this.loader = new QueryBatchLoader(DB, COLLECTION, 0, BatchingStrategy.of(this.strategy));
+        this.unbatched = new QueryBatchLoader(DB, COLLECTION, 0);
+
+        this.queries = new ArrayList<>();
+        for (int p = 0; p < this.posts; p++) {
+            this.queries.add(new BsonDocument("find", new BsonDocument("postId", new BsonInt32(p)))
+                // no limit, that makes the in strategy fall back to unionWith
+                .append("sort", new BsonDocument("_id", new BsonInt32(1))));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.mclient.close();
+    }
+
+    @Benchmark
+    public List<BsonValue> batched() throws Exception {
+        return this.loader.load(this.queries).toCompletableFuture().get();
+    }
+
+    @Benchmark
+    public List<BsonValue> unbatched() throws Exception {
+        var ret = new ArrayList<BsonValue>();
+
+        for (var query: this.queries) {
+            ret.addAll(this.unbatched.load(List.of(query)).toCompletableFuture().get());
+        }
+
+        return ret;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(QueryBatchLoaderBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,156 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-graphql
+ * %%
+ * Copyright (C) 2020 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+
+package org.restheart.graphql.dataloaders;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.bson.BsonDecimal128;
+import org.bson.BsonDocument;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.types.Decimal128;
+import org.junit.jupiter.api.Test;
+
+public class QueryBatchLoaderTest {
+    private static List<BsonValue> queries(String... queries) {
+        var ret = new ArrayList<BsonValue>();
+        for (var q: queries) {
+            ret.add(BsonDocument.parse(q));
+        }
+        return ret;
+    }
+
+    @Test
+    public void testInField() {
+        assertEquals("postId", QueryBatchLoader.inField(queries(
+            "{ 'find': { 'postId': 1 }, 'sort': { '_id': 1 }, 'skip': 5 }",
+            "{ 'find': { 'postId': 2 }, 'sort': { '_id': 1 }, 'skip': 5 }")));
+
+        // with a limit falls back to UNION_WITH
+        assertNull(QueryBatchLoader.inField(queries(
+            "{ 'find': { 'postId': 1 }, 'limit': 10 }",
+            "{ 'find': { 'postId': 2 } }")));
+
+        // different skips
+        assertNull(QueryBatchLoader.inField(queries(
+            "{ 'find': { 'postId': 1 }, 'skip': 1 }",
+            "{ 'find': { 'postId': 2 } }")));
+
+        // decimals
+        assertEquals("postId", QueryBatchLoader.inField(queries(
+            "{ 'find': { 'postId': { '$numberDecimal': '1.5' } } }",
+            "{ 'find': { 'postId': 2 } }")));
+
+        // different fields
+        assertNull(QueryBatchLoader.inField(queries(
+            "{ 'find': { 'postId': 1 } }",
+            "{ 'find': { 'authorId': 2 } }")));
+
+        // not a lookup by value
+        assertNull(QueryBatchLoader.inField(queries(
+            "{ 'find': { 'postId': { '$gt': 1 } } }",
+            "{ 'find': { 'postId': 2 } }")));
+
+        // more conditions
+        assertNull(QueryBatchLoader.inField(queries(
+            "{ 'find': { 'postId': 1, 'visible': true } }",
+            "{ 'find': { 'postId': 2, 'visible': true } }")));
+
+        // different sorts
+        assertNull(QueryBatchLoader.inField(queries(
+            "{ 'find': { 'postId': 1 }, 'sort': { '_id': 1 } }",
+            "{ 'find': { 'postId': 2 }, 'sort': { '_id': -1 } }")));
+
+        // nested fields
+        assertNull(QueryBatchLoader.inField(queries(
+            "{ 'find': { 'post.id': 1 } }",
+            "{ 'find': { 'post.id': 2 } }")));
+    }
+
+    @Test
+    public void testPartition() {
+        var a = BsonDocument.parse("{ '_id': 'a', 'postId': 1 }");
+        var b = BsonDocument.parse("{ '_id': 'b', 'postId': 1 }");
+        var c = BsonDocument.parse("{ '_id': 'c', 'postId': 2 }");
+
+        var partitions = new HashMap<BsonValue, List<BsonDocument>>();
+        partitions.put(new BsonInt64(1), List.of(a, b));
+        partitions.put(new BsonInt64(2), List.of(c));
+
+        var results = QueryBatchLoader.partition(queries(
+            "{ 'find': { 'postId': 1 } }",
+            "{ 'find': { 'postId': { '$numberLong': '2' } } }",
+            "{ 'find': { 'postId': { '$numberDecimal': '1.00' } } }",
+            "{ 'find': { 'postId': 3 } }"), "postId", partitions);
+
+        assertEquals(4, results.size());
+        assertEquals(2, results.get(0).asArray().size());
+        assertEquals(1, results.get(1).asArray().size());
+        assertEquals(new BsonString("b"), results.get(2).asArray().get(1).asDocument().get("_id"));
+        assertEquals(0, results.get(3).asArray().size());
+    }
+
+    @Test
+    public void testInPipelineDedupesArrays() {
+        var stages = QueryBatchLoader.inPipeline(queries(
+            "{ 'find': { 'tags': 'a' } }",
+            "{ 'find': { 'tags': 'b' } }"), "tags");
+
+        // a document with tags ['a', 'a'] is unwound once for 'a'
+        assertEquals(BsonDocument.parse("""
+            { '$addFields': { '_rh_batch_key': { '$cond': [
+                { '$isArray': '$tags' },
+                { '$setUnion': [ '$tags' ] },
+                '$tags' ] } } }"""), stages.get(1).toBsonDocument());
+        assertEquals(BsonDocument.parse("{ '$unwind': '$_rh_batch_key' }"), stages.get(2).toBsonDocument());
+    }
+
+    @Test
+    public void testPartitionKey() {
+        var one = QueryBatchLoader.partitionKey(new BsonInt32(1));
+
+        assertEquals(one, QueryBatchLoader.partitionKey(new BsonInt64(1)));
+        assertEquals(one, QueryBatchLoader.partitionKey(new BsonDouble(1.0)));
+        assertEquals(one, QueryBatchLoader.partitionKey(new BsonDecimal128(Decimal128.parse("1.000"))));
+
+        var half = QueryBatchLoader.partitionKey(new BsonDouble(0.5));
+
+        assertEquals(half, QueryBatchLoader.partitionKey(new BsonDecimal128(Decimal128.parse("0.50"))));
+
+        // 0.1 is not exactly representable as a double
+        assertNotEquals(QueryBatchLoader.partitionKey(new BsonDouble(0.1)), QueryBatchLoader.partitionKey(new BsonDecimal128(Decimal128.parse("0.1"))));
+        assertEquals(QueryBatchLoader.partitionKey(new BsonDecimal128(Decimal128.parse("0.1"))), QueryBatchLoader.partitionKey(new BsonDecimal128(Decimal128.parse("0.10"))));
+
+        assertEquals(QueryBatchLoader.partitionKey(new BsonInt32(0)), QueryBatchLoader.partitionKey(new BsonDecimal128(Decimal128.NEGATIVE_ZERO)));
+        assertEquals(QueryBatchLoader.partitionKey(new BsonInt32(0)), QueryBatchLoader.partitionKey(new BsonDouble(-0.0)));
+        assertEquals(new BsonString("1"), QueryBatchLoader.partitionKey(new BsonString("1")));
+    }
+}
@@ -47,6 +47,7 @@ import java.util.stream.Collectors;
 @RegisterPlugin(name = "requestsMetricsCollector",
         description = "collects http requests metrics",
         interceptPoint = InterceptPoint.REQUEST_BEFORE_AUTH,
+        contentIndependent = true,
         enabledByDefault = false)
 public class RequestsMetricsCollector implements WildcardInterceptor {
     private static final Logger LOGGER = LoggerFactory.getLogger(RequestsMetricsCollector.class);
@@ -20,22 +20,29 @@
  */
 package org.restheart.mongodb;
 
+import java.util.Arrays;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
 import static org.fusesource.jansi.Ansi.Color.GREEN;
 import static org.fusesource.jansi.Ansi.ansi;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
 import org.restheart.configuration.ConfigurationException;
 import org.restheart.exchange.BadRequestException;
 import org.restheart.exchange.MongoRequest;
 import org.restheart.exchange.MongoResponse;
 import org.restheart.exchange.Request;
+import org.restheart.exchange.Response;
 import org.restheart.handlers.PipelinedHandler;
 import org.restheart.handlers.PipelinedWrappingHandler;
 import static org.restheart.mongodb.MongoServiceConfigurationKeys.MONGO_MOUNT_WHAT_KEY;
 import static org.restheart.mongodb.MongoServiceConfigurationKeys.MONGO_MOUNT_WHERE_KEY;
+import org.restheart.mongodb.db.KeysetPagination;
+import org.restheart.mongodb.handlers.collection.GetCollectionHandler;
 import org.restheart.mongodb.exchange.MongoRequestPropsInjector;
 import org.restheart.mongodb.handlers.ErrorHandler;
 import org.restheart.mongodb.handlers.OptionsHandler;
@@ -44,7 +51,10 @@ import org.restheart.mongodb.handlers.injectors.ClientSessionInjector;
 import org.restheart.mongodb.handlers.injectors.ETagPolicyInjector;
 import org.restheart.mongodb.utils.MongoURLUtils;
 import org.restheart.plugins.Inject;
+import org.restheart.plugins.InterceptPoint;
+import org.restheart.plugins.Interceptor;
 import org.restheart.plugins.OnInit;
+import org.restheart.plugins.PluginsRegistry;
 import org.restheart.plugins.RegisterPlugin;
 import org.restheart.plugins.Service;
 import org.restheart.utils.HttpStatus;
@@ -57,6 +67,7 @@ import com.mongodb.client.MongoClient;
 import static io.undertow.Handlers.path;
 import static io.undertow.Handlers.pathTemplate;
 import io.undertow.server.HttpServerExchange;
+import io.undertow.util.AttachmentKey;
 import io.undertow.util.PathMatcher;
 import io.undertow.util.PathTemplate;
 import io.undertow.util.PathTemplateMatch;
@@ -83,6 +94,12 @@ public class MongoService implements Service<MongoRequest, MongoResponse> {
     @Inject("mclient")
     private MongoClient mclient;
 
+    @Inject("registry")
+    private PluginsRegistry registry;
+
+    // the registry, bound to the exchange to let the handlers check the response interceptors
+    private static final AttachmentKey<PluginsRegistry> REGISTRY_KEY = AttachmentKey.create(PluginsRegistry.class);
+
     /**
      * PathMatcher is used by the root PathHandler to route the call. Here we
      * use the same logic to identify the correct MongoMount in order to
@@ -119,6 +136,7 @@ public class MongoService implements Service<MongoRequest, MongoResponse> {
         resetRelativePath(request);
 
         if (mclient != null) {
+            request.getExchange().putAttachment(REGISTRY_KEY, registry);
             this.pipeline.handleRequest(request.getExchange());
         } else {
             final var error = "MongoDb is not availabe";
@@ -128,6 +146,132 @@ public class MongoService implements Service<MongoRequest, MongoResponse> {
         }
     }
 
+    /**
+     * Exposes also the Continuation-Token header of keyset pagination and
+     * the Partial-Result header of the ndjson export
+     */
+    @Override
+    public String accessControlExposeHeaders(Request<?> r) {
+        return DEFAULT_ACCESS_CONTROL_EXPOSE_HEADERS + ", " + KeysetPagination.CONTINUATION_TOKEN_HEADER.toString()
+            + ", " + GetCollectionHandler.PARTIAL_RESULT_HEADER.toString();
+    }
+
+    /**
+     * Checks if a response interceptor is going to process the response
+     * content. Handlers can stream the content directly to the client
+     * only when this returns false.
+     *
+     * It is called before the content is set: since interceptors, like
+     * ProjectResponse and UserPwdRemover, don't resolve without content,
+     * resolve() is invoked with a placeholder content, a non empty array,
+     * so that they are taken into account.
+     *
+     * @param request
+     * @param response
+     * @return true if a RESPONSE or RESPONSE_ASYNC interceptor resolves for
+     *         the request
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public static boolean isResponseIntercepted(MongoRequest request, MongoResponse response) {
+        var registry = request.getExchange().getAttachment(REGISTRY_KEY);
+
+        if (registry == null) {
+            return true;
+        }
+
+        var srv = PluginUtils.handlingService(registry, request.getExchange());
+
+        if (srv == null) {
+            return true;
+        }
+
+        var content = response.getContent();
+
+        if (content == null) {
+            response.setContent(new BsonArray(List.of(new BsonDocument())));
+        }
+
+        try {
+            for (var ip: new InterceptPoint[] { InterceptPoint.RESPONSE, InterceptPoint.RESPONSE_ASYNC }) {
+                for (var i: registry.getServiceInterceptors(srv, ip)) {
+                    try {
+                        if (((Interceptor) i).resolve(request, response)) {
+                            return true;
+                        }
+                    } catch (Exception e) {
+                        // assume it processes the content
+                        return true;
+                    }
+                }
+            }
+
+            return false;
+        } finally {
+            response.setContent(content);
+        }
+    }
+
+    /**
+     * Checks if a request interceptor processes the request content. Handlers
+     * can read the content as a stream only when this returns false.
+     *
+     * The interceptors that don't process the content declare it with
+     * the contentIndependent attribute of @RegisterPlugin.
+     *
+     * @param request
+     * @param response
+     * @param skipped the names of the interceptors whose processing the
+     *        handler applies itself to the streamed content
+     * @return true if a REQUEST_BEFORE_AUTH or REQUEST_AFTER_AUTH interceptor,
+     *         not content independent nor skipped, resolves for the request
+     */
+    public static boolean isRequestContentIntercepted(MongoRequest request, MongoResponse response, String... skipped) {
+        return isRequestContentIntercepted(request.getExchange().getAttachment(REGISTRY_KEY), request, response, skipped);
+    }
+
+    /**
+     * Checks if a request interceptor of the service handling the request
+     * processes the request content, see isRequestContentIntercepted(request, response)
+     *
+     * @param registry the plugins registry
+     * @param request
+     * @param response
+     * @param skipped the names of the interceptors to skip
+     * @return true if a REQUEST_BEFORE_AUTH or REQUEST_AFTER_AUTH interceptor,
+     *         not content independent nor skipped, resolves for the request
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public static boolean isRequestContentIntercepted(PluginsRegistry registry, Request<?> request, Response<?> response, String... skipped) {
+        if (registry == null) {
+            return true;
+        }
+
+        var srv = PluginUtils.handlingService(registry, request.getExchange());
+
+        if (srv == null) {
+            return true;
+        }
+
+        for (var ip: new InterceptPoint[] { InterceptPoint.REQUEST_BEFORE_AUTH, InterceptPoint.REQUEST_AFTER_AUTH }) {
+            for (var i: registry.getServiceInterceptors(srv, ip)) {
+                if (PluginUtils.contentIndependent(i) || Arrays.asList(skipped).contains(PluginUtils.name(i))) {
+                    continue;
+                }
+
+                try {
+                    if (((Interceptor) i).resolve(request, response)) {
+                        return true;
+                    }
+                } catch (Exception e) {
+                    // assume it processes the content
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
     /**
      * getHandlersPipe
      *
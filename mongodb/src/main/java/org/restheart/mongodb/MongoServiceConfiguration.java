@@ -38,6 +38,15 @@ import org.restheart.exchange.ExchangeKeys.ETAG_CHECK_POLICY;
 import org.restheart.exchange.ExchangeKeys.REPRESENTATION_FORMAT;
 import static org.restheart.mongodb.MongoServiceConfigurationKeys.AGGREGATION_CHECK_OPERATORS;
 import static org.restheart.mongodb.MongoServiceConfigurationKeys.AGGREGATION_TIME_LIMIT_KEY;
+import static org.restheart.mongodb.MongoServiceConfigurationKeys.AGGREGATION_STREAMING_BATCH_SIZE_KEY;
+import static org.restheart.mongodb.MongoServiceConfigurationKeys.CACHE_INVALIDATION_BUS_ENABLED_KEY;
+import static org.restheart.mongodb.MongoServiceConfigurationKeys.CHANGE_STREAMS_REPLAY_BUFFER_SIZE_KEY;
+import static org.restheart.mongodb.MongoServiceConfigurationKeys.CHANGE_STREAMS_SEND_QUEUE_SIZE_KEY;
+import static org.restheart.mongodb.MongoServiceConfigurationKeys.CHANGE_STREAMS_SHARED_UPSTREAM_KEY;
+import static org.restheart.mongodb.MongoServiceConfigurationKeys.CHANGE_STREAMS_SLOW_CONSUMER_POLICY_KEY;
+import static org.restheart.mongodb.MongoServiceConfigurationKeys.GET_COLLECTION_STREAMING_BATCH_SIZE_KEY;
+import static org.restheart.mongodb.MongoServiceConfigurationKeys.GET_COLLECTION_STREAMING_ENABLED_KEY;
+import static org.restheart.mongodb.MongoServiceConfigurationKeys.GRIDFS_REACTIVE_DOWNLOADS_ENABLED_KEY;
 import static org.restheart.mongodb.MongoServiceConfigurationKeys.CURSOR_BATCH_SIZE_KEY;
 import static org.restheart.mongodb.MongoServiceConfigurationKeys.DEFAULT_COLL_ETAG_CHECK_POLICY;
 import static org.restheart.mongodb.MongoServiceConfigurationKeys.DEFAULT_CURSOR_BATCH_SIZE;
@@ -54,6 +63,8 @@ import static org.restheart.mongodb.MongoServiceConfigurationKeys.ETAG_CHECK_POL
 import static org.restheart.mongodb.MongoServiceConfigurationKeys.ETAG_CHECK_POLICY_DB_KEY;
 import static org.restheart.mongodb.MongoServiceConfigurationKeys.ETAG_CHECK_POLICY_DOC_KEY;
 import static org.restheart.mongodb.MongoServiceConfigurationKeys.ETAG_CHECK_POLICY_KEY;
+import static org.restheart.mongodb.MongoServiceConfigurationKeys.COUNT_CACHE_SIZE_KEY;
+import static org.restheart.mongodb.MongoServiceConfigurationKeys.COUNT_CACHE_TTL_KEY;
 import static org.restheart.mongodb.MongoServiceConfigurationKeys.GET_COLLECTION_CACHE_DOCS_KEY;
 import static org.restheart.mongodb.MongoServiceConfigurationKeys.GET_COLLECTION_CACHE_ENABLED_KEY;
 import static org.restheart.mongodb.MongoServiceConfigurationKeys.GET_COLLECTION_CACHE_SIZE_KEY;
@@ -110,6 +121,17 @@ public class MongoServiceConfiguration {
     private final int getCollectionCacheSize;
     private final int getCollectionCacheTTL;
     private final int getCollectionCacheDocs;
+    private final int countCacheSize;
+    private final int countCacheTTL;
+    private final boolean cacheInvalidationBusEnabled;
+    private final boolean getCollectionStreamingEnabled;
+    private final int getCollectionStreamingBatchSize;
+    private final int aggregationStreamingBatchSize;
+    private final boolean changeStreamsSharedUpstream;
+    private final int changeStreamsSendQueueSize;
+    private final SLOW_CONSUMER_POLICY changeStreamsSlowConsumerPolicy;
+    private final int changeStreamsReplayBufferSize;
+    private final boolean gridFsReactiveDownloadsEnabled;
     private final ETAG_CHECK_POLICY dbEtagCheckPolicy;
     private final ETAG_CHECK_POLICY collEtagCheckPolicy;
     private final ETAG_CHECK_POLICY docEtagCheckPolicy;
@@ -217,6 +239,32 @@ public class MongoServiceConfiguration {
         getCollectionCacheTTL = asInteger(conf, GET_COLLECTION_CACHE_TTL_KEY, 10_000, silent);
         getCollectionCacheDocs = asInteger(conf, GET_COLLECTION_CACHE_DOCS_KEY, 1_000, silent);
 
+        countCacheSize = asInteger(conf, COUNT_CACHE_SIZE_KEY, 1_000, silent);
+        countCacheTTL = asInteger(conf, COUNT_CACHE_TTL_KEY, 60_000, silent);
+
+        cacheInvalidationBusEnabled = asBoolean(conf, CACHE_INVALIDATION_BUS_ENABLED_KEY, false, silent);
+
+        getCollectionStreamingEnabled = asBoolean(conf, GET_COLLECTION_STREAMING_ENABLED_KEY, false, silent);
+        getCollectionStreamingBatchSize = asInteger(conf, GET_COLLECTION_STREAMING_BATCH_SIZE_KEY, 100, silent);
+        aggregationStreamingBatchSize = asInteger(conf, AGGREGATION_STREAMING_BATCH_SIZE_KEY, 100, silent);
+
+        changeStreamsSharedUpstream = asBoolean(conf, CHANGE_STREAMS_SHARED_UPSTREAM_KEY, false, silent);
+        changeStreamsSendQueueSize = asInteger(conf, CHANGE_STREAMS_SEND_QUEUE_SIZE_KEY, 1_000, silent);
+
+        SLOW_CONSUMER_POLICY scpolicy;
+        try {
+            var value = asString(conf, CHANGE_STREAMS_SLOW_CONSUMER_POLICY_KEY, SLOW_CONSUMER_POLICY.DROP_OLDEST.name(), silent);
+            scpolicy = SLOW_CONSUMER_POLICY.valueOf(value.toUpperCase(Locale.getDefault()).replace('-', '_'));
+        } catch (IllegalArgumentException iae) {
+            LOGGER.warn("wrong value for {}, using DROP_OLDEST", CHANGE_STREAMS_SLOW_CONSUMER_POLICY_KEY);
+            scpolicy = SLOW_CONSUMER_POLICY.DROP_OLDEST;
+        }
+        changeStreamsSlowConsumerPolicy = scpolicy;
+
+        changeStreamsReplayBufferSize = asInteger(conf, CHANGE_STREAMS_REPLAY_BUFFER_SIZE_KEY, 1_000, silent);
+
+        gridFsReactiveDownloadsEnabled = asBoolean(conf, GRIDFS_REACTIVE_DOWNLOADS_ENABLED_KEY, false, silent);
+
         Map<String, Object> etagCheckPolicies = asMap(conf, ETAG_CHECK_POLICY_KEY, null, silent);
 
         if (etagCheckPolicies != null) {
@@ -295,6 +343,14 @@ public class MongoServiceConfiguration {
                 + localCacheEnabled + ", localCacheTtl=" + localCacheTtl + ", schemaCacheEnabled=" + schemaCacheEnabled
                 + ", schemaCacheTtl=" + schemaCacheTtl
                 + ", cacheEnabled=" + getCollectionCacheEnabled + ", cacheSize=" + getCollectionCacheSize + ", cacheTTL" + getCollectionCacheTTL
+                + ", countCacheSize=" + countCacheSize + ", countCacheTTL=" + countCacheTTL
+                + ", cacheInvalidationBusEnabled=" + cacheInvalidationBusEnabled
+                + ", getCollectionStreamingEnabled=" + getCollectionStreamingEnabled + ", getCollectionStreamingBatchSize=" + getCollectionStreamingBatchSize
+                + ", aggregationStreamingBatchSize=" + aggregationStreamingBatchSize
+                + ", changeStreamsSharedUpstream=" + changeStreamsSharedUpstream
+                + ", changeStreamsSendQueueSize=" + changeStreamsSendQueueSize + ", changeStreamsSlowConsumerPolicy=" + changeStreamsSlowConsumerPolicy
+                + ", changeStreamsReplayBufferSize=" + changeStreamsReplayBufferSize
+                + ", gridFsReactiveDownloadsEnabled=" + gridFsReactiveDownloadsEnabled
                 + ", dbEtagCheckPolicy=" + dbEtagCheckPolicy + ", collEtagCheckPolicy=" + collEtagCheckPolicy + ", docEtagCheckPolicy="
                 + docEtagCheckPolicy + ", connectionOptions=" + connectionOptions + ", queryTimeLimit=" + queryTimeLimit
                 + ", aggregationTimeLimit=" + aggregationTimeLimit + ", aggregationCheckOperators="
@@ -371,6 +427,20 @@ public class MongoServiceConfiguration {
         return getCollectionCacheTTL;
     }
 
+    /**
+     * @return the countCacheSize
+     */
+    public int getCountCacheSize() {
+        return countCacheSize;
+    }
+
+    /**
+     * @return the countCacheTTL
+     */
+    public int getCountCacheTTL() {
+        return countCacheTTL;
+    }
+
     /**
      * @return the getCollectionCacheDocs
      */
@@ -378,6 +448,69 @@ public class MongoServiceConfiguration {
         return getCollectionCacheDocs;
     }
 
+    /**
+     * @return the cacheInvalidationBusEnabled
+     */
+    public boolean isCacheInvalidationBusEnabled() {
+        return cacheInvalidationBusEnabled;
+    }
+
+    /**
+     * @return the getCollectionStreamingEnabled
+     */
+    public boolean isGetCollectionStreamingEnabled() {
+        return getCollectionStreamingEnabled;
+    }
+
+    /**
+     * @return the getCollectionStreamingBatchSize
+     */
+    public int getGetCollectionStreamingBatchSize() {
+        return getCollectionStreamingBatchSize;
+    }
+
+    /**
+     * @return the aggregationStreamingBatchSize
+     */
+    public int getAggregationStreamingBatchSize() {
+        return aggregationStreamingBatchSize;
+    }
+
+    /**
+     * @return the changeStreamsSharedUpstream
+     */
+    public boolean isChangeStreamsSharedUpstream() {
+        return changeStreamsSharedUpstream;
+    }
+
+    /**
+     * @return the changeStreamsSendQueueSize
+     */
+    public int getChangeStreamsSendQueueSize() {
+        return changeStreamsSendQueueSize;
+    }
+
+    /**
+     * @return the changeStreamsSlowConsumerPolicy
+     */
+    public SLOW_CONSUMER_POLICY getChangeStreamsSlowConsumerPolicy() {
+        return changeStreamsSlowConsumerPolicy;
+    }
+
+    /**
+     * @return the changeStreamsReplayBufferSize
+     */
+    public int getChangeStreamsReplayBufferSize() {
+        return changeStreamsReplayBufferSize;
+    }
+
+    /**
+     * @return the gridFsReactiveDownloadsEnabled
+     */
+    public boolean isGridFsReactiveDownloadsEnabled() {
+        return gridFsReactiveDownloadsEnabled;
+    }
+
     /**
      * @return the mongoUri
      */
@@ -490,6 +623,25 @@ public class MongoServiceConfiguration {
         return getMetricsGatheringLevel().compareTo(level) >= 0;
     }
 
+    /**
+     * what to do when the send queue of a change stream web socket is full
+     */
+    public enum SLOW_CONSUMER_POLICY {
+        /**
+         * drop the oldest queued notification
+         */
+        DROP_OLDEST,
+        /**
+         * replace the queued notification of the same document with the new one,
+         * or drop the oldest if none
+         */
+        COALESCE,
+        /**
+         * close the web socket
+         */
+        DISCONNECT
+    }
+
     /**
      * @deprecated will be removed in RH v8.0
      */
@@ -151,6 +151,51 @@ public interface MongoServiceConfigurationKeys {
     public static final String REPRESENTATION_FORMAT_KEY = "default-representation-format";
 
 
+    /**
+     * the key for the cache-invalidation-bus-enabled property.
+     */
+    public static final String CACHE_INVALIDATION_BUS_ENABLED_KEY = "cache-invalidation-bus-enabled";
+
+    /**
+     * the key for the get-collection-streaming-enabled property.
+     */
+    public static final String GET_COLLECTION_STREAMING_ENABLED_KEY = "get-collection-streaming-enabled";
+
+    /**
+     * the key for the get-collection-streaming-batch-size property.
+     */
+    public static final String GET_COLLECTION_STREAMING_BATCH_SIZE_KEY = "get-collection-streaming-batch-size";
+
+    /**
+     * the key for the aggregation-streaming-batch-size property.
+     */
+    public static final String AGGREGATION_STREAMING_BATCH_SIZE_KEY = "aggregation-streaming-batch-size";
+
+    /**
+     * the key for the change-streams-shared-upstream property.
+     */
+    public static final String CHANGE_STREAMS_SHARED_UPSTREAM_KEY = "change-streams-shared-upstream";
+
+    /**
+     * the key for the change-streams-send-queue-size property.
+     */
+    public static final String CHANGE_STREAMS_SEND_QUEUE_SIZE_KEY = "change-streams-send-queue-size";
+
+    /**
+     * the key for the change-streams-slow-consumer-policy property.
+     */
+    public static final String CHANGE_STREAMS_SLOW_CONSUMER_POLICY_KEY = "change-streams-slow-consumer-policy";
+
+    /**
+     * the key for the change-streams-replay-buffer-size property.
+     */
+    public static final String CHANGE_STREAMS_REPLAY_BUFFER_SIZE_KEY = "change-streams-replay-buffer-size";
+
+    /**
+     * the key for the gridfs-reactive-downloads-enabled property.
+     */
+    public static final String GRIDFS_REACTIVE_DOWNLOADS_ENABLED_KEY = "gridfs-reactive-downloads-enabled";
+
     /**
      * the key for the get-collection-cache-enabled property.
      */
@@ -171,6 +216,16 @@ public interface MongoServiceConfigurationKeys {
      */
     public static final String GET_COLLECTION_CACHE_DOCS_KEY = "get-collection-cache-docs";
 
+    /**
+     * the key for the count-cache-size property.
+     */
+    public static final String COUNT_CACHE_SIZE_KEY = "count-cache-size";
+
+    /**
+     * the key for the count-cache-ttl property.
+     */
+    public static final String COUNT_CACHE_TTL_KEY = "count-cache-ttl";
+
     /**
      * the key for the etag-check-policy property.
      */
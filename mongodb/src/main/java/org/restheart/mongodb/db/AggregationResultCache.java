@@ -0,0 +1,295 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.db;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.restheart.cache.Cache;
+import org.restheart.cache.CacheFactory;
+import org.restheart.metrics.MetricLabel;
+import org.restheart.metrics.MetricNameAndLabels;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.MongoCollection;
+
+/**
+ * Caches the results of the aggregations that define the cache option.
+ *
+ * Each aggregation gets its own cache, sized and expired according to its
+ * definition. Entries are evicted on writes made via RESTHeart to the
+ * collection of the aggregation and, optionally, to the collections
+ * referenced by $lookup, $graphLookup and $unionWith stages.
+ *
+ * Hits, misses, evictions and invalidations are counted in the metrics
+ * registry aggregations-cache, exported by the metrics service.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class AggregationResultCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AggregationResultCache.class);
+
+    // the prefix of the registries exported by the metrics service
+    private static final String METRICS_REGISTRY_NAME = "METRICS-/aggregations-cache";
+
+    /**
+     * identifies an aggregation
+     */
+    public record AggregationId(String db, String coll, String uri) {
+    }
+
+    /**
+     * the key of the cached results
+     *
+     * @param stages the interpolated stages
+     * @param page
+     * @param pagesize
+     */
+    public record Key(AggregationId aggregation, List<BsonDocument> stages, int page, int pagesize) {
+    }
+
+    private class AggregationCache {
+        final long ttl;
+        final int maxEntries;
+        final Set<MongoNamespace> dependencies;
+        final Cache<Key, List<BsonDocument>> cache;
+        // keys being invalidated, to tell evictions apart in the removal listener
+        final Set<Key> invalidating = ConcurrentHashMap.newKeySet();
+
+        AggregationCache(AggregationId id, long ttl, int maxEntries, Set<MongoNamespace> dependencies) {
+            this.ttl = ttl;
+            this.maxEntries = maxEntries;
+            this.dependencies = dependencies;
+            this.cache = CacheFactory.createLocalCache(maxEntries, Cache.EXPIRE_POLICY.AFTER_WRITE, ttl, entry -> {
+                if (entry.getKey() != null && !invalidating.remove(entry.getKey())) {
+                    counter(id, "evictions").inc();
+                }
+            });
+        }
+
+        void invalidateAll() {
+            var keys = this.cache.asMap().keySet();
+            invalidating.addAll(keys);
+            keys.forEach(this.cache::invalidate);
+        }
+    }
+
+    private final Map<AggregationId, AggregationCache> caches = new ConcurrentHashMap<>();
+
+    private final MetricRegistry metrics = SharedMetricRegistries.getOrCreate(METRICS_REGISTRY_NAME);
+
+    /**
+     *
+     * @return
+     */
+    public static AggregationResultCache getInstance() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    private AggregationResultCache() {
+    }
+
+    /**
+     * @param key the key
+     * @param ttl the Time To Live of the entries of the aggregation
+     * @param maxEntries the max number of entries of the aggregation
+     * @return the cached results or null
+     */
+    public List<BsonDocument> get(Key key, long ttl, int maxEntries) {
+        var ac = caches.get(key.aggregation());
+
+        // the cache options of the aggregation might have been updated
+        var cached = ac != null && ac.ttl == ttl && ac.maxEntries == maxEntries
+            ? ac.cache.get(key)
+            : Optional.<List<BsonDocument>>empty();
+
+        if (cached != null && cached.isPresent()) {
+            counter(key.aggregation(), "hits").inc();
+            return cached.get();
+        } else {
+            counter(key.aggregation(), "misses").inc();
+            return null;
+        }
+    }
+
+    /**
+     * @param key the key
+     * @param value the results
+     * @param ttl the Time To Live of the entries of the aggregation
+     * @param maxEntries the max number of entries of the aggregation
+     * @param lookups also evict the entry on writes to the collections referenced by the stages
+     */
+    public void put(Key key, List<BsonDocument> value, long ttl, int maxEntries, boolean lookups) {
+        var id = key.aggregation();
+
+        var dependencies = new HashSet<MongoNamespace>();
+        dependencies.add(new MongoNamespace(id.db(), id.coll()));
+
+        if (lookups) {
+            key.stages().forEach(stage -> referencedCollections(stage, dependencies, id.db()));
+        }
+
+        // don't cache until writes from other nodes to all the dependencies can evict the entry
+        var watched = true;
+        for (var dependency: dependencies) {
+            watched &= CacheInvalidationBus.getInstance().watchCollection(dependency);
+        }
+
+        if (!watched) {
+            return;
+        }
+
+        var ac = caches.compute(id, (k, current) -> current != null
+            && current.ttl == ttl
+            && current.maxEntries == maxEntries
+            && current.dependencies.containsAll(dependencies)
+                ? current
+                : new AggregationCache(id, ttl, maxEntries, union(current, dependencies)));
+
+        ac.cache.put(key, value);
+    }
+
+    private static Set<MongoNamespace> union(AggregationCache current, Set<MongoNamespace> dependencies) {
+        if (current == null) {
+            return dependencies;
+        }
+
+        var ret = new HashSet<>(current.dependencies);
+        ret.addAll(dependencies);
+        return ret;
+    }
+
+    /**
+     * evicts the cached results of all aggregations that depend on the collection
+     *
+     * @param db
+     * @param coll
+     */
+    public void invalidateAll(String db, String coll) {
+        invalidateAll(new MongoNamespace(db, coll));
+    }
+
+    /**
+     * evicts the cached results of all aggregations that depend on the collection
+     *
+     * @param coll
+     */
+    public void invalidateAll(MongoCollection<?> coll) {
+        invalidateAll(coll.getNamespace());
+    }
+
+    /**
+     * evicts the cached results of all aggregations that depend on a
+     * collection of the database
+     *
+     * @param db
+     */
+    public void invalidateDb(String db) {
+        caches.forEach((id, ac) -> {
+            if (ac.dependencies.stream().anyMatch(ns -> ns.getDatabaseName().equals(db))) {
+                LOGGER.trace("invalidating cached results of /{}/{}/_aggrs/{} on drop of db {}", id.db(), id.coll(), id.uri(), db);
+                counter(id, "invalidations").inc();
+                ac.invalidateAll();
+            }
+        });
+    }
+
+    /**
+     * evicts the cached results of all aggregations
+     */
+    public void invalidateAll() {
+        caches.forEach((id, ac) -> {
+            counter(id, "invalidations").inc();
+            ac.invalidateAll();
+        });
+    }
+
+    private void invalidateAll(MongoNamespace ns) {
+        if (caches.isEmpty()) {
+            return;
+        }
+
+        caches.forEach((id, ac) -> {
+            if (ac.dependencies.contains(ns)) {
+                LOGGER.trace("invalidating cached results of /{}/{}/_aggrs/{} on write to {}", id.db(), id.coll(), id.uri(), ns);
+                counter(id, "invalidations").inc();
+                ac.invalidateAll();
+            }
+        });
+    }
+
+    /**
+     * collects the namespaces of the collections referenced by $lookup,
+     * $graphLookup and $unionWith, also in nested pipelines
+     *
+     * @param value the stage or a part of it
+     * @param namespaces the set to add the namespaces to
+     * @param db the db of the aggregation
+     */
+    static void referencedCollections(BsonValue value, Set<MongoNamespace> namespaces, String db) {
+        if (value.isArray()) {
+            value.asArray().forEach(v -> referencedCollections(v, namespaces, db));
+        } else if (value.isDocument()) {
+            var doc = value.asDocument();
+
+            for (var op: List.of("$lookup", "$graphLookup")) {
+                var lookup = doc.get(op);
+                if (lookup != null && lookup.isDocument() && lookup.asDocument().isString("from")) {
+                    namespaces.add(new MongoNamespace(db, lookup.asDocument().getString("from").getValue()));
+                }
+            }
+
+            var unionWith = doc.get("$unionWith");
+
+            if (unionWith != null && unionWith.isString()) {
+                namespaces.add(new MongoNamespace(db, unionWith.asString().getValue()));
+            } else if (unionWith != null && unionWith.isDocument() && unionWith.asDocument().isString("coll")) {
+                namespaces.add(new MongoNamespace(db, unionWith.asDocument().getString("coll").getValue()));
+            }
+
+            doc.values().forEach(v -> referencedCollections(v, namespaces, db));
+        }
+    }
+
+    private com.codahale.metrics.Counter counter(AggregationId id, String name) {
+        return metrics.counter(new MetricNameAndLabels("aggregations_cache_".concat(name), MetricLabel.collect(
+            new MetricLabel("db", id.db()),
+            new MetricLabel("coll", id.coll()),
+            new MetricLabel("uri", id.uri()))).toString());
+    }
+
+    private static class SingletonHolder {
+        private static final AggregationResultCache INSTANCE = new AggregationResultCache();
+
+        private SingletonHolder() {
+        }
+    }
+}
@@ -0,0 +1,320 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.db;
+
+import static org.restheart.exchange.ExchangeKeys.COLL_META_DOCID_PREFIX;
+import static org.restheart.exchange.ExchangeKeys.DB_META_DOCID;
+import static org.restheart.exchange.ExchangeKeys.META_COLLNAME;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonTimestamp;
+import org.bson.Document;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.restheart.mongodb.MongoServiceConfiguration;
+import org.restheart.mongodb.RHMongoClients;
+import org.restheart.mongodb.interceptors.MetadataCachesSingleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+
+/**
+ * Evicts the entries of GetCollectionCache, AggregationResultCache, CountCache
+ * and MetadataCachesSingleton on writes made by any node of the cluster.
+ *
+ * It opens a single cluster wide change stream and dispatches its events by
+ * namespace: writes to the _properties collection of a db evict the entries
+ * of the MetadataCachesSingleton, writes to other collections evict the
+ * entries of the other caches.
+ *
+ * The stream is opened asynchronously, when the first entry is about to be
+ * cached, starting at the operation time of a ping to the server; so no
+ * write made after it is missed, even if the stream is established on the
+ * server later. The caches must not store entries until the stream is open,
+ * otherwise writes happening in between would not evict them.
+ *
+ * Requires a Replica Set; enabled with the configuration option
+ * cache-invalidation-bus-enabled. If the server does not support change
+ * streams the bus disables itself; other failures evict all the entries
+ * and the stream is opened again after RETRY_DELAY milliseconds.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class CacheInvalidationBus {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheInvalidationBus.class);
+
+    private static final boolean ENABLED = MongoServiceConfiguration.get() != null && MongoServiceConfiguration.get().isCacheInvalidationBusEnabled();
+
+    // only the fields required to evict the entries
+    private static final List<BsonDocument> PIPELINE = List.of(new BsonDocument("$project", new BsonDocument()
+        .append("operationType", new BsonInt32(1))
+        .append("ns", new BsonInt32(1))
+        .append("to", new BsonInt32(1))
+        .append("documentKey", new BsonInt32(1))));
+
+    // delay before opening again the stream after a failure
+    private static final long RETRY_DELAY = 60_000;
+
+    // error code of "$changeStream stage is only supported on replica sets"
+    private static final int CHANGE_STREAMS_NOT_SUPPORTED = 40573;
+
+    private final AtomicBoolean opening = new AtomicBoolean(false);
+
+    private volatile boolean open = false;
+    private volatile boolean disabled = false;
+    private volatile long failedUntil = 0;
+
+    /**
+     *
+     * @return
+     */
+    public static CacheInvalidationBus getInstance() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    /**
+     * @return true if the bus is enabled
+     */
+    public static boolean isEnabled() {
+        return ENABLED && !getInstance().disabled;
+    }
+
+    private CacheInvalidationBus() {
+    }
+
+    /**
+     * Makes sure the change stream is open to evict the GetCollectionCache,
+     * AggregationResultCache and CountCache entries of the namespace on
+     * writes from any node
+     *
+     * @param ns the namespace of the cached documents
+     * @return true if the entries of the namespace can be cached, i.e. the
+     * bus is not enabled or the change stream is open
+     */
+    public boolean watchCollection(MongoNamespace ns) {
+        return watch();
+    }
+
+    /**
+     * Makes sure the change stream is open to evict the MetadataCachesSingleton
+     * entries of the db on writes from any node
+     *
+     * @param db the db of the cached properties
+     * @return true if the properties of the db can be cached, i.e. the
+     * bus is not enabled or the change stream is open
+     */
+    public boolean watchProperties(String db) {
+        return watch();
+    }
+
+    private boolean watch() {
+        if (!ENABLED || disabled || open) {
+            return true;
+        }
+
+        if (failedUntil > System.currentTimeMillis()) {
+            return false;
+        }
+
+        if (opening.compareAndSet(false, true)) {
+            try {
+                // the operation time of the ping is the start of the stream
+                RHMongoClients.mclientReactive()
+                    .getDatabase("admin")
+                    .runCommand(new Document("ping", 1))
+                    .subscribe(new PingSubscriber());
+            } catch (Throwable t) {
+                failed(t);
+            }
+        }
+
+        return false;
+    }
+
+    private void openStream(BsonTimestamp startAt) {
+        try {
+            var stream = RHMongoClients.mclientReactive()
+                .watch(PIPELINE)
+                .startAtOperationTime(startAt);
+
+            // writes after startAt are notified, so entries can be cached already
+            open = true;
+            opening.set(false);
+            stream.subscribe(new StreamSubscriber());
+
+            LOGGER.debug("cache invalidation bus watching the cluster from {}", startAt);
+        } catch (Throwable t) {
+            failed(t);
+        }
+    }
+
+    private void failed(Throwable t) {
+        open = false;
+
+        if (isNotSupported(t)) {
+            if (!disabled) {
+                disabled = true;
+                LOGGER.warn("cache invalidation bus disabled, change streams are not supported: {}", t.getMessage());
+            }
+        } else {
+            failedUntil = System.currentTimeMillis() + RETRY_DELAY;
+            LOGGER.warn("cache invalidation bus cannot watch the cluster, retrying in {} seconds: {}", RETRY_DELAY / 1000, t.getMessage());
+        }
+
+        opening.set(false);
+    }
+
+    private static boolean isNotSupported(Throwable t) {
+        if (t instanceof MongoCommandException mce && mce.getErrorCode() == CHANGE_STREAMS_NOT_SUPPORTED) {
+            return true;
+        }
+
+        return t.getMessage() != null && t.getMessage().contains("only supported on replica sets");
+    }
+
+    /**
+     * evicts all the entries, used when events might have been missed
+     */
+    private static void evictAll() {
+        GetCollectionCache.getInstance().invalidateAll();
+        AggregationResultCache.getInstance().invalidateAll();
+        CountCache.getInstance().invalidateAll();
+
+        if (MetadataCachesSingleton.isEnabled()) {
+            MetadataCachesSingleton.getInstance().invalidateAll();
+        }
+    }
+
+    private static void evictCollection(MongoNamespace ns) {
+        GetCollectionCache.getInstance().invalidateAll(ns.getDatabaseName(), ns.getCollectionName());
+        AggregationResultCache.getInstance().invalidateAll(ns.getDatabaseName(), ns.getCollectionName());
+        CountCache.getInstance().invalidateAll(ns.getDatabaseName(), ns.getCollectionName());
+    }
+
+    private static void evictProperties(String db, BsonDocument key) {
+        if (!MetadataCachesSingleton.isEnabled()) {
+            return;
+        }
+
+        if (key != null && key.isString("_id")) {
+            var id = key.getString("_id").getValue();
+
+            if (DB_META_DOCID.equals(id)) {
+                LOGGER.trace("cache invalidation bus, db properties of {} changed", db);
+                MetadataCachesSingleton.getInstance().invalidateDb(db);
+            } else if (id.startsWith(COLL_META_DOCID_PREFIX)) {
+                var coll = id.substring(COLL_META_DOCID_PREFIX.length());
+                LOGGER.trace("cache invalidation bus, collection properties of {}.{} changed", db, coll);
+                MetadataCachesSingleton.getInstance().invalidateCollection(db, coll);
+            }
+        } else {
+            // drop, rename, etc.
+            MetadataCachesSingleton.getInstance().invalidateDb(db);
+        }
+    }
+
+    private class PingSubscriber implements Subscriber<Document> {
+        private BsonTimestamp operationTime = null;
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            s.request(1);
+        }
+
+        @Override
+        public void onNext(Document reply) {
+            if (reply.get("operationTime") instanceof BsonTimestamp ts) {
+                this.operationTime = ts;
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            failed(t);
+        }
+
+        @Override
+        public void onComplete() {
+            if (operationTime != null) {
+                openStream(operationTime);
+            } else {
+                // standalone servers don't report the operation time
+                failed(new IllegalStateException("change streams are only supported on replica sets"));
+            }
+        }
+    }
+
+    private class StreamSubscriber implements Subscriber<ChangeStreamDocument<Document>> {
+        @Override
+        public void onSubscribe(Subscription s) {
+            s.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(ChangeStreamDocument<Document> event) {
+            var ns = event.getNamespace();
+
+            LOGGER.trace("cache invalidation bus, {} on {}", event.getOperationType(), ns);
+
+            if (ns == null) {
+                // dropDatabase, notified after the drop of each collection
+                if (event.getDatabaseName() != null) {
+                    evictProperties(event.getDatabaseName(), null);
+                }
+            } else if (META_COLLNAME.equals(ns.getCollectionName())) {
+                evictProperties(ns.getDatabaseName(), event.getDocumentKey());
+            } else {
+                evictCollection(ns);
+
+                if (event.getDestinationNamespace() != null) {
+                    evictCollection(event.getDestinationNamespace());
+                }
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            failed(t);
+            evictAll();
+        }
+
+        @Override
+        public void onComplete() {
+            LOGGER.debug("cache invalidation bus stream completed");
+            open = false;
+            evictAll();
+        }
+    }
+
+    private static class SingletonHolder {
+        private static final CacheInvalidationBus INSTANCE = new CacheInvalidationBus();
+
+        private SingletonHolder() {
+        }
+    }
+}
@@ -31,7 +31,10 @@ import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.internal.MongoBatchCursorAdapter;
 import static com.mongodb.client.model.Filters.eq;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
@@ -138,6 +141,20 @@ class Collections {
         return cs.isPresent() ?  coll.countDocuments(cs.get(), filters) : coll.countDocuments(filters);
     }
 
+    /**
+     * Returns the number of documents in the given collection from its metadata
+     * via estimatedDocumentCount(). The count can be inaccurate, e.g. after an
+     * unclean shutdown or with orphaned documents in sharded clusters.
+     *
+     * @param rsOps the ReplicaSet connection options
+     * @param dbName the database name
+     * @param collName the collection name
+     * @return the estimated number of documents in the given collection
+     */
+    public long getEstimatedCollectionSize(final Optional<RSOps> rsOps, final String dbName, String collName) {
+        return collection(rsOps, dbName, collName).estimatedDocumentCount();
+    }
+
     /**
      *
      * @param rsOps the ReplicaSet connection options
@@ -236,6 +253,75 @@ class Collections {
         }
     }
 
+    /**
+     * Returns a cursor over the documents of the requested page, to stream
+     * them without collecting the page. The caller must close the cursor.
+     *
+     * @param cs the client session
+     * @param rsOps the ReplicaSet connection options
+     * @param dbName the database name
+     * @param collName the collection name
+     * @param page
+     * @param pagesize
+     * @param sortBy
+     * @param filters
+     * @param hint
+     * @param keys
+     * @param batchSize the cursor batch size
+     * @return a cursor over the documents of the page
+     */
+    MongoCursor<BsonDocument> getCollectionDataCursor(
+        final Optional<ClientSession> cs,
+        final Optional<RSOps> rsOps,
+        final String dbName,
+        final String collName,
+        final int page,
+        final int pagesize,
+        final BsonDocument sortBy,
+        final BsonDocument filters,
+        final BsonDocument hint,
+        final BsonDocument keys,
+        final int batchSize)
+        throws JsonParseException {
+        var coll = collection(rsOps, dbName, collName);
+
+        return findIterable(cs, coll, sortBy, filters, hint, keys, Math.min(batchSize, pagesize))
+            .skip(pagesize * (page - 1))
+            .limit(pagesize)
+            .cursor();
+    }
+
+    /**
+     * Returns a cursor over all the documents matching the filter, to export
+     * them without pagination. The caller must close the cursor.
+     *
+     * @param cs the client session
+     * @param rsOps the ReplicaSet connection options
+     * @param dbName the database name
+     * @param collName the collection name
+     * @param sortBy
+     * @param filters
+     * @param hint
+     * @param keys
+     * @param batchSize the cursor batch size
+     * @return a cursor over the documents matching the filter
+     */
+    MongoCursor<BsonDocument> getCollectionDataCursor(
+        final Optional<ClientSession> cs,
+        final Optional<RSOps> rsOps,
+        final String dbName,
+        final String collName,
+        final BsonDocument sortBy,
+        final BsonDocument filters,
+        final BsonDocument hint,
+        final BsonDocument keys,
+        final int batchSize)
+        throws JsonParseException {
+        var coll = collection(rsOps, dbName, collName);
+
+        return findIterable(cs, coll, sortBy, filters, hint, keys, batchSize).cursor();
+    }
+
     // match from=40.900, to=41.080
     // from 41.000 -> to 41.100
     // fromIndex = 41.000-40.900=100
@@ -357,6 +443,49 @@ class Collections {
         return props;
     }
 
+    /**
+     * Gets the properties of many collections with a single query
+     *
+     * @param cs the client session
+     * @param rsOps the ReplicaSet connection options
+     * @param dbName the database name
+     * @param collNames the names of existing collections
+     * @return the properties of the collections, by collection name;
+     * {_id: collName} for collections without properties
+     */
+    public Map<String, BsonDocument> getCollectionsProps(final Optional<ClientSession> cs,
+        final Optional<RSOps> rsOps,
+        final String dbName,
+        final Collection<String> collNames) {
+        var ret = new HashMap<String, BsonDocument>();
+
+        if (collNames.isEmpty()) {
+            return ret;
+        }
+
+        var propsColl = collection(rsOps, dbName, META_COLLNAME);
+
+        var ids = new BsonArray();
+        collNames.forEach(collName -> ids.add(new BsonString(COLL_META_DOCID_PREFIX.concat(collName))));
+
+        var query = new BsonDocument("_id", new BsonDocument("$in", ids));
+
+        var found = cs.isPresent() ? propsColl.find(cs.get(), query) : propsColl.find(query);
+
+        found.forEach(props -> {
+            var collName = props.getString("_id").getValue().substring(COLL_META_DOCID_PREFIX.length());
+            props.append("_id", new BsonString(collName));
+            ret.put(collName, props);
+        });
+
+        // the collections exist, no need to check as getCollectionProps() does
+        collNames.stream()
+            .filter(collName -> !ret.containsKey(collName))
+            .forEach(collName -> ret.put(collName, new BsonDocument("_id", new BsonString(collName))));
+
+        return ret;
+    }
+
     /**
      * Returns true if the collection exists
      *
@@ -571,6 +700,8 @@ class Collections {
             mcoll.deleteOne(query);
         }
 
+        Documents.invalidateCaches(dbName, collName);
+
         return new OperationResult(HttpStatus.SC_NO_CONTENT, null, properties, null);
     }
 }
@@ -0,0 +1,192 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.db;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bson.BsonDocument;
+import org.restheart.cache.Cache;
+import org.restheart.cache.CacheFactory;
+import org.restheart.mongodb.MongoServiceConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.MongoCollection;
+
+/**
+ * Caches the counts of GET /coll?count requests that use the cached count
+ * strategy, by collection and filter.
+ *
+ * Entries expire after count-cache-ttl and are evicted on writes made via
+ * RESTHeart to the collection and, with the cache invalidation bus, on
+ * writes made by any node of the cluster.
+ *
+ * The keys are indexed by namespace, so that evicting the counts of a
+ * collection doesn't scan the whole cache.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class CountCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CountCache.class);
+
+    /**
+     * the key of the cached counts
+     */
+    record Key(MongoNamespace ns, BsonDocument filter) {
+    }
+
+    private final Cache<Key, Long> cache;
+
+    // the keys of the cached counts by namespace
+    private final Map<MongoNamespace, Set<Key>> index = new ConcurrentHashMap<>();
+
+    /**
+     *
+     * @return
+     */
+    public static CountCache getInstance() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    CountCache(long size, long ttl) {
+        this.cache = CacheFactory.createLocalCache(size, Cache.EXPIRE_POLICY.AFTER_WRITE, ttl, this::onRemoval);
+    }
+
+    /**
+     * @param db
+     * @param coll
+     * @param filter
+     * @return the cached count or null
+     */
+    public Long get(String db, String coll, BsonDocument filter) {
+        var cached = this.cache.get(new Key(new MongoNamespace(db, coll), filter == null ? new BsonDocument() : filter));
+
+        return cached != null && cached.isPresent() ? cached.get() : null;
+    }
+
+    /**
+     * @param db
+     * @param coll
+     * @param filter
+     * @param count
+     */
+    public void put(String db, String coll, BsonDocument filter, long count) {
+        var ns = new MongoNamespace(db, coll);
+
+        // don't cache until writes from other nodes can evict the entry
+        if (!CacheInvalidationBus.getInstance().watchCollection(ns)) {
+            return;
+        }
+
+        // the filter can be modified by the caller
+        var key = new Key(ns, filter == null ? new BsonDocument() : filter.clone());
+
+        this.index.computeIfAbsent(ns, k -> ConcurrentHashMap.newKeySet()).add(key);
+        this.cache.put(key, count);
+    }
+
+    /**
+     * evicts the cached counts of the collection
+     *
+     * @param db
+     * @param coll
+     */
+    public void invalidateAll(String db, String coll) {
+        invalidateAll(new MongoNamespace(db, coll));
+    }
+
+    /**
+     * evicts the cached counts of the collection
+     *
+     * @param coll
+     */
+    public void invalidateAll(MongoCollection<?> coll) {
+        invalidateAll(coll.getNamespace());
+    }
+
+    /**
+     * evicts the cached counts of all the collections of the db
+     *
+     * @param db
+     */
+    public void invalidateDb(String db) {
+        this.index.keySet().stream()
+            .filter(ns -> ns.getDatabaseName().equals(db))
+            .toList()
+            .forEach(this::invalidateAll);
+    }
+
+    /**
+     * evicts all the cached counts
+     */
+    public void invalidateAll() {
+        this.index.clear();
+        this.cache.invalidateAll();
+    }
+
+    private void invalidateAll(MongoNamespace ns) {
+        var keys = this.index.remove(ns);
+
+        if (keys != null) {
+            LOGGER.trace("invalidating {} cached counts of {}", keys.size(), ns);
+            keys.forEach(this.cache::invalidate);
+        }
+    }
+
+    /**
+     * keeps the index in sync with the cache when entries are evicted or expire
+     *
+     * @param entry the removed entry
+     */
+    private void onRemoval(Map.Entry<Key, Optional<Long>> entry) {
+        var key = entry.getKey();
+
+        // the key might have been put again (replaced)
+        if (key != null && !this.cache.asMap().containsKey(key)) {
+            this.index.computeIfPresent(key.ns(), (ns, keys) -> {
+                keys.remove(key);
+                return keys.isEmpty() ? null : keys;
+            });
+        }
+    }
+
+    /**
+     * @param ns the namespace
+     * @return the number of indexed keys of the namespace
+     */
+    int indexed(MongoNamespace ns) {
+        var keys = this.index.get(ns);
+        return keys == null ? 0 : keys.size();
+    }
+
+    private static class SingletonHolder {
+        private static final CountCache INSTANCE = MongoServiceConfiguration.get() != null
+            ? new CountCache(MongoServiceConfiguration.get().getCountCacheSize(), MongoServiceConfiguration.get().getCountCacheTTL())
+            : new CountCache(1_000, 60_000);
+
+        private SingletonHolder() {
+        }
+    }
+}
@@ -24,10 +24,13 @@ import com.mongodb.client.MongoClient;
 import com.mongodb.client.ClientSession;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
 import static com.mongodb.client.model.Filters.eq;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
@@ -231,16 +234,15 @@ public class Databases {
 
         var data = new BsonArray();
 
+        // the properties of the page's collections are loaded with a single query
+        var collsProperties = MetadataCachesSingleton.isEnabled() && !noCache
+            ? MetadataCachesSingleton.getInstance().getCollectionsProperties(dbName, _colls)
+            : collections.getCollectionsProps(cs, rsOps, dbName, _colls);
+
         _colls.stream().map((collName) -> {
             var properties= new BsonDocument("_id", new BsonString(collName));
 
-            BsonDocument collProperties;
-
-            if (MetadataCachesSingleton.isEnabled() && !noCache) {
-                collProperties = MetadataCachesSingleton.getInstance().getCollectionProperties(dbName, collName);
-            } else {
-                collProperties = collections.getCollectionProps(cs, rsOps, dbName, collName);
-            }
+            var collProperties = collsProperties.get(collName);
 
             if (collProperties != null) {
                 properties.putAll(collProperties);
@@ -405,6 +407,8 @@ public class Databases {
             db.drop();
         }
 
+        Documents.invalidateCaches(dbName);
+
         return new OperationResult(HttpStatus.SC_NO_CONTENT);
     }
 
@@ -437,6 +441,18 @@ public class Databases {
         return collections.getCollectionProps(cs, rsOps, dbName, collName);
     }
 
+    /**
+     *
+     * @param cs the client session
+     * @param rsOps the ReplicaSet connection options
+     * @param dbName the database name
+     * @param collNames the names of existing collections
+     * @return the properties of the collections, by collection name
+     */
+    public Map<String, BsonDocument> getCollectionsProperties(final Optional<ClientSession> cs, final Optional<RSOps> rsOps, final String dbName, final Collection<String> collNames) {
+        return collections.getCollectionsProps(cs, rsOps, dbName, collNames);
+    }
+
     /**
      *
      * @param rsOps the ReplicaSet connection options
@@ -465,6 +481,19 @@ public class Databases {
         return collections.getCollectionSize(cs, rsOps, dbName, collName, filter);
     }
 
+    /**
+     * Returns the number of documents in the given collection from its metadata
+     * via estimatedDocumentCount().
+     *
+     * @param rsOps the ReplicaSet connection options
+     * @param dbName the database name
+     * @param collName the collection name
+     * @return the estimated number of documents in the given collection
+     */
+    public long getEstimatedCollectionSize(Optional<RSOps> rsOps, String dbName, final String collName) {
+        return collections.getEstimatedCollectionSize(rsOps, dbName, collName);
+    }
+
     /**
      *
      * @param cs the client session
@@ -496,6 +525,70 @@ public class Databases {
         return collections.getCollectionData(cs, rsOps, dbName, collName, page, pagesize, sortBy, filters, hint, keys, useCache);
     }
 
+    /**
+     * Returns a cursor over the documents of the requested page; the
+     * documents are fetched in batches of batchSize while iterating it.
+     * The caller must close the cursor.
+     *
+     * @param cs the client session
+     * @param rsOps the ReplicaSet connection options
+     * @param dbName the database name
+     * @param collName the collection name
+     * @param page
+     * @param pagesize
+     * @param sortBy
+     * @param filters
+     * @param hint
+     * @param keys
+     * @param batchSize
+     * @return a cursor over the documents of the page
+     */
+    public MongoCursor<BsonDocument> getCollectionDataCursor(
+        final Optional<ClientSession> cs,
+        final Optional<RSOps> rsOps,
+        final String dbName,
+        final String collName,
+        final int page,
+        final int pagesize,
+        final BsonDocument sortBy,
+        final BsonDocument filters,
+        final BsonDocument hint,
+        final BsonDocument keys,
+        final int batchSize)
+        throws JsonParseException {
+        return collections.getCollectionDataCursor(cs, rsOps, dbName, collName, page, pagesize, sortBy, filters, hint, keys, batchSize);
+    }
+
+    /**
+     * Returns a cursor over all the documents matching the filter, without
+     * pagination; documents are fetched in batches of batchSize while
+     * iterating it. The caller must close the cursor.
+     *
+     * @param cs the client session
+     * @param rsOps the ReplicaSet connection options
+     * @param dbName the database name
+     * @param collName the collection name
+     * @param sortBy
+     * @param filters
+     * @param hint
+     * @param keys
+     * @param batchSize
+     * @return a cursor over the documents matching the filter
+     */
+    public MongoCursor<BsonDocument> getCollectionDataCursor(
+        final Optional<ClientSession> cs,
+        final Optional<RSOps> rsOps,
+        final String dbName,
+        final String collName,
+        final BsonDocument sortBy,
+        final BsonDocument filters,
+        final BsonDocument hint,
+        final BsonDocument keys,
+        final int batchSize)
+        throws JsonParseException {
+        return collections.getCollectionDataCursor(cs, rsOps, dbName, collName, sortBy, filters, hint, keys, batchSize);
+    }
+
     /**
      *
      * @param cs the client session
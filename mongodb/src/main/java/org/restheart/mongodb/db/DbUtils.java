@@ -107,6 +107,16 @@ public class DbUtils {
      */
     public final static FindOneAndReplaceOptions FOR_AFTER_NOT_UPSERT_OPS = new FindOneAndReplaceOptions().upsert(false).returnDocument(ReturnDocument.AFTER);
 
+    /**
+     *
+     */
+    public final static FindOneAndUpdateOptions FOU_BEFORE_NOT_UPSERT_OPS = new FindOneAndUpdateOptions().upsert(false).returnDocument(ReturnDocument.BEFORE);
+
+    /**
+     *
+     */
+    public final static FindOneAndReplaceOptions FOR_BEFORE_NOT_UPSERT_OPS = new FindOneAndReplaceOptions().upsert(false).returnDocument(ReturnDocument.BEFORE);
+
     /**
      *
      */
@@ -292,6 +302,122 @@ public class DbUtils {
         };
     }
 
+    /**
+     * Updates a mongo document only if its _etag matches, with the etag
+     * condition in the filter of the write operation
+     *
+     * ------------------------------------------------------------------------------------------
+     * | method | write operation                                        | round trips          |
+     * ------------------------------------------------------------------------------------------
+     * | PUT    | findOneAndReplace(upsert:false, returnDocument:BEFORE) | 1                    |
+     * | POST   | findOneAndReplace(upsert:false, returnDocument:BEFORE) | 1                    |
+     * | PATCH  | findOneAndUpdate(upsert:false, returnDocument:BEFORE)  | 2, reads the new doc |
+     * ------------------------------------------------------------------------------------------
+     *
+     * The write returns the old document, required by MongoResponse.rollback().
+     * If no document matches, a single probe without the etag condition tells
+     * a missing document from a precondition failure.
+     *
+     * @param cs the client session
+     * @param method the request method
+     * @param writeMode the write mode, either UPDATE or UPSERT
+     * @param coll the collection
+     * @param documentId the document id
+     * @param filter
+     * @param shardKeys
+     * @param data
+     * @param etag the etag the document must have, null if the document must not have an etag
+     * @return the OperationResult, with httpCode -1 if the document was updated,
+     * SC_PRECONDITION_FAILED if etag does not match, SC_CONFLICT if etag is null and
+     * the document has an etag, SC_NOT_FOUND if the document does not exist and
+     * writeMode is UPDATE; null if the document does not exist and writeMode is UPSERT
+     */
+    public static OperationResult writeDocumentIfMatch(
+        final Optional<ClientSession> cs,
+        final METHOD method,
+        final WRITE_MODE writeMode,
+        final MongoCollection<BsonDocument> coll,
+        final BsonValue documentId,
+        final Optional<BsonDocument> filter,
+        final Optional<BsonDocument> shardKeys,
+        final BsonValue data,
+        final BsonValue etag) {
+        Objects.requireNonNull(coll);
+        Objects.requireNonNull(documentId);
+        Objects.requireNonNull(data);
+
+        var query = eq("_id", documentId);
+
+        if (shardKeys.isPresent() && !shardKeys.get().isEmpty()) {
+            query = and(query, shardKeys.get());
+        }
+
+        if (filter.isPresent() && !filter.get().isEmpty()) {
+            query = and(query, filter.get());
+        }
+
+        var ifMatch = and(query, etag == null ? exists("_etag", false) : eq("_etag", etag));
+
+        BsonDocument oldDocument;
+        BsonDocument newDocument;
+
+        try {
+            switch(method) {
+                case PATCH -> {
+                    if (data.isArray()) {
+                        List<Bson> updateAggregation = data.asArray().stream().map(d -> (Bson) d).collect(Collectors.toList());
+                        oldDocument = cs.isPresent()
+                            ? coll.findOneAndUpdate(cs.get(), ifMatch, updateAggregation, FOU_BEFORE_NOT_UPSERT_OPS)
+                            : coll.findOneAndUpdate(ifMatch, updateAggregation, FOU_BEFORE_NOT_UPSERT_OPS);
+                    } else {
+                        var update = getUpdateDocument(data.asDocument(), false);
+                        oldDocument = cs.isPresent()
+                            ? coll.findOneAndUpdate(cs.get(), ifMatch, update, FOU_BEFORE_NOT_UPSERT_OPS)
+                            : coll.findOneAndUpdate(ifMatch, update, FOU_BEFORE_NOT_UPSERT_OPS);
+                    }
+
+                    // the result of update operators is only known to the db
+                    newDocument = oldDocument == null
+                        ? null
+                        : cs.isPresent() ? coll.find(cs.get(), query).first() : coll.find(query).first();
+                }
+
+                case PUT, POST -> {
+                    var replacement = getReplaceDocument(data.asDocument());
+
+                    oldDocument = cs.isPresent()
+                        ? coll.findOneAndReplace(cs.get(), ifMatch, replacement, FOR_BEFORE_NOT_UPSERT_OPS)
+                        : coll.findOneAndReplace(ifMatch, replacement, FOR_BEFORE_NOT_UPSERT_OPS);
+
+                    // the new document is the replacement
+                    if (oldDocument == null) {
+                        newDocument = null;
+                    } else {
+                        newDocument = replacement.clone();
+                        newDocument.put("_id", documentId);
+                    }
+                }
+
+                default -> throw new UnsupportedOperationException("unsupported method " + method);
+            }
+        } catch (IllegalArgumentException iae) {
+            return new OperationResult(HttpStatus.SC_BAD_REQUEST, null, iae);
+        }
+
+        if (oldDocument != null) {
+            return new OperationResult(-1, oldDocument, newDocument);
+        }
+
+        // no match, probe the document without the etag condition
+        var current = cs.isPresent() ? coll.find(cs.get(), query).first() : coll.find(query).first();
+
+        if (current == null) {
+            return writeMode == WRITE_MODE.UPDATE ? new OperationResult(HttpStatus.SC_NOT_FOUND) : null;
+        } else {
+            return new OperationResult(etag == null ? HttpStatus.SC_CONFLICT : HttpStatus.SC_PRECONDITION_FAILED, current.get("_etag"), current, null);
+        }
+    }
+
     /**
      *
      * @param cs the client session
@@ -122,7 +122,7 @@ public class Documents {
         // genereate new etag
         var newEtag = new BsonObjectId();
 
-        final OperationResult writeResult;
+        final BsonValue data;
 
         if (newContent.isDocument()) {
             // the content is a document or an update operator expression
@@ -132,32 +132,52 @@ public class Documents {
 
             content.put("_etag", newEtag);
 
-            writeResult = DbUtils.writeDocument(
-                cs,
-                method,
-                writeMode,
-                mcoll,
-                documentId,
-                filter,
-                shardKeys,
-                content);
+            data = content;
         } else {
             // the content is an aggregation update array
             var newContentPipeline = newContent.asArray();
 
             newContentPipeline.add(document().put("$set", document().put("_etag", newEtag)).get());
 
-            writeResult = DbUtils.writeDocument(
+            data = newContentPipeline;
+        }
+
+        if (checkEtag && documentId.isPresent() && writeMode != WRITE_MODE.INSERT) {
+            // the etag condition is part of the write filter
+            var conditionalResult = DbUtils.writeDocumentIfMatch(
                 cs,
                 method,
                 writeMode,
                 mcoll,
-                documentId,
+                documentId.get(),
                 filter,
                 shardKeys,
-                newContentPipeline);
+                data,
+                etag(requestEtag));
+
+            // null if the document does not exist and it gets upserted below
+            if (conditionalResult != null) {
+                if (conditionalResult.getHttpCode() > 0) {
+                    // not found, etag not matching or error
+                    return conditionalResult;
+                }
+
+                invalidateCaches(dbName, collName);
+
+                return new OperationResult(HttpStatus.SC_OK, newEtag, conditionalResult.getOldData(), conditionalResult.getNewData());
+            }
         }
 
+        var writeResult = DbUtils.writeDocument(
+            cs,
+            method,
+            writeMode,
+            mcoll,
+            documentId,
+            filter,
+            shardKeys,
+            data);
+
         var oldDocument = writeResult.getOldData();
         var newDocument = writeResult.getNewData();
 
@@ -175,8 +195,7 @@ public class Documents {
         } else {
             var httpCode = writeResult.getHttpCode() > 0 ? writeResult.getHttpCode() : oldDocument == null ? HttpStatus.SC_CREATED : HttpStatus.SC_OK;
 
-            // invalidate the cache entris of this collection
-            GetCollectionCache.getInstance().invalidateAll(dbName, collName);
+            invalidateCaches(dbName, collName);
             return new OperationResult(httpCode, newEtag, oldDocument, newDocument, writeResult.getCause());
         }
     }
@@ -211,18 +230,18 @@ public class Documents {
             .filter(d -> d != null && d.isDocument())
             .forEachOrdered(document -> document.asDocument().put("_etag", newEtag));
 
-        var ret = DbUtils.bulkWriteDocuments(
-            cs,
-            mcoll,
-            documents,
-            filter,
-            shardKeys,
-            writeMode);
-
-        // invalidate the cache entris of this collection
-        GetCollectionCache.getInstance().invalidateAll(dbName, collName);
-
-        return ret;
+        try {
+            return DbUtils.bulkWriteDocuments(
+                cs,
+                mcoll,
+                documents,
+                filter,
+                shardKeys,
+                writeMode);
+        } finally {
+            // with unordered writes, some documents might be written even if the bulk write fails
+            invalidateCaches(dbName, collName);
+        }
     }
 
     /**
@@ -262,16 +281,15 @@ public class Documents {
 
         try {
             var result = cs.isPresent() ? mcoll.bulkWrite(cs.get(), patches) : mcoll.bulkWrite(patches);
-            var ret = new BulkOperationResult(HttpStatus.SC_OK, null, result);
-
-            // invalidate the cache entris of this collection
-            GetCollectionCache.getInstance().invalidateAll(dbName, collName);
-            return ret;
+            return new BulkOperationResult(HttpStatus.SC_OK, null, result);
         } catch (MongoBulkWriteException mce) {
             return switch (mce.getCode()) {
                 case BAD_VALUE_KEY_ERROR -> new BulkOperationResult(ResponseHelper.getHttpStatusFromErrorCode(mce.getCode()), null, null);
                 default -> throw mce;
             };
+        } finally {
+            // some documents might be updated even if the bulk write fails
+            invalidateCaches(dbName, collName);
         }
     }
 
@@ -317,8 +335,7 @@ public class Documents {
                 requestEtag,
                 HttpStatus.SC_NO_CONTENT, true);
         } else {
-            // invalidate the cache entris of this collection
-            GetCollectionCache.getInstance().invalidateAll(dbName, collName);
+            invalidateCaches(dbName, collName);
             return new OperationResult(HttpStatus.SC_NO_CONTENT, oldDocument);
         }
     }
@@ -383,12 +400,13 @@ public class Documents {
 
         deletes.add(new DeleteManyModel<>(_filter));
 
-        var result = cs.isPresent() ? mcoll.bulkWrite(cs.get(), deletes) : mcoll.bulkWrite(deletes);
-
-        // invalidate the cache entris of this collection
-        GetCollectionCache.getInstance().invalidateAll(dbName, collName);
-
-        return new BulkOperationResult(HttpStatus.SC_OK, null, result);
+        try {
+            var result = cs.isPresent() ? mcoll.bulkWrite(cs.get(), deletes) : mcoll.bulkWrite(deletes);
+            return new BulkOperationResult(HttpStatus.SC_OK, null, result);
+        } finally {
+            // some documents might be deleted even if the bulk write fails
+            invalidateCaches(dbName, collName);
+        }
     }
 
     private OperationResult optimisticCheckEtag(
@@ -430,23 +448,12 @@ public class Documents {
             return new OperationResult(HttpStatus.SC_CONFLICT, oldEtag, oldDocument, null);
         }
 
-        BsonValue _requestEtag;
-
-        if (ObjectId.isValid(requestEtag)) {
-            _requestEtag = new BsonObjectId(new ObjectId(requestEtag));
-        } else {
-            // restheart generates ObjectId etags, but here we support
-            // strings as well
-            _requestEtag = new BsonString(requestEtag);
-        }
-
-        if (Objects.equals(_requestEtag, oldEtag)) {
+        if (Objects.equals(etag(requestEtag), oldEtag)) {
             var query = eq("_id", oldDocument.get("_id"));
 
             var newDocument = cs.isPresent() ? coll.find(cs.get(), query).first() : coll.find(query).first();
 
-            // invalidate the cache entris of this collection
-            GetCollectionCache.getInstance().invalidateAll(coll);
+            invalidateCaches(coll.getNamespace().getDatabaseName(), coll.getNamespace().getCollectionName());
 
             return new OperationResult(httpStatusIfOk, newEtag, oldDocument, newDocument);
         } else {
@@ -480,4 +487,43 @@ public class Documents {
                 null);
         }
     }
+
+    /**
+     * invalidates the cache entries of the collection
+     *
+     * @param dbName the database name
+     * @param collName the collection name
+     */
+    public static void invalidateCaches(final String dbName, final String collName) {
+        GetCollectionCache.getInstance().invalidateAll(dbName, collName);
+        AggregationResultCache.getInstance().invalidateAll(dbName, collName);
+        CountCache.getInstance().invalidateAll(dbName, collName);
+    }
+
+    /**
+     * invalidates the cache entries of all the collections of the database
+     *
+     * @param dbName the database name
+     */
+    public static void invalidateCaches(final String dbName) {
+        GetCollectionCache.getInstance().invalidateDb(dbName);
+        AggregationResultCache.getInstance().invalidateDb(dbName);
+        CountCache.getInstance().invalidateDb(dbName);
+    }
+
+    /**
+     * @param requestEtag the etag sent by the client
+     * @return the etag as stored in the documents, null if requestEtag is null
+     */
+    private static BsonValue etag(String requestEtag) {
+        if (requestEtag == null) {
+            return null;
+        } else if (ObjectId.isValid(requestEtag)) {
+            return new BsonObjectId(new ObjectId(requestEtag));
+        } else {
+            // restheart generates ObjectId etags, but here we support
+            // strings as well
+            return new BsonString(requestEtag);
+        }
+    }
 }
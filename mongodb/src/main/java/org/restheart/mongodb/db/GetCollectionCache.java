@@ -21,11 +21,11 @@
 package org.restheart.mongodb.db;
 
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
+import java.util.Optional;
 import java.util.TreeMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import org.bson.BsonDocument;
@@ -39,6 +39,7 @@ import org.restheart.utils.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.mongodb.MongoNamespace;
 import com.mongodb.client.MongoCollection;
 
 
@@ -64,9 +65,12 @@ public class GetCollectionCache {
 
     private final Cache<GetCollectionCacheKey, List<BsonDocument>> cache;
 
+    // secondary index of the cache keys, avoids scanning all the keys on lookups and invalidations
+    private final GetCollectionCacheIndex index = new GetCollectionCacheIndex();
+
     private GetCollectionCache() {
         if (CACHE_ENABLED) {
-            cache = CacheFactory.createLocalCache(CACHE_SIZE, Cache.EXPIRE_POLICY.AFTER_WRITE, CACHE_TTL);
+            cache = CacheFactory.createLocalCache(CACHE_SIZE, Cache.EXPIRE_POLICY.AFTER_WRITE, CACHE_TTL, this::onRemoval);
 
             if (LOGGER.isTraceEnabled()) {
                 // print stats every 1 minute
@@ -86,7 +90,11 @@ public class GetCollectionCache {
     public void put(GetCollectionCacheKey key, List<BsonDocument> value) {
         if (cache == null) return;
 
+        // don't cache until writes from other nodes can evict the entry
+        if (!CacheInvalidationBus.getInstance().watchCollection(key.collection().getNamespace())) return;
+
         cache.put(key, value);
+        index.add(key);
     }
 
     public Pair<GetCollectionCacheKey, List<BsonDocument>> find(GetCollectionCacheKey key) {
@@ -110,24 +118,28 @@ public class GetCollectionCache {
     /**
      *
      * @param key
-     * @param allocationPolicy
+     * @param remove
      * @return
      */
     private Pair<GetCollectionCacheKey, List<BsonDocument>> _get(GetCollectionCacheKey key, boolean remove) {
         if (cache == null) return null;
 
         // return the first entry with all avaible documents
-        var _bestKey = cache.asMap().keySet().stream()
-            .filter(cacheKeyFilter(key))
-            .findFirst();
+        var _bestKey = index.find(key);
+
+        if (_bestKey != null) {
+            var _cached = remove ? cache.remove(_bestKey) : cache.get(_bestKey);
 
-        if (_bestKey.isPresent()) {
-            var _cached = remove ? cache.remove(_bestKey.get()) : cache.get(_bestKey.get());
+            if (remove) {
+                index.remove(_bestKey);
+            }
 
             if (_cached != null && _cached.isPresent()) {
-                LOGGER.debug("{} cached documents. cache entry id {}", ansi().fg(GREEN).bold().a("found").reset().toString(), _bestKey.get().cursorId());
-                return new Pair<>(_bestKey.get(), _cached.get());
+                LOGGER.debug("{} cached documents. cache entry id {}", ansi().fg(GREEN).bold().a("found").reset().toString(), _bestKey.cursorId());
+                return new Pair<>(_bestKey, _cached.get());
             } else {
+                // the entry expired and the removal listener has not been invoked yet
+                index.remove(_bestKey);
                 LOGGER.debug("{} cached documents.", ansi().fg(RED).bold().a("no").reset().toString());
                 return null;
             }
@@ -141,35 +153,64 @@ public class GetCollectionCache {
         if (cache == null) return;
 
         cache.invalidate(key);
+        index.remove(key);
     }
 
     public void invalidateAll(String db, String coll) {
         if (cache == null) return;
 
-        cache.asMap().keySet().stream()
-            .filter(k -> k.collection().getNamespace().getDatabaseName().equals(db))
-            .filter(k -> k.collection().getNamespace().getCollectionName().equals(coll))
-            .forEach(k -> cache.invalidate(k));
+        invalidateAll(new MongoNamespace(db, coll));
     }
 
     public void invalidateAll(MongoCollection<?> coll) {
         if (cache == null) return;
 
-        cache.asMap().keySet().stream()
-            .filter(k -> k.collection().getNamespace().equals(coll.getNamespace()))
-            .forEach(k -> cache.invalidate(k));
+        invalidateAll(coll.getNamespace());
     }
 
-    private Predicate<? super GetCollectionCacheKey> cacheKeyFilter(GetCollectionCacheKey requested) {
-        if (cache == null) return null;
+    /**
+     * evicts the entries of all the collections of the db
+     *
+     * @param db
+     */
+    public void invalidateDb(String db) {
+        if (cache == null) return;
+
+        index.keys(db).forEach(k -> {
+            cache.invalidate(k);
+            index.remove(k);
+        });
+    }
+
+    /**
+     * evicts all the entries
+     */
+    public void invalidateAll() {
+        if (cache == null) return;
+
+        cache.invalidateAll();
+        index.clear();
+    }
+
+    private void invalidateAll(MongoNamespace ns) {
+        index.keys(ns).forEach(k -> {
+            cache.invalidate(k);
+            index.remove(k);
+        });
+    }
+
+    /**
+     * keeps the index in sync with the cache when entries are evicted or expire
+     *
+     * @param entry the removed entry
+     */
+    private void onRemoval(Map.Entry<GetCollectionCacheKey, Optional<List<BsonDocument>>> entry) {
+        var key = entry.getKey();
 
-        return cached
-            -> Objects.equals(cached.collection().getNamespace(), requested.collection().getNamespace())
-            && Objects.equals(cached.filter(), requested.filter())
-            && Objects.equals(cached.sort(), requested.sort())
-            && Objects.equals(cached.keys(), requested.keys())
-            && ((cached.from() <= requested.from() && cached.to() >= requested.to())
-                || (cached.exhausted() && cached.from() <= requested.from()));
+        // the key might have been put again (replaced)
+        if (key != null && !cache.asMap().containsKey(key)) {
+            index.remove(key);
+        }
     }
 
     private TreeMap<String, Long> getCacheSizes() {
@@ -0,0 +1,183 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.db;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Collectors;
+
+import org.bson.BsonDocument;
+
+import com.mongodb.MongoNamespace;
+
+/**
+ * Secondary index over the keys of the GetCollectionCache.
+ *
+ * Keys are grouped by namespace and by query shape (filter, sort and keys);
+ * within a shape they are ordered by the from index of the cached window.
+ * This allows to find the window covering a requested range and to collect
+ * the keys of a namespace without scanning the whole cache.
+ *
+ * Lookups are lock free; updates are serialized.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+class GetCollectionCacheIndex {
+    record Shape(BsonDocument filter, BsonDocument sort, BsonDocument keys) {
+        static Shape of(GetCollectionCacheKey key) {
+            return new Shape(key.filter(), key.sort(), key.keys());
+        }
+    }
+
+    private final Map<MongoNamespace, Map<Shape, ConcurrentSkipListMap<Integer, Set<GetCollectionCacheKey>>>> index = new ConcurrentHashMap<>();
+
+    /**
+     * @param key the key to add to the index
+     */
+    synchronized void add(GetCollectionCacheKey key) {
+        index.computeIfAbsent(key.collection().getNamespace(), ns -> new ConcurrentHashMap<>())
+            .computeIfAbsent(Shape.of(key), s -> new ConcurrentSkipListMap<>())
+            .computeIfAbsent(key.from(), f -> ConcurrentHashMap.newKeySet())
+            .add(key);
+    }
+
+    /**
+     * @param key the key to remove from the index
+     */
+    synchronized void remove(GetCollectionCacheKey key) {
+        var ns = key.collection().getNamespace();
+        var shapes = index.get(ns);
+
+        if (shapes == null) {
+            return;
+        }
+
+        var shape = Shape.of(key);
+        var ranges = shapes.get(shape);
+
+        if (ranges == null) {
+            return;
+        }
+
+        var keys = ranges.get(key.from());
+
+        if (keys != null) {
+            keys.remove(key);
+
+            if (keys.isEmpty()) {
+                ranges.remove(key.from());
+            }
+        }
+
+        if (ranges.isEmpty()) {
+            shapes.remove(shape);
+        }
+
+        if (shapes.isEmpty()) {
+            index.remove(ns);
+        }
+    }
+
+    /**
+     * removes all the keys from the index
+     */
+    synchronized void clear() {
+        index.clear();
+    }
+
+    /**
+     * Finds a key whose window contains all the documents of the requested one,
+     * i.e. a key with the same namespace and shape with
+     * {@code from <= requested.from} and either {@code to >= requested.to}
+     * or exhausted.
+     *
+     * Candidates are visited starting from the greatest from index
+     * not greater than the requested one.
+     *
+     * @param requested the requested key
+     * @return the key of the covering window or null
+     */
+    GetCollectionCacheKey find(GetCollectionCacheKey requested) {
+        var shapes = index.get(requested.collection().getNamespace());
+
+        if (shapes == null) {
+            return null;
+        }
+
+        var ranges = shapes.get(Shape.of(requested));
+
+        if (ranges == null) {
+            return null;
+        }
+
+        for (var keys : ranges.headMap(requested.from(), true).descendingMap().values()) {
+            for (var cached : keys) {
+                if (cached.to() >= requested.to() || cached.exhausted()) {
+                    return cached;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @param ns the namespace
+     * @return the indexed keys of the namespace
+     */
+    List<GetCollectionCacheKey> keys(MongoNamespace ns) {
+        var shapes = index.get(ns);
+
+        if (shapes == null) {
+            return List.of();
+        }
+
+        return shapes.values().stream()
+            .flatMap(ranges -> ranges.values().stream())
+            .flatMap(Set::stream)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * @param db the database
+     * @return the indexed keys of the collections of the database
+     */
+    List<GetCollectionCacheKey> keys(String db) {
+        return index.keySet().stream()
+            .filter(ns -> ns.getDatabaseName().equals(db))
+            .flatMap(ns -> keys(ns).stream())
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the number of indexed keys
+     */
+    int size() {
+        return index.values().stream()
+            .flatMap(shapes -> shapes.values().stream())
+            .flatMap(ranges -> ranges.values().stream())
+            .mapToInt(Set::size)
+            .sum();
+    }
+}
@@ -124,6 +124,9 @@ public class GridFs {
 
                 return new OperationResult(SC_CREATED, new BsonObjectId(etag), _id);
             }
+        } finally {
+            // bucketName is the name of the files collection
+            Documents.invalidateCaches(dbName, bucketName);
         }
     }
 
@@ -254,6 +257,8 @@ public class GridFs {
         } catch (MongoGridFSException e) {
             LOGGER.error("Can't delete fileId '{}'", file.getId(), e);
             return new OperationResult(SC_NOT_FOUND);
+        } finally {
+            Documents.invalidateCaches(dbName, bucketName);
         }
 
         return new OperationResult(SC_NO_CONTENT);
@@ -280,6 +285,7 @@ public class GridFs {
     public void deleteChunksCollection(final Optional<RSOps> rsOps, final String dbName, final String bucketName) {
         var chunksCollName = extractBucketName(bucketName).concat(".chunks");
         collections.collection(rsOps, dbName, chunksCollName).drop();
+        Documents.invalidateCaches(dbName, chunksCollName);
     }
 
     /**
@@ -329,6 +335,8 @@ public class GridFs {
                 shardKeys,
                 DbUtils.getUpdateDocument(content, method == METHOD.PATCH)); // if PATCH, then flatten content to update only passed properties
 
+        Documents.invalidateCaches(dbName, collName);
+
         var oldDocument = updateResult.getOldData();
 
         switch(method) {
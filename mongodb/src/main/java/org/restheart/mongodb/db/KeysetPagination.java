@@ -0,0 +1,261 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.db;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonInvalidOperationException;
+import org.bson.BsonNull;
+import org.bson.BsonValue;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonParseException;
+import org.bson.json.JsonWriterSettings;
+
+import io.undertow.util.HttpString;
+
+/**
+ * Keyset (seek) pagination of GET /coll
+ *
+ * The continuation token encodes the sort and the values of the sort keys of
+ * the last document of a page. The next page is the first page of the
+ * documents that follow that document in the sort order, so it is read with
+ * a range filter on the sort keys instead of skipping the previous pages.
+ *
+ * The sort is made total adding _id to it. As with any range query, the sort
+ * keys should have a single BSON type: MongoDB compares values of different
+ * types, including null and missing fields, in sort but not in range filters.
+ *
+ * The token needs the values of the sort keys, so the sort keys that the
+ * requested projection leaves out are added to it and removed from the
+ * documents of the page.
+ */
+public class KeysetPagination {
+    /**
+     * the response header with the continuation token of the next page
+     */
+    public static final HttpString CONTINUATION_TOKEN_HEADER = HttpString.tryFromString("Continuation-Token");
+
+    private static final JsonWriterSettings TOKEN_JSON_SETTINGS = JsonWriterSettings.builder().outputMode(JsonMode.EXTENDED).build();
+
+    private static final String SORT_KEY = "s";
+    private static final String VALUES_KEY = "v";
+
+    private KeysetPagination() {
+    }
+
+    /**
+     * @param sort the requested sort
+     * @return the sort with _id as the last key, if missing, to make it total
+     * @throws IllegalArgumentException if the sort has not numeric directions, e.g. $meta
+     */
+    public static BsonDocument totalSort(BsonDocument sort) throws IllegalArgumentException {
+        var ret = new BsonDocument();
+
+        for (var key: sort.keySet()) {
+            ret.put(key, new BsonInt32(direction(sort.get(key))));
+        }
+
+        if (!ret.containsKey("_id")) {
+            ret.put("_id", new BsonInt32(1));
+        }
+
+        return ret;
+    }
+
+    private static int direction(BsonValue value) {
+        if (value == null || !value.isNumber()) {
+            throw new IllegalArgumentException("keyset pagination requires a sort with directions 1 or -1");
+        }
+
+        return value.asNumber().intValue() < 0 ? -1 : 1;
+    }
+
+    /**
+     * @param totalSort the sort returned by totalSort()
+     * @param last the last document of the page
+     * @return the continuation token for the page that follows the document
+     */
+    public static String token(BsonDocument totalSort, BsonDocument last) {
+        var values = new BsonArray();
+
+        totalSort.keySet().stream().map(key -> value(last, key)).forEachOrdered(values::add);
+
+        var token = new BsonDocument(SORT_KEY, totalSort).append(VALUES_KEY, values);
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.toJson(TOKEN_JSON_SETTINGS).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param totalSort the sort returned by totalSort()
+     * @param token the continuation token
+     * @return the filter that matches the documents following the one encoded by the token
+     * @throws IllegalArgumentException if the token is not valid or was issued for a different sort
+     */
+    public static BsonDocument filter(BsonDocument totalSort, String token) throws IllegalArgumentException {
+        BsonDocument decoded;
+
+        try {
+            decoded = BsonDocument.parse(new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8));
+        } catch(IllegalArgumentException | JsonParseException | BsonInvalidOperationException e) {
+            throw new IllegalArgumentException("invalid continuation token");
+        }
+
+        if (!decoded.isDocument(SORT_KEY) || !decoded.isArray(VALUES_KEY)) {
+            throw new IllegalArgumentException("invalid continuation token");
+        }
+
+        var sort = decoded.getDocument(SORT_KEY);
+        var values = decoded.getArray(VALUES_KEY);
+
+        var keys = new ArrayList<>(totalSort.keySet());
+
+        // the order of the keys matters, that is ignored by equals()
+        if (!sort.equals(totalSort) || !keys.equals(new ArrayList<>(sort.keySet())) || values.size() != keys.size()) {
+            throw new IllegalArgumentException("the continuation token was issued for a different sort");
+        }
+        var or = new BsonArray();
+
+        // (k0 > v0) or (k0 = v0 and k1 > v1) or ... with < for descending keys
+        for (var i = 0; i < keys.size(); i++) {
+            var clause = new BsonDocument();
+
+            for (var j = 0; j < i; j++) {
+                // $eq, a value from the token can be an operator document
+                clause.put(keys.get(j), new BsonDocument("$eq", values.get(j)));
+            }
+
+            var op = direction(totalSort.get(keys.get(i))) > 0 ? "$gt" : "$lt";
+            clause.put(keys.get(i), new BsonDocument(op, values.get(i)));
+
+            or.add(clause);
+        }
+
+        return or.size() == 1 ? or.get(0).asDocument() : new BsonDocument("$or", or);
+    }
+
+    /**
+     * the projection that returns the sort keys
+     *
+     * @param projection the projection to read the page with
+     * @param added the top level fields added to the requested projection,
+     * to be removed from the documents of the page
+     */
+    public record Projection(BsonDocument projection, Set<String> added) {
+        /**
+         * removes the fields added to the requested projection
+         *
+         * @param doc a document of the page
+         */
+        public void strip(BsonDocument doc) {
+            added.forEach(doc::remove);
+        }
+    }
+
+    /**
+     * @param totalSort the sort returned by totalSort()
+     * @param projection the requested projection, can be null
+     * @return the projection with the sort keys that the requested one leaves out
+     * @throws IllegalArgumentException if a sort key cannot be added to the projection
+     */
+    public static Projection projection(BsonDocument totalSort, BsonDocument projection) throws IllegalArgumentException {
+        if (projection == null || projection.isEmpty()) {
+            return new Projection(projection, Set.of());
+        }
+
+        var ret = projection.clone();
+        var added = new LinkedHashSet<String>();
+
+        // in an inclusion projection the fields that are not specified are left out
+        var inclusion = projection.entrySet().stream()
+            .filter(e -> !"_id".equals(e.getKey()))
+            .anyMatch(e -> !isExclusion(e.getValue()));
+
+        for (var key: totalSort.keySet()) {
+            var root = key.split("\\.")[0];
+
+            if ("_id".equals(root)) {
+                // _id is returned unless excluded
+                var id = projection.get("_id");
+
+                if (id != null && isExclusion(id)) {
+                    ret.remove("_id");
+                    added.add("_id");
+                } else if (id != null && !isInclusion(id)) {
+                    throw notReturned(key);
+                }
+
+                continue;
+            }
+
+            var related = projection.keySet().stream()
+                .filter(p -> p.equals(root) || p.startsWith(root + "."))
+                .toList();
+
+            if (inclusion && related.isEmpty()) {
+                ret.put(key, new BsonInt32(1));
+                added.add(root);
+            } else if (inclusion && related.stream().noneMatch(p -> (key.equals(p) || key.startsWith(p + ".")) && isInclusion(projection.get(p)))) {
+                // the sort key would be a path collision or partially returned
+                throw notReturned(key);
+            } else if (!inclusion && related.stream().anyMatch(p -> key.equals(p) || key.startsWith(p + ".") || p.startsWith(key + "."))) {
+                throw notReturned(key);
+            }
+        }
+
+        return new Projection(ret, added);
+    }
+
+    private static boolean isInclusion(BsonValue value) {
+        return (value.isNumber() && value.asNumber().doubleValue() != 0) || (value.isBoolean() && value.asBoolean().getValue());
+    }
+
+    private static boolean isExclusion(BsonValue value) {
+        return (value.isNumber() && value.asNumber().doubleValue() == 0) || (value.isBoolean() && !value.asBoolean().getValue());
+    }
+
+    private static IllegalArgumentException notReturned(String key) {
+        return new IllegalArgumentException("keyset pagination requires the keys parameter to return the whole sort key " + key);
+    }
+
+    /**
+     * @return the value of the dot notation key, or null if missing
+     */
+    private static BsonValue value(BsonDocument doc, String key) {
+        BsonValue current = doc;
+
+        for (var token: key.split("\\.")) {
+            if (current == null || !current.isDocument()) {
+                return BsonNull.VALUE;
+            }
+
+            current = current.asDocument().get(token);
+        }
+
+        return current == null ? BsonNull.VALUE : current;
+    }
+}
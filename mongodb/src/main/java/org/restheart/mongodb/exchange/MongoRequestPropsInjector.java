@@ -27,7 +27,10 @@ import java.util.Optional;
 import org.bson.BsonDocument;
 import org.bson.BsonValue;
 import org.bson.json.JsonParseException;
+import static org.restheart.exchange.ExchangeKeys.AFTER_QPARAM_KEY;
 import static org.restheart.exchange.ExchangeKeys.AGGREGATION_VARIABLES_QPARAM_KEY;
+import org.restheart.exchange.ExchangeKeys.COUNT_STRATEGY;
+import static org.restheart.exchange.ExchangeKeys.COUNT_STRATEGY_QPARAM_KEY;
 import org.restheart.exchange.ExchangeKeys.DOC_ID_TYPE;
 import static org.restheart.exchange.ExchangeKeys.DOC_ID_TYPE_QPARAM_KEY;
 import static org.restheart.exchange.ExchangeKeys.FILTER_QPARAM_KEY;
@@ -165,12 +168,37 @@ public class MongoRequestPropsInjector {
             request.setPage(page);
         }
 
+        // get and check after parameter (keyset pagination)
+        var __after = exchange.getQueryParameters().get(AFTER_QPARAM_KEY);
+
+        if (__after != null) {
+            if (page > 1) {
+                response.setInError(HttpStatus.SC_BAD_REQUEST, "illegal page paramenter, it cannot be used with the after parameter");
+                return;
+            }
+
+            // ?after with no value requests the first page
+            request.setAfter(__after.isEmpty() || __after.getFirst() == null ? "" : __after.getFirst().strip());
+        }
+
         var __count = exchange.getQueryParameters().get("count");
 
         if (__count != null) {
             request.setCount(true);
         }
 
+        // get and check countStrategy parameter
+        var __countStrategy = exchange.getQueryParameters().get(COUNT_STRATEGY_QPARAM_KEY);
+
+        if (__countStrategy != null && !__countStrategy.isEmpty() && __countStrategy.getFirst() != null) {
+            try {
+                request.setCountStrategy(COUNT_STRATEGY.valueOf(__countStrategy.getFirst().strip().toUpperCase()));
+            } catch (IllegalArgumentException iae) {
+                response.setInError(HttpStatus.SC_BAD_REQUEST, "illegal countStrategy parameter, it must be EXACT, ESTIMATED or CACHED");
+                return;
+            }
+        }
+
         // get and check sort_by parameter
         Deque<String> sort_by = null;
 
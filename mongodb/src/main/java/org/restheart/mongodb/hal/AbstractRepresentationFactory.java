@@ -25,8 +25,10 @@ import static java.lang.Math.toIntExact;
 import java.util.TreeMap;
 import org.bson.BsonArray;
 import org.bson.BsonInt32;
+import org.bson.BsonString;
 import org.restheart.exchange.IllegalQueryParamenterException;
 import org.restheart.exchange.MongoRequest;
+import org.restheart.exchange.MongoResponse;
 import org.restheart.mongodb.utils.MongoURLUtils;
 import org.restheart.utils.RepresentationUtils;
 
@@ -84,6 +86,12 @@ abstract class AbstractRepresentationFactory {
                                         )))));
             }
         }
+
+        var countStrategy = MongoResponse.of(request.getExchange()).getCountStrategy();
+
+        if (size >= 0 && countStrategy != null) {
+            rep.addProperty("_size_strategy", new BsonString(countStrategy.name()));
+        }
     }
 
     /**
@@ -27,12 +27,14 @@ import org.restheart.handlers.PipelinedHandler;
 
 /**
  * this handler dispatches request to normal or bulk post collection handlers
- * depending on the content to be an object or an array
+ * depending on the content to be an object or an array, or to the ndjson
+ * handler when the Content-Type is application/x-ndjson
  * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
  */
 public class NormalOrBulkDispatcherHandler extends PipelinedHandler {
     private final PipelinedHandler nextNormal;
     private final PipelinedHandler nextBulk;
+    private final PipelinedHandler nextNdjson;
 
     /**
      * Creates a new instance of PostCollectionHandler
@@ -42,10 +44,24 @@ public class NormalOrBulkDispatcherHandler extends PipelinedHandler {
     public NormalOrBulkDispatcherHandler(
             PipelinedHandler nextNormal,
             PipelinedHandler nextBulk) {
+        this(nextNormal, nextBulk, null);
+    }
+
+    /**
+     * Creates a new instance of PostCollectionHandler
+     * @param nextNormal next handler for normal requests
+     * @param nextBulk next handler for bulk requests
+     * @param nextNdjson next handler for ndjson requests
+     */
+    public NormalOrBulkDispatcherHandler(
+            PipelinedHandler nextNormal,
+            PipelinedHandler nextBulk,
+            PipelinedHandler nextNdjson) {
         super(null);
 
         this.nextNormal = nextNormal;
         this.nextBulk = nextBulk;
+        this.nextNdjson = nextNdjson;
     }
 
     /**
@@ -55,7 +71,14 @@ public class NormalOrBulkDispatcherHandler extends PipelinedHandler {
      */
     @Override
     public void handleRequest(HttpServerExchange exchange) throws Exception {
-        BsonValue content = MongoRequest.of(exchange).getContent();
+        var request = MongoRequest.of(exchange);
+
+        if (nextNdjson != null && request.isNdjsonContent()) {
+            nextNdjson.handleRequest(exchange);
+            return;
+        }
+
+        BsonValue content = request.getContent();
 
         if (content != null
                 && content.isArray()) {
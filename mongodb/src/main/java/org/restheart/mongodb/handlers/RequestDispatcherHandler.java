@@ -34,6 +34,7 @@ import org.restheart.mongodb.handlers.aggregation.GetAggregationHandler;
 import org.restheart.mongodb.handlers.bulk.BulkDeleteDocumentsHandler;
 import org.restheart.mongodb.handlers.bulk.BulkPatchDocumentsHandler;
 import org.restheart.mongodb.handlers.bulk.BulkPostCollectionHandler;
+import org.restheart.mongodb.handlers.bulk.NdjsonPostCollectionHandler;
 import org.restheart.mongodb.handlers.collection.DeleteCollectionHandler;
 import org.restheart.mongodb.handlers.collection.GetCollectionHandler;
 import org.restheart.mongodb.handlers.collection.PatchCollectionHandler;
@@ -231,7 +232,8 @@ public class RequestDispatcherHandler extends PipelinedHandler {
         putHandler(TYPE.COLLECTION, METHOD.POST,
                 new NormalOrBulkDispatcherHandler(
                                 new PostCollectionHandler(),
-                                new BulkPostCollectionHandler()));
+                                new BulkPostCollectionHandler(),
+                                new NdjsonPostCollectionHandler()));
 
         putHandler(TYPE.COLLECTION, METHOD.PUT,
                 PipelinedHandler.pipe(
@@ -23,6 +23,7 @@ package org.restheart.mongodb.handlers;
 import io.undertow.server.HttpServerExchange;
 import org.bson.BsonDocument;
 import org.bson.BsonInt64;
+import org.bson.BsonString;
 import org.restheart.exchange.MongoRequest;
 import org.restheart.exchange.MongoResponse;
 import org.restheart.handlers.PipelinedHandler;
@@ -60,7 +61,13 @@ public class SizeRequestTransformer extends PipelinedHandler {
 
             // for response phase
             if (response.getCount() >= 0) {
-                response.setContent(new BsonDocument("_size", new BsonInt64(response.getCount())));
+                var content = new BsonDocument("_size", new BsonInt64(response.getCount()));
+
+                if (response.getCountStrategy() != null) {
+                    content.put("_size_strategy", new BsonString(response.getCountStrategy().name()));
+                }
+
+                response.setContent(content);
             }
         }
 
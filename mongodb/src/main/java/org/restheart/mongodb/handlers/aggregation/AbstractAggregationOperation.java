@@ -48,6 +48,21 @@ public abstract class AbstractAggregationOperation {
      */
     public static final String TYPE_ELEMENT_NAME = "type";
 
+    /**
+     * the stream property name, when true the results are streamed to the client
+     */
+    public static final String STREAM_ELEMENT_NAME = "stream";
+
+    /**
+     * the allowStream property name, when true the client can request streaming with ?stream
+     */
+    public static final String ALLOW_STREAM_ELEMENT_NAME = "allowStream";
+
+    /**
+     * the batchSize property name, the cursor batch size when streaming
+     */
+    public static final String BATCH_SIZE_ELEMENT_NAME = "batchSize";
+
     /**
      *
      * @param collProps
@@ -107,6 +122,9 @@ public abstract class AbstractAggregationOperation {
 
     private final TYPE type;
     private final String uri;
+    private final boolean stream;
+    private final boolean allowStream;
+    private final Integer batchSize;
 
     /**
      *
@@ -141,6 +159,30 @@ public abstract class AbstractAggregationOperation {
         }
 
         this.uri = _uri.asString().getValue();
+
+        var _stream = properties.get(STREAM_ELEMENT_NAME);
+
+        if (_stream != null && !_stream.isBoolean()) {
+            throw new InvalidMetadataException("query /" + this.uri + " has invalid '" + STREAM_ELEMENT_NAME + "': " + _stream + "; must be boolean");
+        }
+
+        this.stream = _stream != null && _stream.asBoolean().getValue();
+
+        var _allowStream = properties.get(ALLOW_STREAM_ELEMENT_NAME);
+
+        if (_allowStream != null && !_allowStream.isBoolean()) {
+            throw new InvalidMetadataException("query /" + this.uri + " has invalid '" + ALLOW_STREAM_ELEMENT_NAME + "': " + _allowStream + "; must be boolean");
+        }
+
+        this.allowStream = _allowStream != null && _allowStream.asBoolean().getValue();
+
+        var _batchSize = properties.get(BATCH_SIZE_ELEMENT_NAME);
+
+        if (_batchSize != null && (!_batchSize.isInt32() || _batchSize.asInt32().getValue() < 1)) {
+            throw new InvalidMetadataException("query /" + this.uri + " has invalid '" + BATCH_SIZE_ELEMENT_NAME + "': " + _batchSize + "; must be a positive integer");
+        }
+
+        this.batchSize = _batchSize != null ? _batchSize.asInt32().getValue() : null;
     }
 
     /**
@@ -157,6 +199,27 @@ public abstract class AbstractAggregationOperation {
         return uri;
     }
 
+    /**
+     * @return true if the results should be streamed
+     */
+    public boolean isStream() {
+        return stream;
+    }
+
+    /**
+     * @return true if the client can request streaming with the stream query parameter
+     */
+    public boolean isAllowStream() {
+        return allowStream;
+    }
+
+    /**
+     * @return the cursor batch size to use when streaming, null if not specified
+     */
+    public Integer getBatchSize() {
+        return batchSize;
+    }
+
     /**
      *
      */
@@ -23,6 +23,7 @@ package org.restheart.mongodb.handlers.aggregation;
 import org.bson.BsonArray;
 import org.bson.BsonBoolean;
 import org.bson.BsonDocument;
+import org.bson.BsonValue;
 import org.restheart.exchange.InvalidMetadataException;
 
 /**
@@ -42,8 +43,32 @@ public class AggregationPipeline extends AbstractAggregationOperation {
      */
     public static final String ALLOW_DISK_USER_ELEMENT_NAME = "allowDiskUse";
 
+    /**
+     * the cache property name
+     */
+    public static final String CACHE_ELEMENT_NAME = "cache";
+
+    /**
+     * the results cache options of an aggregation pipeline
+     *
+     * @param ttl the Time To Live of the cached results in milliseconds
+     * @param maxEntries the max number of cached results, i.e. of different
+     * combinations of variables and paging
+     * @param invalidateOnLookup true to evict the cached results also on writes
+     * to the collections referenced by $lookup, $graphLookup and $unionWith
+     */
+    public record CacheOptions(long ttl, int maxEntries, boolean invalidateOnLookup) {
+        public static final String TTL_ELEMENT_NAME = "ttl";
+        public static final String MAX_ENTRIES_ELEMENT_NAME = "maxEntries";
+        public static final String INVALIDATE_ON_LOOKUP_ELEMENT_NAME = "invalidateOnLookup";
+
+        static final long DEFAULT_TTL = 60_000;
+        static final int DEFAULT_MAX_ENTRIES = 100;
+    }
+
     private final BsonArray stages;
     private final BsonBoolean allowDiskUse;
+    private final CacheOptions cacheOptions;
 
     /**
      * Constructor from aggregation definition in collection metadata
@@ -58,10 +83,13 @@ public class AggregationPipeline extends AbstractAggregationOperation {
         "type": "pipeline",
         "uri": "test_ap",
         "allowDiskUse": false,
+        "cache": { "ttl": 60000, "maxEntries": 100, "invalidateOnLookup": false },
         "stages": [ { "_$match": { "name": { "_$exists": true } } } ]
     }
      </pre>
      *
+     * The optional {@code cache} object enables the results cache.
+     *
      * @throws org.restheart.exchange.InvalidMetadataException
      */
     public AggregationPipeline(BsonDocument properties) throws InvalidMetadataException {
@@ -87,6 +115,43 @@ public class AggregationPipeline extends AbstractAggregationOperation {
         }
 
         this.allowDiskUse = _allowDiskUse != null ? _allowDiskUse.asBoolean() : BsonBoolean.FALSE;
+
+        this.cacheOptions = cacheOptions(properties.get(CACHE_ELEMENT_NAME));
+    }
+
+    private CacheOptions cacheOptions(BsonValue _cache) throws InvalidMetadataException {
+        if (_cache == null) {
+            return null;
+        }
+
+        if (!_cache.isDocument()) {
+            throw new InvalidMetadataException("query /" + getUri() + " has invalid '" + CACHE_ELEMENT_NAME + "': " + _cache + "; must be an object");
+        }
+
+        var cache = _cache.asDocument();
+
+        var _ttl = cache.get(CacheOptions.TTL_ELEMENT_NAME);
+
+        if (_ttl != null && (!_ttl.isNumber() || _ttl.asNumber().longValue() < 1)) {
+            throw new InvalidMetadataException("query /" + getUri() + " has invalid '" + CACHE_ELEMENT_NAME + "." + CacheOptions.TTL_ELEMENT_NAME + "': " + _ttl + "; must be a positive number");
+        }
+
+        var _maxEntries = cache.get(CacheOptions.MAX_ENTRIES_ELEMENT_NAME);
+
+        if (_maxEntries != null && (!_maxEntries.isInt32() || _maxEntries.asInt32().getValue() < 1)) {
+            throw new InvalidMetadataException("query /" + getUri() + " has invalid '" + CACHE_ELEMENT_NAME + "." + CacheOptions.MAX_ENTRIES_ELEMENT_NAME + "': " + _maxEntries + "; must be a positive integer");
+        }
+
+        var _invalidateOnLookup = cache.get(CacheOptions.INVALIDATE_ON_LOOKUP_ELEMENT_NAME);
+
+        if (_invalidateOnLookup != null && !_invalidateOnLookup.isBoolean()) {
+            throw new InvalidMetadataException("query /" + getUri() + " has invalid '" + CACHE_ELEMENT_NAME + "." + CacheOptions.INVALIDATE_ON_LOOKUP_ELEMENT_NAME + "': " + _invalidateOnLookup + "; must be boolean");
+        }
+
+        return new CacheOptions(
+            _ttl != null ? _ttl.asNumber().longValue() : CacheOptions.DEFAULT_TTL,
+            _maxEntries != null ? _maxEntries.asInt32().getValue() : CacheOptions.DEFAULT_MAX_ENTRIES,
+            _invalidateOnLookup != null && _invalidateOnLookup.asBoolean().getValue());
     }
 
     /**
@@ -106,4 +171,11 @@ public class AggregationPipeline extends AbstractAggregationOperation {
     public BsonBoolean getAllowDiskUse() {
         return allowDiskUse;
     }
+
+    /**
+     * @return the results cache options, null if the results are not cached
+     */
+    public CacheOptions getCacheOptions() {
+        return cacheOptions;
+    }
 }
@@ -23,6 +23,8 @@ package org.restheart.mongodb.handlers.aggregation;
 import com.mongodb.MongoCommandException;
 import com.mongodb.client.AggregateIterable;
 import com.mongodb.client.MapReduceIterable;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoIterable;
 import io.undertow.server.HttpServerExchange;
 import java.util.ArrayList;
 import java.util.concurrent.TimeUnit;
@@ -35,9 +37,12 @@ import org.restheart.exchange.IllegalQueryParamenterException;
 import org.restheart.exchange.InvalidMetadataException;
 import org.restheart.exchange.MongoRequest;
 import org.restheart.exchange.MongoResponse;
+import org.restheart.exchange.ExchangeKeys.REPRESENTATION_FORMAT;
 import org.restheart.exchange.QueryVariableNotBoundException;
 import org.restheart.handlers.PipelinedHandler;
+import org.restheart.mongodb.MongoService;
 import org.restheart.mongodb.MongoServiceConfiguration;
+import org.restheart.mongodb.db.AggregationResultCache;
 import org.restheart.mongodb.db.Databases;
 import org.restheart.security.AclVarsInterpolator;
 import org.restheart.security.MongoPermissions;
@@ -45,6 +50,7 @@ import org.restheart.security.MongoRealmAccount;
 import org.restheart.security.WithProperties;
 import org.restheart.utils.BsonUtils;
 import org.restheart.utils.HttpStatus;
+import org.restheart.mongodb.utils.ResponseHelper;
 import org.restheart.mongodb.utils.StagesInterpolator;
 import static org.restheart.mongodb.utils.StagesInterpolator.STAGE_OPERATOR;
 import static org.restheart.mongodb.utils.VarsInterpolator.VAR_OPERATOR;
@@ -107,6 +113,22 @@ public class GetAggregationHandler extends PipelinedHandler {
         var _data = new ArrayList<BsonDocument>();
         var query = _query.get();
 
+        // with Accept: application/x-ndjson the results are sent one per line
+        var ndjson = request.getNdjsonAcceptedMediaType();
+
+        if (ndjson != null) {
+            // the results are never wrapped by the HAL representation
+            request.setRepresentationFormat(REPRESENTATION_FORMAT.STANDARD);
+        }
+
+        // the results are written to the client while iterating this cursor, if set
+        MongoCursor<BsonDocument> cursor = null;
+        // ?stream is honored only if the aggregation definition allows it
+        var stream = (query.isStream() || (request.isStream() && query.isAllowStream()) || ndjson != null) && isStreamable(request, response);
+        var batchSize = query.getBatchSize() != null
+            ? query.getBatchSize()
+            : MongoServiceConfiguration.get().getAggregationStreamingBatchSize();
+
         if (null == query.getType()) {
             response.setInError(HttpStatus.SC_UNPROCESSABLE_ENTITY, "unknown query type");
             next(exchange);
@@ -138,7 +160,11 @@ public class GetAggregationHandler extends PipelinedHandler {
                                 .maxTime(MongoServiceConfiguration.get() .getAggregationTimeLimit(), TimeUnit.MILLISECONDS);
                         }
 
-                        mrOutput.into(_data);
+                        if (stream) {
+                            cursor = openCursor(mrOutput, batchSize);
+                        } else {
+                            mrOutput.into(_data);
+                        }
                     } catch (MongoCommandException ex) {
                         response.setInError(HttpStatus.SC_UNPROCESSABLE_ENTITY, "error executing mapReduce", ex);
                         LOGGER.error("error executing mapReduce /{}/{}/_aggrs/{}", request.getDBName(), request.getCollectionName(), queryUri, ex);
@@ -164,6 +190,29 @@ public class GetAggregationHandler extends PipelinedHandler {
 
                         var stages = StagesInterpolator.interpolate(VAR_OPERATOR.$var, STAGE_OPERATOR.$ifvar, pipeline.getStages(), avars);
 
+                        // when the last stage of the aggregation is $merge or $out
+                        // execute the aggregation with AggregateIterable.toCollection()
+                        // otherwise the entire view will be retuned, this can be the whole
+                        // collection in the worst case
+                        var isMergeOrOutSuffixed = stages.get(stages.size()-1).keySet().stream().filter(k -> "$merge".equals(k) || "_$merge".equals(k) || "$out".equals(k) ||"_$out".equals(k)).findAny().isPresent();
+
+                        // results read in a client session are not cached, they can depend on uncommitted writes
+                        var cacheOptions = clientSession == null && !isMergeOrOutSuffixed ? pipeline.getCacheOptions() : null;
+
+                        AggregationResultCache.Key cacheKey = null;
+
+                        if (cacheOptions != null) {
+                            cacheKey = new AggregationResultCache.Key(new AggregationResultCache.AggregationId(request.getDBName(), request.getCollectionName(), queryUri), stages, request.getPage(), request.getPagesize());
+
+                            var cached = AggregationResultCache.getInstance().get(cacheKey, cacheOptions.ttl(), cacheOptions.maxEntries());
+
+                            if (cached != null) {
+                                // the response content can be modified by interceptors
+                                cached.stream().map(BsonDocument::clone).forEachOrdered(_data::add);
+                                break;
+                            }
+                        }
+
                         if (clientSession == null) {
                             agrOutput = dbs.collection(request.rsOps(), request.getDBName(), request.getCollectionName())
                                 .aggregate(stages)
@@ -176,14 +225,13 @@ public class GetAggregationHandler extends PipelinedHandler {
                                 .allowDiskUse(pipeline.getAllowDiskUse().getValue());
                         }
 
-                        // when the last stage of the aggregation is $merge or $out
-                        // execute the aggregation with AggregateIterable.toCollection()
-                        // otherwise the entire view will be retuned, this can be the whole
-                        // collection in the worst case
-                        var isMergeOrOutSuffixed = stages.get(stages.size()-1).keySet().stream().filter(k -> "$merge".equals(k) || "_$merge".equals(k) || "$out".equals(k) ||"_$out".equals(k)).findAny().isPresent();
-
                         if (isMergeOrOutSuffixed) {
                             agrOutput.toCollection();
+                        } else if (cacheKey != null) {
+                            agrOutput.into(_data);
+                            AggregationResultCache.getInstance().put(cacheKey, _data.stream().map(BsonDocument::clone).toList(), cacheOptions.ttl(), cacheOptions.maxEntries(), cacheOptions.invalidateOnLookup());
+                        } else if (stream) {
+                            cursor = openCursor(agrOutput, batchSize);
                         } else {
                             agrOutput.into(_data);
                         }
@@ -218,15 +266,37 @@ public class GetAggregationHandler extends PipelinedHandler {
             return;
         }
 
+        if (cursor != null) {
+            if (ndjson != null) {
+                ResponseHelper.setNdjsonCursorSender(exchange, response, cursor, request.getJsonMode());
+                response.setContentType(ndjson);
+            } else {
+                ResponseHelper.setCursorSender(exchange, response, cursor, request.getJsonMode());
+                response.setContentTypeAsJson();
+            }
+
+            response.setStatusCode(HttpStatus.SC_OK);
+
+            next(exchange);
+            return;
+        }
+
         try {
             var data = new BsonArray();
 
             _data.stream().forEachOrdered(data::add);
 
             response.setContent(data);
-            response.setCount(data.size());
 
-            response.setContentTypeAsJson();
+            if (ndjson != null) {
+                // cached or intercepted results, sent as ndjson after the response interceptors
+                ResponseHelper.setNdjsonContentSender(exchange, response, request.getJsonMode());
+                response.setContentType(ndjson);
+            } else {
+                response.setCount(data.size());
+                response.setContentTypeAsJson();
+            }
+
             response.setStatusCode(HttpStatus.SC_OK);
 
             // call the ResponseTransformerMetadataHandler if piped in
@@ -237,6 +307,40 @@ public class GetAggregationHandler extends PipelinedHandler {
         }
     }
 
+    /**
+     * The results can be streamed when no response interceptor (including the
+     * one that transforms them to HAL) is going to process them
+     */
+    private boolean isStreamable(MongoRequest request, MongoResponse response) {
+        // interceptors might check the status code in resolve()
+        response.setStatusCode(HttpStatus.SC_OK);
+
+        var streamable = !MongoService.isResponseIntercepted(request, response);
+
+        if (!streamable) {
+            LOGGER.debug("results of /{}/{}/_aggrs/{} not streamed, a response interceptor processes them", request.getDBName(), request.getCollectionName(), request.getAggregationOperation());
+        }
+
+        return streamable;
+    }
+
+    /**
+     * executes the operation and fetches the first batch, so that errors
+     * are handled before the response starts
+     */
+    private static MongoCursor<BsonDocument> openCursor(MongoIterable<BsonDocument> iterable, int batchSize) {
+        var cursor = iterable.batchSize(batchSize).cursor();
+
+        try {
+            cursor.hasNext();
+        } catch (Throwable t) {
+            cursor.close();
+            throw t;
+        }
+
+        return cursor;
+    }
+
     /**
      * adds the default variables to the avars document
      *
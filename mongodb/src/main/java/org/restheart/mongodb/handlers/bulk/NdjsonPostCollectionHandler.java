@@ -0,0 +1,343 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.handlers.bulk;
+
+import io.undertow.server.HttpServerExchange;
+
+import java.util.Optional;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonString;
+import org.bson.json.JsonParseException;
+import org.restheart.exchange.Exchange;
+import org.restheart.exchange.ExchangeKeys.DOC_ID_TYPE;
+import org.restheart.exchange.MongoRequest;
+import org.restheart.exchange.MongoResponse;
+import org.restheart.handlers.PipelinedHandler;
+import org.restheart.mongodb.MongoService;
+import org.restheart.mongodb.db.Documents;
+import org.restheart.mongodb.utils.ResponseHelper;
+import org.restheart.security.AclVarsInterpolator;
+import org.restheart.security.BaseAclPermission;
+import org.restheart.security.MongoPermissions;
+import org.restheart.utils.BsonUtils;
+import org.restheart.utils.HttpStatus;
+
+import com.mongodb.MongoBulkWriteException;
+
+/**
+ * Handles POST /coll with Content-Type application/x-ndjson
+ *
+ * The request content is read line by line and the documents are written in
+ * batches of batchsize documents (query parameter, default 1000), so the whole
+ * payload is never held in memory. The response reports the result of each
+ * batch, with the fields of BulkResultRepresentationFactory but the links.
+ *
+ * An invalid line stops the import: the documents of the previous lines are
+ * written and the response reports the line with the error.
+ *
+ * The ACL predicate and the REQUEST interceptors are evaluated against an
+ * empty document in place of the request content. So the predicate of the
+ * permission that allowed the request is evaluated again for each line,
+ * and the request is rejected if an interceptor that is not declared
+ * contentIndependent resolves for it.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class NdjsonPostCollectionHandler extends PipelinedHandler {
+    static final String BATCH_SIZE_QPARAM_KEY = "batchsize";
+    static final int DEFAULT_BATCH_SIZE = 1_000;
+
+    private final Documents documents = Documents.get();
+
+    private final BulkResultRepresentationFactory bprf = new BulkResultRepresentationFactory();
+
+    /**
+     * Creates a new instance of NdjsonPostCollectionHandler
+     */
+    public NdjsonPostCollectionHandler() {
+        this(null);
+    }
+
+    /**
+     * Creates a new instance of NdjsonPostCollectionHandler
+     *
+     * @param next
+     */
+    public NdjsonPostCollectionHandler(PipelinedHandler next) {
+        super(next);
+    }
+
+    /**
+     * an invalid line of the request content
+     */
+    record LineError(long line, int httpStatus, String message) {
+        BsonDocument toBson() {
+            var ret = new BsonDocument();
+            ret.put("line", new BsonInt64(line));
+            ret.put("httpStatus", new BsonInt32(httpStatus));
+            ret.put("message", new BsonString(message));
+            return ret;
+        }
+    }
+
+    /**
+     *
+     * @param exchange
+     * @throws Exception
+     */
+    @Override
+    public void handleRequest(HttpServerExchange exchange) throws Exception {
+        var request = MongoRequest.of(exchange);
+        var response = MongoResponse.of(exchange);
+
+        if (request.isInError()) {
+            next(exchange);
+            return;
+        }
+
+        int batchSize;
+
+        try {
+            batchSize = batchSize(exchange);
+        } catch(IllegalArgumentException iae) {
+            response.setInError(HttpStatus.SC_BAD_REQUEST, iae.getMessage());
+            next(exchange);
+            return;
+        }
+
+        // the interceptors have processed an empty document in place of the request content
+        // mongoPermissionMergeRequest is skipped, toMerge() applies it to each document
+        if (MongoService.isRequestContentIntercepted(request, response, "mongoPermissionMergeRequest")) {
+            response.setInError(HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE, "Content-Type " + Exchange.NDJSON_MEDIA_TYPE + " is not supported, a request interceptor processes the content");
+            next(exchange);
+            return;
+        }
+
+        var toMerge = toMerge(request);
+        var permission = BaseAclPermission.of(request);
+        var content = request.getContent();
+
+        if (!exchange.isBlocking()) {
+            exchange.startBlocking();
+        }
+
+        var batches = new BsonArray();
+        var batch = new BsonArray();
+        long count = 0, inserted = 0, modified = 0, matched = 0;
+        boolean errors = false;
+        Object etag = null;
+        LineError lineError = null;
+
+        try (var reader = new NdjsonReader(exchange.getInputStream(), Exchange.MAX_CONTENT_SIZE)) {
+            while (true) {
+                BsonDocument document;
+
+                try {
+                    document = reader.next();
+                } catch(JsonParseException jpe) {
+                    lineError = new LineError(reader.lineNumber(), HttpStatus.SC_NOT_ACCEPTABLE, "Invalid JSON. " + jpe.getMessage());
+                    break;
+                }
+
+                if (document == null) {
+                    break;
+                }
+
+                lineError = check(request, permission, reader.lineNumber(), document);
+
+                if (lineError != null) {
+                    break;
+                }
+
+                if (toMerge != null) {
+                    document.putAll(toMerge);
+                }
+
+                batch.add(BsonUtils.unflatten(document));
+                count++;
+
+                if (batch.size() >= batchSize) {
+                    etag = writeBatch(request, batches, batch, etag);
+                    batch = new BsonArray();
+                }
+            }
+
+            // the documents before an invalid line are written anyway
+            if (!batch.isEmpty()) {
+                etag = writeBatch(request, batches, batch, etag);
+            }
+        } finally {
+            // the content is set to each document to evaluate the permission
+            request.setContent(content);
+        }
+
+        for (var _rep: batches) {
+            var rep = _rep.asDocument();
+            inserted += rep.getInt32("inserted", new BsonInt32(0)).getValue();
+            modified += rep.getInt32("modified", new BsonInt32(0)).getValue();
+            matched += rep.getInt32("matched", new BsonInt32(0)).getValue();
+            errors = errors || rep.containsKey("errors");
+        }
+
+        var result = new BsonDocument();
+        result.put("documents", new BsonInt64(count));
+        result.put("inserted", new BsonInt64(inserted));
+        result.put("modified", new BsonInt64(modified));
+        result.put("matched", new BsonInt64(matched));
+        result.put("batches", batches);
+
+        if (etag != null) {
+            ResponseHelper.injectEtagHeader(exchange, etag);
+        }
+
+        if (lineError != null) {
+            result.put("error", lineError.toBson());
+            response.setInError(true);
+            response.setStatusCode(lineError.httpStatus());
+        } else if (errors) {
+            response.setInError(true);
+            response.setStatusCode(HttpStatus.SC_MULTI_STATUS);
+        } else {
+            response.setStatusCode(HttpStatus.SC_OK);
+        }
+
+        response.setContent(result);
+
+        next(exchange);
+    }
+
+    /**
+     * writes a batch and adds its representation to batches
+     *
+     * @return the etag of the written documents, or the passed etag if the batch failed
+     */
+    private Object writeBatch(MongoRequest request, BsonArray batches, BsonArray batch, Object etag) {
+        BsonDocument rep;
+
+        try {
+            var result = this.documents.bulkPostDocuments(
+                Optional.ofNullable(request.getClientSession()),
+                request.rsOps(),
+                request.getDBName(),
+                request.getCollectionName(),
+                batch,
+                Optional.ofNullable(request.getFiltersDocument()),
+                Optional.ofNullable(request.getShardKey()),
+                request.getWriteMode());
+
+            rep = bprf.getRepresentation(request.getPath(), result);
+            etag = result.getEtag();
+        } catch(MongoBulkWriteException mbwe) {
+            // with unordered writes, the documents without errors are written anyway
+            rep = bprf.getRepresentation(request.getPath(), mbwe);
+        }
+
+        // the links to the inserted documents would make the response size
+        // proportional to the number of documents
+        rep.remove("links");
+
+        var batchRep = new BsonDocument("batch", new BsonInt32(batches.size()));
+        batchRep.put("documents", new BsonInt32(batch.size()));
+        batchRep.putAll(rep);
+
+        batches.add(batchRep);
+
+        return etag;
+    }
+
+    /**
+     * applies the checks that MongoRequestContentInjector and
+     * BulkPostCollectionHandler apply to the documents of a json array
+     * and evaluates the predicate of the permission with the document
+     * as the request content
+     *
+     * @return the error or null if the document is valid
+     */
+    private static LineError check(MongoRequest request, BaseAclPermission permission, long line, BsonDocument document) {
+        if (permission != null) {
+            request.setContent(document);
+
+            if (!permission.allow(request)) {
+                return new LineError(line, HttpStatus.SC_FORBIDDEN, "the document is not allowed by the permission");
+            }
+        }
+
+        var _id = document.get("_id");
+
+        if (_id != null && _id.isArray()) {
+            return new LineError(line, HttpStatus.SC_NOT_ACCEPTABLE, "the type of _id in request data is not supported: " + _id.getBsonType().name());
+        }
+
+        if (_id != null && _id.isString() && MongoRequest.isReservedDocumentId(request.getType(), _id)) {
+            return new LineError(line, HttpStatus.SC_FORBIDDEN, "id is reserved: " + _id.asString().getValue());
+        }
+
+        if (_id != null && !(request.getDocIdType() == DOC_ID_TYPE.OID || request.getDocIdType() == DOC_ID_TYPE.STRING_OID)) {
+            return new LineError(line, HttpStatus.SC_NOT_ACCEPTABLE, "_id in content body is mandatory for documents with id type " + request.getDocIdType().name());
+        }
+
+        if (BsonUtils.containsUpdateOperators(document, true)) {
+            return new LineError(line, HttpStatus.SC_BAD_REQUEST, "update operators (but $currentDate) cannot be used on POST requests");
+        }
+
+        return null;
+    }
+
+    /**
+     * The content is not available to the mongoPermissionMergeRequest interceptor,
+     * so mongo.mergeRequest is applied here to each document
+     *
+     * @return the properties to merge or null
+     */
+    private static BsonDocument toMerge(MongoRequest request) {
+        var mongoPermissions = MongoPermissions.of(request);
+
+        if (mongoPermissions == null || mongoPermissions.getMergeRequest() == null) {
+            return null;
+        }
+
+        return AclVarsInterpolator.interpolateBson(request, mongoPermissions.getMergeRequest()).asDocument();
+    }
+
+    static int batchSize(HttpServerExchange exchange) throws IllegalArgumentException {
+        var _batchSize = exchange.getQueryParameters().get(BATCH_SIZE_QPARAM_KEY);
+
+        if (_batchSize == null || _batchSize.isEmpty()) {
+            return DEFAULT_BATCH_SIZE;
+        }
+
+        try {
+            var ret = Integer.parseInt(_batchSize.getFirst());
+
+            if (ret < 1) {
+                throw new IllegalArgumentException("illegal " + BATCH_SIZE_QPARAM_KEY + " parameter, it must be greater than zero");
+            }
+
+            return ret;
+        } catch(NumberFormatException nfe) {
+            throw new IllegalArgumentException("illegal " + BATCH_SIZE_QPARAM_KEY + " parameter, it must be a number");
+        }
+    }
+}
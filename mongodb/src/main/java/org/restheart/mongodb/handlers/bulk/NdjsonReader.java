@@ -0,0 +1,122 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.handlers.bulk;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+import org.bson.BsonDocument;
+import org.bson.json.JsonParseException;
+import org.restheart.utils.BsonUtils;
+
+/**
+ * Reads the documents of a ndjson stream, one json object per line.
+ *
+ * Lines are read one at a time, so the memory used does not depend on the
+ * size of the stream; blank lines are skipped.
+ */
+class NdjsonReader implements AutoCloseable {
+    private final BufferedReader reader;
+    private final int maxLineLength;
+    private final StringBuilder line = new StringBuilder();
+
+    private long lineNumber = 0;
+
+    /**
+     * @param is the ndjson stream
+     * @param maxLineLength the max number of chars of a line
+     */
+    NdjsonReader(InputStream is, int maxLineLength) {
+        this.reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+        this.maxLineLength = maxLineLength;
+    }
+
+    /**
+     * @return the number of the last read line, starting from 1
+     */
+    long lineNumber() {
+        return this.lineNumber;
+    }
+
+    /**
+     * @return the document of the next not blank line or null at the end of the stream
+     * @throws JsonParseException if the line is not a valid json object or exceeds the max length
+     * @throws IOException
+     */
+    BsonDocument next() throws JsonParseException, IOException {
+        String _line;
+
+        do {
+            _line = readLine();
+
+            if (_line == null) {
+                return null;
+            }
+        } while(_line.isBlank());
+
+        var parsed = BsonUtils.parse(_line);
+
+        if (parsed == null || !parsed.isDocument()) {
+            throw new JsonParseException("line " + this.lineNumber + " is not a json object");
+        }
+
+        return parsed.asDocument();
+    }
+
+    private String readLine() throws IOException {
+        this.line.setLength(0);
+
+        int c;
+        boolean eol = false;
+
+        while ((c = this.reader.read()) >= 0) {
+            if (c == '\n') {
+                eol = true;
+                break;
+            } else if (c == '\r') {
+                continue;
+            }
+
+            if (this.line.length() >= this.maxLineLength) {
+                this.lineNumber++;
+                throw new JsonParseException("line " + this.lineNumber + " exceeds the max length of " + this.maxLineLength + " chars");
+            }
+
+            this.line.append((char) c);
+        }
+
+        if (!eol && this.line.length() == 0) {
+            return null;
+        }
+
+        this.lineNumber++;
+
+        return this.line.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.reader.close();
+    }
+}
@@ -0,0 +1,463 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.handlers.changestreams;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntPredicate;
+import java.util.regex.Pattern;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonType;
+import org.bson.BsonValue;
+
+/**
+ * Evaluates the query of a $match stage in-process against a change event.
+ *
+ * Supports the field conditions, with dot notation, and the operators $eq, $ne,
+ * $gt, $gte, $lt, $lte, $in, $nin, $exists, $regex, $not, $and, $or and $nor.
+ * Other operators, and the fields that the change events evaluated in-process
+ * don't have, are rejected by of(), so that stages using them run on MongoDB.
+ *
+ * Values are compared as MongoDB does: numbers are equal across types and
+ * embedded documents are equal only with the same fields in the same order.
+ *
+ * The regular expressions are compiled once, when the matcher is created.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class ChangeEventMatcher {
+    private static final Set<String> LOGICAL_OPERATORS = Set.of("$and", "$or", "$nor");
+    private static final Set<String> FIELD_OPERATORS = Set.of("$eq", "$ne", "$gt", "$gte", "$lt", "$lte", "$in", "$nin", "$exists", "$regex", "$options", "$not");
+
+    // the fields of the change events evaluated in-process, see SharedChangeStream.matchTarget()
+    private static final Set<String> EVENT_FIELDS = Set.of("_id", "operationType", "ns", "to", "documentKey", "fullDocument", "fullDocumentBeforeChange", "updateDescription", "clusterTime", "wallTime", "txnNumber", "lsid");
+    private static final Set<String> UPDATE_DESCRIPTION_FIELDS = Set.of("updatedFields", "removedFields");
+
+    private final BsonDocument query;
+
+    // the compiled regular expressions, by the node of the query that defines them
+    private final Map<BsonValue, Pattern> patterns = new IdentityHashMap<>();
+
+    private ChangeEventMatcher(BsonDocument query) {
+        this.query = query;
+        check(query);
+    }
+
+    /**
+     * checks that the $match stage can be evaluated in-process
+     *
+     * @param stage the stage
+     * @return the matcher of the $match stage
+     * @throws IllegalArgumentException if the stage is not a $match or its query uses unsupported operators or fields
+     */
+    public static ChangeEventMatcher of(BsonDocument stage) {
+        if (stage.size() != 1 || !stage.containsKey("$match") || !stage.get("$match").isDocument()) {
+            throw new IllegalArgumentException("not a $match stage: " + stage.toJson());
+        }
+
+        return new ChangeEventMatcher(stage.getDocument("$match"));
+    }
+
+    /**
+     * @return the query of the $match stage
+     */
+    public BsonDocument query() {
+        return this.query;
+    }
+
+    private void check(BsonDocument query) {
+        for (var entry: query.entrySet()) {
+            var key = entry.getKey();
+            var value = entry.getValue();
+
+            if (LOGICAL_OPERATORS.contains(key)) {
+                if (!value.isArray() || value.asArray().isEmpty() || !value.asArray().stream().allMatch(BsonValue::isDocument)) {
+                    throw new IllegalArgumentException(key + " requires a nonempty array of queries");
+                }
+
+                value.asArray().forEach(q -> check(q.asDocument()));
+            } else if (key.startsWith("$")) {
+                throw new IllegalArgumentException("unsupported operator " + key);
+            } else {
+                checkPath(key);
+
+                if (isOperatorsDocument(value)) {
+                    checkOperators(value.asDocument());
+                } else if (value.isRegularExpression()) {
+                    compile(value, value.asRegularExpression().getPattern(), value.asRegularExpression().getOptions());
+                }
+            }
+        }
+    }
+
+    private static void checkPath(String path) {
+        var keys = path.split("\\.");
+
+        if (!EVENT_FIELDS.contains(keys[0])) {
+            throw new IllegalArgumentException("unsupported field " + path);
+        }
+
+        if ("updateDescription".equals(keys[0]) && (keys.length < 2 || !UPDATE_DESCRIPTION_FIELDS.contains(keys[1]))) {
+            throw new IllegalArgumentException("unsupported field " + path);
+        }
+    }
+
+    private void checkOperators(BsonDocument operators) {
+        for (var entry: operators.entrySet()) {
+            var op = entry.getKey();
+            var value = entry.getValue();
+
+            if (!FIELD_OPERATORS.contains(op)) {
+                throw new IllegalArgumentException("unsupported operator " + op);
+            }
+
+            switch (op) {
+                case "$in", "$nin" -> {
+                    if (!value.isArray()) {
+                        throw new IllegalArgumentException(op + " requires an array");
+                    }
+
+                    value.asArray().stream()
+                        .filter(BsonValue::isRegularExpression)
+                        .forEach(v -> compile(v, v.asRegularExpression().getPattern(), v.asRegularExpression().getOptions()));
+                }
+                case "$not" -> {
+                    if (isOperatorsDocument(value)) {
+                        checkOperators(value.asDocument());
+                    } else if (value.isRegularExpression()) {
+                        compile(value, value.asRegularExpression().getPattern(), value.asRegularExpression().getOptions());
+                    } else {
+                        throw new IllegalArgumentException("$not requires an operators document or a regular expression");
+                    }
+                }
+                case "$regex" -> {
+                    if (value.isRegularExpression()) {
+                        compile(value, value.asRegularExpression().getPattern(), value.asRegularExpression().getOptions());
+                    } else if (value.isString()) {
+                        // $options applies to $regex, the pattern is bound to the operators document
+                        compile(operators, value.asString().getValue(), operators.isString("$options") ? operators.getString("$options").getValue() : "");
+                    } else {
+                        throw new IllegalArgumentException("$regex requires a string or a regular expression");
+                    }
+                }
+                default -> {}
+            }
+        }
+    }
+
+    private void compile(BsonValue node, String regex, String options) {
+        this.patterns.put(node, Pattern.compile(regex, flags(options)));
+    }
+
+    /**
+     * @param doc the change event
+     * @return true if the change event matches the query
+     */
+    public boolean matches(BsonDocument doc) {
+        return matches(this.query, doc);
+    }
+
+    private boolean matches(BsonDocument query, BsonDocument doc) {
+        for (var entry: query.entrySet()) {
+            var key = entry.getKey();
+            var value = entry.getValue();
+
+            var matches = switch (key) {
+                case "$and" -> value.asArray().stream().allMatch(q -> matches(q.asDocument(), doc));
+                case "$or" -> value.asArray().stream().anyMatch(q -> matches(q.asDocument(), doc));
+                case "$nor" -> value.asArray().stream().noneMatch(q -> matches(q.asDocument(), doc));
+                default -> matchesField(values(doc, key), value);
+            };
+
+            if (!matches) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean matchesField(List<BsonValue> values, BsonValue condition) {
+        if (isOperatorsDocument(condition)) {
+            var operators = condition.asDocument();
+
+            for (var entry: operators.entrySet()) {
+                if (!matchesOperator(values, entry.getKey(), entry.getValue(), operators)) {
+                    return false;
+                }
+            }
+
+            return true;
+        } else if (condition.isRegularExpression()) {
+            return matchesRegex(values, this.patterns.get(condition));
+        } else {
+            return equals(values, condition);
+        }
+    }
+
+    private boolean matchesOperator(List<BsonValue> values, String op, BsonValue arg, BsonDocument operators) {
+        return switch (op) {
+            case "$eq" -> equals(values, arg);
+            case "$ne" -> !equals(values, arg);
+            case "$gt" -> compare(values, arg, c -> c > 0);
+            case "$gte" -> compare(values, arg, c -> c >= 0);
+            case "$lt" -> compare(values, arg, c -> c < 0);
+            case "$lte" -> compare(values, arg, c -> c <= 0);
+            case "$in" -> arg.asArray().stream().anyMatch(v -> v.isRegularExpression()
+                ? matchesRegex(values, this.patterns.get(v))
+                : equals(values, v));
+            case "$nin" -> !matchesOperator(values, "$in", arg, operators);
+            case "$exists" -> isTrue(arg) == !values.isEmpty();
+            case "$regex" -> matchesRegex(values, this.patterns.get(arg.isRegularExpression() ? arg : operators));
+            // $options applies to $regex
+            case "$options" -> true;
+            case "$not" -> !matchesField(values, arg);
+            default -> throw new IllegalArgumentException("unsupported operator " + op);
+        };
+    }
+
+    private static boolean isTrue(BsonValue value) {
+        if (value.isBoolean()) {
+            return value.asBoolean().getValue();
+        } else if (value.isNumber()) {
+            return value.asNumber().doubleValue() != 0;
+        } else {
+            return !value.isNull();
+        }
+    }
+
+    /**
+     * @return true if value is a document whose keys are operators
+     */
+    private static boolean isOperatorsDocument(BsonValue value) {
+        return value.isDocument() && !value.asDocument().isEmpty() && value.asDocument().keySet().iterator().next().startsWith("$");
+    }
+
+    /**
+     * the values of a field, with dot notation. Arrays are traversed as MongoDB
+     * does, so the path a.b of {a: [{b: 1}, {b: 2}]} resolves to 1 and 2
+     */
+    static List<BsonValue> values(BsonDocument doc, String path) {
+        var ret = new ArrayList<BsonValue>();
+        collect(doc, path.split("\\."), 0, ret);
+        return ret;
+    }
+
+    private static void collect(BsonValue value, String[] path, int idx, List<BsonValue> ret) {
+        if (idx == path.length) {
+            ret.add(value);
+        } else if (value.isDocument()) {
+            var next = value.asDocument().get(path[idx]);
+
+            if (next != null) {
+                collect(next, path, idx + 1, ret);
+            }
+        } else if (value.isArray()) {
+            var array = value.asArray();
+            var index = index(path[idx]);
+
+            if (index >= 0 && index < array.size()) {
+                collect(array.get(index), path, idx + 1, ret);
+            }
+
+            array.stream().filter(BsonValue::isDocument).forEach(e -> collect(e, path, idx, ret));
+        }
+    }
+
+    private static int index(String key) {
+        try {
+            return Integer.parseInt(key);
+        } catch(NumberFormatException nfe) {
+            return -1;
+        }
+    }
+
+    /**
+     * a missing field equals null; an array field equals a value if it or one of its elements equals it
+     */
+    private static boolean equals(List<BsonValue> values, BsonValue arg) {
+        if (values.isEmpty()) {
+            return arg.isNull();
+        }
+
+        return candidates(values).stream().anyMatch(v -> equal(v, arg));
+    }
+
+    private static boolean compare(List<BsonValue> values, BsonValue arg, IntPredicate test) {
+        return candidates(values).stream()
+            .map(v -> compare(v, arg))
+            .anyMatch(c -> c != null && test.test(c));
+    }
+
+    private static boolean matchesRegex(List<BsonValue> values, Pattern pattern) {
+        return candidates(values).stream()
+            .filter(BsonValue::isString)
+            .anyMatch(v -> pattern.matcher(v.asString().getValue()).find());
+    }
+
+    private static final Map<Character, Integer> REGEX_FLAGS = Map.of(
+        'i', Pattern.CASE_INSENSITIVE,
+        'm', Pattern.MULTILINE,
+        's', Pattern.DOTALL,
+        'x', Pattern.COMMENTS);
+
+    private static int flags(String options) {
+        var ret = 0;
+
+        if (options != null) {
+            for (var c: options.toCharArray()) {
+                ret |= REGEX_FLAGS.getOrDefault(c, 0);
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * the values and, for arrays, also their elements
+     */
+    private static List<BsonValue> candidates(List<BsonValue> values) {
+        var ret = new ArrayList<BsonValue>(values);
+
+        values.stream()
+            .filter(BsonValue::isArray)
+            .map(BsonValue::asArray)
+            .forEach(ret::addAll);
+
+        return ret;
+    }
+
+    private static boolean equal(BsonValue a, BsonValue b) {
+        if (isNumeric(a) && isNumeric(b)) {
+            var c = compare(a, b);
+            return c != null && c == 0;
+        } else if (a.isArray() && b.isArray()) {
+            return arrayEquals(a.asArray(), b.asArray());
+        } else if (a.isDocument() && b.isDocument()) {
+            return documentEquals(a.asDocument(), b.asDocument());
+        } else {
+            return a.equals(b);
+        }
+    }
+
+    /**
+     * embedded documents are equal if they have the same fields, in the same
+     * order, with equal values
+     */
+    private static boolean documentEquals(BsonDocument a, BsonDocument b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+
+        var ia = a.entrySet().iterator();
+        var ib = b.entrySet().iterator();
+
+        while (ia.hasNext()) {
+            var ea = ia.next();
+            var eb = ib.next();
+
+            if (!ea.getKey().equals(eb.getKey()) || !equal(ea.getValue(), eb.getValue())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean arrayEquals(BsonArray a, BsonArray b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+
+        for (int i = 0; i < a.size(); i++) {
+            if (!equal(a.get(i), b.get(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the comparison of a and b, or null if they are not comparable
+     */
+    private static Integer compare(BsonValue a, BsonValue b) {
+        if (isNumeric(a) && isNumeric(b)) {
+            var da = number(a);
+            var db = number(b);
+
+            if (da == null || db == null) {
+                return Double.compare(doubleValue(a), doubleValue(b));
+            } else {
+                return da.compareTo(db);
+            }
+        }
+
+        if (a.getBsonType() != b.getBsonType()) {
+            return null;
+        }
+
+        return switch (a.getBsonType()) {
+            case STRING -> a.asString().getValue().compareTo(b.asString().getValue());
+            case DATE_TIME -> Long.compare(a.asDateTime().getValue(), b.asDateTime().getValue());
+            case TIMESTAMP -> a.asTimestamp().compareTo(b.asTimestamp());
+            case OBJECT_ID -> a.asObjectId().getValue().compareTo(b.asObjectId().getValue());
+            case BOOLEAN -> Boolean.compare(a.asBoolean().getValue(), b.asBoolean().getValue());
+            case NULL -> 0;
+            default -> null;
+        };
+    }
+
+    private static boolean isNumeric(BsonValue value) {
+        return value.getBsonType() == BsonType.INT32
+            || value.getBsonType() == BsonType.INT64
+            || value.getBsonType() == BsonType.DOUBLE
+            || value.getBsonType() == BsonType.DECIMAL128;
+    }
+
+    private static double doubleValue(BsonValue value) {
+        return value.isDecimal128() ? value.asDecimal128().getValue().doubleValue() : value.asNumber().doubleValue();
+    }
+
+    /**
+     * @return the value as BigDecimal, or null for NaN and infinite values
+     */
+    private static BigDecimal number(BsonValue value) {
+        try {
+            return switch (value.getBsonType()) {
+                case INT32 -> BigDecimal.valueOf(value.asInt32().getValue());
+                case INT64 -> BigDecimal.valueOf(value.asInt64().getValue());
+                case DOUBLE -> Double.isFinite(value.asDouble().getValue()) ? new BigDecimal(value.asDouble().getValue()) : null;
+                case DECIMAL128 -> value.asDecimal128().getValue().bigDecimalValue();
+                default -> null;
+            };
+        } catch(ArithmeticException ae) {
+            // NaN and infinite Decimal128
+            return null;
+        }
+    }
+}
@@ -20,6 +20,8 @@
  */
 package org.restheart.mongodb.handlers.changestreams;
 
+import org.bson.BsonDocument;
+
 /**
  *
  * @author omartrasatti
@@ -28,10 +30,52 @@ public class ChangeStreamNotification {
 
     private final SessionKey sessionKey;
     private final String notificationMessage;
+    private final String coalesceKey;
+    private final long seq;
+    private final String eventId;
 
     public ChangeStreamNotification(SessionKey sessionKey, String notificationMessage) {
+        this(sessionKey, notificationMessage, null);
+    }
+
+    /**
+     * @param sessionKey
+     * @param notificationMessage
+     * @param coalesceKey identifies the changed document, used to coalesce the
+     * notifications queued for slow clients; can be null
+     */
+    public ChangeStreamNotification(SessionKey sessionKey, String notificationMessage, String coalesceKey) {
+        this(sessionKey, notificationMessage, coalesceKey, -1, null);
+    }
+
+    /**
+     * @param sessionKey
+     * @param notificationMessage
+     * @param coalesceKey identifies the changed document; can be null
+     * @param seq the sequence number in the ReplayBuffer, -1 if not buffered
+     * @param eventId the id of the server-sent event, see eventId(); can be null
+     */
+    public ChangeStreamNotification(SessionKey sessionKey, String notificationMessage, String coalesceKey, long seq, String eventId) {
         this.sessionKey = sessionKey;
         this.notificationMessage = notificationMessage;
+        this.coalesceKey = coalesceKey;
+        this.seq = seq;
+        this.eventId = eventId;
+    }
+
+    /**
+     * @param resumeToken
+     * @return the id of the server-sent event of the notification with the resume
+     * token: its _data string, or the resume token as json; null if resumeToken is null
+     */
+    public static String eventId(BsonDocument resumeToken) {
+        if (resumeToken == null) {
+            return null;
+        } else if (resumeToken.size() == 1 && resumeToken.isString("_data")) {
+            return resumeToken.getString("_data").getValue();
+        } else {
+            return resumeToken.toJson();
+        }
     }
 
     public SessionKey getSessionKey() {
@@ -41,4 +85,16 @@ public class ChangeStreamNotification {
     public String getNotificationMessage() {
         return this.notificationMessage;
     }
+
+    public String getCoalesceKey() {
+        return this.coalesceKey;
+    }
+
+    public long getSeq() {
+        return this.seq;
+    }
+
+    public String getEventId() {
+        return this.eventId;
+    }
 }
@@ -0,0 +1,269 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.handlers.changestreams;
+
+import io.undertow.server.session.SecureRandomSessionIdGenerator;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.BiConsumer;
+import org.bson.BsonDocument;
+import org.restheart.metrics.MetricLabel;
+import org.restheart.metrics.MetricNameAndLabels;
+import org.restheart.mongodb.MongoServiceConfiguration;
+import org.restheart.mongodb.MongoServiceConfiguration.SLOW_CONSUMER_POLICY;
+import org.restheart.utils.BsonUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xnio.XnioIoThread;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+
+/**
+ * A client connection to a change stream.
+ *
+ * The notifications are queued in a bounded queue and sent one at a time by
+ * the IO thread of the connection, so a slow client does not delay the others.
+ * When the queue is full, the slow consumer policy applies. The subclasses
+ * implement the transport: web socket or server-sent events.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public abstract class ChangeStreamSession {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChangeStreamSession.class);
+
+    // the prefix of the registries exported by the metrics service
+    private static final String METRICS_REGISTRY_NAME = "METRICS-/change-streams";
+    private static final MetricRegistry METRICS = SharedMetricRegistries.getOrCreate(METRICS_REGISTRY_NAME);
+
+    private static final int SEND_QUEUE_SIZE = MongoServiceConfiguration.get() != null
+        ? MongoServiceConfiguration.get().getChangeStreamsSendQueueSize()
+        : 1_000;
+
+    private static final SLOW_CONSUMER_POLICY POLICY = MongoServiceConfiguration.get() != null
+        ? MongoServiceConfiguration.get().getChangeStreamsSlowConsumerPolicy()
+        : SLOW_CONSUMER_POLICY.DROP_OLDEST;
+
+    static {
+        try {
+            METRICS.register("change_streams_send_queue_depth", (Gauge<Integer>) () -> WebSocketSessionsRegistry.getInstance().sessions().stream()
+                .mapToInt(s -> s.sendQueue.size()).sum());
+            METRICS.register("change_streams_send_queue_max_depth", (Gauge<Integer>) () -> WebSocketSessionsRegistry.getInstance().sessions().stream()
+                .mapToInt(s -> s.sendQueue.size()).max().orElse(0));
+        } catch (IllegalArgumentException iae) {
+            // already registered
+        }
+    }
+
+    private final String sessionId;
+    protected final SessionKey sessionKey;
+    private final NotificationSendQueue<ChangeStreamNotification> sendQueue = new NotificationSendQueue<>(SEND_QUEUE_SIZE, POLICY);
+
+    // the sequence number of the last notification replayed from the ReplayBuffer
+    private volatile long replayedUpTo = -1;
+
+    // accessed only by the IO thread of the connection
+    private boolean sending = false;
+    private boolean draining = false;
+
+    protected ChangeStreamSession(SessionKey sessionKey) {
+        this.sessionId = new SecureRandomSessionIdGenerator().createSessionId();
+        this.sessionKey = sessionKey;
+    }
+
+    public String getId() {
+        return this.sessionId;
+    }
+
+    public SessionKey getSessionKey() {
+        return this.sessionKey;
+    }
+
+    /**
+     * @return the number of notifications waiting to be sent
+     */
+    public int getSendQueueDepth() {
+        return this.sendQueue.size();
+    }
+
+    /**
+     * @return the IO thread of the connection
+     */
+    protected abstract XnioIoThread getIoThread();
+
+    /**
+     * @return true if the connection is open
+     */
+    protected abstract boolean isOpen();
+
+    /**
+     * writes the notification to the connection; invoked by the IO thread,
+     * the implementation must call sent() or failed() when the write completes
+     *
+     * @param notification
+     */
+    protected abstract void write(ChangeStreamNotification notification);
+
+    /**
+     * closes the connection
+     *
+     * @throws IOException
+     */
+    protected abstract void closeConnection() throws IOException;
+
+    /**
+     * Registers the session in the WebSocketSessionsRegistry. The notifications
+     * of the replay buffer following the resume token replayAfter, or with
+     * sequence number from replayFrom, are sent first.
+     *
+     * @param replayAfter the resume token of the notification to replay after, can be null
+     * @param replayFrom the sequence number of the first notification to replay, can be null
+     * @return false if the resume token is not in the replay buffer anymore;
+     * in this case the session is not registered
+     */
+    public boolean connect(BsonDocument replayAfter, Long replayFrom) {
+        var info = ChangeStreamsRegistry.getInstance().get(this.sessionKey);
+        var replayBuffer = info == null ? null : info.getReplayBuffer();
+
+        if (replayBuffer == null || (replayAfter == null && replayFrom == null)) {
+            WebSocketSessionsRegistry.getInstance().add(this.sessionKey, this);
+            return true;
+        }
+
+        // the session is registered while the replay buffer is locked,
+        // the notifications submitted meanwhile are discarded by the session if already replayed
+        BiConsumer<List<ReplayBuffer.Entry>, Long> replay = (entries, upTo) -> {
+            LOGGER.debug("Replaying {} notifications to stream connection, sessionkey={}", entries.size(), this.sessionKey);
+
+            entries.stream()
+                .filter(e -> info.getMatches().stream().allMatch(m -> m.matches(e.matchTarget())))
+                .forEach(e -> send(new ChangeStreamNotification(this.sessionKey,
+                    BsonUtils.toJson(e.doc(), this.sessionKey.getJsonMode()),
+                    e.coalesceKey(),
+                    -1,
+                    ChangeStreamNotification.eventId(e.resumeToken()))));
+
+            this.replayedUpTo = upTo;
+            WebSocketSessionsRegistry.getInstance().add(this.sessionKey, this);
+        };
+
+        if (replayAfter != null) {
+            return replayBuffer.replay(replayAfter, replay);
+        } else {
+            replayBuffer.replay(replayFrom, replay);
+            return true;
+        }
+    }
+
+    /**
+     * Queues the notification, that is sent by the IO thread of the connection.
+     * The caller never waits for the client: when the queue is full, the
+     * slow consumer policy applies.
+     *
+     * @param notification
+     */
+    public void send(ChangeStreamNotification notification) {
+        // already sent while replaying the buffer
+        if (notification.getSeq() >= 0 && notification.getSeq() <= this.replayedUpTo) {
+            return;
+        }
+
+        switch (this.sendQueue.offer(notification.getCoalesceKey(), notification)) {
+            case OVERFLOW -> {
+                LOGGER.debug("Closing slow stream connection, sessionkey={}", sessionKey);
+                counter("change_streams_slow_consumer_disconnections").inc();
+                closeQuietly();
+                return;
+            }
+            case DROPPED_OLDEST -> counter("change_streams_dropped_notifications").inc();
+            case COALESCED -> counter("change_streams_coalesced_notifications").inc();
+            default -> {}
+        }
+
+        getIoThread().execute(this::drain);
+    }
+
+    private void drain() {
+        // write() can complete synchronously, the loop avoids the recursion
+        if (this.draining) {
+            return;
+        }
+
+        this.draining = true;
+
+        try {
+            while (!this.sending && isOpen()) {
+                var notification = this.sendQueue.poll();
+
+                if (notification == null) {
+                    break;
+                }
+
+                this.sending = true;
+                write(notification);
+            }
+        } finally {
+            this.draining = false;
+        }
+    }
+
+    /**
+     * to be called by write() when the notification has been sent
+     */
+    protected void sent() {
+        this.sending = false;
+        drain();
+    }
+
+    /**
+     * to be called by write() when the notification cannot be sent
+     *
+     * @param t
+     */
+    protected void failed(Throwable t) {
+        this.sending = false;
+        LOGGER.debug("Error sending notification, closing stream connection, sessionkey={}", sessionKey, t);
+        closeQuietly();
+    }
+
+    private Counter counter(String name) {
+        var stream = URLDecoder.decode(this.sessionKey.getUrl(), StandardCharsets.UTF_8);
+        return METRICS.counter(new MetricNameAndLabels(name, MetricLabel.collect(new MetricLabel("stream", stream))).toString());
+    }
+
+    protected void closeQuietly() {
+        try {
+            close();
+        } catch (IOException ioe) {
+            LOGGER.warn("error closing session {}", this.sessionKey);
+        }
+    }
+
+    public void close() throws IOException {
+        WebSocketSessionsRegistry.getInstance().remove(this.sessionKey, this);
+        this.sendQueue.clear();
+        closeConnection();
+    }
+}
@@ -0,0 +1,74 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.handlers.changestreams;
+
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.sse.ServerSentEventConnection;
+import io.undertow.server.handlers.sse.ServerSentEventConnectionCallback;
+import java.io.IOException;
+import org.bson.BsonDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xnio.XnioIoThread;
+
+/**
+ * Connects the server-sent events clients to the change stream of the request
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class ChangeStreamSseCallback implements ServerSentEventConnectionCallback {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChangeStreamSseCallback.class);
+
+    private final SessionKey sessionKey;
+    private final XnioIoThread ioThread;
+    private final BsonDocument replayAfter;
+    private final Long replayFrom;
+
+    /**
+     * @param exchange the exchange of the request, with the attachments set by GetChangeStreamHandler
+     */
+    public ChangeStreamSseCallback(HttpServerExchange exchange) {
+        this.sessionKey = new SessionKey(exchange);
+        // the connection is bound to the IO thread of the exchange
+        this.ioThread = exchange.getIoThread();
+        this.replayAfter = exchange.getAttachment(GetChangeStreamHandler.REPLAY_AFTER_ATTACHMENT_KEY);
+        this.replayFrom = exchange.getAttachment(GetChangeStreamHandler.REPLAY_FROM_ATTACHMENT_KEY);
+    }
+
+    @Override
+    public void connected(ServerSentEventConnection connection, String lastEventId) {
+        var newSession = new ChangeStreamSseSession(connection, this.ioThread, this.sessionKey);
+
+        LOGGER.debug("New stream connection (server-sent events), sessionkey={}", sessionKey);
+
+        if (!newSession.connect(this.replayAfter, this.replayFrom)) {
+            // the notification was evicted from the buffer during the connection;
+            // the client reconnects with the same Last-Event-ID, that is then resumed by MongoDB
+            LOGGER.debug("Cannot resume stream connection, resume token not found in replay buffer, sessionkey={}", sessionKey);
+
+            try {
+                connection.close();
+            } catch (IOException ioe) {
+                LOGGER.debug("Error closing stream connection, sessionkey={}", sessionKey, ioe);
+            }
+        }
+    }
+}
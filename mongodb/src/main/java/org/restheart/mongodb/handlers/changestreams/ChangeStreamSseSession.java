@@ -0,0 +1,101 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.handlers.changestreams;
+
+import io.undertow.server.handlers.sse.ServerSentEventConnection;
+import java.io.IOException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xnio.XnioIoThread;
+
+/**
+ * A change stream session that sends the notifications as server-sent events.
+ *
+ * The data of each event is the notification and its id is the resume token,
+ * so that a client reconnecting with the Last-Event-ID header resumes the
+ * stream. The events are written without blocking by the IO thread of the
+ * connection, that is the IO thread of the exchange that opened it.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class ChangeStreamSseSession extends ChangeStreamSession {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChangeStreamSseSession.class);
+
+    // the time in msecs after which a comment is sent to an idle connection, so that proxies do not close it
+    private static final long KEEP_ALIVE_TIME = 30_000;
+
+    private final ServerSentEventConnection connection;
+    private final XnioIoThread ioThread;
+
+    /**
+     * @param connection the server-sent events connection
+     * @param ioThread the IO thread of the exchange that opened the connection
+     * @param sessionKey the session key
+     */
+    public ChangeStreamSseSession(ServerSentEventConnection connection, XnioIoThread ioThread, SessionKey sessionKey) {
+        super(sessionKey);
+        this.connection = connection;
+        this.ioThread = ioThread;
+        this.connection.setKeepAliveTime(KEEP_ALIVE_TIME);
+        this.connection.addCloseTask(c -> {
+            LOGGER.debug("Stream connection closed, sessionkey={}", sessionKey);
+            closeQuietly();
+        });
+    }
+
+    public ServerSentEventConnection getConnection() {
+        return this.connection;
+    }
+
+    @Override
+    protected XnioIoThread getIoThread() {
+        return this.ioThread;
+    }
+
+    @Override
+    protected boolean isOpen() {
+        return this.connection.isOpen();
+    }
+
+    @Override
+    protected void write(ChangeStreamNotification notification) {
+        this.connection.send(notification.getNotificationMessage(), null, notification.getEventId(), sendCallback);
+    }
+
+    private final ServerSentEventConnection.EventCallback sendCallback = new ServerSentEventConnection.EventCallback() {
+        @Override
+        public void done(ServerSentEventConnection connection, String data, String event, String id) {
+            sent();
+        }
+
+        @Override
+        public void failed(ServerSentEventConnection connection, String data, String event, String id, IOException e) {
+            ChangeStreamSseSession.this.failed(e);
+        }
+    };
+
+    @Override
+    protected void closeConnection() throws IOException {
+        if (this.connection.isOpen()) {
+            this.connection.close();
+        }
+    }
+}
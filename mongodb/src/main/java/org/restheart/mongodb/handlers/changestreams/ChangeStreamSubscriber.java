@@ -54,27 +54,73 @@ public class ChangeStreamSubscriber implements Subscriber<ChangeStreamDocument<?
     private List<BsonDocument> resolvedStages;
     private String dbName;
     private String collName;
+    private final ReplayBuffer replayBuffer;
 
     // Can be a configuration.
     private boolean init;
     private Subscription sub;
 
+    // the resume token of the last notification, to restart the stream after it
+    private volatile BsonDocument lastResumeToken;
+
+    /**
+     * the time in msecs a stream waits for its first client to connect
+     */
+    static final long CONNECT_GRACE_PERIOD = 10_000;
+
+    private final long startedAt = System.currentTimeMillis();
+    private boolean watched = false;
+
     public ChangeStreamSubscriber(SessionKey sessionKey, List<BsonDocument> resolvedStages, String dbName, String collName) {
-        super();
-        this.sessionKey = sessionKey;
-        this.resolvedStages = resolvedStages;
-        this.dbName = dbName;
-        this.collName = collName;
-        this.init = false;
+        this(sessionKey, resolvedStages, dbName, collName, false, null, null);
     }
 
     public ChangeStreamSubscriber(SessionKey sessionKey, List<BsonDocument> resolvedStages, String dbName, String collName, boolean init) {
+        this(sessionKey, resolvedStages, dbName, collName, init, null, null);
+    }
+
+    /**
+     * @param sessionKey
+     * @param resolvedStages
+     * @param dbName
+     * @param collName
+     * @param init
+     * @param replayBuffer the buffer of the notifications to replay to reconnecting clients, can be null
+     * @param lastResumeToken the resume token the stream was started after, can be null
+     */
+    public ChangeStreamSubscriber(SessionKey sessionKey, List<BsonDocument> resolvedStages, String dbName, String collName, boolean init, ReplayBuffer replayBuffer, BsonDocument lastResumeToken) {
         super();
         this.sessionKey = sessionKey;
         this.resolvedStages = resolvedStages;
         this.dbName = dbName;
         this.collName = collName;
         this.init = init;
+        this.replayBuffer = replayBuffer;
+        this.lastResumeToken = lastResumeToken;
+    }
+
+    /**
+     * opens a change stream
+     *
+     * @param dbName
+     * @param collName
+     * @param stages
+     * @param resumeToken the resume token to start the stream after, or null to start it from now
+     * @param startAfter true to use startAfter instead of resumeAfter, that also works after an invalidate event
+     * @param subscriber
+     */
+    static void watch(String dbName, String collName, List<BsonDocument> stages, BsonDocument resumeToken, boolean startAfter, Subscriber<ChangeStreamDocument<?>> subscriber) {
+        var publisher = RHMongoClients.mclientReactive()
+            .getDatabase(dbName)
+            .getCollection(collName)
+            .watch(stages)
+            .fullDocument(FullDocument.UPDATE_LOOKUP);
+
+        if (resumeToken != null) {
+            publisher = startAfter ? publisher.startAfter(resumeToken) : publisher.resumeAfter(resumeToken);
+        }
+
+        publisher.subscribe(subscriber);
     }
 
     @Override
@@ -89,14 +135,37 @@ public class ChangeStreamSubscriber implements Subscriber<ChangeStreamDocument<?
             setInit(true);
         }
 
+        if (notification.getResumeToken() != null) {
+            this.lastResumeToken = notification.getResumeToken();
+        }
+
         if (!WebSocketSessionsRegistry.getInstance().get(sessionKey).isEmpty()) {
+            this.watched = true;
+
             LOGGER.trace("[clients watching]: " + WebSocketSessionsRegistry.getInstance().get(sessionKey).size());
 
             LOGGER.trace("Change stream notification for sessionKey={}: {}", sessionKey, notification);
 
+            var doc = getDocument(notification);
+            var coalesceKey = coalesceKey(notification);
+
+            // buffered before being submitted, see ReplayBuffer.replay()
+            var seq = replayBuffer == null || notification.getResumeToken() == null
+                ? -1
+                : replayBuffer.add(notification.getResumeToken(), doc, doc, coalesceKey).seq();
+
             ChangeStreamWebsocketCallback.NOTIFICATION_PUBLISHER.submit(
                 new ChangeStreamNotification(sessionKey,
-                    BsonUtils.toJson(getDocument(notification), sessionKey.getJsonMode())));
+                    BsonUtils.toJson(doc, sessionKey.getJsonMode()),
+                    coalesceKey,
+                    seq,
+                    ChangeStreamNotification.eventId(notification.getResumeToken())));
+        } else if (!this.watched && this.replayBuffer != null && notification.getResumeToken() != null
+            && System.currentTimeMillis() - this.startedAt < CONNECT_GRACE_PERIOD) {
+            // the client has not connected yet,
+            // the notification is replayed when it connects
+            var doc = getDocument(notification);
+            replayBuffer.add(notification.getResumeToken(), doc, doc, coalesceKey(notification));
         } else {
             this.stop();
             LOGGER.debug("Closing unwatched stream, sessionKey=" + sessionKey);
@@ -148,16 +217,14 @@ public class ChangeStreamSubscriber implements Subscriber<ChangeStreamDocument<?
 
     private void restartStream() {
         try {
-            RHMongoClients.mclientReactive()
-                .getDatabase(dbName)
-                .getCollection(collName)
-                .watch(resolvedStages)
-                .fullDocument(FullDocument.UPDATE_LOOKUP)
-                .subscribe(new ChangeStreamSubscriber(sessionKey,
+            // resumes after the last notification, so that no change is lost
+            watch(dbName, collName, resolvedStages, lastResumeToken, false, new ChangeStreamSubscriber(sessionKey,
                         resolvedStages,
                         dbName,
                         collName,
-                        true));
+                        true,
+                        replayBuffer,
+                        lastResumeToken));
 
         }  catch(Throwable e) {
             LOGGER.warn("Error trying to restart the stream: " + e.getMessage());
@@ -173,13 +240,18 @@ public class ChangeStreamSubscriber implements Subscriber<ChangeStreamDocument<?
         this.sub.cancel();
     }
 
-    private BsonDocument getDocument(ChangeStreamDocument<?> notification) {
+    static BsonDocument getDocument(ChangeStreamDocument<?> notification) {
         var doc = new BsonDocument();
 
         if (notification == null) {
             return doc;
         }
 
+        // the resume token
+        if (notification.getResumeToken() != null) {
+            doc.put("_id", notification.getResumeToken());
+        }
+
         if (notification.getFullDocument() != null) {
             try {
                 doc.put("fullDocument", toBson((Document) notification.getFullDocument()));
@@ -225,9 +297,16 @@ public class ChangeStreamSubscriber implements Subscriber<ChangeStreamDocument<?
         return doc;
     }
 
+    /**
+     * @return the documentKey of the notification as json, or null
+     */
+    static String coalesceKey(ChangeStreamDocument<?> notification) {
+        return notification == null || notification.getDocumentKey() == null ? null : notification.getDocumentKey().toJson();
+    }
+
     private static final CodecRegistry REGISTRY = CodecRegistries.fromCodecs(new DocumentCodec());
 
-    private static BsonValue toBson(Document document) {
+    static BsonValue toBson(Document document) {
         return document == null ? BsonNull.VALUE : document.toBsonDocument(BsonDocument.class, REGISTRY);
     }
 }
@@ -20,30 +20,29 @@
  */
 package org.restheart.mongodb.handlers.changestreams;
 
-import io.undertow.server.session.SecureRandomSessionIdGenerator;
 import io.undertow.websockets.core.AbstractReceiveListener;
 import io.undertow.websockets.core.StreamSourceFrameChannel;
+import io.undertow.websockets.core.WebSocketCallback;
 import io.undertow.websockets.core.WebSocketChannel;
+import io.undertow.websockets.core.WebSockets;
 import java.io.IOException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xnio.XnioIoThread;
 /**
  *
  * @author Omar Trasatti {@literal <omar@softinstigate.com>}
  */
 
-public class ChangeStreamWebSocketSession {
+public class ChangeStreamWebSocketSession extends ChangeStreamSession {
     private static final Logger LOGGER
             = LoggerFactory.getLogger(ChangeStreamWebSocketSession.class);
 
-    private final String sessionId;
-    private final SessionKey sessionKey;
     private final WebSocketChannel webSocketChannel;
 
     public ChangeStreamWebSocketSession(WebSocketChannel channel, SessionKey sessionKey) {
-        this.sessionId = new SecureRandomSessionIdGenerator().createSessionId();
+        super(sessionKey);
         this.webSocketChannel = channel;
-        this.sessionKey = sessionKey;
         initChannelReceiveListener(webSocketChannel);
     }
 
@@ -53,20 +52,39 @@ public class ChangeStreamWebSocketSession {
         channel.resumeReceives();
     }
 
-    public String getId() {
-        return this.sessionId;
+    public WebSocketChannel getChannel() {
+        return this.webSocketChannel;
     }
 
-    public SessionKey getSessionKey() {
-        return this.sessionKey;
+    @Override
+    protected XnioIoThread getIoThread() {
+        return this.webSocketChannel.getIoThread();
     }
 
-    public WebSocketChannel getChannel() {
-        return this.webSocketChannel;
+    @Override
+    protected boolean isOpen() {
+        return this.webSocketChannel.isOpen();
+    }
+
+    @Override
+    protected void write(ChangeStreamNotification notification) {
+        WebSockets.sendText(notification.getNotificationMessage(), this.webSocketChannel, sendCallback);
     }
 
-    public void close() throws IOException {
-        WebSocketSessionsRegistry.getInstance().remove(this.sessionKey, this);
+    private final WebSocketCallback<Void> sendCallback = new WebSocketCallback<Void>() {
+        @Override
+        public void complete(final WebSocketChannel channel, Void context) {
+            sent();
+        }
+
+        @Override
+        public void onError(final WebSocketChannel channel, Void context, Throwable throwable) {
+            failed(throwable);
+        }
+    };
+
+    @Override
+    protected void closeConnection() throws IOException {
         this.webSocketChannel.close();
     }
 
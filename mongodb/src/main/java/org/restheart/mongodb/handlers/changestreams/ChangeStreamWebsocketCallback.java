@@ -21,7 +21,9 @@
 package org.restheart.mongodb.handlers.changestreams;
 
 import io.undertow.websockets.WebSocketConnectionCallback;
+import io.undertow.websockets.core.CloseMessage;
 import io.undertow.websockets.core.WebSocketChannel;
+import io.undertow.websockets.core.WebSockets;
 import io.undertow.websockets.spi.WebSocketHttpExchange;
 import java.util.concurrent.SubmissionPublisher;
 import org.slf4j.Logger;
@@ -51,7 +53,14 @@ public class ChangeStreamWebsocketCallback implements WebSocketConnectionCallbac
 
         LOGGER.debug("New stream connection, sessionkey={}", sessionKey);
 
-        WebSocketSessionsRegistry.getInstance().add(sessionKey, newSession);
+        var replayAfter = exchange.getAttachment(GetChangeStreamHandler.REPLAY_AFTER_ATTACHMENT_KEY);
+        var replayFrom = exchange.getAttachment(GetChangeStreamHandler.REPLAY_FROM_ATTACHMENT_KEY);
+
+        if (!newSession.connect(replayAfter, replayFrom)) {
+            // the notification was evicted from the buffer during the handshake
+            LOGGER.debug("Cannot resume stream connection, resume token not found in replay buffer, sessionkey={}", sessionKey);
+            WebSockets.sendClose(CloseMessage.UNEXPECTED_ERROR, "resume token not found, please reconnect", channel, null);
+        }
     }
 
     private ChangeStreamWebSocketSession createSession(WebSocketChannel channel, SessionKey sessionKey) {
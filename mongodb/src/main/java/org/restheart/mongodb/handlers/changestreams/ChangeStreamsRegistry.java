@@ -61,6 +61,16 @@ public class ChangeStreamsRegistry {
         return OPENED_STREAMS.remove(key);
     }
 
+    /**
+     * removes the entry only if the key is still mapped to the given SessionInfo instance
+     *
+     * @param key
+     * @param info
+     */
+    public void remove(SessionKey key, SessionInfo info) {
+        OPENED_STREAMS.computeIfPresent(key, (k, v) -> v == info ? null : v);
+    }
+
     public Set<SessionKey> getSessionKeysOnDb(String db) {
         var ret = new HashSet<SessionKey>();
         if (db == null) {
@@ -20,27 +20,36 @@
  */
 package org.restheart.mongodb.handlers.changestreams;
 
-import com.mongodb.client.model.changestream.FullDocument;
-
 import io.undertow.Handlers;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.sse.ServerSentEventHandler;
 import io.undertow.util.AttachmentKey;
+import io.undertow.util.Headers;
+import io.undertow.util.HttpString;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import org.bson.BsonArray;
 import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
 import org.bson.json.JsonMode;
+import org.bson.json.JsonParseException;
+import static org.restheart.exchange.ExchangeKeys.RESUME_AFTER_QPARAM_KEY;
+import static org.restheart.exchange.ExchangeKeys.START_AFTER_QPARAM_KEY;
 import org.restheart.exchange.InvalidMetadataException;
 import org.restheart.exchange.MongoRequest;
 import org.restheart.exchange.MongoResponse;
 import org.restheart.exchange.QueryNotFoundException;
 import org.restheart.exchange.QueryVariableNotBoundException;
 import org.restheart.handlers.PipelinedHandler;
-import org.restheart.mongodb.RHMongoClients;
+import org.restheart.mongodb.MongoServiceConfiguration;
 import org.restheart.mongodb.utils.StagesInterpolator;
 import org.restheart.mongodb.utils.StagesInterpolator.STAGE_OPERATOR;
 import org.restheart.mongodb.utils.VarsInterpolator.VAR_OPERATOR;
+import org.restheart.utils.BsonUtils;
 import org.restheart.utils.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,12 +64,40 @@ public class GetChangeStreamHandler extends PipelinedHandler {
     private final String CONNECTION_HEADER_VALUE = "upgrade";
     private final String UPGRADE_HEADER_KEY = "upgrade";
     private final String UPGRADE_HEADER_VALUE = "websocket";
+    private final String EVENT_STREAM_CONTENT_TYPE = "text/event-stream";
+    // sent by EventSource clients on reconnection, with the id of the last received event
+    private static final HttpString LAST_EVENT_ID_HEADER = HttpString.tryFromString("Last-Event-ID");
 
     private static final Logger LOGGER = LoggerFactory.getLogger(GetChangeStreamHandler.class);
     private static final HttpHandler WEBSOCKET_HANDSHAKE_HANDLER = Handlers.websocket(new ChangeStreamWebsocketCallback());
 
     public static final AttachmentKey<BsonDocument> AVARS_ATTACHMENT_KEY = AttachmentKey.create(BsonDocument.class);
     public static final AttachmentKey<JsonMode> JSON_MODE_ATTACHMENT_KEY = AttachmentKey.create(JsonMode.class);
+    // the resume token of the sessions resumed by MongoDB, that get their own change stream
+    public static final AttachmentKey<String> RESUME_TOKEN_ATTACHMENT_KEY = AttachmentKey.create(String.class);
+    // the resume token after which the replay buffer is replayed to the connecting client
+    public static final AttachmentKey<BsonDocument> REPLAY_AFTER_ATTACHMENT_KEY = AttachmentKey.create(BsonDocument.class);
+    // the sequence number from which the replay buffer is replayed to the connecting client
+    public static final AttachmentKey<Long> REPLAY_FROM_ATTACHMENT_KEY = AttachmentKey.create(Long.class);
+
+    private static final boolean SHARED_UPSTREAM = MongoServiceConfiguration.get() != null && MongoServiceConfiguration.get().isChangeStreamsSharedUpstream();
+
+    private static final int REPLAY_BUFFER_SIZE = MongoServiceConfiguration.get() != null
+        ? MongoServiceConfiguration.get().getChangeStreamsReplayBufferSize()
+        : 0;
+
+    // the size of the buffer of the streams resumed by MongoDB when the replay buffer is disabled,
+    // it holds the notifications received before the client completes the web socket handshake
+    private static final int RESUMED_STREAM_BUFFER_SIZE = 1_000;
+
+    /**
+     * the resume token of the resumeAfter or startAfter query parameter
+     *
+     * @param token
+     * @param startAfter true if specified with startAfter
+     */
+    private record Resume(BsonDocument token, boolean startAfter) {
+    }
 
     @Override
     public void handleRequest(HttpServerExchange exchange) throws Exception {
@@ -73,15 +110,31 @@ public class GetChangeStreamHandler extends PipelinedHandler {
         }
 
         try {
-            if (isWebSocketHandshakeRequest(exchange)) {
+            var webSocket = isWebSocketHandshakeRequest(exchange);
+
+            if (webSocket || isEventStreamRequest(exchange)) {
                 exchange.putAttachment(JSON_MODE_ATTACHMENT_KEY, request.getJsonMode());
                 exchange.putAttachment(AVARS_ATTACHMENT_KEY, request.getAggregationVars());
 
-                startStream(exchange);
+                Resume resume;
+
+                try {
+                    resume = resume(exchange);
+                } catch (IllegalArgumentException iae) {
+                    response.setInError(HttpStatus.SC_BAD_REQUEST, iae.getMessage());
+                    next(exchange);
+                    return;
+                }
 
-                WEBSOCKET_HANDSHAKE_HANDLER.handleRequest(exchange);
+                startStream(exchange, resume);
+
+                if (webSocket) {
+                    WEBSOCKET_HANDSHAKE_HANDLER.handleRequest(exchange);
+                } else {
+                    new ServerSentEventHandler(new ChangeStreamSseCallback(exchange)).handleRequest(exchange);
+                }
             } else {
-                response.setInError(HttpStatus.SC_BAD_REQUEST, "The stream connection requires WebSocket, no 'Upgrade' or 'Connection' request header found");
+                response.setInError(HttpStatus.SC_BAD_REQUEST, "The stream connection requires WebSocket or Server-Sent Events, no 'Upgrade' and 'Connection' or 'Accept: text/event-stream' request headers found");
 
                 next(exchange);
             }
@@ -124,7 +177,13 @@ public class GetChangeStreamHandler extends PipelinedHandler {
             Arrays.stream(uhVals.toArray()).anyMatch(val -> val.toLowerCase().contains(UPGRADE_HEADER_VALUE));
     }
 
-    private List<BsonDocument> getResolvedStagesAsList(MongoRequest request) throws InvalidMetadataException, QueryVariableNotBoundException, QueryNotFoundException {
+    private boolean isEventStreamRequest(HttpServerExchange exchange) {
+        var accept = exchange.getRequestHeaders().get(Headers.ACCEPT);
+
+        return accept != null && accept.stream().anyMatch(val -> val.toLowerCase().contains(EVENT_STREAM_CONTENT_TYPE));
+    }
+
+    private ChangeStreamOperation getChangeStreamOperation(MongoRequest request) throws InvalidMetadataException, QueryNotFoundException {
         String changesStreamOperation = request.getChangeStreamOperation();
 
         List<ChangeStreamOperation> streams = ChangeStreamOperation.getFromJson(request.getCollectionProps());
@@ -138,32 +197,223 @@ public class GetChangeStreamHandler extends PipelinedHandler {
             throw new QueryNotFoundException("Stream " + request.getUnmappedRequestUri() + "  does not exist");
         }
 
-        ChangeStreamOperation pipeline = _query.get();
+        return _query.get();
+    }
 
-        List<BsonDocument> resolvedStages = StagesInterpolator.interpolate(VAR_OPERATOR.$var, STAGE_OPERATOR.$ifvar, pipeline.getStages(), request.getAggregationVars());
-        return resolvedStages;
+    /**
+     * @return the resume token of the resumeAfter or startAfter query parameter,
+     * or of the Last-Event-ID header; null if not specified
+     * @throws IllegalArgumentException if the resume token is invalid
+     */
+    private static Resume resume(HttpServerExchange exchange) throws IllegalArgumentException {
+        var resumeAfter = exchange.getQueryParameters().get(RESUME_AFTER_QPARAM_KEY);
+        var startAfter = exchange.getQueryParameters().get(START_AFTER_QPARAM_KEY);
+
+        if (resumeAfter != null && startAfter != null) {
+            throw new IllegalArgumentException("the query parameters " + RESUME_AFTER_QPARAM_KEY + " and " + START_AFTER_QPARAM_KEY + " cannot be specified together");
+        } else if (resumeAfter == null && startAfter == null) {
+            var lastEventId = exchange.getRequestHeaders().getFirst(LAST_EVENT_ID_HEADER);
+
+            // the id of the event is the resume token, see ChangeStreamNotification.eventId()
+            return lastEventId == null || lastEventId.isBlank() ? null : resume("the header " + LAST_EVENT_ID_HEADER, lastEventId, false);
+        }
+
+        var qparam = resumeAfter != null ? RESUME_AFTER_QPARAM_KEY : START_AFTER_QPARAM_KEY;
+
+        return resume("the query parameter " + qparam, (resumeAfter != null ? resumeAfter : startAfter).getFirst(), startAfter != null);
     }
 
-    private boolean startStream(HttpServerExchange exchange) throws QueryVariableNotBoundException, QueryNotFoundException, InvalidMetadataException {
+    /**
+     * @param what the query parameter or header of the value, for error messages
+     * @param value the resume token, either the _id of a notification or its _data field
+     * @param startAfter
+     * @throws IllegalArgumentException if the resume token is invalid
+     */
+    private static Resume resume(String what, String value, boolean startAfter) throws IllegalArgumentException {
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException(what + " must be a resume token");
+        }
+
+        value = value.strip();
+
+        if (value.startsWith("{")) {
+            // the _id of the notification
+            try {
+                return new Resume(BsonDocument.parse(value), startAfter);
+            } catch (JsonParseException jpe) {
+                throw new IllegalArgumentException(what + " is not a valid resume token: " + jpe.getMessage());
+            }
+        } else {
+            // the _data field of the _id of the notification
+            return new Resume(new BsonDocument("_data", new BsonString(value)), startAfter);
+        }
+    }
+
+    private boolean startStream(HttpServerExchange exchange, Resume resume) throws QueryVariableNotBoundException, QueryNotFoundException, InvalidMetadataException {
         var streamKey = new SessionKey(exchange);
         var request = MongoRequest.of(exchange);
 
-        List<BsonDocument> resolvedStages = getResolvedStagesAsList(request);
+        var pipeline = getChangeStreamOperation(request);
+
+        List<BsonDocument> resolvedStages = StagesInterpolator.interpolate(VAR_OPERATOR.$var, STAGE_OPERATOR.$ifvar, pipeline.getStages(), request.getAggregationVars());
+
+        var existing = ChangeStreamsRegistry.getInstance().get(streamKey);
+
+        if (existing != null && (resume == null || replayable(existing.getReplayBuffer(), resume))) {
+            // the change stream is already open, the client joins it
+            replay(exchange, existing.getReplayBuffer(), resume);
+            return false;
+        }
+
+        var info = new SessionInfo(MongoRequest.of(exchange));
+
+        if (SHARED_UPSTREAM) {
+            var shared = sharedStream(request, pipeline);
+
+            if (shared != null && (resume == null || replayable(SharedChangeStreamsRegistry.getInstance().get(shared.key()), resume))) {
+                ChangeStreamsRegistry.getInstance().put(streamKey, info);
+
+                var replayFrom = SharedChangeStreamsRegistry.getInstance().register(shared.key(), streamKey, info, shared.matches());
+
+                if (resume != null) {
+                    exchange.putAttachment(REPLAY_AFTER_ATTACHMENT_KEY, resume.token());
+                } else if (replayFrom >= 0) {
+                    exchange.putAttachment(REPLAY_FROM_ATTACHMENT_KEY, replayFrom);
+                }
+
+                LOGGER.debug("Stream {} uses the shared change stream on {}/{}", request.getUnmappedRequestUri(), request.getDBName(), request.getCollectionName());
 
-        if (!ChangeStreamsRegistry.getInstance().containsKey(streamKey)) {
-            ChangeStreamsRegistry.getInstance().put(streamKey, new SessionInfo(MongoRequest.of(exchange)));
+                return true;
+            }
+        }
+
+        var bufferSize = REPLAY_BUFFER_SIZE;
+
+        if (resume != null) {
+            // the notifications to resume are not in a replay buffer:
+            // MongoDB resumes the change stream in a dedicated stream of the session
+            exchange.putAttachment(RESUME_TOKEN_ATTACHMENT_KEY, resume.token().toJson());
+            streamKey = new SessionKey(exchange);
+
+            var resumed = ChangeStreamsRegistry.getInstance().get(streamKey);
+
+            if (resumed != null) {
+                replay(exchange, resumed.getReplayBuffer(), null);
+                return false;
+            }
+
+            bufferSize = bufferSize > 0 ? bufferSize : RESUMED_STREAM_BUFFER_SIZE;
+
+            LOGGER.debug("Resuming stream {} with {}={}", request.getUnmappedRequestUri(), resume.startAfter() ? START_AFTER_QPARAM_KEY : RESUME_AFTER_QPARAM_KEY, resume.token());
+        }
 
-            RHMongoClients.mclientReactive()
-                .getDatabase(request.getDBName())
-                .getCollection(request.getCollectionName())
-                .watch(resolvedStages)
-                .fullDocument(FullDocument.UPDATE_LOOKUP)
-                .subscribe(new ChangeStreamSubscriber(streamKey,
-                    resolvedStages,
-                    request.getDBName(),
-                    request.getCollectionName()));
+        var replayBuffer = bufferSize > 0 ? new ReplayBuffer(bufferSize) : null;
+        info.setReplay(replayBuffer, List.of());
+        ChangeStreamsRegistry.getInstance().put(streamKey, info);
+        replay(exchange, replayBuffer, null);
+
+        ChangeStreamSubscriber.watch(request.getDBName(),
+            request.getCollectionName(),
+            resolvedStages,
+            resume == null ? null : resume.token(),
+            resume != null && resume.startAfter(),
+            new ChangeStreamSubscriber(streamKey,
+                resolvedStages,
+                request.getDBName(),
+                request.getCollectionName(),
+                false,
+                replayBuffer,
+                resume == null ? null : resume.token()));
+
+        return true;
+    }
+
+    /**
+     * sets the attachment that makes the connecting client get the notifications
+     * of the replay buffer: the ones following the resume token or, without it,
+     * the ones received from now on, before the web socket handshake completes
+     */
+    private static void replay(HttpServerExchange exchange, ReplayBuffer replayBuffer, Resume resume) {
+        if (replayBuffer == null) {
+            return;
+        }
+
+        if (resume != null) {
+            exchange.putAttachment(REPLAY_AFTER_ATTACHMENT_KEY, resume.token());
+        } else {
+            exchange.putAttachment(REPLAY_FROM_ATTACHMENT_KEY, replayBuffer.nextSeq());
+        }
+    }
+
+    private static boolean replayable(ReplayBuffer replayBuffer, Resume resume) {
+        // startAfter is resumed by MongoDB, since it also applies after an invalidate event
+        return replayBuffer != null && !resume.startAfter() && replayBuffer.contains(resume.token());
+    }
+
+    private static boolean replayable(SharedChangeStream stream, Resume resume) {
+        return stream != null && replayable(stream.replayBuffer(), resume);
+    }
+
+    /**
+     * the shared change stream of a stream definition and the queries
+     * of the $match stages of the session, evaluated in-process
+     *
+     * @param key
+     * @param matches
+     */
+    private record SharedStream(SharedChangeStream.Key key, List<ChangeEventMatcher> matches) {
+    }
+
+    /**
+     * Resolves the shared change stream of the stream definition.
+     *
+     * The leading stages that do not use variables are executed by MongoDB
+     * and identify the shared stream; the other stages, once resolved, must
+     * be $match stages that can be evaluated in-process.
+     *
+     * @return null if the stream definition cannot be shared
+     */
+    private SharedStream sharedStream(MongoRequest request, ChangeStreamOperation pipeline) throws QueryVariableNotBoundException, InvalidMetadataException {
+        var stages = pipeline.getStages();
+        var unescaped = BsonUtils.unescapeKeys(stages).asArray();
+
+        int upstreamStages = 0;
+
+        while (upstreamStages < unescaped.size() && !usesVars(unescaped.get(upstreamStages))) {
+            upstreamStages++;
+        }
+
+        var upstream = new BsonArray(stages.subList(0, upstreamStages));
+        var inProcess = new BsonArray(stages.subList(upstreamStages, stages.size()));
+
+        List<ChangeEventMatcher> matches = new ArrayList<>();
+
+        try {
+            for (var stage: StagesInterpolator.interpolate(VAR_OPERATOR.$var, STAGE_OPERATOR.$ifvar, inProcess, request.getAggregationVars())) {
+                matches.add(ChangeEventMatcher.of(stage));
+            }
+        } catch (IllegalArgumentException iae) {
+            LOGGER.debug("Stream {} cannot be shared, it requires a dedicated change stream: {}", request.getUnmappedRequestUri(), iae.getMessage());
+            return null;
+        }
+
+        var key = new SharedChangeStream.Key(request.getDBName(),
+            request.getCollectionName(),
+            StagesInterpolator.interpolate(VAR_OPERATOR.$var, STAGE_OPERATOR.$ifvar, upstream, request.getAggregationVars()));
+
+        return new SharedStream(key, matches);
+    }
 
-            return true;
+    /**
+     * @return true if the stage uses the $var or $ifvar operators
+     */
+    private static boolean usesVars(BsonValue value) {
+        if (value.isDocument()) {
+            return value.asDocument().entrySet().stream().anyMatch(e -> VAR_OPERATOR.$var.name().equals(e.getKey())
+                || STAGE_OPERATOR.$ifvar.name().equals(e.getKey())
+                || usesVars(e.getValue()));
+        } else if (value.isArray()) {
+            return value.asArray().stream().anyMatch(GetChangeStreamHandler::usesVars);
         } else {
             return false;
         }
@@ -0,0 +1,132 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.handlers.changestreams;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+
+import org.restheart.mongodb.MongoServiceConfiguration.SLOW_CONSUMER_POLICY;
+
+/**
+ * The bounded queue of the notifications to send to a change stream session.
+ *
+ * When the queue is full, the policy decides whether the oldest notification
+ * is dropped, the queued notification of the same document is replaced
+ * (coalesce) or the session must be disconnected.
+ *
+ * @param <T> the type of the notifications
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class NotificationSendQueue<T> {
+    /**
+     * the outcome of offer()
+     */
+    public enum OFFER_RESULT { QUEUED, DROPPED_OLDEST, COALESCED, OVERFLOW }
+
+    private record Entry<T>(String coalesceKey, T message) {
+    }
+
+    private final int capacity;
+    private final SLOW_CONSUMER_POLICY policy;
+    private final ArrayDeque<Entry<T>> queue = new ArrayDeque<>();
+
+    /**
+     * @param capacity the max number of queued notifications
+     * @param policy what to do when the queue is full
+     */
+    public NotificationSendQueue(int capacity, SLOW_CONSUMER_POLICY policy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be greater than zero");
+        }
+
+        this.capacity = capacity;
+        this.policy = policy;
+    }
+
+    /**
+     * @param coalesceKey the key of the document of the notification, can be null
+     * @param message the notification message
+     * @return the outcome; with OVERFLOW the message is not queued
+     */
+    public synchronized OFFER_RESULT offer(String coalesceKey, T message) {
+        if (this.queue.size() < this.capacity) {
+            this.queue.addLast(new Entry<>(coalesceKey, message));
+            return OFFER_RESULT.QUEUED;
+        }
+
+        switch (this.policy) {
+            case DISCONNECT -> {
+                return OFFER_RESULT.OVERFLOW;
+            }
+            case COALESCE -> {
+                if (coalesceKey != null && coalesce(coalesceKey, message)) {
+                    return OFFER_RESULT.COALESCED;
+                }
+            }
+            default -> {}
+        }
+
+        this.queue.pollFirst();
+        this.queue.addLast(new Entry<>(coalesceKey, message));
+
+        return OFFER_RESULT.DROPPED_OLDEST;
+    }
+
+    /**
+     * replaces the queued notification with the same key with the new one, at the tail of the queue
+     */
+    private boolean coalesce(String coalesceKey, T message) {
+        var it = this.queue.iterator();
+
+        while (it.hasNext()) {
+            if (Objects.equals(it.next().coalesceKey(), coalesceKey)) {
+                it.remove();
+                this.queue.addLast(new Entry<>(coalesceKey, message));
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the next message to send, or null if the queue is empty
+     */
+    public synchronized T poll() {
+        var entry = this.queue.pollFirst();
+        return entry == null ? null : entry.message();
+    }
+
+    /**
+     * @return the number of queued notifications
+     */
+    public synchronized int size() {
+        return this.queue.size();
+    }
+
+    /**
+     * removes all the queued notifications
+     */
+    public synchronized void clear() {
+        this.queue.clear();
+    }
+}
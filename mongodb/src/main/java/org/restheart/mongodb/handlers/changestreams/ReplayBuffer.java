@@ -0,0 +1,148 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.handlers.changestreams;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import org.bson.BsonDocument;
+
+/**
+ * A bounded ring of the latest notifications of a change stream, used to
+ * replay the notifications missed by a client that reconnects with a resume
+ * token. When full, the oldest notification is evicted.
+ *
+ * Every notification gets a sequence number, so that a session that replayed
+ * the buffer can discard the notifications it has already sent.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class ReplayBuffer {
+    /**
+     * a notification of the buffer
+     *
+     * @param seq the sequence number
+     * @param resumeToken the resume token of the change event
+     * @param doc the notification document
+     * @param matchTarget the document the in-process $match stages are evaluated against
+     * @param coalesceKey the documentKey as json, or null
+     */
+    public record Entry(long seq, BsonDocument resumeToken, BsonDocument doc, BsonDocument matchTarget, String coalesceKey) {
+    }
+
+    private final int capacity;
+    private final ArrayDeque<Entry> ring;
+    private long nextSeq = 0;
+
+    /**
+     * @param capacity the max number of notifications
+     */
+    public ReplayBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be greater than zero");
+        }
+
+        this.capacity = capacity;
+        this.ring = new ArrayDeque<>(capacity);
+    }
+
+    /**
+     * adds a notification, evicting the oldest one if the buffer is full
+     *
+     * @return the added entry
+     */
+    public synchronized Entry add(BsonDocument resumeToken, BsonDocument doc, BsonDocument matchTarget, String coalesceKey) {
+        if (this.ring.size() >= this.capacity) {
+            this.ring.pollFirst();
+        }
+
+        var entry = new Entry(this.nextSeq++, resumeToken, doc, matchTarget, coalesceKey);
+        this.ring.addLast(entry);
+
+        return entry;
+    }
+
+    /**
+     * @param resumeToken
+     * @return true if the notification with the resume token is in the buffer
+     */
+    public synchronized boolean contains(BsonDocument resumeToken) {
+        return this.ring.stream().anyMatch(e -> e.resumeToken().equals(resumeToken));
+    }
+
+    /**
+     * @return the sequence number of the next notification
+     */
+    public synchronized long nextSeq() {
+        return this.nextSeq;
+    }
+
+    /**
+     * Passes the notifications following the one with the resume token to the
+     * consumer, along with the sequence number of the newest notification.
+     * No notification is added while the consumer runs.
+     *
+     * @param resumeToken
+     * @param consumer
+     * @return false if the notification with the resume token is not in the buffer
+     */
+    public synchronized boolean replay(BsonDocument resumeToken, BiConsumer<List<Entry>, Long> consumer) {
+        var entries = new ArrayList<Entry>();
+        var found = false;
+
+        for (var entry: this.ring) {
+            if (found) {
+                entries.add(entry);
+            } else if (entry.resumeToken().equals(resumeToken)) {
+                found = true;
+            }
+        }
+
+        if (!found) {
+            return false;
+        }
+
+        consumer.accept(entries, this.nextSeq - 1);
+
+        return true;
+    }
+
+    /**
+     * Passes the notifications with sequence number greater or equal to seq to
+     * the consumer, along with the sequence number of the newest notification.
+     * No notification is added while the consumer runs.
+     *
+     * @param seq
+     * @param consumer
+     */
+    public synchronized void replay(long seq, BiConsumer<List<Entry>, Long> consumer) {
+        consumer.accept(this.ring.stream().filter(e -> e.seq() >= seq).toList(), this.nextSeq - 1);
+    }
+
+    /**
+     * @return the number of notifications in the buffer
+     */
+    public synchronized int size() {
+        return this.ring.size();
+    }
+}
@@ -20,6 +20,7 @@
  */
 package org.restheart.mongodb.handlers.changestreams;
 
+import java.util.List;
 import java.util.Objects;
 import org.restheart.exchange.MongoRequest;
 
@@ -33,6 +34,10 @@ public class SessionInfo {
     private final String collection;
     private final String changeStreamOperation;
 
+    // the replay buffer of the upstream change stream and the in-process $match stages
+    private volatile ReplayBuffer replayBuffer = null;
+    private volatile List<ChangeEventMatcher> matches = List.of();
+
     public SessionInfo(MongoRequest request) {
         this.db = request.getDBName();
         this.collection = request.getCollectionName();
@@ -78,4 +83,28 @@ public class SessionInfo {
     public String getChangeStreamOperation() {
         return changeStreamOperation;
     }
+
+    /**
+     * @return the replay buffer of the change stream, or null
+     */
+    public ReplayBuffer getReplayBuffer() {
+        return replayBuffer;
+    }
+
+    /**
+     * @return the matchers of the $match stages evaluated in-process before
+     * replaying the notifications
+     */
+    public List<ChangeEventMatcher> getMatches() {
+        return matches;
+    }
+
+    /**
+     * @param replayBuffer the replay buffer of the change stream
+     * @param matches the matchers of the $match stages evaluated in-process
+     */
+    public void setReplay(ReplayBuffer replayBuffer, List<ChangeEventMatcher> matches) {
+        this.replayBuffer = replayBuffer;
+        this.matches = matches;
+    }
 }
@@ -37,11 +37,14 @@ public class SessionKey {
     private final String url;
     private final BsonDocument avars;
     private final JsonMode jsonMode;
+    // the resume token of sessions resumed by MongoDB, that get their own change stream
+    private final String resumeToken;
 
     public SessionKey(String url, BsonDocument avars, JsonMode jsonMode) {
         this.url = url;
         this.avars = avars;
         this.jsonMode = jsonMode;
+        this.resumeToken = null;
     }
 
     public SessionKey(WebSocketHttpExchange exchange) {
@@ -57,6 +60,7 @@ public class SessionKey {
 
         this.avars = exchange.getAttachment(GetChangeStreamHandler.AVARS_ATTACHMENT_KEY);
         this.jsonMode = exchange.getAttachment(GetChangeStreamHandler.JSON_MODE_ATTACHMENT_KEY);
+        this.resumeToken = exchange.getAttachment(GetChangeStreamHandler.RESUME_TOKEN_ATTACHMENT_KEY);
     }
 
     public SessionKey(HttpServerExchange exchange) {
@@ -64,11 +68,12 @@ public class SessionKey {
 
         this.avars = exchange.getAttachment(GetChangeStreamHandler.AVARS_ATTACHMENT_KEY);
         this.jsonMode = exchange.getAttachment(GetChangeStreamHandler.JSON_MODE_ATTACHMENT_KEY);
+        this.resumeToken = exchange.getAttachment(GetChangeStreamHandler.RESUME_TOKEN_ATTACHMENT_KEY);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(getUrl(), getAvars(), getJsonMode());
+        return Objects.hash(getUrl(), getAvars(), getJsonMode(), getResumeToken());
     }
 
     @Override
@@ -112,4 +117,11 @@ public class SessionKey {
     public JsonMode getJsonMode() {
         return jsonMode;
     }
+
+    /**
+     * @return the resume token, for sessions resumed by MongoDB
+     */
+    public String getResumeToken() {
+        return resumeToken;
+    }
 }
@@ -0,0 +1,353 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.handlers.changestreams;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bson.BsonDocument;
+import org.bson.BsonNull;
+import org.bson.Document;
+import org.bson.json.JsonMode;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.restheart.utils.BsonUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+
+/**
+ * A change stream shared by all the sessions of a stream definition whose
+ * variable-dependent stages are $match stages.
+ *
+ * One upstream change stream is opened with the stages that do not depend on
+ * variables. The $match stages of each session are evaluated in-process on
+ * every change event, that is sent only to the sessions it matches.
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class SharedChangeStream {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SharedChangeStream.class);
+
+    /**
+     * identifies the upstream change stream
+     *
+     * @param db the database
+     * @param coll the collection
+     * @param stages the stages executed by MongoDB
+     */
+    public record Key(String db, String coll, List<BsonDocument> stages) {
+    }
+
+    /**
+     * a session of the shared stream
+     *
+     * @param info the SessionInfo registered in the ChangeStreamsRegistry
+     * @param matches the queries of the $match stages evaluated in-process
+     * @param registeredAt the time of the registration
+     * @param watched true once a client of the session has connected
+     */
+    record Registration(SessionInfo info, List<ChangeEventMatcher> matches, long registeredAt, boolean watched) {
+        Registration watch() {
+            return new Registration(info, matches, registeredAt, true);
+        }
+
+        /**
+         * @return true if the clients of the session can still complete the web socket handshake
+         */
+        boolean connecting() {
+            return !watched && System.currentTimeMillis() - registeredAt < ChangeStreamSubscriber.CONNECT_GRACE_PERIOD;
+        }
+    }
+
+    private final Key key;
+    private final Map<SessionKey, Registration> registrations = new ConcurrentHashMap<>();
+
+    private final ReplayBuffer replayBuffer;
+
+    private volatile UpstreamSubscriber upstream = null;
+    private volatile boolean closed = false;
+
+    // the resume token of the last change event, to restart the stream after it
+    private volatile BsonDocument lastResumeToken = null;
+
+    SharedChangeStream(Key key, int replayBufferSize) {
+        this.key = key;
+        this.replayBuffer = replayBufferSize > 0 ? new ReplayBuffer(replayBufferSize) : null;
+    }
+
+    public Key key() {
+        return this.key;
+    }
+
+    /**
+     * @param sessionKey
+     * @param info
+     * @param matches
+     * @return the sequence number of the first notification to replay to the
+     * clients of the session when they connect, or -1 if the replay buffer is disabled
+     */
+    long register(SessionKey sessionKey, SessionInfo info, List<ChangeEventMatcher> matches) {
+        info.setReplay(this.replayBuffer, matches);
+        var ret = this.replayBuffer == null ? -1 : this.replayBuffer.nextSeq();
+        this.registrations.put(sessionKey, new Registration(info, matches, System.currentTimeMillis(), false));
+        return ret;
+    }
+
+    /**
+     * @return the replay buffer, or null if disabled
+     */
+    public ReplayBuffer replayBuffer() {
+        return this.replayBuffer;
+    }
+
+    boolean isEmpty() {
+        return this.registrations.isEmpty();
+    }
+
+    /**
+     * @return the number of sessions sharing the stream
+     */
+    public int size() {
+        return this.registrations.size();
+    }
+
+    /**
+     * opens the upstream change stream
+     *
+     * @param init true if the stream is restarted after receiving events
+     */
+    void open(boolean init) {
+        if (this.closed) {
+            return;
+        }
+
+        this.upstream = new UpstreamSubscriber(init);
+
+        // on restart, resumes after the last change event so that no change is lost
+        ChangeStreamSubscriber.watch(key.db(), key.coll(), key.stages(), init ? this.lastResumeToken : null, false, this.upstream);
+    }
+
+    /**
+     * closes the upstream change stream
+     */
+    void close() {
+        this.closed = true;
+
+        var _upstream = this.upstream;
+
+        if (_upstream != null) {
+            _upstream.cancel();
+        }
+    }
+
+    private void dispatch(ChangeStreamDocument<?> notification) {
+        var doc = ChangeStreamSubscriber.getDocument(notification);
+        var target = matchTarget(notification, doc);
+
+        // the notification is serialized once per json mode
+        var messages = new HashMap<JsonMode, String>();
+        var coalesceKey = ChangeStreamSubscriber.coalesceKey(notification);
+        var eventId = ChangeStreamNotification.eventId(notification.getResumeToken());
+
+        if (notification.getResumeToken() != null) {
+            this.lastResumeToken = notification.getResumeToken();
+        }
+
+        // buffered before being submitted, see ReplayBuffer.replay()
+        var seq = this.replayBuffer == null || notification.getResumeToken() == null
+            ? -1
+            : this.replayBuffer.add(notification.getResumeToken(), doc, target, coalesceKey).seq();
+
+        var webSocketSessions = WebSocketSessionsRegistry.getInstance();
+        var changeStreams = ChangeStreamsRegistry.getInstance();
+
+        this.registrations.forEach((sessionKey, registration) -> {
+            var unwatched = webSocketSessions.get(sessionKey).isEmpty();
+
+            if (unwatched && registration.connecting() && changeStreams.get(sessionKey) == registration.info()) {
+                // the notification is replayed when the client connects
+                return;
+            } else if (!unwatched && !registration.watched()) {
+                this.registrations.replace(sessionKey, registration, registration.watch());
+            }
+
+            // the session was removed or replaced, e.g. by ObsoleteChangeStreamRemover
+            if (changeStreams.get(sessionKey) != registration.info() || unwatched) {
+                LOGGER.debug("Removing unwatched session from shared stream {}/{}, sessionKey={}", key.db(), key.coll(), sessionKey);
+                this.registrations.remove(sessionKey, registration);
+                changeStreams.remove(sessionKey, registration.info());
+                return;
+            }
+
+            if (registration.matches().stream().allMatch(m -> m.matches(target))) {
+                var message = messages.computeIfAbsent(sessionKey.getJsonMode(), mode -> BsonUtils.toJson(doc, mode));
+
+                ChangeStreamWebsocketCallback.NOTIFICATION_PUBLISHER.submit(new ChangeStreamNotification(sessionKey, message, coalesceKey, seq, eventId));
+            }
+        });
+
+        if (this.registrations.isEmpty()) {
+            SharedChangeStreamsRegistry.getInstance().removeIfEmpty(this);
+        }
+    }
+
+    /**
+     * the document the $match stages are evaluated against: the notification
+     * sent to the clients with the other fields of the change event.
+     * The $match stages on other fields are not evaluated in-process,
+     * see ChangeEventMatcher
+     */
+    private static BsonDocument matchTarget(ChangeStreamDocument<?> notification, BsonDocument doc) {
+        var ret = new BsonDocument();
+
+        if (notification.getResumeToken() != null) {
+            ret.put("_id", notification.getResumeToken());
+        }
+
+        if (notification.getNamespaceDocument() != null) {
+            ret.put("ns", notification.getNamespaceDocument());
+        }
+
+        if (notification.getDestinationNamespaceDocument() != null) {
+            ret.put("to", notification.getDestinationNamespaceDocument());
+        }
+
+        if (notification.getFullDocumentBeforeChange() != null) {
+            try {
+                ret.put("fullDocumentBeforeChange", ChangeStreamSubscriber.toBson((Document) notification.getFullDocumentBeforeChange()));
+            } catch(ClassCastException cce) {
+                ret.put("fullDocumentBeforeChange", BsonNull.VALUE);
+            }
+        }
+
+        if (notification.getClusterTime() != null) {
+            ret.put("clusterTime", notification.getClusterTime());
+        }
+
+        if (notification.getWallTime() != null) {
+            ret.put("wallTime", notification.getWallTime());
+        }
+
+        if (notification.getTxnNumber() != null) {
+            ret.put("txnNumber", notification.getTxnNumber());
+        }
+
+        if (notification.getLsid() != null) {
+            ret.put("lsid", notification.getLsid());
+        }
+
+        ret.putAll(doc);
+
+        return ret;
+    }
+
+    private void closeAllOnError() {
+        SharedChangeStreamsRegistry.getInstance().remove(this);
+
+        var webSocketSessions = WebSocketSessionsRegistry.getInstance();
+        var changeStreams = ChangeStreamsRegistry.getInstance();
+
+        this.registrations.forEach((sessionKey, registration) -> {
+            webSocketSessions.get(sessionKey).stream().toList().forEach(wss -> {
+                try {
+                    wss.close();
+                } catch(IOException ioe) {
+                    LOGGER.debug("Error closing stream connection, sessionKey={}", sessionKey, ioe);
+                }
+            });
+
+            this.registrations.remove(sessionKey, registration);
+            changeStreams.remove(sessionKey, registration.info());
+        });
+    }
+
+    private class UpstreamSubscriber implements Subscriber<ChangeStreamDocument<?>> {
+        private boolean init;
+        private volatile Subscription sub;
+        private volatile boolean cancelled = false;
+
+        UpstreamSubscriber(boolean init) {
+            this.init = init;
+        }
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            this.sub = s;
+
+            if (this.cancelled) {
+                s.cancel();
+            } else {
+                s.request(Long.MAX_VALUE);
+            }
+        }
+
+        @Override
+        public void onNext(ChangeStreamDocument<?> notification) {
+            this.init = true;
+
+            LOGGER.trace("Shared change stream notification for {}/{}, sessions={}: {}", key.db(), key.coll(), registrations.size(), notification);
+
+            dispatch(notification);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            if (this.cancelled) {
+                return;
+            }
+
+            LOGGER.warn("Error from shared stream: " + t.getMessage());
+
+            if (this.init) {
+                LOGGER.warn("Restarting shared stream: {}/{}", key.db(), key.coll());
+
+                try {
+                    open(true);
+                } catch(Throwable e) {
+                    LOGGER.warn("Error trying to restart the shared stream: " + e.getMessage());
+                }
+            } else {
+                LOGGER.warn("Closing all connected ws clients of shared stream: {}/{}", key.db(), key.coll());
+                closeAllOnError();
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            LOGGER.debug("Shared stream completed: {}/{}", key.db(), key.coll());
+        }
+
+        void cancel() {
+            this.cancelled = true;
+
+            var s = this.sub;
+
+            if (s != null) {
+                s.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.handlers.changestreams;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.restheart.mongodb.MongoServiceConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of the shared change streams, one per db, collection and stages
+ * executed by MongoDB
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class SharedChangeStreamsRegistry {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SharedChangeStreamsRegistry.class);
+
+    private static final int REPLAY_BUFFER_SIZE = MongoServiceConfiguration.get() != null
+        ? MongoServiceConfiguration.get().getChangeStreamsReplayBufferSize()
+        : 0;
+
+    // guarded by this
+    private final Map<SharedChangeStream.Key, SharedChangeStream> SHARED_STREAMS = new HashMap<>();
+
+    public static SharedChangeStreamsRegistry getInstance() {
+        return SharedChangeStreamsRegistrySingletonHolder.INSTANCE;
+    }
+
+    /**
+     * @param key
+     * @return the shared stream, or null if not open
+     */
+    public synchronized SharedChangeStream get(SharedChangeStream.Key key) {
+        return SHARED_STREAMS.get(key);
+    }
+
+    /**
+     * registers the session in the shared stream, opening it if needed
+     *
+     * @param key the key of the shared stream
+     * @param sessionKey the key of the session
+     * @param info the SessionInfo registered in the ChangeStreamsRegistry
+     * @param matches the queries of the $match stages evaluated in-process
+     * @return the sequence number of the first notification to replay to the
+     * clients of the session when they connect, or -1 if the replay buffer is disabled
+     */
+    public synchronized long register(SharedChangeStream.Key key, SessionKey sessionKey, SessionInfo info, List<ChangeEventMatcher> matches) {
+        var stream = SHARED_STREAMS.get(key);
+
+        if (stream != null) {
+            return stream.register(sessionKey, info, matches);
+        }
+
+        LOGGER.debug("Opening shared change stream {}/{}, stages={}", key.db(), key.coll(), key.stages());
+
+        stream = new SharedChangeStream(key, REPLAY_BUFFER_SIZE);
+        var ret = stream.register(sessionKey, info, matches);
+
+        try {
+            stream.open(false);
+        } catch(Throwable t) {
+            stream.close();
+            throw t;
+        }
+
+        SHARED_STREAMS.put(key, stream);
+
+        return ret;
+    }
+
+    /**
+     * closes the stream and removes it, if it has no sessions
+     *
+     * @param stream
+     */
+    synchronized void removeIfEmpty(SharedChangeStream stream) {
+        if (stream.isEmpty() && SHARED_STREAMS.get(stream.key()) == stream) {
+            SHARED_STREAMS.remove(stream.key());
+            stream.close();
+        }
+    }
+
+    /**
+     * closes the stream and removes it, so that new sessions open a new one
+     *
+     * @param stream
+     */
+    synchronized void remove(SharedChangeStream stream) {
+        if (SHARED_STREAMS.get(stream.key()) == stream) {
+            SHARED_STREAMS.remove(stream.key());
+        }
+
+        stream.close();
+    }
+
+    /**
+     * @return the number of open shared streams
+     */
+    public synchronized int size() {
+        return SHARED_STREAMS.size();
+    }
+
+    private static class SharedChangeStreamsRegistrySingletonHolder {
+        private static final SharedChangeStreamsRegistry INSTANCE = new SharedChangeStreamsRegistry();
+    }
+}
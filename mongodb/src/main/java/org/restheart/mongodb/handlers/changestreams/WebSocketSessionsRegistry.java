@@ -23,25 +23,27 @@ package org.restheart.mongodb.handlers.changestreams;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimaps;
 import com.google.common.collect.SetMultimap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 
 /**
- * Registry to keep track of web socket sessions
+ * Registry to keep track of the change stream sessions, web socket and server-sent events
  *
  * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
  * @author Omar Trasatti {@literal <omar@softinstigate.com>}
  */
 public class WebSocketSessionsRegistry {
 
-    private final SetMultimap<SessionKey, ChangeStreamWebSocketSession> MULTIMAP = Multimaps
-            .synchronizedSetMultimap(Multimaps.synchronizedSetMultimap(HashMultimap.<SessionKey, ChangeStreamWebSocketSession>create()));
+    private final SetMultimap<SessionKey, ChangeStreamSession> MULTIMAP = Multimaps
+            .synchronizedSetMultimap(Multimaps.synchronizedSetMultimap(HashMultimap.<SessionKey, ChangeStreamSession>create()));
 
     public static WebSocketSessionsRegistry getInstance() {
         return CacheManagerSingletonHolder.INSTANCE;
     }
 
-    public Set<ChangeStreamWebSocketSession> get(SessionKey key) {
+    public Set<ChangeStreamSession> get(SessionKey key) {
         return MULTIMAP.get(key);
     }
 
@@ -49,11 +51,30 @@ public class WebSocketSessionsRegistry {
         return MULTIMAP.keySet();
     }
 
-    public boolean add(SessionKey key, ChangeStreamWebSocketSession session) {
+    /**
+     * @return a snapshot of all the sessions
+     */
+    public List<ChangeStreamSession> sessions() {
+        synchronized (MULTIMAP) {
+            return new ArrayList<>(MULTIMAP.values());
+        }
+    }
+
+    /**
+     * @param key
+     * @return a snapshot of the sessions of the key
+     */
+    public List<ChangeStreamSession> sessions(SessionKey key) {
+        synchronized (MULTIMAP) {
+            return new ArrayList<>(MULTIMAP.get(key));
+        }
+    }
+
+    public boolean add(SessionKey key, ChangeStreamSession session) {
         return MULTIMAP.put(key, session);
     }
 
-    public boolean remove(SessionKey key, ChangeStreamWebSocketSession session) {
+    public boolean remove(SessionKey key, ChangeStreamSession session) {
         return MULTIMAP.remove(key, session);
     }
 
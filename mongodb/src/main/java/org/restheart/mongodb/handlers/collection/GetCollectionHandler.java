@@ -20,23 +20,33 @@
  */
 package org.restheart.mongodb.handlers.collection;
 
+import java.util.List;
 import java.util.Optional;
 
 import org.bson.BsonArray;
 import org.bson.BsonDocument;
 import org.bson.json.JsonParseException;
+import static org.restheart.exchange.ExchangeKeys.COUNT_STRATEGY_QPARAM_KEY;
 import org.restheart.exchange.IllegalQueryParamenterException;
 import org.restheart.exchange.MongoRequest;
 import org.restheart.exchange.MongoResponse;
+import org.restheart.exchange.ExchangeKeys.COUNT_STRATEGY;
+import org.restheart.exchange.ExchangeKeys.REPRESENTATION_FORMAT;
 import org.restheart.handlers.PipelinedHandler;
+import org.restheart.mongodb.MongoService;
 import org.restheart.mongodb.MongoServiceConfiguration;
+import org.restheart.mongodb.db.CountCache;
 import org.restheart.mongodb.db.Databases;
+import org.restheart.mongodb.db.KeysetPagination;
 import org.restheart.mongodb.utils.ResponseHelper;
 import org.restheart.utils.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.mongodb.client.ClientSession;
+
 import io.undertow.server.HttpServerExchange;
+import io.undertow.util.HttpString;
 
 /**
  *
@@ -45,9 +55,17 @@ import io.undertow.server.HttpServerExchange;
 public class GetCollectionHandler extends PipelinedHandler {
     private final Databases dbs = Databases.get();
     private final boolean isGetCollectionCacheEnabled = MongoServiceConfiguration.get().isGetCollectionCacheEnabled();
+    private final boolean isGetCollectionStreamingEnabled = MongoServiceConfiguration.get().isGetCollectionStreamingEnabled();
+    private final int getCollectionStreamingBatchSize = MongoServiceConfiguration.get().getGetCollectionStreamingBatchSize();
 
     private static final Logger LOGGER = LoggerFactory.getLogger(GetCollectionHandler.class);
 
+    /**
+     * the response header of an ndjson export limited to the requested page,
+     * e.g. Partial-Result: page=1; pagesize=100; next-page=2
+     */
+    public static final HttpString PARTIAL_RESULT_HEADER = HttpString.tryFromString("Partial-Result");
+
 
     /**
      *
@@ -80,21 +98,19 @@ public class GetCollectionHandler extends PipelinedHandler {
             return;
         }
 
+        // with Accept: application/x-ndjson the whole result is exported, without count
+        var ndjson = request.isCollection() ? request.getNdjsonAcceptedMediaType() : null;
+
         long size = -1;
 
-        if (request.isCount()) {
-            size = dbs.getCollectionSize(
-                Optional.ofNullable(request.getClientSession()),
-                request.rsOps(),
-                request.getDBName(),
-                request.getCollectionName(),
-                request.getFiltersDocument());
+        if (request.isCount() && ndjson == null) {
+            size = count(request, response);
         }
 
         // ***** get data
         BsonArray data = null;
 
-        if (request.getPagesize() > 0) {
+        if (request.getPagesize() > 0 || ndjson != null) {
             BsonDocument filter, sort;
 
             try {
@@ -117,18 +133,36 @@ public class GetCollectionHandler extends PipelinedHandler {
                 return;
             }
 
-            data = dbs.getCollectionData(
-                Optional.ofNullable(request.getClientSession()),
-                request.rsOps(),
-                request.getDBName(),
-                request.getCollectionName(),
-                request.getPage(),
-                request.getPagesize(),
-                sort,
-                filter,
-                request.getHintDocument(),
-                request.getProjectionDocument(),
-                request.isCache() && isGetCollectionCacheEnabled);
+            if (ndjson != null) {
+                exportNdjson(exchange, request, response, filter, sort, ndjson);
+                return;
+            }
+
+            if (request.isKeysetPagination()) {
+                try {
+                    data = getKeysetPage(exchange, request, filter, sort);
+                } catch (IllegalArgumentException iae) {
+                    response.setInError(HttpStatus.SC_BAD_REQUEST, iae.getMessage());
+                    next(exchange);
+                    return;
+                }
+            } else if (isStreamable(request, response)) {
+                streamCollectionData(exchange, request, response, filter, sort, size);
+                return;
+            } else {
+                data = dbs.getCollectionData(
+                    Optional.ofNullable(request.getClientSession()),
+                    request.rsOps(),
+                    request.getDBName(),
+                    request.getCollectionName(),
+                    request.getPage(),
+                    request.getPagesize(),
+                    sort,
+                    filter,
+                    request.getHintDocument(),
+                    request.getProjectionDocument(),
+                    request.isCache() && isGetCollectionCacheEnabled);
+            }
         }
 
         if (exchange.isComplete()) {
@@ -152,4 +186,245 @@ public class GetCollectionHandler extends PipelinedHandler {
             next(exchange);
         }
     }
+
+    /**
+     * Counts the documents with the strategy requested via the countStrategy
+     * query parameter or, if missing, the countStrategy collection property;
+     * the default is EXACT.
+     *
+     * ESTIMATED uses the collection metadata and applies only without filter
+     * and outside client sessions, otherwise the count is exact. CACHED stores
+     * the count in the CountCache, that is invalidated on writes.
+     *
+     * The strategy actually used is set in the response.
+     */
+    private long count(MongoRequest request, MongoResponse response) {
+        var strategy = countStrategy(request);
+        Optional<ClientSession> cs = Optional.ofNullable(request.getClientSession());
+        var filter = request.getFiltersDocument();
+
+        if (strategy == COUNT_STRATEGY.ESTIMATED && cs.isEmpty() && (filter == null || filter.isEmpty())) {
+            response.setCountStrategy(COUNT_STRATEGY.ESTIMATED);
+            return dbs.getEstimatedCollectionSize(request.rsOps(), request.getDBName(), request.getCollectionName());
+        }
+
+        // the cache is not used in client sessions, that might see uncommitted writes
+        if (strategy == COUNT_STRATEGY.CACHED && cs.isEmpty()) {
+            var countCache = CountCache.getInstance();
+            var cached = countCache.get(request.getDBName(), request.getCollectionName(), filter);
+
+            response.setCountStrategy(COUNT_STRATEGY.CACHED);
+
+            if (cached != null) {
+                return cached;
+            }
+
+            var count = dbs.getCollectionSize(cs, request.rsOps(), request.getDBName(), request.getCollectionName(), filter);
+            countCache.put(request.getDBName(), request.getCollectionName(), filter, count);
+
+            return count;
+        }
+
+        response.setCountStrategy(COUNT_STRATEGY.EXACT);
+        return dbs.getCollectionSize(cs, request.rsOps(), request.getDBName(), request.getCollectionName(), filter);
+    }
+
+    private COUNT_STRATEGY countStrategy(MongoRequest request) {
+        if (request.getCountStrategy() != null) {
+            return request.getCountStrategy();
+        }
+
+        var props = request.getCollectionProps();
+
+        if (props != null && props.isString(COUNT_STRATEGY_QPARAM_KEY)) {
+            try {
+                return COUNT_STRATEGY.valueOf(props.getString(COUNT_STRATEGY_QPARAM_KEY).getValue().strip().toUpperCase());
+            } catch (IllegalArgumentException iae) {
+                LOGGER.warn("invalid countStrategy collection property of {}.{}, using EXACT", request.getDBName(), request.getCollectionName());
+            }
+        }
+
+        return COUNT_STRATEGY.EXACT;
+    }
+
+    /**
+     * The page can be streamed with the STANDARD representation, that is a plain
+     * array of documents, when the request is not served by the GetCollectionCache
+     * and no response interceptor is going to process the content.
+     */
+    private boolean isStreamable(MongoRequest request, MongoResponse response) {
+        if (!isGetCollectionStreamingEnabled
+            || !request.isCollection()
+            || (request.isCache() && isGetCollectionCacheEnabled)) {
+            return false;
+        }
+
+        var rf = request.getRepresentationFormat();
+
+        if (rf != REPRESENTATION_FORMAT.STANDARD && rf != REPRESENTATION_FORMAT.S) {
+            return false;
+        }
+
+        // interceptors might check the status code in resolve()
+        response.setStatusCode(HttpStatus.SC_OK);
+
+        return !MongoService.isResponseIntercepted(request, response);
+    }
+
+    /**
+     * Opens the cursor and sets a custom sender that writes the documents to the
+     * response while iterating it, so that the page is never collected in memory.
+     *
+     * The first batch is fetched here, so that query errors are handled as usual.
+     */
+    private void streamCollectionData(HttpServerExchange exchange, MongoRequest request, MongoResponse response, BsonDocument filter, BsonDocument sort, long size) throws Exception {
+        var cursor = dbs.getCollectionDataCursor(
+            Optional.ofNullable(request.getClientSession()),
+            request.rsOps(),
+            request.getDBName(),
+            request.getCollectionName(),
+            request.getPage(),
+            request.getPagesize(),
+            sort,
+            filter,
+            request.getHintDocument(),
+            request.getProjectionDocument(),
+            getCollectionStreamingBatchSize);
+
+        try {
+            cursor.hasNext();
+        } catch (Throwable t) {
+            cursor.close();
+            throw t;
+        }
+
+        ResponseHelper.setCursorSender(exchange, response, cursor, request.getJsonMode());
+
+        response.setCount(size);
+        response.setContentTypeAsJson();
+        response.setStatusCode(HttpStatus.SC_OK);
+
+        try {
+            ResponseHelper.injectEtagHeader(exchange, request.getCollectionProps());
+            next(exchange);
+        } catch (IllegalQueryParamenterException ex) {
+            MongoResponse.of(exchange).setInError(HttpStatus.SC_BAD_REQUEST, ex.getMessage(), ex);
+            next(exchange);
+        }
+    }
+
+    /**
+     * Exports all the documents matching the filter as ndjson, one document per
+     * line with no envelope and no count, streaming them from the cursor.
+     *
+     * If a response interceptor processes the content, the documents cannot be
+     * streamed: the requested page is loaded as usual and sent as ndjson after
+     * the interceptors. The Partial-Result header then tells the client the
+     * page it got and, if the page is full, the page to request next.
+     */
+    private void exportNdjson(HttpServerExchange exchange, MongoRequest request, MongoResponse response, BsonDocument filter, BsonDocument sort, String mediaType) throws Exception {
+        // the documents are never wrapped by the HAL representation
+        request.setRepresentationFormat(REPRESENTATION_FORMAT.STANDARD);
+
+        // interceptors might check the status code in resolve()
+        response.setStatusCode(HttpStatus.SC_OK);
+
+        if (MongoService.isResponseIntercepted(request, response)) {
+            LOGGER.debug("ndjson export of /{}/{} limited to the requested page, a response interceptor processes it", request.getDBName(), request.getCollectionName());
+
+            var data = dbs.getCollectionData(
+                Optional.ofNullable(request.getClientSession()),
+                request.rsOps(),
+                request.getDBName(),
+                request.getCollectionName(),
+                request.getPage(),
+                request.getPagesize(),
+                sort,
+                filter,
+                request.getHintDocument(),
+                request.getProjectionDocument(),
+                request.isCache() && isGetCollectionCacheEnabled);
+
+            var partial = "page=" + request.getPage() + "; pagesize=" + request.getPagesize();
+
+            if (request.getPagesize() > 0 && data.size() >= request.getPagesize()) {
+                partial += "; next-page=" + (request.getPage() + 1);
+            }
+
+            exchange.getResponseHeaders().put(PARTIAL_RESULT_HEADER, partial);
+
+            response.setContent(data);
+            ResponseHelper.setNdjsonContentSender(exchange, response, request.getJsonMode());
+        } else {
+            var cursor = dbs.getCollectionDataCursor(
+                Optional.ofNullable(request.getClientSession()),
+                request.rsOps(),
+                request.getDBName(),
+                request.getCollectionName(),
+                sort,
+                filter,
+                request.getHintDocument(),
+                request.getProjectionDocument(),
+                getCollectionStreamingBatchSize);
+
+            try {
+                cursor.hasNext();
+            } catch (Throwable t) {
+                cursor.close();
+                throw t;
+            }
+
+            ResponseHelper.setNdjsonCursorSender(exchange, response, cursor, request.getJsonMode());
+        }
+
+        response.setContentType(mediaType);
+        response.setStatusCode(HttpStatus.SC_OK);
+
+        ResponseHelper.injectEtagHeader(exchange, request.getCollectionProps());
+        next(exchange);
+    }
+
+    /**
+     * Reads a page with keyset pagination: the sort is made total and the
+     * continuation token of the previous page becomes a range filter, so that
+     * any page is read without skipping the previous ones. The token of the
+     * next page is set in the Continuation-Token response header when the
+     * page is full. The sort keys not returned by the requested projection
+     * are read to build the token and removed from the page.
+     */
+    private BsonArray getKeysetPage(HttpServerExchange exchange, MongoRequest request, BsonDocument filter, BsonDocument sort) throws IllegalArgumentException {
+        var totalSort = KeysetPagination.totalSort(sort);
+        var projection = KeysetPagination.projection(totalSort, request.getProjectionDocument());
+
+        if (!request.getAfter().isEmpty()) {
+            var range = KeysetPagination.filter(totalSort, request.getAfter());
+
+            filter = filter == null || filter.isEmpty()
+                ? range
+                : new BsonDocument("$and", new BsonArray(List.of(filter, range)));
+        }
+
+        // the range filter makes the page different from the cached ranges
+        var data = dbs.getCollectionData(
+            Optional.ofNullable(request.getClientSession()),
+            request.rsOps(),
+            request.getDBName(),
+            request.getCollectionName(),
+            1,
+            request.getPagesize(),
+            totalSort,
+            filter,
+            request.getHintDocument(),
+            projection.projection(),
+            false);
+
+        if (data.size() == request.getPagesize()) {
+            var last = data.get(data.size() - 1).asDocument();
+            exchange.getResponseHeaders().put(KeysetPagination.CONTINUATION_TOKEN_HEADER, KeysetPagination.token(totalSort, last));
+        }
+
+        data.forEach(doc -> projection.strip(doc.asDocument()));
+
+        return data;
+    }
 }
@@ -0,0 +1,152 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.handlers.files;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A satisfiable byte range of a file, as requested by the Range header
+ * (RFC 7233)
+ *
+ * @param start the first byte position, inclusive
+ * @param end the last byte position, inclusive
+ */
+public record ByteRange(long start, long end) {
+    private static final String BYTES_UNIT = "bytes=";
+
+    /**
+     * the max number of ranges of a request, further ranges make the Range header ignored
+     */
+    public static final int MAX_RANGES = 32;
+
+    /**
+     * @return the number of bytes of the range
+     */
+    public long length() {
+        return end - start + 1;
+    }
+
+    /**
+     * @param length the length of the file
+     * @return the value of the Content-Range header for this range
+     */
+    public String contentRange(long length) {
+        return "bytes " + start + "-" + end + "/" + length;
+    }
+
+    /**
+     * parses the value of the Range header. Overlapping and adjacent ranges are
+     * coalesced and the resulting ranges are sorted by start position.
+     *
+     * @param header the value of the Range header
+     * @param length the length of the file
+     * @return the satisfiable ranges, an empty list if no range is satisfiable
+     * or null if the header is not a valid bytes range (and must be ignored)
+     */
+    public static List<ByteRange> parse(String header, long length) {
+        if (header == null || !header.trim().toLowerCase().startsWith(BYTES_UNIT)) {
+            return null;
+        }
+
+        var specs = header.trim().substring(BYTES_UNIT.length()).split(",");
+
+        if (specs.length > MAX_RANGES) {
+            return null;
+        }
+
+        var ranges = new ArrayList<ByteRange>();
+
+        for (var _spec: specs) {
+            var spec = _spec.trim();
+            var dash = spec.indexOf('-');
+
+            if (dash < 0) {
+                return null;
+            }
+
+            var first = spec.substring(0, dash).trim();
+            var last = spec.substring(dash + 1).trim();
+
+            try {
+                if (first.isEmpty()) {
+                    // suffix range, the last n bytes
+                    if (last.isEmpty()) {
+                        return null;
+                    }
+
+                    var suffix = Long.parseLong(last);
+
+                    if (suffix < 0) {
+                        return null;
+                    } else if (suffix > 0 && length > 0) {
+                        ranges.add(new ByteRange(Math.max(0, length - suffix), length - 1));
+                    }
+                } else {
+                    var start = Long.parseLong(first);
+
+                    if (start < 0) {
+                        return null;
+                    }
+
+                    // without last-byte-pos the range extends to the end of the file
+                    var end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+
+                    if (end < start) {
+                        return null;
+                    } else if (start < length) {
+                        ranges.add(new ByteRange(start, Math.min(end, length - 1)));
+                    }
+                    // start >= length is not satisfiable
+                }
+            } catch(NumberFormatException nfe) {
+                return null;
+            }
+        }
+
+        return coalesce(ranges);
+    }
+
+    private static List<ByteRange> coalesce(List<ByteRange> ranges) {
+        if (ranges.size() < 2) {
+            return ranges;
+        }
+
+        ranges.sort(Comparator.comparingLong(ByteRange::start));
+
+        var ret = new ArrayList<ByteRange>();
+        var current = ranges.get(0);
+
+        for (var range: ranges.subList(1, ranges.size())) {
+            if (range.start() <= current.end() + 1) {
+                current = new ByteRange(current.start(), Math.max(current.end(), range.end()));
+            } else {
+                ret.add(current);
+                current = range;
+            }
+        }
+
+        ret.add(current);
+
+        return ret;
+    }
+}
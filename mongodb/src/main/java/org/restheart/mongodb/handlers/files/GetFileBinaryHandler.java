@@ -28,18 +28,22 @@ import static com.mongodb.client.model.Filters.and;
 import static com.mongodb.client.model.Filters.eq;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.util.Headers;
+import io.undertow.util.SameThreadExecutor;
 import java.io.IOException;
-import org.bson.BsonObjectId;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 import org.restheart.exchange.MongoRequest;
 import org.restheart.exchange.MongoResponse;
 import org.restheart.handlers.PipelinedHandler;
+import org.restheart.mongodb.MongoServiceConfiguration;
 import org.restheart.mongodb.RHMongoClients;
 import org.restheart.mongodb.db.GridFs;
 import org.restheart.mongodb.utils.RequestHelper;
 import org.restheart.mongodb.utils.ResponseHelper;
 import org.restheart.utils.HttpStatus;
+import org.restheart.utils.LambdaUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -59,6 +63,11 @@ public class GetFileBinaryHandler extends PipelinedHandler {
      */
     public static final String CONTENT_TRANSFER_ENCODING_BINARY = "binary";
 
+    /**
+     *
+     */
+    public static final String MULTIPART_BYTERANGES = "multipart/byteranges";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(GetFileBinaryHandler.class);
 
     /**
@@ -120,31 +129,65 @@ public class GetFileBinaryHandler extends PipelinedHandler {
     }
 
     private boolean checkEtag(HttpServerExchange exchange, GridFSFile dbsfile) {
-        if (dbsfile != null) {
-            Object etag;
+        var etag = etag(dbsfile);
+
+        // in case the request contains the IF_NONE_MATCH header with the current etag value,
+        // just return 304 NOT_MODIFIED code, without reading the chunks
+        if (RequestHelper.checkReadEtag(exchange, etag)) {
+            exchange.setStatusCode(HttpStatus.SC_NOT_MODIFIED);
+            exchange.endExchange();
+            return true;
+        }
 
-            if (dbsfile.getMetadata() != null && dbsfile.getMetadata().containsKey("_etag")) {
-                etag = dbsfile.getMetadata().get("_etag");
-            } else {
-                etag = null;
-            }
+        return false;
+    }
 
-            if (etag != null && etag instanceof ObjectId) {
-                var _etag = (ObjectId) etag;
+    /**
+     * @param dbsfile
+     * @return the etag of the file or null if the file has no etag
+     */
+    private static String etag(GridFSFile dbsfile) {
+        if (dbsfile == null || dbsfile.getMetadata() == null) {
+            return null;
+        }
 
-                var __etag = new BsonObjectId(_etag);
+        var etag = dbsfile.getMetadata().get("_etag");
 
-                // in case the request contains the IF_NONE_MATCH header with the current etag value,
-                // just return 304 NOT_MODIFIED code
-                if (RequestHelper.checkReadEtag(exchange, __etag)) {
-                    exchange.setStatusCode(HttpStatus.SC_NOT_MODIFIED);
-                    exchange.endExchange();
-                    return true;
-                }
+        if (etag instanceof ObjectId _etag) {
+            return _etag.toString();
+        } else if (etag instanceof String _etag) {
+            return _etag;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * @param exchange
+     * @param file
+     * @return the requested ranges, an empty list if no range is satisfiable
+     * or null if the whole file must be sent
+     */
+    private static List<ByteRange> requestedRanges(HttpServerExchange exchange, GridFSFile file) {
+        var range = exchange.getRequestHeaders().getFirst(Headers.RANGE);
+
+        if (range == null) {
+            return null;
+        }
+
+        // If-Range: send the ranges only if the file has not changed.
+        // the file has no Last-Modified header, so only etags can match
+        var ifRange = exchange.getRequestHeaders().getFirst(Headers.IF_RANGE);
+
+        if (ifRange != null) {
+            var etag = etag(file);
+
+            if (etag == null || ifRange.trim().startsWith("W/") || !RequestHelper.etagMatches(ifRange, etag)) {
+                return null;
             }
         }
 
-        return false;
+        return ByteRange.parse(range, file.getLength());
     }
 
     private void fileNotFound(
@@ -173,23 +216,148 @@ public class GetFileBinaryHandler extends PipelinedHandler {
             response.getHeaders().put(Headers.CONTENT_TYPE, APPLICATION_OCTET_STREAM);
         }
 
-        response.getHeaders().put(Headers.CONTENT_LENGTH, file.getLength());
-
         response.getHeaders().put(Headers.CONTENT_DISPOSITION, String.format("inline; filename=\"%s\"", extractFilename(file)));
 
         response.getHeaders().put(Headers.CONTENT_TRANSFER_ENCODING,CONTENT_TRANSFER_ENCODING_BINARY);
 
+        response.getHeaders().put(Headers.ACCEPT_RANGES, "bytes");
+
         ResponseHelper.injectEtagHeader(exchange, file.getMetadata());
 
-        response.setStatusCode(HttpStatus.SC_OK);
+        var ranges = requestedRanges(exchange, file);
+
+        if (ranges == null) {
+            response.getHeaders().put(Headers.CONTENT_LENGTH, file.getLength());
 
-        response.setCustomSender(() -> {
-            if (request.getClientSession() != null) {
-                gridFSBucket.downloadToStream(request.getClientSession(), file.getId(), exchange.getOutputStream());
+            response.setStatusCode(HttpStatus.SC_OK);
+
+            if (MongoServiceConfiguration.get().isGridFsReactiveDownloadsEnabled() && request.getClientSession() == null) {
+                // the download is scheduled when the pipeline returns
+                // and its chunks are written without blocking the worker thread
+                response.setCustomSender(() -> exchange.dispatch(SameThreadExecutor.INSTANCE, () -> reactiveGridFSBucket(request)
+                    .downloadToPublisher(file.getId())
+                    .bufferSizeBytes(file.getChunkSize())
+                    .subscribe(new ResponseChannelSubscriber(exchange))));
             } else {
-                gridFSBucket.downloadToStream(file.getId(), exchange.getOutputStream());
+                response.setCustomSender(() -> {
+                    if (request.getClientSession() != null) {
+                        gridFSBucket.downloadToStream(request.getClientSession(), file.getId(), exchange.getOutputStream());
+                    } else {
+                        gridFSBucket.downloadToStream(file.getId(), exchange.getOutputStream());
+                    }
+                });
+            }
+        } else if (ranges.isEmpty()) {
+            response.getHeaders().remove(Headers.CONTENT_TYPE);
+            response.getHeaders().remove(Headers.CONTENT_DISPOSITION);
+            response.getHeaders().remove(Headers.CONTENT_TRANSFER_ENCODING);
+            response.getHeaders().put(Headers.CONTENT_RANGE, "bytes */" + file.getLength());
+            response.setInError(HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE, "Requested Range Not Satisfiable");
+        } else if (ranges.size() == 1) {
+            var range = ranges.get(0);
+
+            response.getHeaders().put(Headers.CONTENT_RANGE, range.contentRange(file.getLength()));
+            response.getHeaders().put(Headers.CONTENT_LENGTH, range.length());
+
+            response.setStatusCode(HttpStatus.SC_PARTIAL_CONTENT);
+
+            response.setCustomSender(() -> sendRanges(request, gridFSBucket, file, ranges, null, null, exchange));
+        } else {
+            var contentType = response.getHeaders().getFirst(Headers.CONTENT_TYPE);
+            var boundary = new ObjectId().toHexString();
+
+            // the part headers are computed in advance to set the Content-Length
+            var partHeaders = ranges.stream()
+                .map(range -> ("\r\n--" + boundary + "\r\n"
+                    + Headers.CONTENT_TYPE_STRING + ": " + contentType + "\r\n"
+                    + Headers.CONTENT_RANGE_STRING + ": " + range.contentRange(file.getLength()) + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII))
+                .toList();
+
+            var closing = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+
+            var contentLength = closing.length
+                + partHeaders.stream().mapToLong(h -> h.length).sum()
+                + ranges.stream().mapToLong(ByteRange::length).sum();
+
+            response.getHeaders().put(Headers.CONTENT_TYPE, MULTIPART_BYTERANGES + "; boundary=" + boundary);
+            response.getHeaders().put(Headers.CONTENT_LENGTH, contentLength);
+
+            response.setStatusCode(HttpStatus.SC_PARTIAL_CONTENT);
+
+            response.setCustomSender(() -> sendRanges(request, gridFSBucket, file, ranges, partHeaders, closing, exchange));
+        }
+    }
+
+    /**
+     * sends the ranges of the file reading them from a single download stream.
+     * The ranges are sorted and not overlapping, so the download stream only moves forward;
+     * skipping bytes does not read the chunks that are skipped entirely.
+     *
+     * @param partHeaders the headers of the parts of a multipart/byteranges response,
+     * null to send a single range as the response body
+     * @param closing the closing boundary of a multipart/byteranges response
+     */
+    private void sendRanges(final MongoRequest request,
+            final GridFSBucket gridFSBucket,
+            final GridFSFile file,
+            final List<ByteRange> ranges,
+            final List<byte[]> partHeaders,
+            final byte[] closing,
+            final HttpServerExchange exchange) {
+        try (var in = request.getClientSession() != null
+                ? gridFSBucket.openDownloadStream(request.getClientSession(), file.getId())
+                : gridFSBucket.openDownloadStream(file.getId())) {
+            var out = exchange.getOutputStream();
+            var buffer = new byte[Math.min(file.getChunkSize(), (int) Math.min(Integer.MAX_VALUE, ranges.stream().mapToLong(ByteRange::length).max().orElse(1)))];
+            long position = 0;
+
+            for (var idx = 0; idx < ranges.size(); idx++) {
+                var range = ranges.get(idx);
+
+                if (partHeaders != null) {
+                    out.write(partHeaders.get(idx));
+                }
+
+                while (position < range.start()) {
+                    var skipped = in.skip(range.start() - position);
+
+                    if (skipped <= 0) {
+                        throw new IOException("unexpected end of file " + file.getId());
+                    }
+
+                    position += skipped;
+                }
+
+                var remaining = range.length();
+
+                while (remaining > 0) {
+                    var read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+
+                    if (read < 0) {
+                        throw new IOException("unexpected end of file " + file.getId());
+                    }
+
+                    out.write(buffer, 0, read);
+                    remaining -= read;
+                    position += read;
+                }
+            }
+
+            if (closing != null) {
+                out.write(closing);
             }
-        });
+
+            out.flush();
+        } catch(Throwable t) {
+            LambdaUtils.throwsSneakyException(t);
+        }
+    }
+
+    private static com.mongodb.reactivestreams.client.gridfs.GridFSBucket reactiveGridFSBucket(MongoRequest request) {
+        var db = RHMongoClients.mclientReactive().getDatabase(request.getDBName());
+        var bucket = GridFs.extractBucketName(request.getCollectionName());
+
+        return com.mongodb.reactivestreams.client.gridfs.GridFSBuckets.create(db, bucket);
     }
 
     private String extractFilename(final GridFSFile dbsfile) {
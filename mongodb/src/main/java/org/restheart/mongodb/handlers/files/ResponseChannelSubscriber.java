@@ -0,0 +1,159 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.handlers.files;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.restheart.utils.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xnio.IoUtils;
+import org.xnio.channels.StreamSinkChannel;
+
+import io.undertow.server.HttpServerExchange;
+
+/**
+ * Writes the ByteBuffers of a Publisher to the response channel without blocking.
+ *
+ * One buffer at a time is requested: the next one is requested only when
+ * the previous one has been fully written. When the channel cannot accept
+ * more data, the subscriber waits for it to become writable, so a slow client
+ * slows down the reading from MongoDB instead of buffering the file in memory.
+ * The exchange is ended when the Publisher completes.
+ */
+public class ResponseChannelSubscriber implements Subscriber<ByteBuffer> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResponseChannelSubscriber.class);
+
+    private final HttpServerExchange exchange;
+
+    private StreamSinkChannel channel;
+    private Subscription subscription;
+    private ByteBuffer pending = null;
+    private boolean completed = false;
+    private boolean terminated = false;
+
+    public ResponseChannelSubscriber(HttpServerExchange exchange) {
+        this.exchange = exchange;
+    }
+
+    @Override
+    public synchronized void onSubscribe(Subscription s) {
+        this.subscription = s;
+        this.channel = exchange.getResponseChannel();
+
+        if (this.channel == null) {
+            s.cancel();
+            onError(new IllegalStateException("response channel already obtained"));
+            return;
+        }
+
+        this.channel.getWriteSetter().set(ch -> onWritable());
+
+        s.request(1);
+    }
+
+    @Override
+    public synchronized void onNext(ByteBuffer buffer) {
+        if (this.terminated) {
+            return;
+        }
+
+        this.pending = buffer;
+        write();
+    }
+
+    @Override
+    public synchronized void onError(Throwable t) {
+        if (this.terminated) {
+            return;
+        }
+
+        this.terminated = true;
+
+        LOGGER.error("Error sending file content", t);
+
+        if (exchange.isResponseStarted()) {
+            // the client gets a truncated response
+            IoUtils.safeClose(exchange.getConnection());
+        } else {
+            exchange.setStatusCode(HttpStatus.SC_INTERNAL_SERVER_ERROR);
+            exchange.getResponseHeaders().clear();
+            exchange.endExchange();
+        }
+    }
+
+    @Override
+    public synchronized void onComplete() {
+        this.completed = true;
+
+        // the last buffer might still be waiting for the channel to be writable
+        if (this.pending == null) {
+            end();
+        }
+    }
+
+    private synchronized void onWritable() {
+        this.channel.suspendWrites();
+
+        if (this.pending != null) {
+            write();
+        }
+    }
+
+    private void write() {
+        try {
+            while (this.pending.hasRemaining()) {
+                if (this.channel.write(this.pending) == 0) {
+                    // wait for the channel to be writable
+                    this.channel.resumeWrites();
+                    return;
+                }
+            }
+        } catch(IOException ioe) {
+            // the client closed the connection
+            LOGGER.debug("Error writing file content to the response channel", ioe);
+            this.terminated = true;
+            this.pending = null;
+            this.subscription.cancel();
+            IoUtils.safeClose(exchange.getConnection());
+            return;
+        }
+
+        this.pending = null;
+
+        if (this.completed) {
+            end();
+        } else {
+            this.subscription.request(1);
+        }
+    }
+
+    private void end() {
+        if (!this.terminated) {
+            this.terminated = true;
+            // shutdowns and flushes the response channel
+            exchange.endExchange();
+        }
+    }
+}
@@ -39,7 +39,8 @@ import static org.restheart.mongodb.MongoServiceConfiguration.METRICS_GATHERING_
 
 @RegisterPlugin(name = "metricsInstrumentationInterceptor",
         description = "collects metrics for requests handled by mongo service",
-        interceptPoint = InterceptPoint.REQUEST_BEFORE_AUTH)
+        interceptPoint = InterceptPoint.REQUEST_BEFORE_AUTH,
+        contentIndependent = true)
 @SuppressWarnings("deprecation")
 public class MetricsInstrumentationInterceptor implements MongoInterceptor {
     private static final Logger LOGGER = LoggerFactory.getLogger(MetricsInstrumentationInterceptor.class);
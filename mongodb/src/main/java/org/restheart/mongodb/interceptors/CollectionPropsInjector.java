@@ -49,6 +49,7 @@ import org.slf4j.LoggerFactory;
 @RegisterPlugin(name = "collectionPropsInjector",
         description = "Injects the collection properties into the BsonRequest",
         interceptPoint = InterceptPoint.REQUEST_BEFORE_AUTH,
+        contentIndependent = true,
         priority = Integer.MIN_VALUE + 1)
 public class CollectionPropsInjector implements MongoInterceptor {
     private final Logger LOGGER = LoggerFactory.getLogger(CollectionPropsInjector.class);
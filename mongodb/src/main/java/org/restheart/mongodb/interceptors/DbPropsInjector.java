@@ -49,6 +49,7 @@ import org.slf4j.LoggerFactory;
 @RegisterPlugin(name = "dbPropsInjector",
         description = "Injects the db properties into the BsonRequest",
         interceptPoint = InterceptPoint.REQUEST_BEFORE_AUTH,
+        contentIndependent = true,
         priority = Integer.MIN_VALUE)
 public class DbPropsInjector implements MongoInterceptor {
     private final Logger LOGGER = LoggerFactory.getLogger(DbPropsInjector.class);
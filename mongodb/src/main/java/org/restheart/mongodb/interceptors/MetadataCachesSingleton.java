@@ -21,12 +21,17 @@
 package org.restheart.mongodb.interceptors;
 
 import com.mongodb.MongoException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 import org.bson.BsonDocument;
 import org.restheart.cache.Cache;
 import org.restheart.cache.CacheFactory;
 import org.restheart.cache.LoadingCache;
 import org.restheart.mongodb.MongoServiceConfiguration;
+import org.restheart.mongodb.db.CacheInvalidationBus;
 import org.restheart.mongodb.db.Databases;
 
 /**
@@ -94,6 +99,21 @@ public class MetadataCachesSingleton {
                         Optional.empty(), // no client session
                         dbNameAndCollectionName[0],
                         dbNameAndCollectionName[1]);
+                },
+                keys -> {
+                    // load the properties of the collections of each db with a single query
+                    var ret = new HashMap<String, BsonDocument>();
+
+                    keys.stream()
+                        .map(key -> key.split(SEPARATOR))
+                        .collect(Collectors.groupingBy(dbNameAndCollectionName -> dbNameAndCollectionName[0], Collectors.mapping(dbNameAndCollectionName -> dbNameAndCollectionName[1], Collectors.toList())))
+                        .forEach((dbName, collNames) -> this.dbs.getCollectionsProperties(
+                            Optional.empty(), // no client session
+                            Optional.empty(), // no client session
+                            dbName,
+                            collNames).forEach((collName, props) -> ret.put(dbName + SEPARATOR + collName, props)));
+
+                    return ret;
                 });
         }
     }
@@ -117,6 +137,11 @@ public class MetadataCachesSingleton {
                 return null;
             }
         } else {
+            if (!CacheInvalidationBus.getInstance().watchProperties(dbName)) {
+                // don't cache until writes from other nodes can evict the entry
+                return dbs.getDatabaseProperties(Optional.empty(), Optional.empty(), dbName);
+            }
+
             try {
                 _dbProps = dbPropsCache.getLoading(dbName);
             } catch (Throwable uex) {
@@ -155,6 +180,11 @@ public class MetadataCachesSingleton {
                 return null;
             }
         } else {
+            if (!CacheInvalidationBus.getInstance().watchProperties(dbName)) {
+                // don't cache until writes from other nodes can evict the entry
+                return dbs.getCollectionProperties(Optional.empty(), Optional.empty(), dbName, collName);
+            }
+
             try {
                 _collProps = collectionPropsCache.getLoading(dbName + SEPARATOR + collName);
             } catch (Throwable uex) {
@@ -173,6 +203,52 @@ public class MetadataCachesSingleton {
         }
     }
 
+    /**
+     * Gets the properties of many collections of a db, loading the missing ones
+     * with a single query. The collections are assumed to exist.
+     *
+     * @param dbName
+     * @param collNames
+     * @return the properties of the collections, by collection name
+     */
+    public Map<String, BsonDocument> getCollectionsProperties(String dbName, List<String> collNames) {
+        if (!enabled) {
+            throw new IllegalStateException("tried to use disabled cache");
+        }
+
+        var keys = collNames.stream().map(collName -> dbName + SEPARATOR + collName).toList();
+
+        if (keys.stream().anyMatch(key -> collectionPropsCache.get(key) == null)
+            && !CacheInvalidationBus.getInstance().watchProperties(dbName)) {
+            // don't cache until writes from other nodes can evict the entries
+            return dbs.getCollectionsProperties(Optional.empty(), Optional.empty(), dbName, collNames);
+        }
+
+        Map<String, Optional<BsonDocument>> _collsProps;
+
+        try {
+            _collsProps = collectionPropsCache.getAllLoading(keys);
+        } catch (Throwable uex) {
+            if (uex.getCause() instanceof MongoException) {
+                throw new RuntimeException(uex.getCause());
+            } else {
+                throw uex;
+            }
+        }
+
+        var ret = new HashMap<String, BsonDocument>();
+
+        collNames.forEach(collName -> {
+            var _collProps = _collsProps.get(dbName + SEPARATOR + collName);
+
+            if (_collProps != null && _collProps.isPresent()) {
+                ret.put(collName, _collProps.get());
+            }
+        });
+
+        return ret;
+    }
+
     /**
      *
      * @param dbName
@@ -195,6 +271,16 @@ public class MetadataCachesSingleton {
         }
     }
 
+    /**
+     * invalidates the properties of all dbs and collections
+     */
+    public void invalidateAll() {
+        if (enabled && dbPropsCache != null) {
+            dbPropsCache.invalidateAll();
+            collectionPropsCache.invalidateAll();
+        }
+    }
+
     private static class LocalCachesSingletonHolder {
         private static final MetadataCachesSingleton INSTANCE = new MetadataCachesSingleton();
 
@@ -37,7 +37,8 @@ import org.slf4j.LoggerFactory;
 
 @RegisterPlugin(name = "mongoPermissionFilters",
         description = "enforces the filters according to the mongo.readFilter and mongo.writeFilter ACL permission",
-        interceptPoint = InterceptPoint.REQUEST_AFTER_AUTH)
+        interceptPoint = InterceptPoint.REQUEST_AFTER_AUTH,
+        contentIndependent = true)
 public class RequestFilters implements MongoInterceptor {
     private static final Logger LOGGER = LoggerFactory.getLogger(RequestFilters.class);
 
@@ -0,0 +1,261 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonString;
+import org.restheart.mongodb.db.Documents;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.WriteModel;
+
+/**
+ * Writes the documents imported from a csv in unordered bulkWrite batches.
+ *
+ * A batch is written when batchSize documents have been added. With
+ * parallelism greater than 1, up to parallelism batches are written
+ * concurrently; adding documents blocks when all of them are in flight, so
+ * at most parallelism + 1 batches are held in memory.
+ *
+ * The concurrent batches of all the imports are written by a shared pool
+ * of MAX_PARALLELISM threads.
+ */
+class CsvBatchWriter implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CsvBatchWriter.class);
+
+    private static final BulkWriteOptions UNORDERED = new BulkWriteOptions().ordered(false);
+
+    private final MongoCollection<BsonDocument> coll;
+    private final Function<BsonDocument, WriteModel<BsonDocument>> toWriteModel;
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(CsvRequestParams.MAX_PARALLELISM, r -> {
+        var t = new Thread(r, "csv-batch-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final int batchSize;
+    private final ExecutorService executor;
+    private final Semaphore inFlight;
+
+    private List<WriteModel<BsonDocument>> batch;
+    private final List<Future<BatchResult>> results = new ArrayList<>();
+
+    /**
+     * the result of a batch
+     */
+    record BatchResult(int batch, int rows, int inserted, int matched, int modified, int upserted, int errors, String error) {
+        BsonDocument toBson() {
+            var ret = new BsonDocument();
+            ret.put("batch", new BsonInt32(batch));
+            ret.put("rows", new BsonInt32(rows));
+            ret.put("inserted", new BsonInt32(inserted));
+            ret.put("matched", new BsonInt32(matched));
+            ret.put("modified", new BsonInt32(modified));
+            ret.put("upserted", new BsonInt32(upserted));
+            ret.put("errors", new BsonInt32(errors));
+
+            if (error != null) {
+                ret.put("error", new BsonString(error));
+            }
+
+            return ret;
+        }
+    }
+
+    /**
+     * @param coll the collection to write to
+     * @param toWriteModel transforms a document in its WriteModel
+     * @param batchSize the number of documents of each bulkWrite
+     * @param parallelism the max number of batches written concurrently
+     */
+    CsvBatchWriter(MongoCollection<BsonDocument> coll, Function<BsonDocument, WriteModel<BsonDocument>> toWriteModel, int batchSize, int parallelism) {
+        this.coll = coll;
+        this.toWriteModel = toWriteModel;
+        this.batchSize = batchSize;
+        this.batch = new ArrayList<>(batchSize);
+
+        if (parallelism > 1) {
+            this.executor = EXECUTOR;
+            this.inFlight = new Semaphore(parallelism);
+        } else {
+            this.executor = null;
+            this.inFlight = null;
+        }
+    }
+
+    /**
+     * adds a document, writing the batch when full
+     *
+     * @param doc
+     */
+    void add(BsonDocument doc) {
+        this.batch.add(this.toWriteModel.apply(doc));
+
+        if (this.batch.size() >= this.batchSize) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        if (this.batch.isEmpty()) {
+            return;
+        }
+
+        final var models = this.batch;
+        final var idx = this.results.size();
+        this.batch = new ArrayList<>(this.batchSize);
+
+        if (this.executor == null) {
+            this.results.add(CompletableFuture.completedFuture(write(idx, models)));
+        } else {
+            try {
+                this.inFlight.acquire();
+            } catch(InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted waiting for a batch to complete", ie);
+            }
+
+            this.results.add(this.executor.submit(() -> {
+                try {
+                    return write(idx, models);
+                } finally {
+                    this.inFlight.release();
+                }
+            }));
+        }
+    }
+
+    private BatchResult write(int idx, List<WriteModel<BsonDocument>> models) {
+        BatchResult ret;
+
+        try {
+            ret = result(idx, models.size(), this.coll.bulkWrite(models, UNORDERED), 0, null);
+        } catch(MongoBulkWriteException mbwe) {
+            // with unordered writes, the documents without errors are written anyway
+            var errors = mbwe.getWriteErrors();
+            ret = result(idx, models.size(), mbwe.getWriteResult(), errors.size(), errors.isEmpty() ? null : errors.get(0).getMessage());
+        } finally {
+            Documents.invalidateCaches(coll.getNamespace().getDatabaseName(), coll.getNamespace().getCollectionName());
+        }
+
+        LOGGER.debug("csv import {}.{}, batch {} written: {}", coll.getNamespace().getDatabaseName(), coll.getNamespace().getCollectionName(), idx, ret);
+
+        return ret;
+    }
+
+    private static BatchResult result(int idx, int rows, BulkWriteResult result, int errors, String error) {
+        if (result.wasAcknowledged()) {
+            return new BatchResult(idx, rows,
+                result.getInsertedCount(),
+                result.getMatchedCount(),
+                result.getModifiedCount(),
+                result.getUpserts().size(),
+                errors,
+                error);
+        } else {
+            return new BatchResult(idx, rows, 0, 0, 0, 0, errors, error);
+        }
+    }
+
+    /**
+     * writes the last batch and waits for all the batches to complete
+     *
+     * @return the results of the batches, in order
+     */
+    List<BatchResult> complete() {
+        flush();
+
+        var ret = new ArrayList<BatchResult>(this.results.size());
+
+        for (var result: this.results) {
+            try {
+                ret.add(result.get());
+            } catch(InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted waiting for a batch to complete", ie);
+            } catch(ExecutionException ee) {
+                if (ee.getCause() instanceof RuntimeException re) {
+                    throw re;
+                } else {
+                    throw new IllegalStateException(ee.getCause());
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * @param results the results of the batches
+     * @return the summary of the import, with the counts of each batch
+     */
+    static BsonDocument summary(List<BatchResult> results) {
+        long rows = 0, inserted = 0, matched = 0, modified = 0, upserted = 0, errors = 0;
+        var batches = new BsonArray();
+
+        for (var result: results) {
+            rows += result.rows();
+            inserted += result.inserted();
+            matched += result.matched();
+            modified += result.modified();
+            upserted += result.upserted();
+            errors += result.errors();
+            batches.add(result.toBson());
+        }
+
+        var ret = new BsonDocument();
+        ret.put("rows", new BsonInt64(rows));
+        ret.put("inserted", new BsonInt64(inserted));
+        ret.put("matched", new BsonInt64(matched));
+        ret.put("modified", new BsonInt64(modified));
+        ret.put("upserted", new BsonInt64(upserted));
+        ret.put("errors", new BsonInt64(errors));
+        ret.put("batches", batches);
+
+        return ret;
+    }
+
+    /**
+     * cancels the batches not yet written, if complete() was not invoked
+     */
+    @Override
+    public void close() {
+        this.results.forEach(result -> result.cancel(true));
+    }
+}
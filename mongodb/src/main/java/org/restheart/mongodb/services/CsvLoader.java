@@ -22,22 +22,35 @@ package org.restheart.mongodb.services;
 
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
 import io.undertow.server.HttpServerExchange;
+import java.io.IOException;
 import java.util.ArrayDeque;
 import java.util.Deque;
+import java.util.List;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import org.bson.BsonArray;
 import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
 import org.bson.BsonString;
 import org.bson.BsonValue;
 import org.bson.json.JsonParseException;
 import org.restheart.exchange.BsonFromCsvRequest;
 import org.restheart.exchange.BsonResponse;
+import org.restheart.mongodb.MongoService;
 import org.restheart.mongodb.RHMongoClients;
+import org.restheart.mongodb.db.Documents;
 import org.restheart.plugins.Inject;
+import org.restheart.plugins.PluginsRegistry;
 import org.restheart.plugins.RegisterPlugin;
 import org.restheart.plugins.Service;
+import org.restheart.security.BaseAclPermission;
 import org.restheart.utils.HttpStatus;
 import org.restheart.utils.BsonUtils;
 
@@ -55,7 +68,14 @@ import org.restheart.utils.BsonUtils;
  * - values=&lt;values&gt; optional (default: no values) values of additional
  * props to add to each row<br>
  * defined in conf file) of a tranformer to apply to imported data - update
- * optional (default: no).use data to update matching documents");
+ * optional (default: no).use data to update matching documents");<br>
+ * - stream optional (default: false) parse the rows incrementally from the
+ * request and write them with unordered bulkWrite batches; the response
+ * contains the counts of each batch<br>
+ * - batchsize=&lt;size&gt; optional (default: 1000) the number of rows of each
+ * batch in stream mode<br>
+ * - parallelism=&lt;n&gt; optional (default: 1, max: 16) the number of batches
+ * written concurrently in stream mode
  *
  * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
  */
@@ -75,7 +95,10 @@ public class CsvLoader implements Service<BsonFromCsvRequest, BsonResponse> {
             + "values=<values> optional (default: no values) values of additional props to add to each row, "
             + "transformer=<tname> optional (default: no transformer). name of an interceptor to transform data, "
             + "update=<value> optional (default: false). if true, update matching documents (requires id to be set), "
-            + "upsert=<value> optional (default: true). when update=true, create new documents when not matching existing ones.";
+            + "upsert=<value> optional (default: true). when update=true, create new documents when not matching existing ones, "
+            + "stream optional (default: false). parse the rows incrementally and write them in unordered batches, "
+            + "batchsize=<size> optional (default: 1000). the number of rows of each batch in stream mode, "
+            + "parallelism=<n> optional (default: 1, max: 16). the number of batches written concurrently in stream mode.";
 
     private static final String ERROR_NO_ID = "id must be set when update=true";
 
@@ -85,9 +108,16 @@ public class CsvLoader implements Service<BsonFromCsvRequest, BsonResponse> {
 
     private final static FindOneAndUpdateOptions FAU_WITH_UPSERT_OPS = new FindOneAndUpdateOptions().upsert(true);
 
+    private final static UpdateOptions UPDATE_NO_UPSERT_OPS = new UpdateOptions().upsert(false);
+
+    private final static UpdateOptions UPDATE_WITH_UPSERT_OPS = new UpdateOptions().upsert(true);
+
     @Inject("mclient")
     MongoClient mclient;
 
+    @Inject("registry")
+    PluginsRegistry registry;
+
     /**
      *
      * @throws Exception
@@ -123,51 +153,57 @@ public class CsvLoader implements Service<BsonFromCsvRequest, BsonResponse> {
 
             if (params.update && params.idIdx < 0) {
                 response.setInError(HttpStatus.SC_BAD_REQUEST, ERROR_NO_ID);
+            } else if (request.isStreaming()) {
+                streamingImport(request, response, params);
             } else {
                 var documents = request.getContent();
 
                 if (documents != null && documents.size() > 0) {
                     var mcoll = RHMongoClients.mclient().getDatabase(params.db).getCollection(params.coll, BsonDocument.class);
 
-                    if (params.update && !params.upsert) {
-                        documents.stream()
-                            .map(doc -> doc.asDocument())
-                            // add props specified via keys and values qparams
-                            .map(doc -> addProps(params, doc))
-                            .forEach(doc -> {
-                                var updateQuery = new BsonDocument("_id", doc.remove("_id"));
-
-                                // for upate import, take _filter property into account
-                                // for instance, a filter allows to use $ positional array operator
-                                var _filter = doc.remove(FILTER_PROPERTY);
-
-                                if (_filter != null && _filter.isDocument()) {
-                                    updateQuery.putAll(_filter.asDocument());
-                                }
-                                if (params.upsert) {
+                    try {
+                        if (params.update && !params.upsert) {
+                            documents.stream()
+                                .map(doc -> doc.asDocument())
+                                // add props specified via keys and values qparams
+                                .map(doc -> addProps(params, doc))
+                                .forEach(doc -> {
+                                    var updateQuery = new BsonDocument("_id", doc.remove("_id"));
+
+                                    // for upate import, take _filter property into account
+                                    // for instance, a filter allows to use $ positional array operator
+                                    var _filter = doc.remove(FILTER_PROPERTY);
+
+                                    if (_filter != null && _filter.isDocument()) {
+                                        updateQuery.putAll(_filter.asDocument());
+                                    }
+                                    if (params.upsert) {
+                                        mcoll.findOneAndUpdate(updateQuery, new BsonDocument("$set", doc), FAU_WITH_UPSERT_OPS);
+                                    } else {
+                                        mcoll.findOneAndUpdate(updateQuery, new BsonDocument("$set", doc), FAU_NO_UPSERT_OPS);
+                                    }
+                                });
+                        } else if (params.update && params.upsert) {
+                            documents.stream()
+                                .map(doc -> doc.asDocument())
+                                // add props specified via keys and values qparams
+                                .map(doc -> addProps(params, doc))
+                                .forEach(doc -> {
+                                    var updateQuery = new BsonDocument("_id", doc.remove("_id"));
+
                                     mcoll.findOneAndUpdate(updateQuery, new BsonDocument("$set", doc), FAU_WITH_UPSERT_OPS);
-                                } else {
-                                    mcoll.findOneAndUpdate(updateQuery, new BsonDocument("$set", doc), FAU_NO_UPSERT_OPS);
-                                }
-                            });
-                    } else if (params.update && params.upsert) {
-                        documents.stream()
-                            .map(doc -> doc.asDocument())
-                            // add props specified via keys and values qparams
-                            .map(doc -> addProps(params, doc))
-                            .forEach(doc -> {
-                                var updateQuery = new BsonDocument("_id", doc.remove("_id"));
-
-                                mcoll.findOneAndUpdate(updateQuery, new BsonDocument("$set", doc), FAU_WITH_UPSERT_OPS);
-                            });
-                    } else {
-                        var docList = documents.stream()
-                            .map(doc -> doc.asDocument())
-                            // add props specified via keys and values qparams
-                            .map(doc -> addProps(params, doc))
-                            .collect(Collectors.toList());
-
-                        mcoll.insertMany(docList);
+                                });
+                        } else {
+                            var docList = documents.stream()
+                                .map(doc -> doc.asDocument())
+                                // add props specified via keys and values qparams
+                                .map(doc -> addProps(params, doc))
+                                .collect(Collectors.toList());
+
+                            mcoll.insertMany(docList);
+                        }
+                    } finally {
+                        Documents.invalidateCaches(params.db, params.coll);
                     }
                     response.setStatusCode(HttpStatus.SC_OK);
                 } else {
@@ -179,6 +215,115 @@ public class CsvLoader implements Service<BsonFromCsvRequest, BsonResponse> {
         }
     }
 
+    /**
+     * parses the rows incrementally from the request and writes them in unordered bulkWrite batches
+     *
+     * The ACL predicate and the REQUEST interceptors are evaluated with a null
+     * content. So the predicate of the permission that allowed the request is
+     * evaluated again for each row, and the request is rejected if an
+     * interceptor that is not declared contentIndependent resolves for it.
+     *
+     * An invalid row stops the import: the rows before it are written and the
+     * response reports the row with the error.
+     */
+    private void streamingImport(BsonFromCsvRequest request, BsonResponse response, CsvRequestParams params) throws IOException {
+        // the interceptors have processed a null content in place of the rows
+        if (MongoService.isRequestContentIntercepted(this.registry, request, response)) {
+            response.setInError(HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE, "stream mode is not supported, a request interceptor processes the content");
+            return;
+        }
+
+        var mcoll = RHMongoClients.mclient().getDatabase(params.db).getCollection(params.coll, BsonDocument.class);
+        var permission = BaseAclPermission.of(request);
+        var rows = new long[] { 0 };
+        BsonDocument rowError = null;
+
+        try (var writer = new CsvBatchWriter(mcoll, doc -> writeModel(params, addProps(params, doc)), params.batchSize, params.parallelism)) {
+            try {
+                request.forEachDocument(doc -> {
+                    rows[0]++;
+
+                    if (permission != null) {
+                        request.setContent(new BsonArray(List.of(doc)));
+
+                        if (!permission.allow(request)) {
+                            throw new RowException(HttpStatus.SC_FORBIDDEN, "the row is not allowed by the permission");
+                        }
+                    }
+
+                    writer.add(doc);
+                });
+            } catch(RowException re) {
+                rowError = rowError(rows[0], re.status, re.getMessage());
+            } catch(IllegalArgumentException iae) {
+                rowError = rowError(rows[0], HttpStatus.SC_BAD_REQUEST, iae.getMessage());
+            } finally {
+                request.setContent(null);
+            }
+
+            // the rows before an invalid one are written anyway
+            var results = writer.complete();
+            var summary = CsvBatchWriter.summary(results);
+
+            if (rowError != null) {
+                summary.put("error", rowError);
+                response.setContent(summary);
+                response.setInError(true);
+                response.setStatusCode(rowError.getInt32("httpStatus").getValue());
+            } else if (rows[0] > 0) {
+                response.setContent(summary);
+                response.setStatusCode(summary.getInt64("errors").getValue() > 0 ? HttpStatus.SC_MULTI_STATUS : HttpStatus.SC_OK);
+            } else {
+                response.setStatusCode(HttpStatus.SC_NOT_MODIFIED);
+            }
+        }
+    }
+
+    private static BsonDocument rowError(long row, int httpStatus, String message) {
+        var ret = new BsonDocument();
+        ret.put("row", new BsonInt64(row));
+        ret.put("httpStatus", new BsonInt32(httpStatus));
+        ret.put("message", new BsonString(message == null ? "invalid row" : message));
+        return ret;
+    }
+
+    /**
+     * stops forEachDocument() on an invalid row
+     */
+    private static class RowException extends RuntimeException {
+        private final int status;
+
+        RowException(int status, String message) {
+            super(message, null, false, false);
+            this.status = status;
+        }
+    }
+
+    /**
+     * @return the WriteModel of a row, with the same semantic of the non streaming import
+     */
+    private WriteModel<BsonDocument> writeModel(CsvRequestParams params, BsonDocument doc) {
+        if (params.update && !params.upsert) {
+            var updateQuery = new BsonDocument("_id", doc.remove("_id"));
+
+            // for upate import, take _filter property into account
+            // for instance, a filter allows to use $ positional array operator
+            var _filter = doc.remove(FILTER_PROPERTY);
+
+            if (_filter != null && _filter.isDocument()) {
+                updateQuery.putAll(_filter.asDocument());
+            }
+
+            return new UpdateOneModel<>(updateQuery, new BsonDocument("$set", doc), UPDATE_NO_UPSERT_OPS);
+        } else if (params.update && params.upsert) {
+            var updateQuery = new BsonDocument("_id", doc.remove("_id"));
+
+            return new UpdateOneModel<>(updateQuery, new BsonDocument("$set", doc), UPDATE_WITH_UPSERT_OPS);
+        } else {
+            return new InsertOneModel<>(doc);
+        }
+    }
+
     private BsonDocument addProps(CsvRequestParams params, BsonDocument doc) {
         if (params.props != null && params.values != null) {
             @SuppressWarnings("rawtypes")
@@ -233,6 +378,11 @@ class CsvRequestParams {
     private static final String PROP_VALUES_NAME = "values";
     private static final String UPDATE_QPARAM_NAME = "update";
     private static final String UPSERT_QPARAM_NAME = "upsert";
+    private static final String BATCH_SIZE_QPARAM_NAME = "batchsize";
+    private static final String PARALLELISM_QPARAM_NAME = "parallelism";
+
+    static final int DEFAULT_BATCH_SIZE = 1_000;
+    static final int MAX_PARALLELISM = 16;
 
     public final int idIdx;
     public final String db;
@@ -240,6 +390,8 @@ class CsvRequestParams {
     public final String sep;
     public final boolean update;
     public final boolean upsert;
+    public final int batchSize;
+    public final int parallelism;
 
     public final Deque<String> props;
     public final Deque<String> values;
@@ -251,6 +403,8 @@ class CsvRequestParams {
         Deque<String> _id = exchange.getQueryParameters().get(ID_IDX_QPARAM_NAME);
         Deque<String> _update = exchange.getQueryParameters().get(UPDATE_QPARAM_NAME);
         Deque<String> _upsert = exchange.getQueryParameters().get(UPSERT_QPARAM_NAME);
+        Deque<String> _batchSize = exchange.getQueryParameters().get(BATCH_SIZE_QPARAM_NAME);
+        Deque<String> _parallelism = exchange.getQueryParameters().get(PARALLELISM_QPARAM_NAME);
 
         this.props = exchange.getQueryParameters().get(PROP_KEYS_NAME);
         this.values = exchange.getQueryParameters().get(PROP_VALUES_NAME);
@@ -270,5 +424,16 @@ class CsvRequestParams {
         update = _update != null && (_update.isEmpty() || "true".equalsIgnoreCase(_update.getFirst()));
 
         upsert = _upsert == null || _update == null || _update.isEmpty() || "true".equalsIgnoreCase(_upsert.getFirst());
+
+        try {
+            batchSize = _batchSize != null && !_batchSize.isEmpty() ? Integer.parseInt(_batchSize.getFirst()) : DEFAULT_BATCH_SIZE;
+            parallelism = _parallelism != null && !_parallelism.isEmpty() ? Integer.parseInt(_parallelism.getFirst()) : 1;
+        } catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException(nfe);
+        }
+
+        if (batchSize < 1 || parallelism < 1 || parallelism > MAX_PARALLELISM) {
+            throw new IllegalArgumentException("wrong batchsize or parallelism");
+        }
     }
 }
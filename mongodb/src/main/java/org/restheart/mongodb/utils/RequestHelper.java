@@ -43,16 +43,54 @@ public class RequestHelper {
      *
      * @param exchange
      * @param etag
-     * @return
+     * @return true if the IF_NONE_MATCH header matches the etag
      */
     public static boolean checkReadEtag(HttpServerExchange exchange, BsonObjectId etag) {
-        if (etag == null) {
+        return etag != null && checkReadEtag(exchange, etag.getValue().toString());
+    }
+
+    /**
+     *
+     * @param exchange
+     * @param etag
+     * @return true if the IF_NONE_MATCH header matches the etag
+     */
+    public static boolean checkReadEtag(HttpServerExchange exchange, String etag) {
+        return etag != null && etagMatches(exchange.getRequestHeaders().getFirst(Headers.IF_NONE_MATCH), etag);
+    }
+
+    /**
+     * @param header the value of the If-None-Match or If-Range header, can be a
+     * list of quoted or weak etags
+     * @param etag
+     * @return true if the header matches the etag
+     */
+    public static boolean etagMatches(String header, String etag) {
+        if (header == null) {
             return false;
         }
 
-        HeaderValues vs = exchange.getRequestHeaders().get(Headers.IF_NONE_MATCH);
+        for (var _value: header.split(",")) {
+            var value = _value.trim();
+
+            if (value.equals("*")) {
+                return true;
+            }
 
-        return vs == null || vs.getFirst() == null ? false : vs.getFirst().equals(etag.getValue().toString());
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+
+            if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")) {
+                value = value.substring(1, value.length() - 1);
+            }
+
+            if (value.equals(etag)) {
+                return true;
+            }
+        }
+
+        return false;
     }
 
     /**
@@ -20,13 +20,23 @@
  */
 package org.restheart.mongodb.utils;
 
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
 import org.bson.BsonDocument;
 import org.bson.BsonValue;
 import org.bson.Document;
+import org.bson.json.JsonMode;
 import org.bson.types.ObjectId;
+import org.restheart.exchange.MongoResponse;
+import org.restheart.utils.BsonUtils;
 import org.restheart.utils.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xnio.IoUtils;
 
 import com.mongodb.MongoException;
+import com.mongodb.client.MongoCursor;
 
 import io.undertow.server.HttpServerExchange;
 import io.undertow.util.Headers;
@@ -36,6 +46,8 @@ import io.undertow.util.Headers;
  * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
  */
 public class ResponseHelper {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResponseHelper.class);
+
     /**
      * Set the ETag in the response's header
      *
@@ -46,6 +58,138 @@ public class ResponseHelper {
         exchange.getResponseHeaders().put(Headers.ETAG, etag);
     }
 
+    /**
+     * Sets a custom sender that writes the documents of the cursor to the
+     * response, as a json array, while iterating it. The documents are never
+     * collected in memory: the cursor fetches the next batch only when the
+     * previous one has been written.
+     *
+     * The writes block the worker thread until the channel accepts the data,
+     * so a slow client throttles the cursor.
+     *
+     * The cursor is closed when the content is sent or when the exchange
+     * completes, if the custom sender does not run.
+     *
+     * @param exchange
+     * @param response
+     * @param cursor
+     * @param jsonMode
+     */
+    public static void setCursorSender(HttpServerExchange exchange, MongoResponse response, MongoCursor<BsonDocument> cursor, JsonMode jsonMode) {
+        exchange.addExchangeCompleteListener((ex, nextListener) -> {
+            cursor.close();
+            nextListener.proceed();
+        });
+
+        response.setCustomSender(() -> {
+            if (!exchange.isBlocking()) {
+                exchange.startBlocking();
+            }
+
+            // closing the writer ends the exchange
+            try (cursor; var writer = new OutputStreamWriter(exchange.getOutputStream(), StandardCharsets.UTF_8)) {
+                writer.write('[');
+
+                var first = true;
+
+                while (cursor.hasNext()) {
+                    if (!first) {
+                        writer.write(", ");
+                    }
+
+                    first = false;
+
+                    BsonUtils.toJson(cursor.next(), jsonMode, writer);
+                }
+
+                writer.write(']');
+            } catch (Throwable t) {
+                // the response is already started, the client gets a truncated content
+                LOGGER.error("error streaming the response content of {}", exchange.getRequestPath(), t);
+                IoUtils.safeClose(exchange.getConnection());
+            }
+        });
+    }
+
+    /**
+     * Sets a custom sender that writes the documents of the cursor to the
+     * response as ndjson, one document per line, while iterating it.
+     * As with setCursorSender(), the documents are never collected in memory.
+     *
+     * @param exchange
+     * @param response
+     * @param cursor
+     * @param jsonMode
+     */
+    public static void setNdjsonCursorSender(HttpServerExchange exchange, MongoResponse response, MongoCursor<BsonDocument> cursor, JsonMode jsonMode) {
+        exchange.addExchangeCompleteListener((ex, nextListener) -> {
+            cursor.close();
+            nextListener.proceed();
+        });
+
+        response.setCustomSender(() -> {
+            if (!exchange.isBlocking()) {
+                exchange.startBlocking();
+            }
+
+            // closing the writer ends the exchange
+            try (cursor; var writer = new OutputStreamWriter(exchange.getOutputStream(), StandardCharsets.UTF_8)) {
+                while (cursor.hasNext()) {
+                    BsonUtils.toJson(cursor.next(), jsonMode, writer);
+                    writer.write('\n');
+                }
+            } catch (Throwable t) {
+                // the response is already started, the client gets a truncated content
+                LOGGER.error("error streaming the response content of {}", exchange.getRequestPath(), t);
+                IoUtils.safeClose(exchange.getConnection());
+            }
+        });
+    }
+
+    /**
+     * Sets a custom sender that writes the response content as ndjson: the
+     * elements of an array content one per line, any other content in a single
+     * line. Used when the content is materialized because response interceptors
+     * process it; the sender runs after them.
+     *
+     * Error responses are sent as json.
+     *
+     * @param exchange
+     * @param response
+     * @param jsonMode
+     */
+    public static void setNdjsonContentSender(HttpServerExchange exchange, MongoResponse response, JsonMode jsonMode) {
+        response.setCustomSender(() -> {
+            if (!exchange.isBlocking()) {
+                exchange.startBlocking();
+            }
+
+            var content = response.getContent();
+
+            if (response.isInError()) {
+                response.setContentTypeAsJson();
+            }
+
+            // closing the writer ends the exchange
+            try (var writer = new OutputStreamWriter(exchange.getOutputStream(), StandardCharsets.UTF_8)) {
+                if (content == null) {
+                    return;
+                } else if (content.isArray() && !response.isInError()) {
+                    for (var doc: content.asArray()) {
+                        BsonUtils.toJson(doc, jsonMode, writer);
+                        writer.write('\n');
+                    }
+                } else {
+                    BsonUtils.toJson(content, jsonMode, writer);
+                    writer.write('\n');
+                }
+            } catch (Throwable t) {
+                LOGGER.error("error sending the response content of {}", exchange.getRequestPath(), t);
+                IoUtils.safeClose(exchange.getConnection());
+            }
+        });
+    }
+
     /**
      *
      * @param exchange
@@ -31,6 +31,7 @@ import java.util.Collections;
 import java.util.Deque;
 import java.util.Map;
 import java.util.TreeMap;
+import org.xnio.channels.StreamSinkChannel;
 
 /**
  * A mock for io.undertow.server.HttpServerExchange The original class is final
@@ -186,6 +187,38 @@ public class HttpServerExchange extends AbstractAttachable {
         return null;
     }
 
+    /**
+     *
+     * @return
+     */
+    public HeaderMap getResponseHeaders() {
+        return null;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public StreamSinkChannel getResponseChannel() {
+        return null;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public boolean isResponseStarted() {
+        return false;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public ServerConnection getConnection() {
+        return null;
+    }
+
     /**
      * @return the relativePath
      */
@@ -0,0 +1,142 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.restheart.exchange.MongoRequest;
+import org.restheart.exchange.MongoResponse;
+import org.restheart.plugins.InterceptPoint;
+import org.restheart.plugins.Interceptor;
+import org.restheart.plugins.MongoInterceptor;
+import org.restheart.plugins.PluginRecord;
+import org.restheart.plugins.PluginsRegistry;
+import org.restheart.plugins.RegisterPlugin;
+import org.restheart.plugins.Service;
+import org.restheart.utils.PluginUtils;
+
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.HttpString;
+
+public class MongoServiceTest {
+    @RegisterPlugin(name = "unrelatedInterceptor",
+        description = "adds a response header, the content is not processed",
+        interceptPoint = InterceptPoint.REQUEST_BEFORE_AUTH,
+        contentIndependent = true)
+    public static class UnrelatedInterceptor implements MongoInterceptor {
+        @Override
+        public void handle(MongoRequest request, MongoResponse response) throws Exception {
+            response.getHeaders().add(HttpString.tryFromString("X-Unrelated"), "true");
+        }
+
+        @Override
+        public boolean resolve(MongoRequest request, MongoResponse response) {
+            return true;
+        }
+    }
+
+    @RegisterPlugin(name = "contentInterceptor",
+        description = "modifies the request content",
+        interceptPoint = InterceptPoint.REQUEST_AFTER_AUTH)
+    public static class ContentInterceptor implements MongoInterceptor {
+        @Override
+        public void handle(MongoRequest request, MongoResponse response) throws Exception {
+            request.getContent().asDocument().remove("secret");
+        }
+
+        @Override
+        public boolean resolve(MongoRequest request, MongoResponse response) {
+            return request.isPost();
+        }
+    }
+
+    @Test
+    public void testContentIndependentInterceptorResolves() {
+        var request = createRequest("/db/coll", "POST");
+        var registry = registry(List.of(new UnrelatedInterceptor()), List.of());
+
+        assertFalse(MongoService.isRequestContentIntercepted(registry, request, mock(MongoResponse.class)));
+    }
+
+    @Test
+    public void testContentInterceptorResolves() {
+        var request = createRequest("/db/coll", "POST");
+        var registry = registry(List.of(new UnrelatedInterceptor()), List.of(new ContentInterceptor()));
+
+        assertTrue(MongoService.isRequestContentIntercepted(registry, request, mock(MongoResponse.class)));
+    }
+
+    @Test
+    public void testContentInterceptorDoesntResolve() {
+        var request = createRequest("/db/coll", "GET");
+        var registry = registry(List.of(new UnrelatedInterceptor()), List.of(new ContentInterceptor()));
+
+        assertFalse(MongoService.isRequestContentIntercepted(registry, request, mock(MongoResponse.class)));
+    }
+
+    @Test
+    public void testSkippedContentInterceptor() {
+        var request = createRequest("/db/coll", "POST");
+        var registry = registry(List.of(new UnrelatedInterceptor()), List.of(new ContentInterceptor()));
+
+        assertFalse(MongoService.isRequestContentIntercepted(registry, request, mock(MongoResponse.class), "contentInterceptor"));
+        assertTrue(MongoService.isRequestContentIntercepted(registry, request, mock(MongoResponse.class), "otherInterceptor"));
+    }
+
+    @Test
+    public void testNoRegistry() {
+        var request = createRequest("/db/coll", "POST");
+
+        assertTrue(MongoService.isRequestContentIntercepted(null, request, mock(MongoResponse.class)));
+    }
+
+    @Test
+    public void testContentIndependentAttribute() {
+        assertTrue(PluginUtils.contentIndependent(new UnrelatedInterceptor()));
+        assertFalse(PluginUtils.contentIndependent(new ContentInterceptor()));
+    }
+
+    private static final Service<?, ?> SRV = mock(Service.class);
+
+    private static PluginsRegistry registry(List<Interceptor<?, ?>> beforeAuth, List<Interceptor<?, ?>> afterAuth) {
+        var registry = mock(PluginsRegistry.class);
+
+        when(registry.getServiceInterceptors(SRV, InterceptPoint.REQUEST_BEFORE_AUTH)).thenReturn(beforeAuth);
+        when(registry.getServiceInterceptors(SRV, InterceptPoint.REQUEST_AFTER_AUTH)).thenReturn(afterAuth);
+
+        return registry;
+    }
+
+    private static MongoRequest createRequest(String requestPath, String httpMethod) {
+        var exchange = new HttpServerExchange();
+        exchange.setRequestPath(requestPath);
+        exchange.setRequestMethod(new HttpString(httpMethod));
+        PluginUtils.setHandlingServicePluginRecord(exchange, new PluginRecord<>("mongo", "mongo service", false, true, SRV.getClass().getName(), SRV, Map.of()));
+        return MongoRequest.init(exchange, "/", "*");
+    }
+}
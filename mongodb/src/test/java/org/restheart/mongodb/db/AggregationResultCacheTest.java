@@ -0,0 +1,138 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.HashSet;
+import java.util.List;
+
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.Test;
+
+import com.mongodb.MongoNamespace;
+
+public class AggregationResultCacheTest {
+    private static final List<BsonDocument> RESULTS = List.of(BsonDocument.parse("{ 'n': 1 }"));
+
+    private static final List<BsonDocument> STAGES = List.of(
+        BsonDocument.parse("{ '$match': { 'a': 1 } }"),
+        BsonDocument.parse("{ '$lookup': { 'from': 'authors', 'localField': 'a', 'foreignField': '_id', 'as': 'author' } }"));
+
+    private static AggregationResultCache.Key key(String coll, String uri, List<BsonDocument> stages) {
+        return new AggregationResultCache.Key(new AggregationResultCache.AggregationId("db", coll, uri), stages, 1, 100);
+    }
+
+    @Test
+    public void testReferencedCollections() {
+        var stages = BsonDocument.parse("""
+            { 'stages': [
+                { '$lookup': { 'from': 'a', 'as': 'a', 'pipeline': [ { '$unionWith': 'b' } ] } },
+                { '$facet': { 'f': [ { '$graphLookup': { 'from': 'c', 'as': 'c' } } ] } },
+                { '$unionWith': { 'coll': 'd', 'pipeline': [] } },
+                { '$match': { 'from': 'not-a-collection' } }
+            ] }
+            """).getArray("stages");
+
+        var namespaces = new HashSet<MongoNamespace>();
+
+        AggregationResultCache.referencedCollections(stages, namespaces, "db");
+
+        assertEquals(new HashSet<>(List.of(
+            new MongoNamespace("db", "a"),
+            new MongoNamespace("db", "b"),
+            new MongoNamespace("db", "c"),
+            new MongoNamespace("db", "d"))), namespaces);
+    }
+
+    @Test
+    public void testInvalidateOnWriteToSourceCollection() {
+        var cache = AggregationResultCache.getInstance();
+        var key = key("books", "source", STAGES);
+
+        assertNull(cache.get(key, 60_000, 10));
+
+        cache.put(key, RESULTS, 60_000, 10, false);
+
+        assertEquals(RESULTS, cache.get(key, 60_000, 10));
+
+        // the results are cached per paging
+        assertNull(cache.get(new AggregationResultCache.Key(key.aggregation(), STAGES, 2, 100), 60_000, 10));
+
+        cache.invalidateAll("db", "authors");
+        assertNotNull(cache.get(key, 60_000, 10));
+
+        cache.invalidateAll("db", "books");
+        assertNull(cache.get(key, 60_000, 10));
+    }
+
+    @Test
+    public void testInvalidateOnLookup() {
+        var cache = AggregationResultCache.getInstance();
+        var key = key("books", "lookup", STAGES);
+
+        cache.put(key, RESULTS, 60_000, 10, true);
+
+        assertNotNull(cache.get(key, 60_000, 10));
+
+        cache.invalidateAll("db", "authors");
+        assertNull(cache.get(key, 60_000, 10));
+    }
+
+    @Test
+    public void testOptionsChanged() {
+        var cache = AggregationResultCache.getInstance();
+        var key = key("books", "options", STAGES);
+
+        cache.put(key, RESULTS, 60_000, 10, false);
+
+        assertNotNull(cache.get(key, 60_000, 10));
+        assertNull(cache.get(key, 30_000, 10));
+    }
+
+    @Test
+    public void testInvalidateOnDropDb() {
+        var cache = AggregationResultCache.getInstance();
+        var key = key("books", "dropdb", STAGES);
+
+        cache.put(key, RESULTS, 60_000, 10, false);
+
+        cache.invalidateDb("otherdb");
+        assertNotNull(cache.get(key, 60_000, 10));
+
+        cache.invalidateDb("db");
+        assertNull(cache.get(key, 60_000, 10));
+    }
+
+    @Test
+    public void testInvalidateCaches() {
+        var cache = AggregationResultCache.getInstance();
+        var key = key("books", "helper", STAGES);
+
+        cache.put(key, RESULTS, 60_000, 10, false);
+
+        // called by the write, drop and import paths
+        Documents.invalidateCaches("db", "books");
+        assertNull(cache.get(key, 60_000, 10));
+    }
+}
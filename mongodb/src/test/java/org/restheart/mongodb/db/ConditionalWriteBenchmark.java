@@ -0,0 +1,197 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.db;
+
+import static com.mongodb.client.model.Filters.eq;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.restheart.exchange.ExchangeKeys.METHOD;
+import org.restheart.exchange.ExchangeKeys.WRITE_MODE;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.ConnectionString;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+
+/**
+ * Counts the round trips of ETag checked PUT and PATCH requests on a contended
+ * document, comparing DbUtils.writeDocumentIfMatch() with the previous write
+ * path: read the old document, write, compare the old etag and restore the old
+ * document on mismatch or read the new document on match.
+ *
+ * Each operation reads the etag of the document and then writes it with that
+ * etag, so that concurrent threads make some writes fail the precondition.
+ * The roundTrips and preconditionFailed counters are reported per operation:
+ * writeDocumentIfMatch() takes 1 round trip for PUT and 2 for PATCH, plus
+ * one probe when the etag does not match.
+ *
+ * requires MongoDB, run with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.restheart.mongodb.db.ConditionalWriteBenchmark [-Dmongo-uri=mongodb://127.0.0.1]
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class ConditionalWriteBenchmark {
+    private static final BsonString ID = new BsonString("contended");
+
+    // the commands sent by each thread
+    private static final ThreadLocal<long[]> COMMANDS = ThreadLocal.withInitial(() -> new long[1]);
+
+    private MongoClient mclient;
+    private MongoCollection<BsonDocument> coll;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public long roundTrips;
+        public long preconditionFailed;
+
+        private long start;
+
+        void begin() {
+            this.start = COMMANDS.get()[0];
+        }
+
+        void done(boolean failed) {
+            // excludes the read of the etag, common to both write paths
+            this.roundTrips += COMMANDS.get()[0] - this.start - 1;
+            if (failed) {
+                this.preconditionFailed++;
+            }
+        }
+    }
+
+    @Setup
+    public void setup() {
+        var settings = MongoClientSettings.builder()
+            .applyConnectionString(new ConnectionString(System.getProperty("mongo-uri", "mongodb://127.0.0.1")))
+            .addCommandListener(new CommandListener() {
+                @Override
+                public void commandStarted(CommandStartedEvent event) {
+                    COMMANDS.get()[0]++;
+                }
+            })
+            .build();
+
+        this.mclient = MongoClients.create(settings);
+        this.coll = this.mclient.getDatabase("restheart-benchmark").getCollection("etags", BsonDocument.class);
+        this.coll.drop();
+        this.coll.insertOne(new BsonDocument("_id", ID).append("n", new BsonInt32(0)).append("_etag", new BsonObjectId()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.mclient.close();
+    }
+
+    private BsonValue readEtag() {
+        return this.coll.find(eq("_id", ID)).first().get("_etag");
+    }
+
+    private static BsonDocument put(BsonObjectId newEtag) {
+        return new BsonDocument("_id", ID).append("n", new BsonInt32(1)).append("_etag", newEtag);
+    }
+
+    private static BsonDocument patch(BsonObjectId newEtag) {
+        return new BsonDocument("$inc", new BsonDocument("n", new BsonInt32(1))).append("$set", new BsonDocument("_etag", newEtag));
+    }
+
+    @Benchmark
+    public void putIfMatch(Counters counters) {
+        counters.begin();
+        var result = DbUtils.writeDocumentIfMatch(Optional.empty(), METHOD.PUT, WRITE_MODE.UPSERT, this.coll, ID, Optional.empty(), Optional.empty(), put(new BsonObjectId()), readEtag());
+        counters.done(result != null && result.getHttpCode() > 0);
+    }
+
+    @Benchmark
+    public void patchIfMatch(Counters counters) {
+        counters.begin();
+        var result = DbUtils.writeDocumentIfMatch(Optional.empty(), METHOD.PATCH, WRITE_MODE.UPSERT, this.coll, ID, Optional.empty(), Optional.empty(), patch(new BsonObjectId()), readEtag());
+        counters.done(result != null && result.getHttpCode() > 0);
+    }
+
+    @Benchmark
+    public void putWriteAndRestore(Counters counters) {
+        counters.begin();
+        var newEtag = new BsonObjectId();
+        counters.done(writeAndRestore(METHOD.PUT, put(newEtag), newEtag, readEtag()));
+    }
+
+    @Benchmark
+    public void patchWriteAndRestore(Counters counters) {
+        counters.begin();
+        var newEtag = new BsonObjectId();
+        counters.done(writeAndRestore(METHOD.PATCH, patch(newEtag), newEtag, readEtag()));
+    }
+
+    /**
+     * the previous write path of Documents.writeDocument() with checkEtag
+     *
+     * @return true if the etag did not match
+     */
+    private boolean writeAndRestore(METHOD method, BsonDocument data, BsonObjectId newEtag, BsonValue etag) {
+        var result = DbUtils.writeDocument(Optional.empty(), method, WRITE_MODE.UPSERT, this.coll, Optional.of(ID), Optional.empty(), Optional.empty(), data);
+        var oldDocument = result.getOldData();
+
+        if (Objects.equals(oldDocument.get("_etag"), etag)) {
+            this.coll.find(eq("_id", ID)).first();
+            return false;
+        } else {
+            DbUtils.restoreDocument(Optional.empty(), this.coll, ID, Optional.empty(), oldDocument, newEtag, "_etag");
+            return true;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ConditionalWriteBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,107 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.Test;
+
+import com.mongodb.MongoNamespace;
+
+public class CountCacheTest {
+    @Test
+    public void testCachedPerFilter() {
+        var cache = new CountCache(100, 60_000);
+        var filter = BsonDocument.parse("{ 'a': 1 }");
+
+        assertNull(cache.get("db", "coll", filter));
+
+        cache.put("db", "coll", filter, 10);
+        cache.put("db", "coll", null, 100);
+
+        assertEquals(10l, cache.get("db", "coll", BsonDocument.parse("{ 'a': 1 }")));
+        assertEquals(100l, cache.get("db", "coll", new BsonDocument()));
+        assertNull(cache.get("db", "coll", BsonDocument.parse("{ 'a': 2 }")));
+        assertNull(cache.get("db", "other", filter));
+    }
+
+    @Test
+    public void testFilterModifiedAfterPut() {
+        var cache = new CountCache(100, 60_000);
+        var filter = BsonDocument.parse("{ 'a': 1 }");
+
+        cache.put("db", "coll", filter, 10);
+        filter.put("b", filter.get("a"));
+
+        assertEquals(10l, cache.get("db", "coll", BsonDocument.parse("{ 'a': 1 }")));
+    }
+
+    @Test
+    public void testInvalidateAll() {
+        var cache = new CountCache(100, 60_000);
+
+        cache.put("db", "coll", null, 10);
+        cache.put("db", "coll", BsonDocument.parse("{ 'a': 1 }"), 5);
+        cache.put("db", "other", null, 20);
+
+        cache.invalidateAll("db", "coll");
+
+        assertNull(cache.get("db", "coll", null));
+        assertNull(cache.get("db", "coll", BsonDocument.parse("{ 'a': 1 }")));
+        assertEquals(20l, cache.get("db", "other", null));
+    }
+
+    @Test
+    public void testIndexedByNamespace() {
+        var cache = new CountCache(100, 60_000);
+        var coll = new MongoNamespace("db", "coll");
+
+        cache.put("db", "coll", null, 10);
+        cache.put("db", "coll", BsonDocument.parse("{ 'a': 1 }"), 5);
+        cache.put("db", "coll", BsonDocument.parse("{ 'a': 1 }"), 6);
+        cache.put("db", "other", null, 20);
+
+        assertEquals(2, cache.indexed(coll));
+
+        cache.invalidateAll("db", "coll");
+
+        assertEquals(0, cache.indexed(coll));
+        assertEquals(1, cache.indexed(new MongoNamespace("db", "other")));
+    }
+
+    @Test
+    public void testInvalidateDb() {
+        var cache = new CountCache(100, 60_000);
+
+        cache.put("db", "coll", null, 10);
+        cache.put("db", "other", null, 20);
+        cache.put("otherdb", "coll", null, 30);
+
+        // on drop database
+        cache.invalidateDb("db");
+
+        assertNull(cache.get("db", "coll", null));
+        assertNull(cache.get("db", "other", null));
+        assertEquals(30l, cache.get("otherdb", "coll", null));
+    }
+}
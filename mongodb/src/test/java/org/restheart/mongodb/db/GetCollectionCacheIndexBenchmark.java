@@ -0,0 +1,126 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.db;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.MongoCollection;
+
+/**
+ * Compares the GetCollectionCacheIndex lookup with the linear scan of the
+ * cache keys previously done by GetCollectionCache.
+ *
+ * run with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.restheart.mongodb.db.GetCollectionCacheIndexBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GetCollectionCacheIndexBenchmark {
+    private static final int COLLECTIONS = 10;
+    private static final int FILTERS = 10;
+
+    @Param({ "10000" })
+    public int entries;
+
+    private final List<GetCollectionCacheKey> keys = new ArrayList<>();
+    private final GetCollectionCacheIndex index = new GetCollectionCacheIndex();
+    private GetCollectionCacheKey requested;
+
+    @SuppressWarnings("unchecked")
+    @Setup
+    public void setup() {
+        var colls = new ArrayList<MongoCollection<BsonDocument>>();
+        for (int c = 0; c < COLLECTIONS; c++) {
+            MongoCollection<BsonDocument> coll = mock(MongoCollection.class, withSettings().stubOnly());
+            when(coll.getNamespace()).thenReturn(new MongoNamespace("db", "coll" + c));
+            colls.add(coll);
+        }
+
+        var sort = new BsonDocument("_id", new BsonInt32(-1));
+        var perShape = entries / (COLLECTIONS * FILTERS);
+
+        for (var coll: colls) {
+            for (int f = 0; f < FILTERS; f++) {
+                var filter = new BsonDocument("f", new BsonInt32(f));
+                for (int w = 0; w < perShape; w++) {
+                    var key = new GetCollectionCacheKey(Optional.empty(), coll, sort, filter, null, null, w * 100, (w + 1) * 100, w, false);
+                    keys.add(key);
+                    index.add(key);
+                }
+            }
+        }
+
+        var last = keys.get(keys.size() - 1);
+        requested = new GetCollectionCacheKey(Optional.empty(), last.collection(), sort, last.filter(), null, null, last.from() + 10, last.to(), 0, false);
+    }
+
+    @Benchmark
+    public GetCollectionCacheKey index() {
+        return index.find(requested);
+    }
+
+    @Benchmark
+    public GetCollectionCacheKey scan() {
+        return keys.stream()
+            .filter(cached -> Objects.equals(cached.collection().getNamespace(), requested.collection().getNamespace())
+                && Objects.equals(cached.filter(), requested.filter())
+                && Objects.equals(cached.sort(), requested.sort())
+                && Objects.equals(cached.keys(), requested.keys())
+                && ((cached.from() <= requested.from() && cached.to() >= requested.to())
+                    || (cached.exhausted() && cached.from() <= requested.from())))
+            .findFirst()
+            .orElse(null);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(GetCollectionCacheIndexBenchmark.class.getSimpleName()).build()).run();
+    }
+}
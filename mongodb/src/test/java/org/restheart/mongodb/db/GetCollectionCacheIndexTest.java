@@ -0,0 +1,106 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Optional;
+
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.junit.jupiter.api.Test;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.MongoCollection;
+
+public class GetCollectionCacheIndexTest {
+    private static final BsonDocument FILTER = BsonDocument.parse("{ 'a': 1 }");
+    private static final BsonDocument SORT = new BsonDocument("_id", new BsonInt32(-1));
+
+    @SuppressWarnings("unchecked")
+    private static MongoCollection<BsonDocument> coll(String db, String coll) {
+        MongoCollection<BsonDocument> ret = mock(MongoCollection.class);
+        when(ret.getNamespace()).thenReturn(new MongoNamespace(db, coll));
+        return ret;
+    }
+
+    private static GetCollectionCacheKey key(MongoCollection<BsonDocument> coll, BsonDocument filter, int from, int to, boolean exhausted) {
+        return new GetCollectionCacheKey(Optional.empty(), coll, SORT, filter, null, null, from, to, System.nanoTime(), exhausted);
+    }
+
+    @Test
+    public void testFindCoveringWindow() {
+        var coll = coll("db", "coll");
+        var index = new GetCollectionCacheIndex();
+
+        var first = key(coll, FILTER, 0, 100, false);
+        var second = key(coll, FILTER, 100, 200, false);
+        index.add(first);
+        index.add(second);
+
+        assertEquals(first, index.find(key(coll, FILTER, 0, 100, false)));
+        assertEquals(first, index.find(key(coll, FILTER, 50, 100, false)));
+        assertEquals(second, index.find(key(coll, FILTER, 120, 200, false)));
+        assertNull(index.find(key(coll, FILTER, 150, 250, false)));
+        assertNull(index.find(key(coll, null, 0, 100, false)));
+        assertNull(index.find(key(coll("db", "other"), FILTER, 0, 100, false)));
+    }
+
+    @Test
+    public void testFindExhaustedWindow() {
+        var coll = coll("db", "coll");
+        var index = new GetCollectionCacheIndex();
+
+        var exhausted = key(coll, FILTER, 100, 150, true);
+        index.add(exhausted);
+
+        assertEquals(exhausted, index.find(key(coll, FILTER, 200, 300, false)));
+        assertNull(index.find(key(coll, FILTER, 0, 100, false)));
+    }
+
+    @Test
+    public void testRemoveAndNamespaceKeys() {
+        var coll = coll("db", "coll");
+        var other = coll("db", "other");
+        var index = new GetCollectionCacheIndex();
+
+        var k1 = key(coll, FILTER, 0, 100, false);
+        var k2 = key(coll, null, 0, 100, false);
+        var k3 = key(other, FILTER, 0, 100, false);
+        index.add(k1);
+        index.add(k2);
+        index.add(k3);
+
+        assertEquals(3, index.size());
+        assertEquals(2, index.keys(new MongoNamespace("db", "coll")).size());
+
+        index.remove(k1);
+        assertNull(index.find(key(coll, FILTER, 0, 100, false)));
+        assertEquals(1, index.keys(new MongoNamespace("db", "coll")).size());
+
+        index.remove(k2);
+        assertEquals(0, index.keys(new MongoNamespace("db", "coll")).size());
+        assertEquals(1, index.size());
+    }
+}
@@ -0,0 +1,133 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Set;
+
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.Test;
+
+public class KeysetPaginationTest {
+    @Test
+    public void testTotalSort() {
+        assertEquals(BsonDocument.parse("{'a': 1, '_id': 1}"), KeysetPagination.totalSort(BsonDocument.parse("{'a': 1}")));
+        assertEquals(BsonDocument.parse("{'_id': -1}"), KeysetPagination.totalSort(BsonDocument.parse("{'_id': -1}")));
+        assertThrows(IllegalArgumentException.class, () -> KeysetPagination.totalSort(BsonDocument.parse("{'score': {'$meta': 'textScore'}}")));
+    }
+
+    @Test
+    public void testSingleKeyFilter() {
+        var sort = KeysetPagination.totalSort(BsonDocument.parse("{'_id': -1}"));
+        var token = KeysetPagination.token(sort, BsonDocument.parse("{'_id': 10, 'a': 'x'}"));
+
+        assertEquals(BsonDocument.parse("{'_id': {'$lt': 10}}"), KeysetPagination.filter(sort, token));
+    }
+
+    @Test
+    public void testCompoundKeyFilter() {
+        var sort = KeysetPagination.totalSort(BsonDocument.parse("{'a.b': -1, 'c': 1}"));
+        var token = KeysetPagination.token(sort, BsonDocument.parse("{'_id': 3, 'a': {'b': 2}, 'c': 'z'}"));
+
+        var expected = BsonDocument.parse("""
+            {'$or': [
+                {'a.b': {'$lt': 2}},
+                {'a.b': {'$eq': 2}, 'c': {'$gt': 'z'}},
+                {'a.b': {'$eq': 2}, 'c': {'$eq': 'z'}, '_id': {'$gt': 3}}
+            ]}""");
+
+        assertEquals(expected, KeysetPagination.filter(sort, token));
+    }
+
+    @Test
+    public void testOperatorInToken() {
+        var sort = KeysetPagination.totalSort(BsonDocument.parse("{'a': 1}"));
+        var token = KeysetPagination.token(sort, BsonDocument.parse("{'_id': 1, 'a': {'$ne': null}}"));
+
+        // the value of the token is matched literally
+        var expected = BsonDocument.parse("""
+            {'$or': [
+                {'a': {'$gt': {'$ne': null}}},
+                {'a': {'$eq': {'$ne': null}}, '_id': {'$gt': 1}}
+            ]}""");
+
+        assertEquals(expected, KeysetPagination.filter(sort, token));
+    }
+
+    @Test
+    public void testInvalidTokens() {
+        var sort = KeysetPagination.totalSort(BsonDocument.parse("{'a': 1}"));
+        var token = KeysetPagination.token(sort, BsonDocument.parse("{'_id': 1, 'a': 1}"));
+
+        assertThrows(IllegalArgumentException.class, () -> KeysetPagination.filter(sort, "not a token"));
+        assertThrows(IllegalArgumentException.class, () -> KeysetPagination.filter(KeysetPagination.totalSort(BsonDocument.parse("{'a': -1}")), token));
+        assertThrows(IllegalArgumentException.class, () -> KeysetPagination.filter(KeysetPagination.totalSort(BsonDocument.parse("{'_id': 1, 'a': 1}")), token));
+    }
+
+    @Test
+    public void testProjectionWithoutSortKeys() {
+        var sort = KeysetPagination.totalSort(BsonDocument.parse("{'createdAt': -1}"));
+        var projection = KeysetPagination.projection(sort, BsonDocument.parse("{'name': 1}"));
+
+        assertEquals(BsonDocument.parse("{'name': 1, 'createdAt': 1}"), projection.projection());
+        assertEquals(Set.of("createdAt"), projection.added());
+
+        // the token has the value of the sort key, not null
+        var last = BsonDocument.parse("{'_id': 7, 'name': 'x', 'createdAt': 100}");
+        var token = KeysetPagination.token(sort, last);
+        projection.strip(last);
+
+        assertEquals(BsonDocument.parse("{'_id': 7, 'name': 'x'}"), last);
+        assertEquals(BsonDocument.parse("{'$or': [{'createdAt': {'$lt': 100}}, {'createdAt': {'$eq': 100}, '_id': {'$gt': 7}}]}"), KeysetPagination.filter(sort, token));
+    }
+
+    @Test
+    public void testProjectionExcludingId() {
+        var sort = KeysetPagination.totalSort(BsonDocument.parse("{'a.b': 1}"));
+        var projection = KeysetPagination.projection(sort, BsonDocument.parse("{'_id': 0, 'name': 1}"));
+
+        assertEquals(BsonDocument.parse("{'name': 1, 'a.b': 1}"), projection.projection());
+        assertEquals(Set.of("a", "_id"), projection.added());
+    }
+
+    @Test
+    public void testProjectionWithSortKeys() {
+        var sort = KeysetPagination.totalSort(BsonDocument.parse("{'a.b': 1}"));
+
+        assertEquals(Set.of(), KeysetPagination.projection(sort, BsonDocument.parse("{'a': 1}")).added());
+        assertEquals(Set.of(), KeysetPagination.projection(sort, BsonDocument.parse("{'c': 0}")).added());
+        assertNull(KeysetPagination.projection(sort, null).projection());
+    }
+
+    @Test
+    public void testProjectionConflictingWithSortKeys() {
+        var sort = KeysetPagination.totalSort(BsonDocument.parse("{'a.b': 1}"));
+
+        // other fields of a are returned, adding a.b would change the returned a
+        assertThrows(IllegalArgumentException.class, () -> KeysetPagination.projection(sort, BsonDocument.parse("{'a.c': 1}")));
+        assertThrows(IllegalArgumentException.class, () -> KeysetPagination.projection(sort, BsonDocument.parse("{'a.b.c': 1}")));
+        assertThrows(IllegalArgumentException.class, () -> KeysetPagination.projection(sort, BsonDocument.parse("{'a': 0}")));
+        assertThrows(IllegalArgumentException.class, () -> KeysetPagination.projection(sort, BsonDocument.parse("{'a.b': 0}")));
+    }
+}
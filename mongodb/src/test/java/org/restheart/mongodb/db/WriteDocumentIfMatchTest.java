@@ -0,0 +1,124 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Optional;
+
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.Test;
+import org.restheart.exchange.ExchangeKeys.METHOD;
+import org.restheart.exchange.ExchangeKeys.WRITE_MODE;
+import org.restheart.utils.HttpStatus;
+
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.FindOneAndReplaceOptions;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+
+public class WriteDocumentIfMatchTest {
+    private static final BsonString ID = new BsonString("doc");
+    private static final BsonObjectId ETAG = new BsonObjectId();
+
+    @SuppressWarnings("unchecked")
+    private static MongoCollection<BsonDocument> coll(BsonDocument written, BsonDocument current) {
+        MongoCollection<BsonDocument> coll = mock(MongoCollection.class);
+        FindIterable<BsonDocument> found = mock(FindIterable.class);
+
+        when(coll.findOneAndReplace(any(Bson.class), any(BsonDocument.class), any(FindOneAndReplaceOptions.class))).thenReturn(written);
+        when(coll.findOneAndUpdate(any(Bson.class), any(Bson.class), any(FindOneAndUpdateOptions.class))).thenReturn(written);
+        when(coll.find(any(Bson.class))).thenReturn(found);
+        when(found.first()).thenReturn(current);
+
+        return coll;
+    }
+
+    private static OperationResult put(MongoCollection<BsonDocument> coll, WRITE_MODE writeMode) {
+        return DbUtils.writeDocumentIfMatch(Optional.empty(), METHOD.PUT, writeMode, coll, ID, Optional.empty(), Optional.empty(), BsonDocument.parse("{ 'a': 2 }"), ETAG);
+    }
+
+    @Test
+    public void testMatchSingleRoundTrip() {
+        var old = new BsonDocument("_id", ID).append("a", new BsonInt32(1)).append("_etag", ETAG);
+        var coll = coll(old, null);
+
+        var result = put(coll, WRITE_MODE.UPSERT);
+
+        assertEquals(-1, result.getHttpCode());
+        assertSame(old, result.getOldData());
+        // the new document is the replacement
+        assertEquals(ID, result.getNewData().get("_id"));
+        assertEquals(new BsonInt32(2), result.getNewData().get("a"));
+        verify(coll, never()).find(any(Bson.class));
+        verify(coll).findOneAndReplace(any(Bson.class), any(BsonDocument.class), eq(DbUtils.FOR_BEFORE_NOT_UPSERT_OPS));
+    }
+
+    @Test
+    public void testPatchReadsUpdatedDocument() {
+        var old = new BsonDocument("_id", ID).append("n", new BsonInt32(1)).append("_etag", ETAG);
+        var updated = new BsonDocument("_id", ID).append("n", new BsonInt32(2));
+        var coll = coll(old, updated);
+
+        var result = DbUtils.writeDocumentIfMatch(Optional.empty(), METHOD.PATCH, WRITE_MODE.UPDATE, coll, ID, Optional.empty(), Optional.empty(), BsonDocument.parse("{ '$inc': { 'n': 1 } }"), ETAG);
+
+        assertEquals(-1, result.getHttpCode());
+        assertSame(old, result.getOldData());
+        assertSame(updated, result.getNewData());
+        verify(coll, times(1)).find(any(Bson.class));
+        verify(coll).findOneAndUpdate(any(Bson.class), any(Bson.class), eq(DbUtils.FOU_BEFORE_NOT_UPSERT_OPS));
+    }
+
+    @Test
+    public void testPreconditionFailed() {
+        var current = new BsonDocument("_id", ID).append("_etag", new BsonObjectId());
+        var coll = coll(null, current);
+
+        var result = put(coll, WRITE_MODE.UPDATE);
+
+        assertEquals(HttpStatus.SC_PRECONDITION_FAILED, result.getHttpCode());
+        assertEquals(current.get("_etag"), result.getEtag());
+        assertNull(result.getNewData());
+        // a single probe on a miss
+        verify(coll, times(1)).find(any(Bson.class));
+    }
+
+    @Test
+    public void testNotFound() {
+        assertEquals(HttpStatus.SC_NOT_FOUND, put(coll(null, null), WRITE_MODE.UPDATE).getHttpCode());
+
+        // with upsert the document gets created
+        assertNull(put(coll(null, null), WRITE_MODE.UPSERT));
+    }
+}
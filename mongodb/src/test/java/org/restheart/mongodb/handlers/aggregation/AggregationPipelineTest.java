@@ -22,11 +22,15 @@
 package org.restheart.mongodb.handlers.aggregation;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.restheart.utils.BsonUtils.document;
 import org.bson.BsonDocument;
 import org.bson.BsonString;
 import org.junit.jupiter.api.Test;
+import org.restheart.exchange.InvalidMetadataException;
 import org.restheart.exchange.QueryVariableNotBoundException;
 import org.restheart.utils.BsonUtils;
 import org.restheart.mongodb.utils.StagesInterpolator;
@@ -204,4 +208,61 @@ public class AggregationPipelineTest {
         assertEquals(2, elseStageShouldBeUsed.size());
         assertEquals(document().put("else", 1).get(), elseStageShouldBeUsed.get(1).getDocument("$sort"));
     }
+
+    @Test
+    public void testStreamAndBatchSize() throws Exception {
+        var aggr = """
+                {
+                    "uri": "report",
+                    "stream": true,
+                    "batchSize": 500,
+                    "stages": [ { "_$match": { "name": "foo" } } ]
+                }
+                """;
+
+        var ap = new AggregationPipeline(BsonUtils.parse(aggr).asDocument());
+
+        assertTrue(ap.isStream());
+        assertFalse(ap.isAllowStream());
+        assertEquals(500, ap.getBatchSize());
+
+        var allowed = new AggregationPipeline(BsonUtils.parse("{ 'uri': 'report', 'allowStream': true, 'stages': [] }").asDocument());
+
+        assertFalse(allowed.isStream());
+        assertTrue(allowed.isAllowStream());
+
+        var defaults = new AggregationPipeline(BsonUtils.parse("{ 'uri': 'report', 'stages': [] }").asDocument());
+
+        assertFalse(defaults.isStream());
+        assertNull(defaults.getBatchSize());
+
+        assertThrows(InvalidMetadataException.class, () -> new AggregationPipeline(BsonUtils.parse("{ 'uri': 'report', 'stream': 'yes', 'stages': [] }").asDocument()));
+        assertThrows(InvalidMetadataException.class, () -> new AggregationPipeline(BsonUtils.parse("{ 'uri': 'report', 'allowStream': 1, 'stages': [] }").asDocument()));
+        assertThrows(InvalidMetadataException.class, () -> new AggregationPipeline(BsonUtils.parse("{ 'uri': 'report', 'batchSize': 0, 'stages': [] }").asDocument()));
+    }
+
+    @Test
+    public void testCacheOptions() throws Exception {
+        var aggr = """
+                {
+                    "uri": "report",
+                    "cache": { "ttl": 5000, "maxEntries": 10, "invalidateOnLookup": true },
+                    "stages": [ { "_$match": { "name": "foo" } } ]
+                }
+                """;
+
+        var ap = new AggregationPipeline(BsonUtils.parse(aggr).asDocument());
+
+        assertEquals(new AggregationPipeline.CacheOptions(5000, 10, true), ap.getCacheOptions());
+
+        var defaults = new AggregationPipeline(BsonUtils.parse("{ 'uri': 'report', 'cache': {}, 'stages': [] }").asDocument());
+
+        assertEquals(new AggregationPipeline.CacheOptions(AggregationPipeline.CacheOptions.DEFAULT_TTL, AggregationPipeline.CacheOptions.DEFAULT_MAX_ENTRIES, false), defaults.getCacheOptions());
+
+        assertNull(new AggregationPipeline(BsonUtils.parse("{ 'uri': 'report', 'stages': [] }").asDocument()).getCacheOptions());
+
+        assertThrows(InvalidMetadataException.class, () -> new AggregationPipeline(BsonUtils.parse("{ 'uri': 'report', 'cache': true, 'stages': [] }").asDocument()));
+        assertThrows(InvalidMetadataException.class, () -> new AggregationPipeline(BsonUtils.parse("{ 'uri': 'report', 'cache': { 'ttl': 0 }, 'stages': [] }").asDocument()));
+        assertThrows(InvalidMetadataException.class, () -> new AggregationPipeline(BsonUtils.parse("{ 'uri': 'report', 'cache': { 'maxEntries': 'all' }, 'stages': [] }").asDocument()));
+    }
 }
@@ -0,0 +1,83 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.handlers.bulk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.bson.BsonDocument;
+import org.bson.json.JsonParseException;
+import org.junit.jupiter.api.Test;
+
+public class NdjsonReaderTest {
+    private static NdjsonReader reader(String ndjson, int maxLineLength) {
+        return new NdjsonReader(new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)), maxLineLength);
+    }
+
+    @Test
+    public void testReadDocuments() throws IOException {
+        try (var reader = reader("{\"a\":1}\n\n{\"a\":2}\r\n   \n{\"a\":3}", 100)) {
+            assertEquals(BsonDocument.parse("{\"a\":1}"), reader.next());
+            assertEquals(1, reader.lineNumber());
+            assertEquals(BsonDocument.parse("{\"a\":2}"), reader.next());
+            assertEquals(3, reader.lineNumber());
+            assertEquals(BsonDocument.parse("{\"a\":3}"), reader.next());
+            assertEquals(5, reader.lineNumber());
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void testTrailingNewLine() throws IOException {
+        try (var reader = reader("{\"a\":1}\n", 100)) {
+            assertEquals(BsonDocument.parse("{\"a\":1}"), reader.next());
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void testInvalidLines() throws IOException {
+        try (var reader = reader("{\"a\":1}\n[1,2]\n", 100)) {
+            reader.next();
+            assertThrows(JsonParseException.class, reader::next);
+            assertEquals(2, reader.lineNumber());
+        }
+
+        try (var reader = reader("{\"a\":1}\n{\"a\":\n", 100)) {
+            reader.next();
+            assertThrows(JsonParseException.class, reader::next);
+        }
+    }
+
+    @Test
+    public void testMaxLineLength() throws IOException {
+        try (var reader = reader("{\"a\":1}\n{\"a\":\"xxxxxxxxxxxxxxxxxxxx\"}\n", 10)) {
+            assertEquals(BsonDocument.parse("{\"a\":1}"), reader.next());
+            assertThrows(JsonParseException.class, reader::next);
+            assertEquals(2, reader.lineNumber());
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.handlers.changestreams;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.Test;
+
+public class ChangeEventMatcherTest {
+    private static final BsonDocument EVENT = BsonDocument.parse("""
+        {
+            "operationType": "update",
+            "ns": { "db": "db", "coll": "coll" },
+            "fullDocument": { "_id": 1, "owner": "alice", "qty": 5, "tags": [ "a", "b" ], "items": [ { "sku": "x", "n": 1 }, { "sku": "y", "n": 2 } ] },
+            "documentKey": { "_id": 1 },
+            "fullDocumentBeforeChange": { "_id": 1, "owner": "bob", "qty": 4 },
+            "wallTime": { "$date": "2024-01-01T00:00:00Z" }
+        }
+        """);
+
+    private static boolean matches(String match) {
+        return ChangeEventMatcher.of(BsonDocument.parse(match)).matches(EVENT);
+    }
+
+    @Test
+    public void testEquality() {
+        assertTrue(matches("{ '$match': { 'fullDocument.owner': 'alice' } }"));
+        assertFalse(matches("{ '$match': { 'fullDocument.owner': 'bob' } }"));
+        assertTrue(matches("{ '$match': { 'operationType': 'update', 'ns.coll': 'coll' } }"));
+        assertTrue(matches("{ '$match': { 'fullDocument.qty': { '$numberLong': '5' } } }"));
+        assertTrue(matches("{ '$match': { 'fullDocument.missing': null } }"));
+        assertTrue(matches("{ '$match': { 'fullDocumentBeforeChange.owner': 'bob' } }"));
+        assertTrue(matches("{ '$match': { 'wallTime': { '$gte': { '$date': '2024-01-01T00:00:00Z' } } } }"));
+    }
+
+    @Test
+    public void testEmbeddedDocuments() {
+        assertTrue(matches("{ '$match': { 'fullDocument.items': { 'sku': 'x', 'n': 1 } } }"));
+        assertTrue(matches("{ '$match': { 'fullDocument.items': { 'sku': 'x', 'n': { '$numberLong': '1' } } } }"));
+        assertTrue(matches("{ '$match': { 'fullDocument.items': { 'sku': 'y', 'n': 2.0 } } }"));
+        assertTrue(matches("{ '$match': { 'documentKey': { '_id': { '$numberDecimal': '1' } } } }"));
+        // the field order matters
+        assertFalse(matches("{ '$match': { 'fullDocument.items': { 'n': 1, 'sku': 'x' } } }"));
+        assertFalse(matches("{ '$match': { 'fullDocument.items': { 'sku': 'x' } } }"));
+        assertFalse(matches("{ '$match': { 'fullDocument.qty': '5' } }"));
+    }
+
+    @Test
+    public void testRegex() {
+        assertTrue(matches("{ '$match': { 'fullDocument.owner': { '$regex': { '$regularExpression': { 'pattern': '^AL', 'options': 'i' } } } } }"));
+        assertTrue(matches("{ '$match': { 'fullDocument.owner': { '$regularExpression': { 'pattern': 'ice$', 'options': '' } } } }"));
+        assertTrue(matches("{ '$match': { 'fullDocument.tags': { '$in': [ { '$regularExpression': { 'pattern': '^b', 'options': '' } } ] } } }"));
+        assertFalse(matches("{ '$match': { 'fullDocument.owner': { '$not': { '$regularExpression': { 'pattern': 'ali', 'options': '' } } } } }"));
+
+        // the regular expressions are compiled when the matcher is created
+        var matcher = ChangeEventMatcher.of(BsonDocument.parse("{ '$match': { 'fullDocument.owner': { '$regex': '^al' } } }"));
+        assertTrue(matcher.matches(EVENT));
+        assertTrue(matcher.matches(EVENT));
+        assertThrows(java.util.regex.PatternSyntaxException.class, () -> ChangeEventMatcher.of(BsonDocument.parse("{ '$match': { 'fullDocument.owner': { '$regex': '(' } } }")));
+    }
+
+    @Test
+    public void testArrays() {
+        assertTrue(matches("{ '$match': { 'fullDocument.tags': 'b' } }"));
+        assertTrue(matches("{ '$match': { 'fullDocument.tags': [ 'a', 'b' ] } }"));
+        assertTrue(matches("{ '$match': { 'fullDocument.items.sku': 'y' } }"));
+        assertTrue(matches("{ '$match': { 'fullDocument.items.1.n': 2 } }"));
+        assertFalse(matches("{ '$match': { 'fullDocument.items.sku': 'z' } }"));
+    }
+
+    @Test
+    public void testOperators() {
+        assertTrue(matches("{ '$match': { 'fullDocument.qty': { '$gt': 4, '$lte': 5.0 } } }"));
+        assertFalse(matches("{ '$match': { 'fullDocument.qty': { '$lt': 5 } } }"));
+        assertTrue(matches("{ '$match': { 'operationType': { '$in': [ 'insert', 'update' ] } } }"));
+        assertFalse(matches("{ '$match': { 'operationType': { '$nin': [ 'insert', 'update' ] } } }"));
+        assertTrue(matches("{ '$match': { 'fullDocument.owner': { '$ne': 'bob' } } }"));
+        assertTrue(matches("{ '$match': { 'fullDocument.owner': { '$exists': true }, 'fullDocument.x': { '$exists': false } } }"));
+        assertTrue(matches("{ '$match': { 'fullDocument.owner': { '$regex': '^AL', '$options': 'i' } } }"));
+        assertFalse(matches("{ '$match': { 'fullDocument.qty': { '$not': { '$gt': 4 } } } }"));
+        assertTrue(matches("{ '$match': { 'fullDocument.items.n': { '$gte': 2 } } }"));
+    }
+
+    @Test
+    public void testLogicalOperators() {
+        assertTrue(matches("{ '$match': { '$or': [ { 'fullDocument.owner': 'bob' }, { 'fullDocument.qty': 5 } ] } }"));
+        assertFalse(matches("{ '$match': { '$and': [ { 'fullDocument.owner': 'alice' }, { 'fullDocument.qty': 6 } ] } }"));
+        assertTrue(matches("{ '$match': { '$nor': [ { 'fullDocument.owner': 'bob' } ] } }"));
+    }
+
+    @Test
+    public void testUnsupported() {
+        assertThrows(IllegalArgumentException.class, () -> ChangeEventMatcher.of(BsonDocument.parse("{ '$project': { 'a': 1 } }")));
+        assertThrows(IllegalArgumentException.class, () -> ChangeEventMatcher.of(BsonDocument.parse("{ '$match': { '$expr': { '$gt': [ '$a', 1 ] } } }")));
+        assertThrows(IllegalArgumentException.class, () -> ChangeEventMatcher.of(BsonDocument.parse("{ '$match': { 'fullDocument.a': { '$elemMatch': { 'b': 1 } } } }")));
+        // fields that the change events evaluated in-process don't have
+        assertThrows(IllegalArgumentException.class, () -> ChangeEventMatcher.of(BsonDocument.parse("{ '$match': { 'collectionUUID': 1 } }")));
+        assertThrows(IllegalArgumentException.class, () -> ChangeEventMatcher.of(BsonDocument.parse("{ '$match': { 'updateDescription.truncatedArrays': [] } }")));
+        assertThrows(IllegalArgumentException.class, () -> ChangeEventMatcher.of(BsonDocument.parse("{ '$match': { '$or': [ { 'operationType': 'insert' }, { 'splitEvent': null } ] } }")));
+    }
+}
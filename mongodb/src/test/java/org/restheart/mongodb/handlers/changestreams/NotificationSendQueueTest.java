@@ -0,0 +1,75 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.handlers.changestreams;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+import org.restheart.mongodb.MongoServiceConfiguration.SLOW_CONSUMER_POLICY;
+import org.restheart.mongodb.handlers.changestreams.NotificationSendQueue.OFFER_RESULT;
+
+public class NotificationSendQueueTest {
+    @Test
+    public void testDropOldest() {
+        var queue = new NotificationSendQueue<String>(2, SLOW_CONSUMER_POLICY.DROP_OLDEST);
+
+        assertEquals(OFFER_RESULT.QUEUED, queue.offer("a", "1"));
+        assertEquals(OFFER_RESULT.QUEUED, queue.offer("b", "2"));
+        assertEquals(OFFER_RESULT.DROPPED_OLDEST, queue.offer("a", "3"));
+
+        assertEquals(2, queue.size());
+        assertEquals("2", queue.poll());
+        assertEquals("3", queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testCoalesce() {
+        var queue = new NotificationSendQueue<String>(2, SLOW_CONSUMER_POLICY.COALESCE);
+
+        queue.offer("a", "1");
+        queue.offer("b", "2");
+
+        assertEquals(OFFER_RESULT.COALESCED, queue.offer("a", "3"));
+        assertEquals("2", queue.poll());
+        assertEquals("3", queue.poll());
+
+        queue.offer("a", "4");
+        queue.offer("b", "5");
+
+        // no queued notification of the same document
+        assertEquals(OFFER_RESULT.DROPPED_OLDEST, queue.offer("c", "6"));
+        assertEquals(OFFER_RESULT.DROPPED_OLDEST, queue.offer(null, "7"));
+        assertEquals("6", queue.poll());
+        assertEquals("7", queue.poll());
+    }
+
+    @Test
+    public void testDisconnect() {
+        var queue = new NotificationSendQueue<String>(1, SLOW_CONSUMER_POLICY.DISCONNECT);
+
+        assertEquals(OFFER_RESULT.QUEUED, queue.offer("a", "1"));
+        assertEquals(OFFER_RESULT.OVERFLOW, queue.offer("b", "2"));
+        assertEquals(1, queue.size());
+        assertEquals("1", queue.poll());
+    }
+}
@@ -0,0 +1,95 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.mongodb.handlers.changestreams;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.junit.jupiter.api.Test;
+
+public class ReplayBufferTest {
+    private static BsonDocument token(String data) {
+        return new BsonDocument("_data", new BsonString(data));
+    }
+
+    private static void add(ReplayBuffer buffer, String data) {
+        var doc = new BsonDocument("_id", token(data));
+        buffer.add(token(data), doc, doc, null);
+    }
+
+    @Test
+    public void testReplayAfterToken() {
+        var buffer = new ReplayBuffer(3);
+
+        add(buffer, "a");
+        add(buffer, "b");
+        add(buffer, "c");
+
+        var replayed = new ArrayList<ReplayBuffer.Entry>();
+        var upTo = new long[] { -1 };
+
+        assertTrue(buffer.replay(token("a"), (entries, seq) -> { replayed.addAll(entries); upTo[0] = seq; }));
+
+        assertEquals(List.of(token("b"), token("c")), replayed.stream().map(ReplayBuffer.Entry::resumeToken).toList());
+        assertEquals(2, upTo[0]);
+    }
+
+    @Test
+    public void testEviction() {
+        var buffer = new ReplayBuffer(2);
+
+        add(buffer, "a");
+        add(buffer, "b");
+        add(buffer, "c");
+
+        assertEquals(2, buffer.size());
+        assertFalse(buffer.contains(token("a")));
+        assertFalse(buffer.replay(token("a"), (entries, seq) -> {}));
+        assertTrue(buffer.contains(token("b")));
+        assertEquals(3, buffer.nextSeq());
+    }
+
+    @Test
+    public void testReplayFromSeq() {
+        var buffer = new ReplayBuffer(10);
+
+        add(buffer, "a");
+        var from = buffer.nextSeq();
+        add(buffer, "b");
+        add(buffer, "c");
+
+        var replayed = new ArrayList<ReplayBuffer.Entry>();
+        buffer.replay(from, (entries, seq) -> replayed.addAll(entries));
+
+        assertEquals(List.of(1l, 2l), replayed.stream().map(ReplayBuffer.Entry::seq).toList());
+
+        // nothing to replay
+        replayed.clear();
+        buffer.replay(buffer.nextSeq(), (entries, seq) -> replayed.addAll(entries));
+        assertTrue(replayed.isEmpty());
+    }
+}
@@ -0,0 +1,87 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+
+package org.restheart.mongodb.handlers.files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.restheart.mongodb.utils.RequestHelper;
+
+public class ByteRangeTest {
+    @Test
+    public void testSingleRanges() {
+        assertEquals(List.of(new ByteRange(0, 499)), ByteRange.parse("bytes=0-499", 1000));
+        assertEquals(List.of(new ByteRange(500, 999)), ByteRange.parse("bytes=500-", 1000));
+        assertEquals(List.of(new ByteRange(900, 999)), ByteRange.parse("bytes=-100", 1000));
+        assertEquals(List.of(new ByteRange(0, 999)), ByteRange.parse("bytes=-2000", 1000));
+        assertEquals(List.of(new ByteRange(990, 999)), ByteRange.parse("bytes=990-2000", 1000));
+        assertEquals("bytes 990-999/1000", new ByteRange(990, 999).contentRange(1000));
+        assertEquals(10, new ByteRange(990, 999).length());
+    }
+
+    @Test
+    public void testMultipleRanges() {
+        assertEquals(List.of(new ByteRange(0, 9), new ByteRange(100, 199)), ByteRange.parse("bytes=100-199, 0-9", 1000));
+
+        // overlapping and adjacent ranges are coalesced
+        assertEquals(List.of(new ByteRange(0, 199)), ByteRange.parse("bytes=0-99,50-149,150-199", 1000));
+
+        // unsatisfiable ranges are dropped
+        assertEquals(List.of(new ByteRange(0, 9)), ByteRange.parse("bytes=0-9,2000-3000", 1000));
+    }
+
+    @Test
+    public void testNotSatisfiable() {
+        assertTrue(ByteRange.parse("bytes=1000-", 1000).isEmpty());
+        assertTrue(ByteRange.parse("bytes=2000-", 1000).isEmpty());
+        assertTrue(ByteRange.parse("bytes=1000-1999", 1000).isEmpty());
+        assertTrue(ByteRange.parse("bytes=-0", 1000).isEmpty());
+        assertTrue(ByteRange.parse("bytes=0-10", 0).isEmpty());
+    }
+
+    @Test
+    public void testInvalid() {
+        assertNull(ByteRange.parse(null, 1000));
+        assertNull(ByteRange.parse("items=0-10", 1000));
+        assertNull(ByteRange.parse("bytes=10-5", 1000));
+        assertNull(ByteRange.parse("bytes=abc", 1000));
+        assertNull(ByteRange.parse("bytes=a-b", 1000));
+        assertNull(ByteRange.parse("bytes=-", 1000));
+        assertNull(ByteRange.parse("bytes=" + "0-1,".repeat(ByteRange.MAX_RANGES) + "0-1", 1000));
+    }
+
+    @Test
+    public void testEtagMatches() {
+        assertTrue(RequestHelper.etagMatches("5f1e", "5f1e"));
+        assertTrue(RequestHelper.etagMatches("\"5f1e\"", "5f1e"));
+        assertTrue(RequestHelper.etagMatches("W/\"5f1e\"", "5f1e"));
+        assertTrue(RequestHelper.etagMatches("\"aaaa\", \"5f1e\"", "5f1e"));
+        assertTrue(RequestHelper.etagMatches("*", "5f1e"));
+        assertFalse(RequestHelper.etagMatches("\"aaaa\"", "5f1e"));
+        assertFalse(RequestHelper.etagMatches(null, "5f1e"));
+    }
+}
@@ -0,0 +1,125 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+
+package org.restheart.mongodb.handlers.files;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.reactivestreams.Subscription;
+import org.xnio.ChannelListener;
+import org.xnio.channels.StreamSinkChannel;
+
+import io.undertow.server.HttpServerExchange;
+
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class ResponseChannelSubscriberTest {
+    private HttpServerExchange exchange;
+    private StreamSinkChannel channel;
+    private ChannelListener.Setter setter;
+    private Subscription subscription;
+
+    @BeforeEach
+    public void setup() {
+        exchange = mock(HttpServerExchange.class);
+        channel = mock(StreamSinkChannel.class);
+        setter = mock(ChannelListener.Setter.class);
+        subscription = mock(Subscription.class);
+
+        when(exchange.getResponseChannel()).thenReturn(channel);
+        doReturn(setter).when(channel).getWriteSetter();
+    }
+
+    private static int consume(ByteBuffer buffer) {
+        var remaining = buffer.remaining();
+        buffer.position(buffer.limit());
+        return remaining;
+    }
+
+    @Test
+    public void testRequestsNextBufferWhenWritten() throws Exception {
+        when(channel.write(any(ByteBuffer.class))).thenAnswer(i -> consume(i.getArgument(0)));
+
+        var subscriber = new ResponseChannelSubscriber(exchange);
+        subscriber.onSubscribe(subscription);
+        verify(subscription, times(1)).request(1);
+
+        subscriber.onNext(ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+        verify(subscription, times(2)).request(1);
+
+        subscriber.onComplete();
+        verify(exchange).endExchange();
+        verify(channel, never()).resumeWrites();
+    }
+
+    @Test
+    public void testWaitsForWritableChannel() throws Exception {
+        // the channel is not writable
+        when(channel.write(any(ByteBuffer.class))).thenReturn(0);
+
+        var subscriber = new ResponseChannelSubscriber(exchange);
+        subscriber.onSubscribe(subscription);
+
+        var listener = ArgumentCaptor.forClass(ChannelListener.class);
+        verify(setter).set(listener.capture());
+
+        subscriber.onNext(ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+
+        // no more buffers are requested until the pending one is written
+        verify(channel).resumeWrites();
+        verify(subscription, times(1)).request(1);
+
+        // the publisher completes while the last buffer is pending
+        subscriber.onComplete();
+        verify(exchange, never()).endExchange();
+
+        // the channel becomes writable
+        when(channel.write(any(ByteBuffer.class))).thenAnswer(i -> consume(i.getArgument(0)));
+        listener.getValue().handleEvent(channel);
+
+        verify(channel).suspendWrites();
+        verify(exchange).endExchange();
+        verify(subscription, times(1)).request(1);
+    }
+
+    @Test
+    public void testCancelsOnClientDisconnection() throws Exception {
+        when(channel.write(any(ByteBuffer.class))).thenThrow(new java.io.IOException("broken pipe"));
+
+        var subscriber = new ResponseChannelSubscriber(exchange);
+        subscriber.onSubscribe(subscription);
+        subscriber.onNext(ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+
+        verify(subscription).cancel();
+        verify(subscription, times(1)).request(1);
+        verify(exchange, never()).endExchange();
+    }
+}
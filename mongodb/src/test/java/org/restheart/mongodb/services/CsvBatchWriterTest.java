@@ -0,0 +1,142 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-mongodb
+ * %%
+ * Copyright (C) 2014 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+
+package org.restheart.mongodb.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.junit.jupiter.api.Test;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoNamespace;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.WriteModel;
+
+@SuppressWarnings("unchecked")
+public class CsvBatchWriterTest {
+    private static MongoCollection<BsonDocument> coll() {
+        MongoCollection<BsonDocument> coll = mock(MongoCollection.class);
+        when(coll.getNamespace()).thenReturn(new MongoNamespace("db", "coll"));
+        when(coll.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenAnswer(i -> BulkWriteResult.acknowledged(((List<?>) i.getArgument(0)).size(), 0, 0, 0, List.of(), List.of()));
+        return coll;
+    }
+
+    private static WriteModel<BsonDocument> insert(BsonDocument doc) {
+        return new InsertOneModel<>(doc);
+    }
+
+    @Test
+    public void testBatches() {
+        var coll = coll();
+
+        List<CsvBatchWriter.BatchResult> results;
+
+        try (var writer = new CsvBatchWriter(coll, CsvBatchWriterTest::insert, 2, 1)) {
+            for (var n = 0; n < 5; n++) {
+                writer.add(new BsonDocument("n", new BsonInt32(n)));
+            }
+
+            // two full batches have been written while adding
+            verify(coll, times(2)).bulkWrite(anyList(), any(BulkWriteOptions.class));
+
+            results = writer.complete();
+        }
+
+        verify(coll, times(3)).bulkWrite(anyList(), any(BulkWriteOptions.class));
+
+        assertEquals(3, results.size());
+        assertEquals(2, results.get(0).inserted());
+        assertEquals(1, results.get(2).rows());
+
+        var summary = CsvBatchWriter.summary(results);
+        assertEquals(5, summary.getInt64("rows").getValue());
+        assertEquals(5, summary.getInt64("inserted").getValue());
+        assertEquals(3, summary.getArray("batches").size());
+    }
+
+    @Test
+    public void testParallelBatches() {
+        var coll = coll();
+
+        List<CsvBatchWriter.BatchResult> results;
+
+        try (var writer = new CsvBatchWriter(coll, CsvBatchWriterTest::insert, 10, 4)) {
+            for (var n = 0; n < 95; n++) {
+                writer.add(new BsonDocument("n", new BsonInt32(n)));
+            }
+
+            results = writer.complete();
+        }
+
+        verify(coll, times(10)).bulkWrite(anyList(), any(BulkWriteOptions.class));
+
+        assertEquals(10, results.size());
+
+        // results are in batch order
+        for (var idx = 0; idx < results.size(); idx++) {
+            assertEquals(idx, results.get(idx).batch());
+        }
+
+        assertEquals(95, CsvBatchWriter.summary(results).getInt64("inserted").getValue());
+    }
+
+    @Test
+    public void testBatchWithErrors() {
+        MongoCollection<BsonDocument> coll = mock(MongoCollection.class);
+        when(coll.getNamespace()).thenReturn(new MongoNamespace("db", "coll"));
+
+        var error = new BulkWriteError(11000, "E11000 duplicate key error", new BsonDocument(), 1);
+        when(coll.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenThrow(new MongoBulkWriteException(
+            BulkWriteResult.acknowledged(2, 0, 0, 0, List.of(), List.of()),
+            List.of(error), null, new ServerAddress(), java.util.Set.of()));
+
+        List<CsvBatchWriter.BatchResult> results;
+
+        try (var writer = new CsvBatchWriter(coll, CsvBatchWriterTest::insert, 3, 1)) {
+            for (var n = 0; n < 3; n++) {
+                writer.add(new BsonDocument("n", new BsonInt32(n)));
+            }
+
+            results = writer.complete();
+        }
+
+        var summary = CsvBatchWriter.summary(results);
+        assertEquals(3, summary.getInt64("rows").getValue());
+        assertEquals(2, summary.getInt64("inserted").getValue());
+        assertEquals(1, summary.getInt64("errors").getValue());
+        assertEquals("E11000 duplicate key error", summary.getArray("batches").get(0).asDocument().getString("error").getValue());
+    }
+}
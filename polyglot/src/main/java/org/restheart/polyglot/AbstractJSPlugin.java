@@ -23,28 +23,41 @@ package org.restheart.polyglot;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 
-import com.google.common.collect.Maps;
 import com.mongodb.client.MongoClient;
 
 import org.graalvm.polyglot.Context;
 import org.graalvm.polyglot.Engine;
 import org.graalvm.polyglot.HostAccess;
 import org.graalvm.polyglot.Source;
-import org.graalvm.polyglot.Value;
 import org.restheart.configuration.Configuration;
+import org.restheart.exchange.Request;
+import org.restheart.exchange.Response;
 import org.restheart.plugins.InterceptPoint;
 import org.restheart.plugins.RegisterPlugin.MATCH_POLICY;
 import org.restheart.utils.CleanerUtils;
+import org.restheart.utils.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public abstract class AbstractJSPlugin {
     private static final Logger LOGGER = LoggerFactory.getLogger(AbstractJSPlugin.class);
 
+    // all plugins share the same Engine so that the compiled code is reused across Contexts
+    private static final Engine SHARED_ENGINE = Engine.create();
+
+    public static final int DEFAULT_CONTEXT_POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+    public static final long DEFAULT_CONTEXT_POOL_IDLE_TIMEOUT = 60_000;
+    public static final long DEFAULT_CONTEXT_POOL_BORROW_TIMEOUT = 10_000;
+
+    private static int contextPoolSize = DEFAULT_CONTEXT_POOL_SIZE;
+    private static long contextPoolIdleTimeout = DEFAULT_CONTEXT_POOL_IDLE_TIMEOUT;
+    private static long contextPoolBorrowTimeout = DEFAULT_CONTEXT_POOL_BORROW_TIMEOUT;
+
     protected Map<String, String> contextOptions = new HashMap<>();
 
-    protected Engine engine = Engine.create();
+    protected Engine engine = SHARED_ENGINE;
 
     protected String modulesReplacements;
     protected Source handleSource;
@@ -76,7 +89,7 @@ public abstract class AbstractJSPlugin {
         this.isInterceptor = false;
 
         // register cleaner
-        CleanerUtils.get().cleaner().register(this, new State(this.ctxs));
+        CleanerUtils.get().cleaner().register(this, this.state);
     }
 
     protected AbstractJSPlugin(String name,
@@ -101,7 +114,27 @@ public abstract class AbstractJSPlugin {
         this.isInterceptor = isInterceptor;
 
         // register cleaner
-        CleanerUtils.get().cleaner().register(this, new State(this.ctxs));
+        CleanerUtils.get().cleaner().register(this, this.state);
+    }
+
+    /**
+     * @return the Engine shared by all js plugins
+     */
+    public static Engine sharedEngine() {
+        return SHARED_ENGINE;
+    }
+
+    /**
+     * sets the size and the timeouts of the Context pools of the plugins created afterwards
+     *
+     * @param size the max number of Contexts of each plugin
+     * @param idleTimeout the time in milliseconds after which an idle Context is closed
+     * @param borrowTimeout the max time in milliseconds a request waits for a Context
+     */
+    public static void setContextPoolOptions(int size, long idleTimeout, long borrowTimeout) {
+        contextPoolSize = size;
+        contextPoolIdleTimeout = idleTimeout;
+        contextPoolBorrowTimeout = borrowTimeout;
     }
 
     public static Context context(Engine engine, Map<String, String> OPTS) {
@@ -161,65 +194,98 @@ public abstract class AbstractJSPlugin {
         ctx.getBindings("js").putMember("pluginArgs", args);
     }
 
-    // cache Context and handles for performace
-    // each working thread is associates with one context and one handle
-    // because js Context does not allow multithreaded access
-    protected Map<String, Context> ctxs = Maps.newHashMap();
-    protected Map<String, Value> handles = Maps.newHashMap();
+    // the Contexts are pooled and each one is used by one thread at a time
+    // because js Context does not allow multithreaded access.
+    // the State holds the pool for the cleaner, so it must not reference this plugin
+    private final State state = new State();
 
     /**
      *
-     * @return the Context associated with this thread. If not existing, it instanitates it.
+     * @return the pool of Contexts of this plugin. If not existing, it instanitates it.
      */
-    protected Context ctx() {
-        var workingThreadName = Thread.currentThread().getName();
-
-        if (this.ctxs.get(workingThreadName) == null) {
-            var ctx = context(engine, contextOptions);
-            this.ctxs.put(workingThreadName, ctx);
+    protected ContextPool pool() {
+        synchronized(this.state) {
+            if (this.state.pool == null) {
+                // copy the fields used by the factory, so that it does not reference this plugin
+                var _engine = this.engine;
+                var _contextOptions = new HashMap<>(this.contextOptions);
+                var _name = this.name;
+                var _conf = this.conf;
+                var _mclient = this.mclient;
+
+                this.state.pool = new ContextPool(() -> {
+                    var ctx = context(_engine, _contextOptions);
+                    addBindings(ctx, _name, _conf, LOGGER, _mclient);
+                    return ctx;
+                }, contextPoolSize, contextPoolIdleTimeout, contextPoolBorrowTimeout);
+            }
 
-            addBindings(ctx, this.name, this.conf, LOGGER, this.mclient);
+            return this.state.pool;
         }
+    }
 
-        return this.ctxs.get(workingThreadName);
+    /**
+     * borrows a Context from the pool, applies the function and returns the Context to the pool
+     *
+     * @param <T>
+     * @param fn the function to apply to the borrowed Context
+     * @return the result of the function
+     */
+    protected <T> T withContext(Function<ContextPool.PooledContext, T> fn) {
+        var pool = pool();
+        var pooled = pool.borrow();
+
+        try {
+            return fn.apply(pooled);
+        } finally {
+            pool.release(pooled);
+        }
     }
 
     /**
+     * executes the handle function in a pooled Context. If no Context is
+     * available within the borrow timeout, the response is set in error with 503
      *
-     * @return the handle Value associated with this thread. If not existing, it instanitates it.
+     * @param request
+     * @param response
      */
-    protected Value _handle() {
-        var workingThreadName = Thread.currentThread().getName();
-
-        if (this.handles.containsKey(workingThreadName)) {
-            return this.handles.get(workingThreadName);
-        } else {
-            var handle = ctx().eval(this.handleSource);
-            this.handles.put(workingThreadName, handle);
-            return handle;
+    protected void executeHandle(Request<?> request, Response<?> response) {
+        try {
+            withContext(pooled -> {
+                pooled.eval(this.handleSource).executeVoid(request, response);
+                return null;
+            });
+        } catch(ContextPool.BorrowTimeoutException bte) {
+            LOGGER.warn("{} {}: {}", getName(), request.getPath(), bte.getMessage());
+            response.setInError(HttpStatus.SC_SERVICE_UNAVAILABLE, "service temporarily unavailable, try again later");
         }
     }
 
+    /**
+     * closes the Contexts of this plugin
+     */
+    public void closeContexts() {
+        this.state.run();
+    }
+
     // for cleaning
     protected static class State implements Runnable {
-        private Map<String, Context> ctxs;
-
-        State(Map<String, Context> ctxs) {
-            // initialize State needed for cleaning action
-            this.ctxs = ctxs;
-        }
+        private ContextPool pool = null;
 
         public void run() {
-            if (this.ctxs != null) {
-                this.ctxs.entrySet().stream().map(e -> e.getValue())
-                .filter(ctx -> ctx != null)
-                .forEach(ctx -> {
-                    try {
-                        ctx.close();
-                    } catch(Throwable t) {
-                        // nothing to do
-                    }
-                });
+            ContextPool _pool;
+
+            synchronized(this) {
+                _pool = this.pool;
+                this.pool = null;
+            }
+
+            if (_pool != null) {
+                try {
+                    _pool.close();
+                } catch(Throwable t) {
+                    // nothing to do
+                }
             }
         }
     }
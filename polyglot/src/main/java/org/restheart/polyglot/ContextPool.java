@@ -0,0 +1,227 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-polyglot
+ * %%
+ * Copyright (C) 2020 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.polyglot;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of js Contexts
+ *
+ * A Context does not allow multithreaded access, so each Context is borrowed
+ * by one thread at a time. At most maxSize Contexts are created, further
+ * borrowers wait up to borrowTimeout milliseconds for a Context to be released.
+ * The Contexts idle for more than idleTimeout milliseconds are closed, except
+ * the most recently used one.
+ */
+public class ContextPool implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContextPool.class);
+
+    private final Supplier<Context> factory;
+    private final long idleTimeout;
+    private final long borrowTimeout;
+    private final Semaphore permits;
+
+    // the head is the most recently released Context
+    private final ConcurrentLinkedDeque<PooledContext> idle = new ConcurrentLinkedDeque<>();
+
+    private volatile boolean closed = false;
+
+    /**
+     * Thrown by borrow() when no Context is released within borrowTimeout
+     */
+    public static class BorrowTimeoutException extends RuntimeException {
+        private static final long serialVersionUID = 4046431186562413513L;
+
+        BorrowTimeoutException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * A Context borrowed from the pool along with the Values it has evaluated
+     */
+    public static class PooledContext {
+        private final Context ctx;
+        private final Map<Source, Value> evaluated = new HashMap<>();
+        private long lastUsed;
+
+        private PooledContext(Context ctx) {
+            this.ctx = ctx;
+        }
+
+        public Context ctx() {
+            return ctx;
+        }
+
+        /**
+         * @param source
+         * @return the Value of the source evaluated in this Context. The source is evaluated once per Context.
+         */
+        public Value eval(Source source) {
+            var value = this.evaluated.get(source);
+
+            if (value == null) {
+                value = this.ctx.eval(source);
+                this.evaluated.put(source, value);
+            }
+
+            return value;
+        }
+
+        private void close() {
+            try {
+                this.ctx.close();
+            } catch(Throwable t) {
+                // nothing to do
+            }
+        }
+    }
+
+    /**
+     * @param factory     creates new Contexts
+     * @param maxSize     the max number of Contexts
+     * @param idleTimeout the time in milliseconds after which an idle Context is closed
+     * @param borrowTimeout the max time in milliseconds borrow() waits for a Context to be released
+     */
+    public ContextPool(Supplier<Context> factory, int maxSize, long idleTimeout, long borrowTimeout) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be greater than zero");
+        }
+
+        this.factory = factory;
+        this.idleTimeout = idleTimeout;
+        this.borrowTimeout = borrowTimeout;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * borrows a Context, waiting up to borrowTimeout for one to be released if
+     * maxSize Contexts are in use. The Context must be returned with release()
+     *
+     * @return the borrowed Context
+     * @throws BorrowTimeoutException if no Context is released within borrowTimeout
+     */
+    public PooledContext borrow() {
+        if (this.closed) {
+            throw new IllegalStateException("context pool is closed");
+        }
+
+        try {
+            if (!this.permits.tryAcquire(this.borrowTimeout, TimeUnit.MILLISECONDS)) {
+                throw new BorrowTimeoutException("no js context released within " + this.borrowTimeout + " msecs");
+            }
+        } catch(InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted waiting for a js context", ie);
+        }
+
+        var pooled = this.idle.pollFirst();
+
+        if (pooled != null) {
+            return pooled;
+        }
+
+        try {
+            LOGGER.trace("creating new js context");
+            return new PooledContext(this.factory.get());
+        } catch(Throwable t) {
+            this.permits.release();
+            throw t;
+        }
+    }
+
+    /**
+     * returns a borrowed Context to the pool
+     *
+     * @param pooled the Context to return
+     */
+    public void release(PooledContext pooled) {
+        if (this.closed) {
+            pooled.close();
+        } else {
+            pooled.lastUsed = System.currentTimeMillis();
+            this.idle.offerFirst(pooled);
+            evictIdle();
+
+            // the pool might have been closed meanwhile
+            if (this.closed) {
+                closeIdle();
+            }
+        }
+
+        this.permits.release();
+    }
+
+    /**
+     * closes the Contexts idle for more than idleTimeout, except the most recently used one
+     */
+    private void evictIdle() {
+        var now = System.currentTimeMillis();
+
+        while (this.idle.size() > 1) {
+            var eldest = this.idle.peekLast();
+
+            if (eldest == null || now - eldest.lastUsed < this.idleTimeout) {
+                break;
+            }
+
+            if (this.idle.removeLastOccurrence(eldest)) {
+                LOGGER.trace("closing idle js context");
+                eldest.close();
+            }
+        }
+    }
+
+    private void closeIdle() {
+        PooledContext pooled;
+
+        while ((pooled = this.idle.pollFirst()) != null) {
+            pooled.close();
+        }
+    }
+
+    /**
+     * @return the number of idle Contexts
+     */
+    public int idleCount() {
+        return this.idle.size();
+    }
+
+    /**
+     * closes the idle Contexts; the borrowed Contexts are closed when released
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        closeIdle();
+    }
+}
@@ -26,7 +26,6 @@ import java.nio.file.Path;
 import java.util.Optional;
 
 import com.mongodb.client.MongoClient;
-import org.graalvm.polyglot.Context;
 import org.graalvm.polyglot.Source;
 import org.graalvm.polyglot.Value;
 import org.restheart.configuration.Configuration;
@@ -34,7 +33,6 @@ import org.restheart.exchange.StringRequest;
 import org.restheart.exchange.StringResponse;
 import org.restheart.plugins.StringService;
 import org.restheart.plugins.RegisterPlugin.MATCH_POLICY;
-import org.restheart.utils.CleanerUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -72,9 +70,6 @@ public class JavaScriptService extends AbstractJSPlugin implements StringService
     """;
 
     JavaScriptService(Path pluginPath, Optional<MongoClient> mclient, Configuration conf) throws IOException {
-        // register cleaner
-        CleanerUtils.get().cleaner().register(this, new State(this.ctxs));
-
         this.mclient = mclient;
         this.conf = conf;
         this.isService = true;
@@ -161,6 +156,12 @@ public class JavaScriptService extends AbstractJSPlugin implements StringService
                 this.modulesReplacements = sb.toString();
             }
 
+            // the Contexts of the pool are created with the modules replacements
+            if (getModulesReplacements() != null) {
+                LOGGER.debug("modules-replacements: {} ", getModulesReplacements());
+                contextOptions.put("js.commonjs-core-modules-replacements", getModulesReplacements());
+            }
+
             // ******** evaluate and check handle
 
             var handleScript = "import { handle } from '" + sindexPath + "'; handle;";
@@ -182,32 +183,7 @@ public class JavaScriptService extends AbstractJSPlugin implements StringService
      *
      */
     public void handle(StringRequest request, StringResponse response) {
-        _handle().executeVoid(request, response);
-    }
-
-    /**
-     *
-     * @return the Context associated with this thread. If not existing, it instanitates it.
-     */
-    @Override
-    protected Context ctx() {
-        if (getModulesReplacements() != null) {
-            LOGGER.debug("modules-replacements: {} ", getModulesReplacements());
-            contextOptions.put("js.commonjs-core-modules-replacements", getModulesReplacements());
-        } else {
-            contextOptions.remove("js.commonjs-core-modules-replacements");
-        }
-
-        var workingThreadName = Thread.currentThread().getName();
-
-        if (this.ctxs.get(workingThreadName) == null) {
-            var ctx = context(engine, contextOptions);
-            this.ctxs.put(workingThreadName, ctx);
-
-            addBindings(ctx, this.name, conf, LOGGER, this.mclient);
-        }
-
-        return this.ctxs.get(workingThreadName);
+        executeHandle(request, response);
     }
 
     public String getModulesReplacements() {
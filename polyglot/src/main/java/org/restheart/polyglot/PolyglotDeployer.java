@@ -94,6 +94,8 @@ public class PolyglotDeployer implements Initializer {
 
         pluginsDirectory = getPluginsDirectory(config.toMap());
 
+        setContextPoolOptions(config.toMap());
+
         this.mclient = mongoClient(registry);
 
         this.jsInterceptorFactory = new JSInterceptorFactory(this.mclient, this.config);
@@ -221,6 +223,30 @@ public class PolyglotDeployer implements Initializer {
         }
     }
 
+    public static final String CONTEXT_POOL_SIZE_XPATH = "/polyglotDeployer/context-pool-size";
+    public static final String CONTEXT_POOL_IDLE_TIMEOUT_XPATH = "/polyglotDeployer/context-pool-idle-timeout";
+    public static final String CONTEXT_POOL_BORROW_TIMEOUT_XPATH = "/polyglotDeployer/context-pool-borrow-timeout";
+
+    private void setContextPoolOptions(Map<String, Object> args) {
+        // yaml numbers can be either Integer or Long
+        Number _size = findOrDefault(args, CONTEXT_POOL_SIZE_XPATH, AbstractJSPlugin.DEFAULT_CONTEXT_POOL_SIZE, true);
+        Number _idleTimeout = findOrDefault(args, CONTEXT_POOL_IDLE_TIMEOUT_XPATH, AbstractJSPlugin.DEFAULT_CONTEXT_POOL_IDLE_TIMEOUT, true);
+        Number _borrowTimeout = findOrDefault(args, CONTEXT_POOL_BORROW_TIMEOUT_XPATH, AbstractJSPlugin.DEFAULT_CONTEXT_POOL_BORROW_TIMEOUT, true);
+
+        var size = _size.intValue();
+        var idleTimeout = _idleTimeout.longValue();
+        var borrowTimeout = _borrowTimeout.longValue();
+
+        if (size < 1) {
+            LOGGER.warn("wrong {}, it must be greater than zero, using default value {}", CONTEXT_POOL_SIZE_XPATH, AbstractJSPlugin.DEFAULT_CONTEXT_POOL_SIZE);
+            size = AbstractJSPlugin.DEFAULT_CONTEXT_POOL_SIZE;
+        }
+
+        LOGGER.debug("js plugins context pool size: {}, idle timeout: {} msecs, borrow timeout: {} msecs", size, idleTimeout, borrowTimeout);
+
+        AbstractJSPlugin.setContextPoolOptions(size, idleTimeout, borrowTimeout);
+    }
+
     private List<Path> findJsPluginDirectories(Path pluginsDirectory) {
         if (!checkPluginDirectory(pluginsDirectory)) {
             LOGGER.error("js plugins will not be deployed");
@@ -454,6 +480,7 @@ public class PolyglotDeployer implements Initializer {
 
             if (toUndeploy != null) {
                 registry.unplug(toUndeploy.getUri(), toUndeploy.getMatchPolicy());
+                toUndeploy.closeContexts();
 
                 LOGGER.info(ansi().fg(GREEN).a("removed service {} bound to URI {}").reset().toString(),
                 toUndeploy.getName(), toUndeploy.getUri());
@@ -471,6 +498,8 @@ public class PolyglotDeployer implements Initializer {
             var toUndeploy = DEPLOYEES.remove(pathToUndeploy);
             var removed = registry.removeInterceptorIf(interceptor -> Objects.equal(interceptor.getName(), toUndeploy.getName()));
 
+            toUndeploy.closeContexts();
+
             if (removed) {
                 LOGGER.info(ansi().fg(GREEN).a("removed interceptor {}").reset().toString(), toUndeploy.getName());
             } else {
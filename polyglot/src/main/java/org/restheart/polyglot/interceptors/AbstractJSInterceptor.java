@@ -23,17 +23,17 @@ package org.restheart.polyglot.interceptors;
 import java.util.Map;
 import java.util.Optional;
 
-import com.google.common.collect.Maps;
 import com.mongodb.client.MongoClient;
 
 import org.graalvm.polyglot.Source;
-import org.graalvm.polyglot.Value;
 import org.restheart.configuration.Configuration;
 import org.restheart.exchange.Request;
 import org.restheart.exchange.Response;
 import org.restheart.plugins.InterceptPoint;
 import org.restheart.plugins.Interceptor;
 import org.restheart.polyglot.AbstractJSPlugin;
+import org.restheart.polyglot.ContextPool;
+import org.restheart.utils.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -71,38 +71,26 @@ public class AbstractJSInterceptor<R extends Request<?>, S extends Response<?>>
      *
      */
     public void handle(R request, S response) {
-        _handle().executeVoid(request, response);
+        executeHandle(request, response);
     }
 
     @Override
     public boolean resolve(R request, S response) {
-        var ret = resolve().execute(request);
+        try {
+            return withContext(pooled -> {
+                var ret = pooled.eval(this.resolveSource).execute(request);
 
-        if (ret.isBoolean()) {
-            return ret.asBoolean();
-        } else {
-            LOGGER.error("resolve() of interceptor did not returned a boolean", name);
+                if (ret.isBoolean()) {
+                    return ret.asBoolean();
+                } else {
+                    LOGGER.error("resolve() of interceptor did not returned a boolean", name);
+                    return false;
+                }
+            });
+        } catch(ContextPool.BorrowTimeoutException bte) {
+            LOGGER.warn("{} {}: {}", getName(), request.getPath(), bte.getMessage());
+            response.setInError(HttpStatus.SC_SERVICE_UNAVAILABLE, "service temporarily unavailable, try again later");
             return false;
         }
     }
-
-    // each working thread is associates with one resolve
-    // because js Context does not allow multithreaded access
-    protected Map<String, Value> resolves = Maps.newHashMap();
-
-    /**
-     *
-     * @return the resolve Value associated with this thread. If not existing, it instanitates it.
-     */
-    private Value resolve() {
-        var workingThreadName = Thread.currentThread().getName();
-
-        if (this.resolves.containsKey(workingThreadName)) {
-            return this.resolves.get(workingThreadName);
-        } else {
-            var resolve = ctx().eval(this.resolveSource);
-            this.resolves.put(workingThreadName, resolve);
-            return resolve;
-        }
-    }
 }
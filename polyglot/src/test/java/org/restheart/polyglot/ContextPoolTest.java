@@ -0,0 +1,215 @@
+/*-
+ * ========================LICENSE_START=================================
+ * restheart-polyglot
+ * %%
+ * Copyright (C) 2020 - 2024 SoftInstigate
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * =========================LICENSE_END==================================
+ */
+package org.restheart.polyglot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.graalvm.polyglot.Context;
+import org.junit.jupiter.api.Test;
+import org.restheart.polyglot.ContextPool.BorrowTimeoutException;
+
+/**
+ * The factory creates mocked Contexts, so that the tests can verify
+ * which Contexts are closed
+ *
+ * @author Andrea Di Cesare {@literal <andrea@softinstigate.com>}
+ */
+public class ContextPoolTest {
+    private static final long NEVER = Long.MAX_VALUE;
+
+    private final AtomicInteger created = new AtomicInteger();
+
+    private final Supplier<Context> factory = () -> {
+        created.incrementAndGet();
+        return mock(Context.class);
+    };
+
+    @Test
+    public void testInvalidSize() {
+        assertThrows(IllegalArgumentException.class, () -> new ContextPool(factory, 0, NEVER, NEVER));
+    }
+
+    @Test
+    public void testSizeBound() throws Exception {
+        var maxSize = 3;
+        var pool = new ContextPool(factory, maxSize, NEVER, NEVER);
+        var executor = Executors.newFixedThreadPool(10);
+        var inUse = new AtomicInteger();
+        var maxInUse = new AtomicInteger();
+
+        try {
+            var tasks = new ArrayList<CompletableFuture<Void>>();
+
+            for (var i = 0; i < 100; i++) {
+                tasks.add(CompletableFuture.runAsync(() -> {
+                    var pooled = pool.borrow();
+                    maxInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        inUse.decrementAndGet();
+                        pool.release(pooled);
+                    }
+                }, executor));
+            }
+
+            CompletableFuture.allOf(tasks.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(created.get() <= maxSize);
+        assertTrue(maxInUse.get() <= maxSize);
+        assertEquals(created.get(), pool.idleCount());
+    }
+
+    @Test
+    public void testBorrowBlocksUntilRelease() throws Exception {
+        var pool = new ContextPool(factory, 1, NEVER, NEVER);
+        var borrowed = pool.borrow();
+        var started = new CountDownLatch(1);
+        var executor = Executors.newSingleThreadExecutor();
+
+        try {
+            var waiting = CompletableFuture.supplyAsync(() -> {
+                started.countDown();
+                return pool.borrow();
+            }, executor);
+
+            started.await();
+            assertThrows(TimeoutException.class, () -> waiting.get(200, TimeUnit.MILLISECONDS));
+            assertFalse(waiting.isDone());
+
+            pool.release(borrowed);
+
+            assertSame(borrowed, waiting.get(5, TimeUnit.SECONDS));
+            assertEquals(1, created.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testMostRecentlyReleasedIsReused() {
+        var pool = new ContextPool(factory, 2, NEVER, NEVER);
+
+        var first = pool.borrow();
+        var second = pool.borrow();
+        assertNotSame(first, second);
+
+        pool.release(first);
+        pool.release(second);
+
+        assertSame(second, pool.borrow());
+        assertSame(first, pool.borrow());
+        assertEquals(2, created.get());
+    }
+
+    @Test
+    public void testIdleContextsAreEvicted() {
+        var pool = new ContextPool(factory, 3, 0, NEVER);
+
+        var first = pool.borrow();
+        var second = pool.borrow();
+        var third = pool.borrow();
+
+        pool.release(first);
+        pool.release(second);
+        pool.release(third);
+
+        // the most recently used one is kept
+        assertEquals(1, pool.idleCount());
+        verify(first.ctx()).close();
+        verify(second.ctx()).close();
+        verify(third.ctx(), never()).close();
+        assertSame(third, pool.borrow());
+    }
+
+    @Test
+    public void testIdleContextsAreKeptWithinTimeout() {
+        var pool = new ContextPool(factory, 3, NEVER, NEVER);
+
+        var first = pool.borrow();
+        var second = pool.borrow();
+
+        pool.release(first);
+        pool.release(second);
+
+        assertEquals(2, pool.idleCount());
+        verify(first.ctx(), never()).close();
+        verify(second.ctx(), never()).close();
+    }
+
+    @Test
+    public void testBorrowTimeout() {
+        var pool = new ContextPool(factory, 1, NEVER, 100);
+        var borrowed = pool.borrow();
+
+        assertThrows(BorrowTimeoutException.class, pool::borrow);
+
+        // the timed out borrow does not consume the permit
+        pool.release(borrowed);
+        verify(borrowed.ctx(), never()).close();
+        assertSame(borrowed, pool.borrow());
+        assertEquals(1, created.get());
+    }
+
+    @Test
+    public void testClose() {
+        var pool = new ContextPool(factory, 2, NEVER, NEVER);
+
+        var idle = pool.borrow();
+        var borrowed = pool.borrow();
+        pool.release(idle);
+
+        pool.close();
+
+        assertEquals(0, pool.idleCount());
+        verify(idle.ctx()).close();
+        verify(borrowed.ctx(), never()).close();
+        assertThrows(IllegalStateException.class, pool::borrow);
+
+        // Contexts released after close are not pooled
+        pool.release(borrowed);
+        assertEquals(0, pool.idleCount());
+        verify(borrowed.ctx()).close();
+    }
+}
@@ -27,7 +27,7 @@ import java.util.Map;
 import java.util.Set;
 
 import org.restheart.configuration.ConfigurationException;
-import org.restheart.security.AclVarsInterpolator;
+import org.restheart.security.AclPredicate;
 import org.restheart.security.BaseAclPermission;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,7 +47,7 @@ public class FileAclPermission extends BaseAclPermission {
     private final String requestPredicate;
 
     private FileAclPermission(String requestPredicate, Set<String> roles, int priority, Map<String, Object> raw) throws ConfigurationException {
-        super(req -> AclVarsInterpolator.interpolatePredicate(req, requestPredicate, FileAclPermission.class.getClassLoader()).resolve(req.getExchange()), roles, priority, raw);
+        super(new AclPredicate(requestPredicate, FileAclPermission.class.getClassLoader()), roles, priority, raw);
         this.requestPredicate = requestPredicate;
     }
 
@@ -27,13 +27,11 @@ import java.util.stream.StreamSupport;
 import org.bson.BsonDocument;
 import org.bson.BsonValue;
 import org.restheart.configuration.ConfigurationException;
-import org.restheart.security.AclVarsInterpolator;
+import org.restheart.security.AclPredicate;
 import org.restheart.security.BaseAclPermission;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import io.undertow.predicate.PredicateParser;
-
 /**
  * ACL Permission that specifies the conditions that are necessary to perform
  * the request
@@ -48,7 +46,7 @@ public class MongoAclPermission extends BaseAclPermission {
     private final BsonValue _id;
 
     MongoAclPermission(BsonValue _id, String requestPredicate, Set<String> roles, int priority, BsonDocument raw) throws ConfigurationException {
-        super(req -> AclVarsInterpolator.interpolatePredicate(req, requestPredicate, MongoAclPermission.class.getClassLoader()).resolve(req.getExchange()), roles, priority, raw);
+        super(new AclPredicate(requestPredicate, MongoAclPermission.class.getClassLoader()), roles, priority, raw);
         this._id = _id;
     }
 
@@ -79,13 +77,6 @@ public class MongoAclPermission extends BaseAclPermission {
             throw new ConfigurationException("Wrong permission: predicate must be a string");
         }
 
-        try {
-            // check predicate
-            PredicateParser.parse(argPredicate.asString().getValue(), MongoAclPermission.class.getClassLoader());
-        } catch (Throwable t) {
-            throw new ConfigurationException("Wrong permission: invalid predicate " + argPredicate, t);
-        }
-
         int priority;
         var _priority = doc.get("priority");
 
@@ -29,6 +29,7 @@ import org.restheart.plugins.InterceptPoint;
 import org.restheart.plugins.OnInit;
 import org.restheart.plugins.RegisterPlugin;
 import org.restheart.plugins.WildcardInterceptor;
+import org.restheart.security.FailedAuthTracker;
 import org.restheart.utils.LogUtils;
 
 import io.undertow.attribute.ExchangeAttributes;
@@ -36,17 +37,12 @@ import io.undertow.server.HttpServerExchange;
 import io.undertow.util.HttpString;
 
 import static org.restheart.metrics.Metrics.collectFailedAuthBy;
-import static org.restheart.metrics.Metrics.failedAuthHistogramName;
+import static org.restheart.metrics.Metrics.failedAuthKey;
 import static org.restheart.metrics.Metrics.xffValue;
 import static org.restheart.metrics.Metrics.xffValueRIndex;
 
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
 
-import com.codahale.metrics.Histogram;
-import com.codahale.metrics.MetricRegistry;
-import com.codahale.metrics.SharedMetricRegistries;
-import com.codahale.metrics.SlidingTimeWindowArrayReservoir;
 import com.google.common.net.HttpHeaders;
 
 import org.slf4j.Logger;
@@ -59,11 +55,11 @@ import org.slf4j.LoggerFactory;
 @RegisterPlugin(name="bruteForceAttackGuard",
         description = "defends from brute force attacks by returning 429 Too Many Requests when failed auth attempts in last 10 seconds from same ip are more than 50%",
         interceptPoint = InterceptPoint.REQUEST_BEFORE_AUTH,
+        contentIndependent = true,
         enabledByDefault = false)
 public class BruteForceAttackGuard implements WildcardInterceptor {
     private static final Logger LOGGER = LoggerFactory.getLogger(BruteForceAttackGuard.class);
 
-    private static final MetricRegistry AUTH_METRIC_REGISTRY = SharedMetricRegistries.getOrCreate("AUTH");
     private static int xForwardedForValueFromLast = 0;
 
     private int maxFailedAttempts = 5;
@@ -102,15 +98,24 @@ public class BruteForceAttackGuard implements WildcardInterceptor {
             this.maxFailedAttempts = 5;
         }
 
-        LOGGER.info("Requests will be blocked when got more than {} failed attempts in last 10 seconds", maxFailedAttempts);
+        try {
+            int maxTrackedClients = arg(config, "max-tracked-clients");
+            FailedAuthTracker.getInstance().setMaxClients(maxTrackedClients);
+        } catch(ConfigurationException ce) {
+            // use default
+        } catch(IllegalArgumentException iae) {
+            LOGGER.warn("Wrong max-tracked-clients, using default {}: {}", FailedAuthTracker.DEFAULT_MAX_CLIENTS, iae.getMessage());
+        }
+
+        LOGGER.info("Requests will be blocked when got more than {} failed attempts in last {} seconds", maxFailedAttempts, FailedAuthTracker.WINDOW_SECONDS);
     }
 
     @Override
     public void handle(ServiceRequest<?> request, ServiceResponse<?> response) throws Exception {
-        // if failed attempts in last 10 seconds >= maxFailedAttempts, deny access
-        var max = authHisto(request).getSnapshot().getMax();
-        if (max > this.maxFailedAttempts) {
-            logWarning(request.getExchange(), max);
+        // if failed attempts in last 10 seconds > maxFailedAttempts, deny access
+        var failed = FailedAuthTracker.getInstance().failedAttempts(failedAuthKey(request.getExchange()));
+        if (failed > this.maxFailedAttempts) {
+            logWarning(request.getExchange(), failed);
             // this blocks the request authentication
             // with status code 429 TOO_MANY_REQUESTS
             request.blockForTooManyRequests();
@@ -122,12 +127,12 @@ public class BruteForceAttackGuard implements WildcardInterceptor {
         return !request.isOptions();
     }
 
-    private void logWarning(HttpServerExchange exchange, double mean) {
+    private void logWarning(HttpServerExchange exchange, int failed) {
         var xff = ExchangeAttributes.requestHeader(HttpString.tryFromString(HttpHeaders.X_FORWARDED_FOR)).readAttribute(exchange);
         LogUtils.boxedWarn(LOGGER,
             "A brute force attack might be in progress...",
             "",
-            "Got too many of failed auth attempts in last 10 seconds from:",
+            "Got " + failed + " failed auth attempts in last " + FailedAuthTracker.WINDOW_SECONDS + " seconds from:",
             "",
             "remote ip: " + ExchangeAttributes.remoteIp().readAttribute(exchange),
             "X-Forwarded-For header: " + xff,
@@ -137,8 +142,4 @@ public class BruteForceAttackGuard implements WildcardInterceptor {
             "request method: " + ExchangeAttributes.requestMethod().readAttribute(exchange),
             "request url: " + ExchangeAttributes.requestURL().readAttribute(exchange));
     }
-
-    private Histogram authHisto(ServiceRequest<?> request) {
-        return AUTH_METRIC_REGISTRY.histogram(failedAuthHistogramName(request.getExchange()), () -> new Histogram(new SlidingTimeWindowArrayReservoir(10, TimeUnit.SECONDS)));
-    }
 }